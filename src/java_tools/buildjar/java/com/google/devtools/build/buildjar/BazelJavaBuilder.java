@@ -16,13 +16,17 @@ package com.google.devtools.build.buildjar;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
 import com.google.devtools.build.buildjar.javac.BlazeJavacResult;
+import com.google.devtools.build.buildjar.javac.FileManagerCache;
 import com.google.devtools.build.buildjar.javac.FormattedDiagnostic;
 import com.google.devtools.build.buildjar.javac.JavacOptions;
 import com.google.devtools.build.buildjar.javac.plugins.BlazeJavaCompilerPlugin;
 import com.google.devtools.build.buildjar.javac.plugins.dependency.DependencyModule;
 import com.google.devtools.build.buildjar.javac.plugins.errorprone.ErrorPronePlugin;
+import com.google.devtools.build.lib.worker.WorkerProtocol.Input;
 import com.google.devtools.build.lib.worker.WorkerProtocol.WorkRequest;
 import com.google.devtools.build.lib.worker.WorkerProtocol.WorkResponse;
 import java.io.IOException;
@@ -30,9 +34,14 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
 
 /** The JavaBuilder main called by bazel. */
 public abstract class BazelJavaBuilder {
@@ -54,6 +63,7 @@ public abstract class BazelJavaBuilder {
   }
 
   private static int runPersistentWorker() {
+    FileManagerCache fileManagerCache = new FileManagerCache();
     while (true) {
       try {
         WorkRequest request = WorkRequest.parseDelimitedFrom(System.in);
@@ -64,7 +74,8 @@ public abstract class BazelJavaBuilder {
 
         try (StringWriter sw = new StringWriter();
             PrintWriter pw = new PrintWriter(sw)) {
-          int exitCode = processRequest(request.getArgumentsList(), pw);
+          fileManagerCache.setInputDigests(getInputDigests(request));
+          int exitCode = processRequest(request.getArgumentsList(), fileManagerCache, pw);
           WorkResponse.newBuilder()
               .setOutput(sw.toString())
               .setExitCode(exitCode)
@@ -85,9 +96,26 @@ public abstract class BazelJavaBuilder {
     return 0;
   }
 
+  private static ImmutableMap<Path, HashCode> getInputDigests(WorkRequest request) {
+    Map<Path, HashCode> digests = new HashMap<>();
+    for (Input input : request.getInputsList()) {
+      if (!input.getDigest().isEmpty()) {
+        digests.put(
+            Paths.get(input.getPath()), HashCode.fromBytes(input.getDigest().toByteArray()));
+      }
+    }
+    return ImmutableMap.copyOf(digests);
+  }
+
   public static int processRequest(List<String> args, PrintWriter err) {
+    return processRequest(args, null, err);
+  }
+
+  private static int processRequest(
+      List<String> args, @Nullable FileManagerCache fileManagerCache, PrintWriter err) {
     try {
       JavaLibraryBuildRequest build = parse(args);
+      build.setFileManagerCache(fileManagerCache);
       try (SimpleJavaLibraryBuilder builder =
           build.getDependencyModule().reduceClasspath()
               ? new ReducedClasspathJavaLibraryBuilder()
@@ -24,6 +24,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.devtools.build.buildjar.instrumentation.JacocoInstrumentationProcessor;
 import com.google.devtools.build.buildjar.javac.BlazeJavacArguments;
+import com.google.devtools.build.buildjar.javac.FileManagerCache;
 import com.google.devtools.build.buildjar.javac.plugins.BlazeJavaCompilerPlugin;
 import com.google.devtools.build.buildjar.javac.plugins.dependency.DependencyModule;
 import com.google.devtools.build.buildjar.javac.plugins.processing.AnnotationProcessingModule;
@@ -79,6 +80,9 @@ public final class JavaLibraryBuildRequest {
   /** List of plugins that are given to javac. */
   private final ImmutableList<BlazeJavaCompilerPlugin> plugins;
 
+  /** The file manager cache of the persistent worker processing this request, if any. */
+  @Nullable private FileManagerCache fileManagerCache;
+
   /**
    * Constructs a build from a list of command args. Sets the same JavacRunner for both compilation
    * and annotation processing.
@@ -288,6 +292,15 @@ public final class JavaLibraryBuildRequest {
     return plugins;
   }
 
+  @Nullable
+  public FileManagerCache getFileManagerCache() {
+    return fileManagerCache;
+  }
+
+  public void setFileManagerCache(@Nullable FileManagerCache fileManagerCache) {
+    this.fileManagerCache = fileManagerCache;
+  }
+
   public BlazeJavacArguments toBlazeJavacArguments(ImmutableList<Path> classPath) {
     BlazeJavacArguments.Builder builder =
         BlazeJavacArguments.builder()
@@ -304,7 +317,8 @@ public final class JavaLibraryBuildRequest {
             .sourcePath(getSourcePath())
             .sourceOutput(getSourceGenDir())
             .processorPath(getProcessorPath())
-            .plugins(getPlugins());
+            .plugins(getPlugins())
+            .fileManagerCache(getFileManagerCache());
     if (getNativeHeaderOutput() != null) {
       builder.nativeHeaderOutput(getNativeHeaderDir());
     }
@@ -69,6 +69,10 @@ public abstract class BlazeJavacArguments {
   @Nullable
   public abstract Path sourceOutput();
 
+  /** The file manager cache of the persistent worker running this compilation, if any. */
+  @Nullable
+  public abstract FileManagerCache fileManagerCache();
+
   public static Builder builder() {
     return new AutoValue_BlazeJavacArguments.Builder()
         .classPath(ImmutableList.of())
@@ -78,6 +82,7 @@ public abstract class BlazeJavacArguments {
         .sourcePath(ImmutableList.of())
         .processors(null)
         .sourceOutput(null)
+        .fileManagerCache(null)
         .processorPath(ImmutableList.of())
         .plugins(ImmutableList.of());
   }
@@ -105,6 +110,8 @@ public abstract class BlazeJavacArguments {
 
     Builder processorPath(ImmutableList<Path> processorPath);
 
+    Builder fileManagerCache(FileManagerCache fileManagerCache);
+
     Builder plugins(ImmutableList<BlazeJavaCompilerPlugin> plugins);
 
     BlazeJavacArguments build();
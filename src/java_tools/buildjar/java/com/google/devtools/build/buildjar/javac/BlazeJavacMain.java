@@ -32,6 +32,7 @@ import com.sun.tools.javac.file.JavacFileManager;
 import com.sun.tools.javac.main.JavaCompiler;
 import com.sun.tools.javac.util.Context;
 import com.sun.tools.javac.util.PropagatedException;
+import java.io.Closeable;
 import java.io.IOError;
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -90,7 +91,17 @@ public class BlazeJavacMain {
     Listener diagnostics = new Listener(context);
     BlazeJavaCompiler compiler;
 
-    try (JavacFileManager fileManager = new ClassloaderMaskingFileManager()) {
+    FileManagerCache fileManagerCache = arguments.fileManagerCache();
+    JavacFileManager fileManager = null;
+    boolean cachedFileManager = false;
+    try {
+      if (fileManagerCache != null) {
+        fileManager = fileManagerCache.getFileManager(arguments);
+        cachedFileManager = fileManager != null;
+      }
+      if (fileManager == null) {
+        fileManager = new ClassloaderMaskingFileManager();
+      }
       JavacTask task =
           JavacTool.create()
               .getTask(
@@ -114,7 +125,14 @@ public class BlazeJavacMain {
     } catch (Throwable t) {
       t.printStackTrace(errWriter);
       ok = false;
+      if (cachedFileManager) {
+        // Don't reuse a file manager that may have been left in an inconsistent state.
+        closeQuietly(fileManagerCache::invalidate, errWriter);
+      }
     } finally {
+      if (fileManager != null && !cachedFileManager) {
+        closeQuietly(fileManager, errWriter);
+      }
       compiler = (BlazeJavaCompiler) JavaCompiler.instance(context);
       if (ok) {
         // There could be situations where we incorrectly skip Error Prone and the compilation
@@ -133,6 +151,14 @@ public class BlazeJavacMain {
         ok, filterDiagnostics(ok, diagnostics.build()), errOutput.toString(), compiler);
   }
 
+  private static void closeQuietly(Closeable closeable, PrintWriter errWriter) {
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      e.printStackTrace(errWriter);
+    }
+  }
+
   private static final ImmutableSet<String> IGNORED_DIAGNOSTIC_CODES =
       ImmutableSet.of(
           "compiler.note.deprecated.filename",
@@ -233,7 +259,7 @@ public class BlazeJavacMain {
    * skew.
    */
   @Trusted
-  private static class ClassloaderMaskingFileManager extends JavacFileManager {
+  static class ClassloaderMaskingFileManager extends JavacFileManager {
 
     private static Context getContext() {
       Context context = new Context();
@@ -0,0 +1,135 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.buildjar.javac;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.hash.HashCode;
+import com.sun.tools.javac.file.JavacFileManager;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Keeps javac's file manager alive across the compilations performed by a persistent worker.
+ *
+ * <p>The file manager opens every jar on the classpath and bootclasspath and reads its index, which
+ * is a significant part of compiling against a large classpath. Reusing the file manager lets later
+ * compilations skip that work for jars whose contents haven't changed. Bazel sends the digest of
+ * every input with each work request; the cached file manager is discarded as soon as a jar it may
+ * have read is requested with a different digest, or when the file manager options change.
+ *
+ * <p>Compilations whose classpath contains a jar with an unknown digest don't use the cache.
+ *
+ * <p>This class is not thread-safe; persistent workers process one request at a time.
+ */
+public final class FileManagerCache {
+
+  /** Start over once this many jars have been opened, to bound the number of open files. */
+  private static final int MAX_CACHED_JARS = 10000;
+
+  private ImmutableMap<Path, HashCode> inputDigests = ImmutableMap.of();
+
+  @Nullable private JavacFileManager fileManager;
+  private final Map<Path, HashCode> cachedDigests = new HashMap<>();
+  private ImmutableList<String> cachedOptions = ImmutableList.of();
+
+  /** Sets the digests of the inputs of the request that is processed next. */
+  public void setInputDigests(ImmutableMap<Path, HashCode> inputDigests) {
+    this.inputDigests = inputDigests;
+  }
+
+  /**
+   * Returns the cached file manager if it can be used for the given compilation, creating it if
+   * necessary, or null if the compilation has to use a fresh file manager.
+   */
+  @Nullable
+  JavacFileManager getFileManager(BlazeJavacArguments arguments) throws IOException {
+    Map<Path, HashCode> digests = new HashMap<>();
+    for (Path path : Iterables.concat(arguments.classPath(), arguments.bootClassPath())) {
+      HashCode digest = inputDigests.get(path);
+      if (digest == null) {
+        return null;
+      }
+      digests.put(path, digest);
+    }
+    if (fileManager != null
+        && (!isConsistent(digests)
+            || !cachedOptions.equals(fileManagerOptions(arguments.javacOptions()))
+            || cachedDigests.size() + countNewJars(digests) > MAX_CACHED_JARS)) {
+      invalidate();
+    }
+    if (fileManager == null) {
+      fileManager = new BlazeJavacMain.ClassloaderMaskingFileManager();
+      cachedOptions = fileManagerOptions(arguments.javacOptions());
+    }
+    cachedDigests.putAll(digests);
+    return fileManager;
+  }
+
+  /** Returns true if no jar in the given map was previously read with a different digest. */
+  private boolean isConsistent(Map<Path, HashCode> digests) {
+    for (Map.Entry<Path, HashCode> entry : digests.entrySet()) {
+      HashCode cached = cachedDigests.get(entry.getKey());
+      if (cached != null && !cached.equals(entry.getValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns the number of jars in the given map that the cached file manager hasn't read yet. */
+  private int countNewJars(Map<Path, HashCode> digests) {
+    int count = 0;
+    for (Path path : digests.keySet()) {
+      if (!cachedDigests.containsKey(path)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns the javac options that configure the file manager, such as {@code -encoding}, along
+   * with their arguments. These stick to the file manager once it has handled them.
+   */
+  private ImmutableList<String> fileManagerOptions(List<String> javacOptions) {
+    ImmutableList.Builder<String> result = ImmutableList.builder();
+    for (int i = 0; i < javacOptions.size(); i++) {
+      int arity = fileManager.isSupportedOption(javacOptions.get(i));
+      if (arity >= 0) {
+        int end = Math.min(javacOptions.size(), i + arity + 1);
+        result.addAll(javacOptions.subList(i, end));
+        i = end - 1;
+      }
+    }
+    return result.build();
+  }
+
+  /** Closes and forgets the cached file manager, e.g. after a failed compilation. */
+  public void invalidate() throws IOException {
+    cachedDigests.clear();
+    cachedOptions = ImmutableList.of();
+    if (fileManager != null) {
+      JavacFileManager toClose = fileManager;
+      fileManager = null;
+      toClose.close();
+    }
+  }
+}
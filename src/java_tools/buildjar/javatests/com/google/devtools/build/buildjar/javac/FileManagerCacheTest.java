@@ -0,0 +1,170 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.buildjar.javac;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.sun.tools.javac.file.JavacFileManager;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** {@link FileManagerCache}Test */
+@RunWith(JUnit4.class)
+public class FileManagerCacheTest {
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final FileManagerCache cache = new FileManagerCache();
+
+  private Path jar(String name) {
+    return temporaryFolder.getRoot().toPath().resolve(name);
+  }
+
+  private static HashCode digest(int value) {
+    return HashCode.fromInt(value);
+  }
+
+  private BlazeJavacArguments arguments(ImmutableList<Path> classPath, String... javacOptions) {
+    return BlazeJavacArguments.builder()
+        .classPath(classPath)
+        .javacOptions(ImmutableList.copyOf(javacOptions))
+        .classOutput(temporaryFolder.getRoot().toPath())
+        .build();
+  }
+
+  @Test
+  public void reusesFileManagerForUnchangedJars() throws Exception {
+    cache.setInputDigests(ImmutableMap.of(jar("a.jar"), digest(1), jar("b.jar"), digest(2)));
+    JavacFileManager first = cache.getFileManager(arguments(ImmutableList.of(jar("a.jar"))));
+    JavacFileManager second =
+        cache.getFileManager(arguments(ImmutableList.of(jar("a.jar"), jar("b.jar"))));
+
+    assertThat(first).isNotNull();
+    assertThat(second).isSameAs(first);
+  }
+
+  @Test
+  public void jarWithUnknownDigestDoesNotUseCache() throws Exception {
+    cache.setInputDigests(ImmutableMap.of(jar("a.jar"), digest(1)));
+
+    assertThat(cache.getFileManager(arguments(ImmutableList.of(jar("a.jar"), jar("b.jar")))))
+        .isNull();
+  }
+
+  @Test
+  public void changedJarDigestDropsFileManager() throws Exception {
+    BlazeJavacArguments arguments = arguments(ImmutableList.of(jar("a.jar")));
+    cache.setInputDigests(ImmutableMap.of(jar("a.jar"), digest(1)));
+    JavacFileManager first = cache.getFileManager(arguments);
+    cache.setInputDigests(ImmutableMap.of(jar("a.jar"), digest(2)));
+    JavacFileManager second = cache.getFileManager(arguments);
+
+    assertThat(second).isNotNull();
+    assertThat(second).isNotSameAs(first);
+  }
+
+  @Test
+  public void changedFileManagerOptionsDropFileManager() throws Exception {
+    ImmutableList<Path> classPath = ImmutableList.of(jar("a.jar"));
+    cache.setInputDigests(ImmutableMap.of(jar("a.jar"), digest(1)));
+    JavacFileManager first = cache.getFileManager(arguments(classPath, "-encoding", "UTF-8"));
+    // -g doesn't configure the file manager.
+    JavacFileManager second =
+        cache.getFileManager(arguments(classPath, "-g", "-encoding", "UTF-8"));
+    JavacFileManager third = cache.getFileManager(arguments(classPath, "-encoding", "ISO-8859-1"));
+
+    assertThat(second).isSameAs(first);
+    assertThat(third).isNotNull();
+    assertThat(third).isNotSameAs(first);
+  }
+
+  @Test
+  public void tooManyJarsDropFileManager() throws Exception {
+    ImmutableMap.Builder<Path, HashCode> digests = ImmutableMap.builder();
+    ImmutableList.Builder<Path> firstClassPath = ImmutableList.builder();
+    ImmutableList.Builder<Path> secondClassPath = ImmutableList.builder();
+    for (int i = 0; i < 6000; i++) {
+      digests.put(jar("first" + i + ".jar"), digest(i));
+      digests.put(jar("second" + i + ".jar"), digest(i));
+      firstClassPath.add(jar("first" + i + ".jar"));
+      secondClassPath.add(jar("second" + i + ".jar"));
+    }
+    cache.setInputDigests(digests.build());
+    JavacFileManager first = cache.getFileManager(arguments(firstClassPath.build()));
+    JavacFileManager second = cache.getFileManager(arguments(firstClassPath.build()));
+    // Together, the two classpaths exceed the limit on the number of cached jars.
+    JavacFileManager third = cache.getFileManager(arguments(secondClassPath.build()));
+
+    assertThat(second).isSameAs(first);
+    assertThat(third).isNotNull();
+    assertThat(third).isNotSameAs(first);
+  }
+
+  /** A processor that makes the compilation throw. */
+  private static class ThrowingProcessor extends AbstractProcessor {
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+      return ImmutableSet.of("*");
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+      return SourceVersion.latest();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+      throw new IllegalStateException("processor crashed");
+    }
+  }
+
+  @Test
+  public void compilationThatThrowsDropsFileManager() throws Exception {
+    Path source = temporaryFolder.newFile("A.java").toPath();
+    Files.write(source, ImmutableList.of("class A {}"), UTF_8);
+    Path classOutput = temporaryFolder.newFolder("classes").toPath();
+    cache.setInputDigests(ImmutableMap.of());
+    JavacFileManager first = cache.getFileManager(arguments(ImmutableList.of()));
+
+    BlazeJavacResult result =
+        BlazeJavacMain.compile(
+            BlazeJavacArguments.builder()
+                .sourceFiles(ImmutableList.of(source))
+                .classOutput(classOutput)
+                .processors(ImmutableList.of(new ThrowingProcessor()))
+                .fileManagerCache(cache)
+                .build());
+    JavacFileManager second = cache.getFileManager(arguments(ImmutableList.of()));
+
+    assertThat(result.isOk()).isFalse();
+    assertThat(result.output()).contains("processor crashed");
+    assertThat(second).isNotNull();
+    assertThat(second).isNotSameAs(first);
+  }
+}
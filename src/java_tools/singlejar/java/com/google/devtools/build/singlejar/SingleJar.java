@@ -29,6 +29,8 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
@@ -44,6 +46,7 @@ public class SingleJar {
   private static final byte NEWLINE_BYTE = (byte) '\n';
   private static final String MANIFEST_FILENAME = JarFile.MANIFEST_NAME;
   private static final String BUILD_DATA_FILENAME = "build-data.properties";
+  private static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 256L * 1024 * 1024;
 
   private final SimpleFileSystem fileSystem;
 
@@ -77,6 +80,12 @@ public class SingleJar {
   private boolean normalize = false;
   private OutputMode outputMode = OutputMode.FORCE_STORED;
 
+  /** The number of threads used to compress entries; 0 compresses on the main thread. */
+  private int compressionThreads = 0;
+
+  /** How much entry data may be buffered while entries are being compressed. */
+  private long maxInFlightBytes = DEFAULT_MAX_IN_FLIGHT_BYTES;
+
   /** Whether to include build-data.properties file */
   protected boolean includeBuildData = true;
 
@@ -178,9 +187,11 @@ public class SingleJar {
     InputStream buildInfo = createBuildData();
 
     ZipCombiner combiner = null;
+    ExecutorService compressionExecutor =
+        compressionThreads > 0 ? Executors.newFixedThreadPool(compressionThreads) : null;
     try {
       combiner = new ZipCombiner(outputMode, createEntryFilter(normalize, allowedPaths),
-          fileSystem.getOutputStream(outputJar));
+          fileSystem.getOutputStream(outputJar), compressionExecutor, maxInFlightBytes);
       if (launcherBin != null) {
         combiner.prependExecutable(fileSystem.getInputStream(launcherBin));
       }
@@ -244,6 +255,9 @@ public class SingleJar {
       combiner.close();
       combiner = null;
     } finally {
+      if (compressionExecutor != null) {
+        compressionExecutor.shutdownNow();
+      }
       // This part is only executed if an exception occurred.
       if (combiner != null) {
         try {
@@ -303,6 +317,25 @@ public class SingleJar {
     throw new IOException(arg + ": missing argument");
   }
 
+  /**
+   * Returns a single non-negative integer argument for a command line option.
+   *
+   * @throws IOException if no more arguments are available or the argument is not a valid number
+   */
+  private static long getNonNegativeArgument(List<String> args, int i, String arg)
+      throws IOException {
+    String value = getArgument(args, i, arg);
+    try {
+      long result = Long.parseLong(value);
+      if (result >= 0) {
+        return result;
+      }
+    } catch (NumberFormatException e) {
+      // Fall through to the error below.
+    }
+    throw new IOException(arg + ": expected a non-negative number, got '" + value + "'");
+  }
+
   /**
    * Processes the command line arguments.
    *
@@ -335,6 +368,12 @@ public class SingleJar {
         i++;
       } else if (arg.equals("--compression")) {
         outputMode = OutputMode.FORCE_DEFLATE;
+      } else if (arg.equals("--compression_threads")) {
+        compressionThreads = (int) getNonNegativeArgument(args, i, arg);
+        i++;
+      } else if (arg.equals("--max_in_flight_bytes")) {
+        maxInFlightBytes = getNonNegativeArgument(args, i, arg);
+        i++;
       } else if (arg.equals("--dont_change_compression")) {
         outputMode = OutputMode.DONT_CARE;
       } else if (arg.equals("--normalize")) {
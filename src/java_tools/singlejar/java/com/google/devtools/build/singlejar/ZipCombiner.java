@@ -33,10 +33,17 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.CRC32;
 import java.util.zip.Deflater;
@@ -62,6 +69,11 @@ import javax.annotation.Nullable;
  * at the end of processing to ensure that the output buffers are flushed and
  * the ZIP file is complete.
  *
+ * <p>If constructed with a compression {@link ExecutorService}, entries that have to be deflated
+ * are compressed concurrently on that executor while the combiner keeps reading its inputs.
+ * Entries are always written to the output in the order in which they were added; entries whose
+ * compression agrees with the output mode are still copied without being inflated.
+ *
  * <p>This class performs only rudimentary data checking. If the input files
  * are damaged, the output will likely also be damaged.
  *
@@ -203,6 +215,51 @@ public class ZipCombiner implements AutoCloseable {
     }
   }
 
+  /**
+   * An entry whose local header and data have not been written to the output yet, because the
+   * data is still being compressed or because entries added before it are.
+   */
+  private static final class PendingEntry {
+    private final ZipFileEntry entry;
+    private final Future<byte[]> data;
+    private final long size;
+
+    PendingEntry(ZipFileEntry entry, Future<byte[]> data, long size) {
+      this.entry = entry;
+      this.data = data;
+      this.size = size;
+    }
+  }
+
+  /** A {@link Future} whose value is already known. */
+  private static final class ImmediateFuture implements Future<byte[]> {
+    private final byte[] value;
+
+    ImmediateFuture(byte[] value) {
+      this.value = value;
+    }
+
+    @Override public boolean cancel(boolean mayInterruptIfRunning) {
+      return false;
+    }
+
+    @Override public boolean isCancelled() {
+      return false;
+    }
+
+    @Override public boolean isDone() {
+      return true;
+    }
+
+    @Override public byte[] get() {
+      return value;
+    }
+
+    @Override public byte[] get(long timeout, TimeUnit unit) {
+      return value;
+    }
+  }
+
   private final class FilterCallback implements StrategyCallback {
     private String filename;
     private final AtomicBoolean called = new AtomicBoolean();
@@ -248,9 +305,29 @@ public class ZipCombiner implements AutoCloseable {
     return new Inflater(true);
   }
 
+  /** Returns the DEFLATE compressed form of the given data. */
+  private static byte[] deflate(byte[] uncompressed) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    Deflater deflater = getDeflater();
+    try {
+      copyStream(new DeflaterInputStream(new ByteArrayInputStream(uncompressed), deflater),
+          compressed);
+    } finally {
+      deflater.end();
+    }
+    return compressed.toByteArray();
+  }
+
+  /** Reads all remaining data from the input stream into a byte array. */
+  private static byte[] readFully(InputStream in) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    copyStream(in, buffer);
+    return buffer.toByteArray();
+  }
+
   /** Copies all data from the input stream to the output stream. */
   private static long copyStream(InputStream from, OutputStream to) throws IOException {
-    byte[] buf = new byte[0x1000];
+    byte[] buf = new byte[0x10000];
     long total = 0;
     int r;
     while ((r = from.read(buf)) != -1) {
@@ -268,6 +345,11 @@ public class ZipCombiner implements AutoCloseable {
   private final Map<String, ZipFileEntry> entries;
   private final Map<String, EntryAction> actions;
 
+  @Nullable private final ExecutorService compressionExecutor;
+  private final long maxInFlightBytes;
+  private final Deque<PendingEntry> pendingEntries;
+  private long inFlightBytes;
+
   /**
    * Creates a {@link ZipCombiner} for combining ZIP files using the specified {@link OutputMode},
    * {@link ZipEntryFilter}, and destination {@link OutputStream}.
@@ -277,12 +359,38 @@ public class ZipCombiner implements AutoCloseable {
    * @param out the {@link OutputStream} for writing the combined ZIP file
    */
   public ZipCombiner(OutputMode mode, ZipEntryFilter entryFilter, OutputStream out) {
+    this(mode, entryFilter, out, null, 0);
+  }
+
+  /**
+   * Creates a {@link ZipCombiner} for combining ZIP files using the specified {@link OutputMode},
+   * {@link ZipEntryFilter}, and destination {@link OutputStream}, which deflates entries on the
+   * given {@link ExecutorService}.
+   *
+   * <p>The combiner does not shut down the executor. While entries are being compressed, at most
+   * roughly {@code maxInFlightBytes} of uncompressed entry data is buffered; once that limit is
+   * exceeded, adding further entries blocks until the oldest pending entries have been written.
+   *
+   * @param mode the compression preference for the output ZIP file
+   * @param entryFilter the filter to use when adding ZIP files to the combined output
+   * @param out the {@link OutputStream} for writing the combined ZIP file
+   * @param compressionExecutor the executor to deflate entries on, or null to deflate them on the
+   *     calling thread
+   * @param maxInFlightBytes the amount of entry data that may be buffered while being compressed
+   */
+  public ZipCombiner(OutputMode mode, ZipEntryFilter entryFilter, OutputStream out,
+      @Nullable ExecutorService compressionExecutor, long maxInFlightBytes) {
+    checkArgument(compressionExecutor == null || maxInFlightBytes > 0,
+        "The in-flight byte limit must be positive, was %s.", maxInFlightBytes);
     this.mode = mode;
     this.entryFilter = entryFilter;
     this.callback = new FilterCallback();
     this.out = new ZipWriter(new BufferedOutputStream(out), UTF_8);
     this.entries = new HashMap<>();
     this.actions = new HashMap<>();
+    this.compressionExecutor = compressionExecutor;
+    this.maxInFlightBytes = maxInFlightBytes;
+    this.pendingEntries = new ArrayDeque<>();
   }
 
   /**
@@ -327,6 +435,7 @@ public class ZipCombiner implements AutoCloseable {
    * @throws IOException if there is an error writing the prefix file
    */
   public void prependExecutable(InputStream in) throws IOException {
+    flushPendingEntries();
     out.startPrefixFile();
     copyStream(in, out);
     out.endPrefixFile();
@@ -364,9 +473,7 @@ public class ZipCombiner implements AutoCloseable {
     entry.setCompressedSize(0);
     entry.setTime(date != null ? date.getTime() : new Date().getTime());
     entry.setExtra(new ExtraDataList(extra));
-    out.putNextEntry(entry);
-    out.closeEntry();
-    entries.put(filename, entry);
+    writeEntry(entry, new byte[0]);
   }
 
   /**
@@ -492,17 +599,33 @@ public class ZipCombiner implements AutoCloseable {
     if (mode == OutputMode.FORCE_STORED) {
       entry.setMethod(Compression.STORED);
       entry.setCompressedSize(uncompressed.length);
-      writeEntry(entry, new ByteArrayInputStream(uncompressed));
+      writeEntry(entry, uncompressed);
     } else {
-      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
-      copyStream(new DeflaterInputStream(new ByteArrayInputStream(uncompressed), getDeflater()),
-          compressed);
       entry.setMethod(Compression.DEFLATED);
-      entry.setCompressedSize(compressed.size());
-      writeEntry(entry, new ByteArrayInputStream(compressed.toByteArray()));
+      writeDeflatedEntry(entry, uncompressed);
     }
   }
 
+  /**
+   * Writes the specified {@link ZipFileEntry} with the DEFLATE compressed form of the given data,
+   * compressing it on the compression executor if there is one.
+   */
+  private void writeDeflatedEntry(ZipFileEntry entry, final byte[] uncompressed)
+      throws IOException {
+    if (compressionExecutor == null) {
+      byte[] compressed = deflate(uncompressed);
+      entry.setCompressedSize(compressed.length);
+      writeEntry(entry, compressed);
+      return;
+    }
+    Future<byte[]> compressed = compressionExecutor.submit(new Callable<byte[]>() {
+      @Override public byte[] call() throws IOException {
+        return deflate(uncompressed);
+      }
+    });
+    enqueueEntry(new PendingEntry(entry, compressed, uncompressed.length));
+  }
+
   /**
    * Writes an entry from the specified source {@link ZipReader} and {@link ZipFileEntry} using the
    * specified {@link EntryAction}.
@@ -528,14 +651,12 @@ public class ZipCombiner implements AutoCloseable {
 
     InputStream data;
     if (mode == OutputMode.FORCE_DEFLATE && entry.getMethod() != Compression.DEFLATED) {
-      // The output mode is deflate, but the entry compression is not. Create a deflater stream
-      // from the raw file data and deflate to a temporary byte array to determine the deflated
-      // size. Then use this byte array as the input stream for writing the entry.
-      ByteArrayOutputStream tmp = new ByteArrayOutputStream();
-      copyStream(new DeflaterInputStream(zip.getRawInputStream(entry), getDeflater()), tmp);
-      data = new ByteArrayInputStream(tmp.toByteArray());
+      // The output mode is deflate, but the entry compression is not. Deflate the raw file data
+      // to a temporary byte array to determine the deflated size, possibly on another thread,
+      // and write the entry from that byte array.
       outEntry.setMethod(Compression.DEFLATED);
-      outEntry.setCompressedSize(tmp.size());
+      writeDeflatedEntry(outEntry, readFully(zip.getRawInputStream(entry)));
+      return;
     } else if (mode == OutputMode.FORCE_STORED && entry.getMethod() != Compression.STORED) {
       // The output mode is stored, but the entry compression is not; create an inflater stream
       // from the raw file data. 
@@ -551,14 +672,75 @@ public class ZipCombiner implements AutoCloseable {
 
   /**
    * Writes the specified {@link ZipFileEntry} using the data from the given {@link InputStream}.
+   *
+   * <p>If no earlier entries are pending, the data is streamed straight to the output; otherwise
+   * it is buffered so that the entry is written after them.
    */
   private void writeEntry(ZipFileEntry entry, InputStream data) throws IOException {
+    if (!pendingEntries.isEmpty()) {
+      writeEntry(entry, readFully(data));
+      return;
+    }
     out.putNextEntry(entry);
     copyStream(data, out);
     out.closeEntry();
     entries.put(entry.getName(), entry);
   }
 
+  /** Writes the specified {@link ZipFileEntry} using the data from the given byte array. */
+  private void writeEntry(ZipFileEntry entry, byte[] data) throws IOException {
+    if (pendingEntries.isEmpty()) {
+      out.putNextEntry(entry);
+      out.write(data);
+      out.closeEntry();
+      entries.put(entry.getName(), entry);
+    } else {
+      enqueueEntry(new PendingEntry(entry, new ImmediateFuture(data), data.length));
+    }
+  }
+
+  /**
+   * Queues an entry to be written after all previously pending entries, writing out the oldest
+   * pending entries while more than the in-flight byte limit is buffered.
+   */
+  private void enqueueEntry(PendingEntry pending) throws IOException {
+    // Reserve the name right away so that later lookups see the entry as present.
+    entries.put(pending.entry.getName(), pending.entry);
+    pendingEntries.addLast(pending);
+    inFlightBytes += pending.size;
+    while (inFlightBytes > maxInFlightBytes && !pendingEntries.isEmpty()) {
+      writePendingEntry(pendingEntries.removeFirst());
+    }
+  }
+
+  /** Writes all pending entries to the output, waiting for their compression to finish. */
+  private void flushPendingEntries() throws IOException {
+    while (!pendingEntries.isEmpty()) {
+      writePendingEntry(pendingEntries.removeFirst());
+    }
+  }
+
+  /** Waits for the data of a pending entry and writes the entry to the output. */
+  private void writePendingEntry(PendingEntry pending) throws IOException {
+    byte[] data;
+    try {
+      data = pending.data.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while compressing " + pending.entry.getName(), e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Failed to compress " + pending.entry.getName(), e.getCause());
+    }
+    inFlightBytes -= pending.size;
+    pending.entry.setCompressedSize(data.length);
+    out.putNextEntry(pending.entry);
+    out.write(data);
+    out.closeEntry();
+  }
+
   /**
    * Returns true if the combined ZIP file already contains a file of the specified file name.
    *
@@ -592,6 +774,7 @@ public class ZipCombiner implements AutoCloseable {
         writeEntryFromBuffer(e, uncompressed.toByteArray());
       }
     }
+    flushPendingEntries();
     out.finish();
   }
 
@@ -46,6 +46,8 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.jar.JarOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
@@ -800,4 +802,53 @@ public class ZipCombinerTest {
     assertThat(zipInput.getNextEntry()).isNull();
     new ZipTester(out.toByteArray()).validate();
   }
+
+  @Test
+  public void testParallelCompressionPreservesEntryOrder() throws IOException {
+    int fileCount = 100;
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ZipCombiner zipCombiner = new ZipCombiner(OutputMode.FORCE_DEFLATE,
+        new CopyEntryFilter(), out, executor, 64)) {
+      zipCombiner.addZip(sampleZipWithTwoUncompressedEntries());
+      for (int i = 0; i < fileCount; i++) {
+        zipCombiner.addFile("hello" + i, ZipCombiner.DOS_EPOCH, asStream("Hello " + i + "!"));
+        if (i == fileCount / 2) {
+          zipCombiner.addDirectory("dir/", ZipCombiner.DOS_EPOCH);
+          zipCombiner.addZip(sampleZip2());
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+    ZipInputStream zipInput = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+    assertEntry(zipInput, "hello.txt", "Hello World!");
+    assertThat(zipInput.getNextEntry().getName()).isEqualTo("hello2.txt");
+    for (int i = 0; i < fileCount; i++) {
+      assertEntry(zipInput, "hello" + i, "Hello " + i + "!");
+      if (i == fileCount / 2) {
+        assertThat(zipInput.getNextEntry().getName()).isEqualTo("dir/");
+      }
+    }
+    assertThat(zipInput.getNextEntry()).isNull();
+  }
+
+  @Test
+  public void testParallelCompressionMatchesSequentialOutput() throws IOException {
+    ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+    try (ZipCombiner zipCombiner = new ZipCombiner(OutputMode.FORCE_DEFLATE, sequential)) {
+      zipCombiner.addZip(sampleZipWithTwoUncompressedEntries());
+      zipCombiner.addFile("hello3.txt", ZipCombiner.DOS_EPOCH, asStream("Hello World 3!"));
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+    try (ZipCombiner zipCombiner = new ZipCombiner(OutputMode.FORCE_DEFLATE,
+        new CopyEntryFilter(), parallel, executor, Long.MAX_VALUE)) {
+      zipCombiner.addZip(sampleZipWithTwoUncompressedEntries());
+      zipCombiner.addFile("hello3.txt", ZipCombiner.DOS_EPOCH, asStream("Hello World 3!"));
+    } finally {
+      executor.shutdown();
+    }
+    assertThat(parallel.toByteArray()).isEqualTo(sequential.toByteArray());
+  }
 }
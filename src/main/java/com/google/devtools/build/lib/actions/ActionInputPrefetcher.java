@@ -13,6 +13,8 @@
 // limitations under the License.
 package com.google.devtools.build.lib.actions;
 
+import java.io.IOException;
+
 /** Prefetches files to local disk. */
 public interface ActionInputPrefetcher {
   public static final ActionInputPrefetcher NONE =
@@ -24,9 +26,14 @@ public interface ActionInputPrefetcher {
       };
 
   /**
-   * Initiates best-effort prefetching of all given inputs. This should not block.
+   * Makes sure that all given inputs exist on the local disk, blocking until they do.
+   *
+   * <p>For any path not under this prefetcher's control, the call should be a no-op. Outputs of
+   * remotely executed spawns may only exist remotely, so code that reads an action output within
+   * Blaze, rather than in a spawn, should call this first.
    *
-   * <p>For any path not under this prefetcher's control, the call should be a no-op.
+   * @throws IOException if one of the inputs couldn't be fetched
    */
-  void prefetchFiles(Iterable<? extends ActionInput> input);
+  void prefetchFiles(Iterable<? extends ActionInput> input)
+      throws IOException, InterruptedException;
 }
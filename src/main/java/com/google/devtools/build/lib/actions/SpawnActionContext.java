@@ -24,4 +24,12 @@ public interface SpawnActionContext extends ActionContext {
   /** Executes the given spawn and returns metadata about the execution. */
   List<SpawnResult> exec(Spawn spawn, ActionExecutionContext actionExecutionContext)
       throws ExecException, InterruptedException;
+
+  /**
+   * Returns whether executing the given spawn may read its runfiles from the local runfiles tree,
+   * so that the tree has to be created before the spawn runs.
+   */
+  default boolean usesLocalRunfilesTree(Spawn spawn) {
+    return true;
+  }
 }
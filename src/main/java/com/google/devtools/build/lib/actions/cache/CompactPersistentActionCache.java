@@ -15,6 +15,8 @@ package com.google.devtools.build.lib.actions.cache;
 
 import static java.nio.charset.StandardCharsets.ISO_8859_1;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ascii;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.devtools.build.lib.actions.cache.Protos.ActionCacheStatistics;
@@ -23,6 +25,7 @@ import com.google.devtools.build.lib.clock.Clock;
 import com.google.devtools.build.lib.concurrent.ThreadSafety.ConditionallyThreadSafe;
 import com.google.devtools.build.lib.profiler.AutoProfiler;
 import com.google.devtools.build.lib.util.CompactStringIndexer;
+import com.google.devtools.build.lib.util.Fingerprint;
 import com.google.devtools.build.lib.util.PersistentMap;
 import com.google.devtools.build.lib.util.StringIndexer;
 import com.google.devtools.build.lib.util.VarInt;
@@ -68,6 +71,10 @@ public class CompactPersistentActionCache implements ActionCache {
 
   private static final int VERSION = 12;
 
+  // The action keys and metadata digests in the cache are fingerprints, so the cache files of each
+  // fingerprint function are kept apart, and switching functions starts with an empty cache.
+  private static final String FILE_SUFFIX = fileSuffix(Fingerprint.getDefaultAlgorithm());
+
   private static final Logger logger =
       Logger.getLogger(CompactPersistentActionCache.class.getName());
 
@@ -164,7 +171,7 @@ public class CompactPersistentActionCache implements ActionCache {
   public CompactPersistentActionCache(Path cacheRoot, Clock clock) throws IOException {
     Path cacheFile = cacheFile(cacheRoot);
     Path journalFile = journalFile(cacheRoot);
-    Path indexFile = cacheRoot.getChild("filename_index_v" + VERSION + ".blaze");
+    Path indexFile = cacheRoot.getChild("filename_index_" + FILE_SUFFIX + ".blaze");
     // we can now use normal hash map as backing map, since dependency checker
     // will manually purge records from the action cache.
     Map<Integer, byte[]> backingMap = new HashMap<>();
@@ -208,11 +215,11 @@ public class CompactPersistentActionCache implements ActionCache {
    */
   private static void renameCorruptedFiles(Path cacheRoot) {
     try {
-      for (Path path : UnixGlob.forPath(cacheRoot).addPattern("action_*_v" + VERSION + ".*")
+      for (Path path : UnixGlob.forPath(cacheRoot).addPattern("action_*_" + FILE_SUFFIX + ".*")
           .glob()) {
         path.renameTo(path.getParentDirectory().getChild(path.getBaseName() + ".bad"));
       }
-      for (Path path : UnixGlob.forPath(cacheRoot).addPattern("filename_*_v" + VERSION + ".*")
+      for (Path path : UnixGlob.forPath(cacheRoot).addPattern("filename_*_" + FILE_SUFFIX + ".*")
           .glob()) {
         path.renameTo(path.getParentDirectory().getChild(path.getBaseName() + ".bad"));
       }
@@ -245,12 +252,23 @@ public class CompactPersistentActionCache implements ActionCache {
     }
   }
 
+  /**
+   * Returns the suffix of the names of the cache files. The cache files of the default fingerprint
+   * function keep the names they had before other functions were supported.
+   */
+  @VisibleForTesting
+  static String fileSuffix(Fingerprint.Algorithm fingerprintAlgorithm) {
+    return fingerprintAlgorithm == Fingerprint.Algorithm.MD5
+        ? "v" + VERSION
+        : "v" + VERSION + "_" + Ascii.toLowerCase(fingerprintAlgorithm.name());
+  }
+
   public static Path cacheFile(Path cacheRoot) {
-    return cacheRoot.getChild("action_cache_v" + VERSION + ".blaze");
+    return cacheRoot.getChild("action_cache_" + FILE_SUFFIX + ".blaze");
   }
 
   public static Path journalFile(Path cacheRoot) {
-    return cacheRoot.getChild("action_journal_v" + VERSION + ".blaze");
+    return cacheRoot.getChild("action_journal_" + FILE_SUFFIX + ".blaze");
   }
 
   @Override
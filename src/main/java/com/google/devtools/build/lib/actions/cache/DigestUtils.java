@@ -26,11 +26,19 @@ import com.google.devtools.build.lib.util.Fingerprint;
 import com.google.devtools.build.lib.util.LoggingUtil;
 import com.google.devtools.build.lib.util.VarInt;
 import com.google.devtools.build.lib.vfs.FileStatus;
+import com.google.devtools.build.lib.vfs.FileSystem.HashFunction;
 import com.google.devtools.build.lib.vfs.Path;
 import com.google.devtools.build.lib.vfs.PathFragment;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
@@ -92,10 +100,14 @@ public class DigestUtils {
      * @throws IOException if reading the file status data fails
      */
     public CacheKey(Path path, FileStatus status) throws IOException {
-      this.path = path.asFragment();
-      this.nodeId = status.getNodeId();
-      this.modifiedTime = status.getLastModifiedTime();
-      this.size = status.getSize();
+      this(path.asFragment(), status.getNodeId(), status.getLastModifiedTime(), status.getSize());
+    }
+
+    private CacheKey(PathFragment path, long nodeId, long modifiedTime, long size) {
+      this.path = path;
+      this.nodeId = nodeId;
+      this.modifiedTime = modifiedTime;
+      this.size = size;
     }
 
     @Override
@@ -135,6 +147,9 @@ public class DigestUtils {
    */
   private static volatile Cache<CacheKey, byte[]> globalCache = null;
 
+  /** Identifies the format of the files written by {@link #saveCache}. */
+  private static final int CACHE_FILE_MAGIC = 0x44474332; // "DGC2"
+
   /** Private constructor to prevent instantiation of utility class. */
   private DigestUtils() {}
 
@@ -181,6 +196,110 @@ public class DigestUtils {
     }
   }
 
+  /**
+   * Writes the contents of the cache to the given file, so that a later server can restore them
+   * with {@link #loadCache} instead of recomputing the digests of all files it has already seen.
+   *
+   * <p>The entries are sorted by path, and each path is written as the length of the prefix it
+   * shares with the previous one followed by the rest, which keeps the file small for the deep and
+   * similar paths of an output tree.
+   *
+   * <p>The file starts with the name of the digest function of the file system and the length of
+   * its digests, so that a server using a different function doesn't load the entries.
+   *
+   * @return the number of entries written, or 0 if the cache is disabled
+   */
+  public static long saveCache(Path file) throws IOException {
+    Cache<CacheKey, byte[]> cache = globalCache;
+    if (cache == null) {
+      return 0;
+    }
+    List<Map.Entry<CacheKey, byte[]>> entries = new ArrayList<>(cache.asMap().entrySet());
+    entries.sort(Comparator.comparing((entry) -> entry.getKey().path.getPathString()));
+    Path temp = file.getParentDirectory().getChild(file.getBaseName() + ".tmp");
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(temp.getOutputStream()))) {
+      HashFunction digestFunction = file.getFileSystem().getDigestFunction();
+      out.writeInt(CACHE_FILE_MAGIC);
+      out.writeUTF(digestFunction.name());
+      out.writeByte(digestFunction.getHash().bits() / 8);
+      out.writeInt(entries.size());
+      String previous = "";
+      for (Map.Entry<CacheKey, byte[]> entry : entries) {
+        CacheKey key = entry.getKey();
+        String path = key.path.getPathString();
+        int shared = 0;
+        int maxShared = Math.min(previous.length(), path.length());
+        while (shared < maxShared && previous.charAt(shared) == path.charAt(shared)) {
+          shared++;
+        }
+        out.writeShort(shared);
+        out.writeUTF(path.substring(shared));
+        out.writeLong(key.nodeId);
+        out.writeLong(key.modifiedTime);
+        out.writeLong(key.size);
+        out.writeByte(entry.getValue().length);
+        out.write(entry.getValue());
+        previous = path;
+      }
+    }
+    temp.renameTo(file);
+    return entries.size();
+  }
+
+  /**
+   * Adds the entries saved by {@link #saveCache} to the cache. Does nothing if the cache is
+   * disabled or the file does not exist, or if it was written for a different digest function than
+   * the one of the file system.
+   *
+   * <p>The entries are only as trustworthy as the file metadata they are keyed by, just like the
+   * entries computed by this server.
+   *
+   * @return the number of entries read
+   * @throws IOException if the file can't be read or is corrupt; entries read up to that point are
+   *     kept
+   */
+  public static long loadCache(Path file) throws IOException {
+    Cache<CacheKey, byte[]> cache = globalCache;
+    if (cache == null || !file.exists()) {
+      return 0;
+    }
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(file.getInputStream()))) {
+      if (in.readInt() != CACHE_FILE_MAGIC) {
+        throw new IOException("Unknown format of file digest cache " + file);
+      }
+      HashFunction digestFunction = file.getFileSystem().getDigestFunction();
+      String digestFunctionName = in.readUTF();
+      int digestLength = in.readUnsignedByte();
+      if (!digestFunctionName.equals(digestFunction.name())
+          || digestLength != digestFunction.getHash().bits() / 8) {
+        // Written before the digest function was changed; the cache will be overwritten on save.
+        return 0;
+      }
+      int count = in.readInt();
+      String previous = "";
+      for (int i = 0; i < count; i++) {
+        int shared = in.readUnsignedShort();
+        if (shared > previous.length()) {
+          throw new IOException("Corrupt file digest cache " + file);
+        }
+        String path = previous.substring(0, shared) + in.readUTF();
+        long nodeId = in.readLong();
+        long modifiedTime = in.readLong();
+        long size = in.readLong();
+        byte[] digest = new byte[in.readUnsignedByte()];
+        if (digest.length != digestLength) {
+          throw new IOException("Corrupt file digest cache " + file);
+        }
+        in.readFully(digest);
+        cache.put(new CacheKey(PathFragment.create(path), nodeId, modifiedTime, size), digest);
+        previous = path;
+      }
+      return count;
+    }
+  }
+
   /**
    * Obtains cache statistics.
    *
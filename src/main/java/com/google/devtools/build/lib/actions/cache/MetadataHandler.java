@@ -58,6 +58,15 @@ public interface MetadataHandler {
    */
   void injectDigest(ActionInput output, FileStatus statNoFollow, byte[] digest);
 
+  /**
+   * Injects the metadata of an output that was not written to the local file system, because its
+   * contents are available remotely. Unlike {@link #injectDigest}, this doesn't access the file
+   * system; whoever calls this must make sure the file is created before it's read locally.
+   *
+   * <p>Must only be called after a call to {@link #discardOutputMetadata}.
+   */
+  void injectRemoteFile(Artifact output, byte[] digest, long size);
+
   /**
    * Marks an artifact as intentionally omitted. Acknowledges that this Artifact could have existed,
    * but was intentionally not saved, most likely as an optimization.
@@ -24,8 +24,11 @@ import com.google.devtools.build.lib.vfs.Path;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.concurrent.GuardedBy;
 
 /**
  * Persistent version of the CanonicalStringIndexer.
@@ -34,9 +37,10 @@ import java.util.concurrent.ConcurrentMap;
  * canonicalization mapping. The other direction is handled purely in memory
  * and reconstituted at load-time.
  *
- * <p>Thread-safety is ensured by locking on all mutating operations from the
- * superclass. Read-only operations are not locked, but rather backed by
- * ConcurrentMaps.
+ * <p>Indices are created without locking by the superclass, in the concurrent
+ * map that backs the PersistentMap. New strings are then queued, and recorded
+ * in the journal by whichever thread holds the journal lock, so that no thread
+ * waits for another one to write the journal to disk.
  */
 @ConditionallyThreadSafe // condition: each instance must instantiated with
                          // different dataFile.
@@ -50,12 +54,19 @@ final class PersistentStringIndexer extends CanonicalStringIndexer {
     private static final int VERSION = 0x01;
     private static final long SAVE_INTERVAL_NS = 3L * 1000 * 1000 * 1000;
 
+    private final ConcurrentMap<String, Integer> backingMap;
     private final Clock clock;
     private long nextUpdate;
 
     public PersistentIndexMap(Path mapFile, Path journalFile, Clock clock) throws IOException {
-      super(VERSION, PersistentStringIndexer.<String, Integer>newConcurrentMap(INITIAL_ENTRIES),
-            mapFile, journalFile);
+      this(PersistentStringIndexer.<String, Integer>newConcurrentMap(INITIAL_ENTRIES),
+          mapFile, journalFile, clock);
+    }
+
+    private PersistentIndexMap(ConcurrentMap<String, Integer> backingMap, Path mapFile,
+        Path journalFile, Clock clock) throws IOException {
+      super(VERSION, backingMap, mapFile, journalFile);
+      this.backingMap = backingMap;
       this.clock = clock;
       nextUpdate = clock.nanoTime();
       load(/* failFast= */ true);
@@ -110,6 +121,10 @@ final class PersistentStringIndexer extends CanonicalStringIndexer {
   }
 
   private final PersistentIndexMap persistentIndexMap;
+  /** The strings that got an index, but aren't recorded in the journal yet. */
+  private final Queue<String> newStrings = new ConcurrentLinkedQueue<>();
+  /** Guards the journal, and so saving and flushing the persistent map. */
+  private final ReentrantLock journalLock = new ReentrantLock();
   private static final int INITIAL_ENTRIES = 10000;
 
   /**
@@ -119,33 +134,77 @@ final class PersistentStringIndexer extends CanonicalStringIndexer {
                                                             Clock clock) throws IOException {
     PersistentIndexMap persistentIndexMap = new PersistentIndexMap(dataPath,
         FileSystemUtils.replaceExtension(dataPath, ".journal"), clock);
-    Map<Integer, String> reverseMapping = newConcurrentMap(INITIAL_ENTRIES);
-    for (Map.Entry<String, Integer> entry : persistentIndexMap.entrySet()) {
-      if (reverseMapping.put(entry.getValue(), entry.getKey()) != null) {
-        throw new IOException("Corrupted filename index has duplicate entry: " + entry.getKey());
+    try {
+      return new PersistentStringIndexer(persistentIndexMap);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Corrupted filename index has " + e.getMessage(), e);
+    }
+  }
+
+  private PersistentStringIndexer(PersistentIndexMap persistentIndexMap) {
+    super(persistentIndexMap.backingMap);
+    this.persistentIndexMap = persistentIndexMap;
+  }
+
+  @Override
+  protected void indexCreated(String s, int index) {
+    newStrings.add(s);
+    // If another thread holds the lock, it records our string, or we try again once it is done.
+    while (!newStrings.isEmpty() && journalLock.tryLock()) {
+      try {
+        recordNewStrings();
+      } finally {
+        journalLock.unlock();
       }
     }
-    return new PersistentStringIndexer(persistentIndexMap, reverseMapping);
   }
 
-  private PersistentStringIndexer(PersistentIndexMap stringToInt,
-                                  Map<Integer, String> intToString) {
-    super(stringToInt, intToString);
-    this.persistentIndexMap = stringToInt;
+  /** Records the queued new strings in the journal, which may write it to disk. */
+  @GuardedBy("journalLock")
+  private void recordNewStrings() {
+    for (String s = newStrings.poll(); s != null; s = newStrings.poll()) {
+      // The mapping is already in the backing map, so this only records it in the journal.
+      persistentIndexMap.put(s, getIndex(s));
+    }
+  }
+
+  @Override
+  public void clear() {
+    journalLock.lock();
+    try {
+      newStrings.clear();
+      super.clear();
+      // Also clears the journal, and saves the empty map.
+      persistentIndexMap.clear();
+    } finally {
+      journalLock.unlock();
+    }
   }
 
   /**
    * Saves index data to the file.
    */
-  synchronized long save() throws IOException {
-    return persistentIndexMap.save();
+  long save() throws IOException {
+    journalLock.lock();
+    try {
+      recordNewStrings();
+      return persistentIndexMap.save();
+    } finally {
+      journalLock.unlock();
+    }
   }
 
   /**
    * Flushes the journal.
    */
-  synchronized void flush() {
-    persistentIndexMap.flush();
+  void flush() {
+    journalLock.lock();
+    try {
+      recordNewStrings();
+      persistentIndexMap.flush();
+    } finally {
+      journalLock.unlock();
+    }
   }
 
   private static <K, V> ConcurrentMap<K, V> newConcurrentMap(int expectedCapacity) {
@@ -121,7 +121,13 @@ public final class SourceManifestAction extends AbstractFileWriteAction {
 
   @Override
   public DeterministicWriter newDeterministicWriter(ActionExecutionContext ctx)
-      throws IOException {
+      throws IOException, InterruptedException {
+    // The pruning manifests are read below, and may have been left in a remote cache.
+    List<Artifact> pruningManifests = new ArrayList<>();
+    for (Runfiles.PruningManifest pruningManifest : runfiles.getPruningManifests()) {
+      pruningManifests.add(pruningManifest.getManifestFile());
+    }
+    ctx.getActionInputPrefetcher().prefetchFiles(pruningManifests);
     final Map<PathFragment, Artifact> runfilesInputs =
         runfiles.getRunfilesInputs(ctx.getEventHandler(), getOwner().getLocation());
     return new DeterministicWriter() {
@@ -35,9 +35,11 @@ public final class ExecutableSymlinkAction extends SymlinkAction {
 
   @Override
   public ActionResult execute(ActionExecutionContext actionExecutionContext)
-      throws ActionExecutionException {
+      throws ActionExecutionException, InterruptedException {
     Path inputPath = getPrimaryInput().getPath();
     try {
+      // The input may have been left in a remote cache.
+      actionExecutionContext.getActionInputPrefetcher().prefetchFiles(getInputs());
       // Validate that input path is a file with the executable bit is set.
       if (!inputPath.isFile()) {
         throw new ActionExecutionException(
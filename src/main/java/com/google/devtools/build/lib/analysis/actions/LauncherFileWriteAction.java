@@ -68,12 +68,14 @@ public final class LauncherFileWriteAction extends AbstractFileWriteAction {
   }
 
   @Override
-  public DeterministicWriter newDeterministicWriter(ActionExecutionContext ctx) {
+  public DeterministicWriter newDeterministicWriter(ActionExecutionContext ctx)
+      throws IOException, InterruptedException {
     // TODO(laszlocsomor): make this code check for the execution platform, not the host platform,
     // once Bazel supports distinguishing between the two.
     // OS.getCurrent() returns the host platform, not the execution platform, which is fine in a
     // single-machine execution environment, but problematic with remote execution.
     Preconditions.checkState(OS.getCurrent() == OS.WINDOWS);
+    ctx.getActionInputPrefetcher().prefetchFiles(getInputs());
     return out -> {
       InputStream in = this.launcher.getPath().getInputStream();
       ByteStreams.copy(in, out);
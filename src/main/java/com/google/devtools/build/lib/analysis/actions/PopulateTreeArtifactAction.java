@@ -161,6 +161,10 @@ public final class PopulateTreeArtifactAction extends AbstractAction {
 
     // Create a spawn to unzip the archive file into the output TreeArtifact.
     try {
+      // The manifest is read here, and may have been left in a remote cache.
+      actionExecutionContext
+          .getActionInputPrefetcher()
+          .prefetchFiles(ImmutableList.of(archiveManifest));
       spawn = createSpawn();
     } catch (IOException e) {
       throw new ActionExecutionException(e, this, false);
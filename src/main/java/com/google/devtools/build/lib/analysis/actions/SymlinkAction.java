@@ -18,6 +18,8 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.devtools.build.lib.actions.AbstractAction;
+import com.google.devtools.build.lib.actions.ActionInput;
+import com.google.devtools.build.lib.actions.ActionInputHelper;
 import com.google.devtools.build.lib.actions.ActionExecutionContext;
 import com.google.devtools.build.lib.actions.ActionExecutionException;
 import com.google.devtools.build.lib.actions.ActionKeyContext;
@@ -110,14 +112,20 @@ public class SymlinkAction extends AbstractAction {
 
   @Override
   public ActionResult execute(ActionExecutionContext actionExecutionContext)
-      throws ActionExecutionException {
+      throws ActionExecutionException, InterruptedException {
     Path srcPath;
+    ActionInput target;
     if (inputPath == null) {
       srcPath = getPrimaryInput().getPath();
+      target = getPrimaryInput();
     } else {
       srcPath = actionExecutionContext.getExecRoot().getRelative(inputPath);
+      target = ActionInputHelper.fromPath(inputPath);
     }
     try {
+      // The target may be the output of another action, left in a remote cache, and the symlink
+      // must not dangle.
+      actionExecutionContext.getActionInputPrefetcher().prefetchFiles(ImmutableList.of(target));
       getOutputPath().createSymbolicLink(srcPath);
     } catch (IOException e) {
       throw new ActionExecutionException("failed to create symbolic link '"
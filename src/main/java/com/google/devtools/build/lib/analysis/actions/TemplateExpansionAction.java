@@ -433,7 +433,10 @@ public final class TemplateExpansionAction extends AbstractFileWriteAction {
   }
 
   @Override
-  public DeterministicWriter newDeterministicWriter(ActionExecutionContext ctx) throws IOException {
+  public DeterministicWriter newDeterministicWriter(ActionExecutionContext ctx)
+      throws IOException, InterruptedException {
+    // The template may be the output of another action, left in a remote cache.
+    ctx.getActionInputPrefetcher().prefetchFiles(getInputs());
     return new ByteStringDeterministicWriter(
         ByteString.copyFrom(getFileContents().getBytes(Template.DEFAULT_CHARSET)));
   }
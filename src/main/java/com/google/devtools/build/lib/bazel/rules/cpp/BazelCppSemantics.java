@@ -25,7 +25,7 @@ import com.google.devtools.build.lib.rules.cpp.CppCompileActionBuilder;
 import com.google.devtools.build.lib.rules.cpp.CppConfiguration;
 import com.google.devtools.build.lib.rules.cpp.CppConfiguration.HeadersCheckingMode;
 import com.google.devtools.build.lib.rules.cpp.IncludeProcessing;
-import com.google.devtools.build.lib.rules.cpp.NoProcessing;
+import com.google.devtools.build.lib.rules.cpp.IncludeScanning;
 import com.google.devtools.build.lib.skyframe.serialization.ObjectCodec;
 import com.google.devtools.build.lib.skyframe.serialization.SingletonCodec;
 
@@ -39,7 +39,7 @@ public class BazelCppSemantics implements AspectLegalCppSemantics {
   private final IncludeProcessing includeProcessing;
 
   private BazelCppSemantics() {
-    this.includeProcessing = new NoProcessing();
+    this.includeProcessing = new IncludeScanning();
   }
 
   @Override
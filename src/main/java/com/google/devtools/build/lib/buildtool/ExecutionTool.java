@@ -202,8 +202,11 @@ public class ExecutionTool {
     }
     builder.addActionContextProvider(
         new FilesetActionContextImpl.Provider(env.getReporter(), env.getWorkspaceName()));
-    builder.addActionContext(new SymlinkTreeStrategy(
-                env.getOutputService(), env.getBlazeWorkspace().getBinTools()));
+    builder.addActionContext(
+        new SymlinkTreeStrategy(
+            env.getOutputService(),
+            env.getBlazeWorkspace().getBinTools(),
+            request.getOptions(ExecutionOptions.class).incrementalRunfilesTrees));
     // TODO(philwo) - the ExecutionTool should not add arbitrary dependencies on its own, instead
     // these dependencies should be added to the ActionContextConsumer of the module that actually
     // depends on them.
@@ -84,7 +84,7 @@ public class CompactHashSet<E> extends AbstractSet<E> implements Serializable {
    * MurmurHash3 was written by Austin Appleby, and is placed in the public domain. The author
    * hereby disclaims copyright to this source code.
    */
-  private static int smear(int hashCode) {
+  static int smear(int hashCode) {
     return C2 * Integer.rotateLeft(hashCode * C1, 15);
   }
 
@@ -284,11 +284,24 @@ public class CompactHashSet<E> extends AbstractSet<E> implements Serializable {
     return table.length - 1;
   }
 
+  /**
+   * Returns the smeared hash of {@code object}. Subclasses may override this, together with
+   * {@link #equal}, to compare the elements differently.
+   */
+  int hash(@Nullable Object object) {
+    return smearedHash(object);
+  }
+
+  /** Returns whether {@code object} is the same element as {@code element} of this set. */
+  boolean equal(@Nullable Object object, @Nullable Object element) {
+    return Objects.equals(object, element);
+  }
+
   @Override
   public boolean add(@Nullable E object) {
     long[] entries = this.entries;
     Object[] elements = this.elements;
-    int hash = smearedHash(object);
+    int hash = hash(object);
     int tableIndex = hash & hashTableMask();
     int newEntryIndex = this.size; // current size, and pointer to the entry to be appended
     int next = table[tableIndex];
@@ -300,7 +313,7 @@ public class CompactHashSet<E> extends AbstractSet<E> implements Serializable {
       do {
         last = next;
         entry = entries[next];
-        if (getHash(entry) == hash && Objects.equals(object, elements[next])) {
+        if (getHash(entry) == hash && equal(object, elements[next])) {
           return false;
         }
         next = getNext(entry);
@@ -321,6 +334,32 @@ public class CompactHashSet<E> extends AbstractSet<E> implements Serializable {
     return true;
   }
 
+  /**
+   * Adds all of the elements of {@code collection}, after making room for all of them at once
+   * rather than growing the storage as they are added one by one.
+   */
+  @Override
+  public boolean addAll(Collection<? extends E> collection) {
+    ensureCapacity(size + collection.size());
+    return super.addAll(collection);
+  }
+
+  /**
+   * Resizes the entries storage and the hashtable, if necessary, so that {@code minCapacity}
+   * elements fit without further growth.
+   */
+  private void ensureCapacity(int minCapacity) {
+    if (minCapacity > entries.length) {
+      resizeEntries(minCapacity);
+    }
+    if (minCapacity > threshold) {
+      int buckets = closedTableSize(minCapacity, loadFactor);
+      if (buckets > table.length) {
+        resizeTable(buckets);
+      }
+    }
+  }
+
   /**
    * Creates a fresh entry with the specified object at the specified position in the entry
    * arrays.
@@ -388,11 +427,11 @@ public class CompactHashSet<E> extends AbstractSet<E> implements Serializable {
 
   @Override
   public boolean contains(@Nullable Object object) {
-    int hash = smearedHash(object);
+    int hash = hash(object);
     int next = table[hash & hashTableMask()];
     while (next != UNSET) {
       long entry = entries[next];
-      if (getHash(entry) == hash && Objects.equals(object, elements[next])) {
+      if (getHash(entry) == hash && equal(object, elements[next])) {
         return true;
       }
       next = getNext(entry);
@@ -402,7 +441,7 @@ public class CompactHashSet<E> extends AbstractSet<E> implements Serializable {
 
   @Override
   public boolean remove(@Nullable Object object) {
-    return remove(object, smearedHash(object));
+    return remove(object, hash(object));
   }
 
   private boolean remove(Object object, int hash) {
@@ -413,7 +452,7 @@ public class CompactHashSet<E> extends AbstractSet<E> implements Serializable {
     }
     int last = UNSET;
     do {
-      if (getHash(entries[next]) == hash && Objects.equals(object, elements[next])) {
+      if (getHash(entries[next]) == hash && equal(object, elements[next])) {
         if (last == UNSET) {
           // we need to update the root link from table[]
           table[tableIndex] = getNext(entries[next]);
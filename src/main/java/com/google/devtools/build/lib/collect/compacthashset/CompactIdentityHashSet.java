@@ -0,0 +1,87 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.collect.compacthashset;
+
+import java.util.Collection;
+import java.util.Collections;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link CompactHashSet} that compares its elements by identity, like {@link
+ * java.util.IdentityHashMap}, rather than with {@link Object#equals}.
+ *
+ * <p>It is meant for elements that are compared by identity anyway, such as arrays and objects that
+ * don't override {@link Object#equals}, or that are known to be interned. It never calls the
+ * {@link Object#hashCode} and {@link Object#equals} methods of its elements, whose call sites are
+ * megamorphic in a set used for all kinds of elements.
+ *
+ * <p><b>This class is not a general-purpose {@code Set} implementation!</b> Like {@link
+ * java.util.IdentityHashMap}, it violates the general {@code Set} contract for elements that
+ * override {@link Object#equals}.
+ */
+public class CompactIdentityHashSet<E> extends CompactHashSet<E> {
+
+  /** Creates an empty {@code CompactIdentityHashSet} instance. */
+  public static <E> CompactIdentityHashSet<E> create() {
+    return new CompactIdentityHashSet<>();
+  }
+
+  /**
+   * Creates a <i>mutable</i> {@code CompactIdentityHashSet} instance containing the elements of
+   * the given collection in unspecified order.
+   */
+  public static <E> CompactIdentityHashSet<E> create(Collection<? extends E> collection) {
+    CompactIdentityHashSet<E> set = createWithExpectedSize(collection.size());
+    set.addAll(collection);
+    return set;
+  }
+
+  /**
+   * Creates a <i>mutable</i> {@code CompactIdentityHashSet} instance containing the given
+   * elements in unspecified order.
+   */
+  @SafeVarargs
+  public static <E> CompactIdentityHashSet<E> create(E... elements) {
+    CompactIdentityHashSet<E> set = createWithExpectedSize(elements.length);
+    Collections.addAll(set, elements);
+    return set;
+  }
+
+  /**
+   * Creates a {@code CompactIdentityHashSet} instance, with a high enough "initial capacity" that
+   * it <i>should</i> hold {@code expectedSize} elements without growth.
+   *
+   * @throws IllegalArgumentException if {@code expectedSize} is negative
+   */
+  public static <E> CompactIdentityHashSet<E> createWithExpectedSize(int expectedSize) {
+    return new CompactIdentityHashSet<>(expectedSize);
+  }
+
+  CompactIdentityHashSet() {}
+
+  CompactIdentityHashSet(int expectedSize) {
+    super(expectedSize);
+  }
+
+  @Override
+  int hash(@Nullable Object object) {
+    return smear(System.identityHashCode(object));
+  }
+
+  @Override
+  boolean equal(@Nullable Object object, @Nullable Object element) {
+    return object == element;
+  }
+}
@@ -19,6 +19,7 @@ import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.devtools.build.lib.collect.compacthashset.CompactHashSet;
+import com.google.devtools.build.lib.collect.compacthashset.CompactIdentityHashSet;
 import java.util.AbstractCollection;
 import java.util.Arrays;
 import java.util.Collection;
@@ -323,7 +324,8 @@ public final class NestedSet<E> implements Iterable<E> {
     }
     Object[] children = (Object[]) this.children;
     CompactHashSet<E> members = CompactHashSet.createWithExpectedSize(128);
-    CompactHashSet<Object> sets = CompactHashSet.createWithExpectedSize(128);
+    // The arrays of children are compared by identity anyway.
+    CompactIdentityHashSet<Object> sets = CompactIdentityHashSet.createWithExpectedSize(128);
     sets.add(children);
     memo = new byte[Math.min((children.length + 7) / 8, 8)];
     int pos = walk(sets, members, children, 0);
@@ -341,7 +343,7 @@ public final class NestedSet<E> implements Iterable<E> {
    *
    * Returns the final value of {@code pos}.
    */
-  private int walk(CompactHashSet<Object> sets, CompactHashSet<E> members,
+  private int walk(CompactIdentityHashSet<Object> sets, CompactHashSet<E> members,
                    Object[] children, int pos) {
     for (Object child : children) {
       if ((pos >> 3) >= memo.length) {
@@ -20,6 +20,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.MapMaker;
 import com.google.devtools.build.lib.collect.compacthashset.CompactHashSet;
+import com.google.devtools.build.lib.collect.compacthashset.CompactIdentityHashSet;
 import com.google.errorprone.annotations.DoNotCall;
 import java.util.concurrent.ConcurrentMap;
 
@@ -35,7 +36,9 @@ public final class NestedSetBuilder<E> {
 
   private final Order order;
   private final CompactHashSet<E> items = CompactHashSet.create();
-  private final CompactHashSet<NestedSet<? extends E>> transitiveSets = CompactHashSet.create();
+  // NestedSet doesn't override equals, so the transitive sets are compared by identity anyway.
+  private final CompactIdentityHashSet<NestedSet<? extends E>> transitiveSets =
+      CompactIdentityHashSet.create();
 
   public NestedSetBuilder(Order order) {
     this.order = order;
@@ -15,7 +15,6 @@ package com.google.devtools.build.lib.collect.nestedset;
 
 import com.google.common.base.Preconditions;
 import com.google.common.hash.Hashing;
-import com.google.common.hash.HashingOutputStream;
 import com.google.devtools.build.lib.skyframe.serialization.EnumCodec;
 import com.google.devtools.build.lib.skyframe.serialization.InjectingObjectCodec;
 import com.google.devtools.build.lib.skyframe.serialization.InjectingObjectCodecAdapter;
@@ -66,10 +65,13 @@ public class NestedSetCodec<T> implements ObjectCodec<NestedSet<T>> {
     // Topo sort the nested set to ensure digests are available for children at time of writing
     Collection<Object> topoSortedChildren = getTopologicallySortedChildren(obj);
     Map<Object, byte[]> childToDigest = new IdentityHashMap<>();
+    // The nested sets are serialized one after the other through the same buffer.
+    ChildOutputStream childOutputStream = new ChildOutputStream();
+    CodedOutputStream childCodedOut = CodedOutputStream.newInstance(childOutputStream);
     codedOut.writeInt32NoTag(topoSortedChildren.size());
     orderCodec.serialize(obj.getOrder(), codedOut);
     for (Object children : topoSortedChildren) {
-      serializeOneNestedSet(children, codedOut, childToDigest);
+      serializeOneNestedSet(children, codedOut, childOutputStream, childCodedOut, childToDigest);
     }
   }
 
@@ -92,13 +94,14 @@ public class NestedSetCodec<T> implements ObjectCodec<NestedSet<T>> {
   }
 
   private void serializeOneNestedSet(
-      Object children, CodedOutputStream codedOut, Map<Object, byte[]> childToDigest)
+      Object children,
+      CodedOutputStream codedOut,
+      ChildOutputStream childOutputStream,
+      CodedOutputStream childCodedOut,
+      Map<Object, byte[]> childToDigest)
       throws IOException, SerializationException {
     // Serialize nested set into an inner byte array so we can take its digest
-    ByteArrayOutputStream childOutputStream = new ByteArrayOutputStream();
-    HashingOutputStream hashingOutputStream =
-        new HashingOutputStream(Hashing.md5(), childOutputStream);
-    CodedOutputStream childCodedOut = CodedOutputStream.newInstance(hashingOutputStream);
+    childOutputStream.reset();
     if (children instanceof Object[]) {
       serializeMultiItemChildArray((Object[]) children, childToDigest, childCodedOut);
     } else if (children != NestedSet.EMPTY_CHILDREN) {
@@ -108,10 +111,9 @@ public class NestedSetCodec<T> implements ObjectCodec<NestedSet<T>> {
       childCodedOut.writeInt32NoTag(0);
     }
     childCodedOut.flush();
-    byte[] digest = hashingOutputStream.hash().asBytes();
+    byte[] digest = childOutputStream.md5();
     codedOut.writeByteArrayNoTag(digest);
-    byte[] childBytes = childOutputStream.toByteArray();
-    codedOut.writeByteArrayNoTag(childBytes);
+    childOutputStream.writeTo(codedOut);
     childToDigest.put(children, digest);
   }
 
@@ -177,6 +179,19 @@ public class NestedSetCodec<T> implements ObjectCodec<NestedSet<T>> {
     return children;
   }
 
+  /** A reusable buffer for serialized nested sets, hashed and written out without a copy. */
+  private static final class ChildOutputStream extends ByteArrayOutputStream {
+    byte[] md5() {
+      return Hashing.md5().hashBytes(buf, 0, count).asBytes();
+    }
+
+    /** Writes the contents like {@link CodedOutputStream#writeByteArrayNoTag}. */
+    void writeTo(CodedOutputStream codedOut) throws IOException {
+      codedOut.writeUInt32NoTag(count);
+      codedOut.writeRawBytes(buf, 0, count);
+    }
+  }
+
   @SuppressWarnings("unchecked")
   private T cast(Object object) {
     return (T) object;
@@ -31,6 +31,7 @@ import com.google.devtools.build.lib.actions.SpawnActionContext;
 import com.google.devtools.build.lib.actions.SpawnResult;
 import com.google.devtools.build.lib.actions.SpawnResult.Status;
 import com.google.devtools.build.lib.actions.Spawns;
+import com.google.devtools.build.lib.actions.cache.MetadataHandler;
 import com.google.devtools.build.lib.exec.SpawnCache.CacheHandle;
 import com.google.devtools.build.lib.exec.SpawnRunner.ProgressStatus;
 import com.google.devtools.build.lib.exec.SpawnRunner.SpawnExecutionPolicy;
@@ -64,6 +65,11 @@ public abstract class AbstractSpawnStrategy implements SandboxedSpawnActionConte
     return exec(spawn, actionExecutionContext, null);
   }
 
+  @Override
+  public boolean usesLocalRunfilesTree(Spawn spawn) {
+    return spawnRunner.usesLocalRunfilesTree(spawn);
+  }
+
   @Override
   public List<SpawnResult> exec(
       Spawn spawn,
@@ -161,7 +167,7 @@ public abstract class AbstractSpawnStrategy implements SandboxedSpawnActionConte
     }
 
     @Override
-    public void prefetchInputs() throws IOException {
+    public void prefetchInputs() throws IOException, InterruptedException {
       if (Spawns.shouldPrefetchInputsForLocalExecution(spawn)) {
         // TODO(philwo): Benchmark whether using an ExecutionService to do multiple operations in
         // parallel speeds up prefetching of inputs.
@@ -175,6 +181,11 @@ public abstract class AbstractSpawnStrategy implements SandboxedSpawnActionConte
       return actionExecutionContext.getActionInputFileCache();
     }
 
+    @Override
+    public MetadataHandler getMetadataHandler() {
+      return actionExecutionContext.getMetadataHandler();
+    }
+
     @Override
     public ArtifactExpander getArtifactExpander() {
       return actionExecutionContext.getArtifactExpander();
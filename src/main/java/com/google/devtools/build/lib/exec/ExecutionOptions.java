@@ -292,6 +292,20 @@ public class ExecutionOptions extends OptionsBase {
   )
   public long cacheSizeForComputedFileDigests;
 
+  @Option(
+    name = "experimental_persist_computed_file_digests",
+    defaultValue = "false",
+    documentationCategory = OptionDocumentationCategory.UNDOCUMENTED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help =
+        "If true, the digests cached because of --cache_computed_file_digests are saved in the "
+            + "output base after each build and loaded again by a new server, so that the first "
+            + "build after a restart does not have to recompute the digests of unchanged outputs. "
+            + "This is subject to the same correctness caveats as --cache_computed_file_digests, "
+            + "also for changes made while no server was running."
+  )
+  public boolean persistComputedFileDigests;
+
   @Option(
     name = "experimental_enable_critical_path_profiling",
     defaultValue = "true",
@@ -303,4 +317,42 @@ public class ExecutionOptions extends OptionsBase {
             + " aggressive RAM optimizations in some cases."
   )
   public boolean enableCriticalPathProfiling;
+
+  @Option(
+    name = "experimental_cc_include_scanning",
+    defaultValue = "false",
+    documentationCategory = OptionDocumentationCategory.EXECUTION_STRATEGY,
+    effectTags = {OptionEffectTag.EXECUTION},
+    help =
+        "If enabled, C++ compile actions only get the declared headers their sources "
+            + "transitively include as inputs, as found by scanning #include directives before "
+            + "execution. This makes sandboxes and remote execution requests for C++ compilations "
+            + "smaller."
+  )
+  public boolean ccIncludeScanning;
+
+  @Option(
+    name = "experimental_incremental_runfiles_trees",
+    defaultValue = "false",
+    documentationCategory = OptionDocumentationCategory.EXECUTION_STRATEGY,
+    effectTags = {OptionEffectTag.EXECUTION},
+    help =
+        "If enabled, an existing runfiles tree is updated by only changing the symlinks that "
+            + "differ between its MANIFEST and the new runfiles manifest, instead of checking every "
+            + "symlink in the tree. Changes made to the tree by hand are not undone."
+  )
+  public boolean incrementalRunfilesTrees;
+
+  @Option(
+    name = "experimental_skip_test_runfiles_trees",
+    defaultValue = "false",
+    documentationCategory = OptionDocumentationCategory.EXECUTION_STRATEGY,
+    effectTags = {OptionEffectTag.EXECUTION},
+    help =
+        "If enabled, the runfiles trees of tests are not created on the local disk when the "
+            + "strategy that runs the test lays out its runfiles from the runfiles manifest, as "
+            + "the sandboxed and remote strategies do. The tree is still created for tests that "
+            + "run locally. Only useful together with --nobuild_runfile_links."
+  )
+  public boolean skipTestRunfilesTrees;
 }
@@ -90,13 +90,7 @@ public class StandaloneTestStrategy extends TestStrategy {
       throws ExecException, InterruptedException {
     Path execRoot = actionExecutionContext.getExecRoot();
     Path coverageDir = execRoot.getRelative(action.getCoverageDirectory());
-    Path runfilesDir =
-        getLocalRunfilesDirectory(
-            action,
-            actionExecutionContext,
-            binTools,
-            action.getLocalShellEnvironment(),
-            action.isEnableRunfiles());
+    Path runfilesDir = action.getExecutionSettings().getRunfilesDir();
     Path tmpDir = tmpDirRoot.getChild(TestStrategy.getTmpDirName(action));
     Map<String, String> env = setupEnvironment(
         action, actionExecutionContext.getClientEnv(), execRoot, runfilesDir, tmpDir);
@@ -131,6 +125,13 @@ public class StandaloneTestStrategy extends TestStrategy {
             /*filesetManifests=*/ ImmutableList.<Artifact>of(),
             ImmutableList.copyOf(action.getSpawnOutputs()),
             localResourceUsage);
+    getLocalRunfilesDirectory(
+        action,
+        spawn,
+        actionExecutionContext,
+        binTools,
+        action.getLocalShellEnvironment(),
+        action.isEnableRunfiles());
 
     TestResultData.Builder dataBuilder = TestResultData.newBuilder();
 
@@ -13,6 +13,8 @@
 // limitations under the License.
 package com.google.devtools.build.lib.exec;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -37,8 +39,12 @@ import com.google.devtools.build.lib.util.OsUtils;
 import com.google.devtools.build.lib.vfs.FileSystemUtils;
 import com.google.devtools.build.lib.vfs.Path;
 import com.google.devtools.build.lib.vfs.PathFragment;
+import com.google.devtools.build.lib.vfs.Symlinks;
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
 
 /**
  * Helper class responsible for the symlink tree creation. Used to generate runfiles and fileset
@@ -55,9 +61,16 @@ public final class SymlinkTreeHelper {
    */
   public static final ResourceSet RESOURCE_SET = ResourceSet.createWithRamCpuIo(1000, 0.5, 0.75);
 
+  /**
+   * Marks a tree whose MANIFEST was copied from the input manifest without creating the symlinks
+   * it lists, so that the MANIFEST isn't mistaken for the list of existing symlinks.
+   */
+  static final String NO_LINKS_MARKER = "MANIFEST.nolinks";
+
   private final Path inputManifest;
   private final Path symlinkTreeRoot;
   private final boolean filesetTree;
+  private final boolean incremental;
 
   /**
    * Creates SymlinkTreeHelper instance. Can be used independently of SymlinkTreeAction.
@@ -68,9 +81,25 @@ public final class SymlinkTreeHelper {
    *                    false if this is a runfiles symlink tree.
    */
   public SymlinkTreeHelper(Path inputManifest, Path symlinkTreeRoot, boolean filesetTree) {
+    this(inputManifest, symlinkTreeRoot, filesetTree, /*incremental=*/ false);
+  }
+
+  /**
+   * Creates SymlinkTreeHelper instance. Can be used independently of SymlinkTreeAction.
+   *
+   * @param inputManifest exec path to the input runfiles manifest
+   * @param symlinkTreeRoot the root of the symlink tree to be created
+   * @param filesetTree true if this is fileset symlink tree,
+   *                    false if this is a runfiles symlink tree.
+   * @param incremental true if an existing runfiles tree should be updated by applying the
+   *                    differences between its MANIFEST and the input manifest
+   */
+  public SymlinkTreeHelper(
+      Path inputManifest, Path symlinkTreeRoot, boolean filesetTree, boolean incremental) {
     this.inputManifest = inputManifest;
     this.symlinkTreeRoot = symlinkTreeRoot;
     this.filesetTree = filesetTree;
+    this.incremental = incremental;
   }
 
   public Path getOutputManifest() {
@@ -115,21 +144,40 @@ public final class SymlinkTreeHelper {
       boolean enableRunfiles)
           throws ExecException, InterruptedException {
     Preconditions.checkState(inputManifestArtifact.getPath().equals(inputManifest));
+    Path noLinksMarker = symlinkTreeRoot.getChild(NO_LINKS_MARKER);
     if (enableRunfiles) {
-      return actionExecutionContext
-          .getSpawnActionContext(owner.getMnemonic())
-          .exec(
-              createSpawn(
-                  owner,
-                  actionExecutionContext.getExecRoot(),
-                  binTools,
-                  shellEnvironment,
-                  inputManifestArtifact),
-              actionExecutionContext);
+      if (incremental && !filesetTree) {
+        try {
+          if (updateSymlinksIncrementally()) {
+            return ImmutableList.of();
+          }
+        } catch (IOException e) {
+          // Fall back to rebuilding the tree, which also cleans up after a partial update.
+        }
+      }
+      List<SpawnResult> spawnResults =
+          actionExecutionContext
+              .getSpawnActionContext(owner.getMnemonic())
+              .exec(
+                  createSpawn(
+                      owner,
+                      actionExecutionContext.getExecRoot(),
+                      binTools,
+                      shellEnvironment,
+                      inputManifestArtifact),
+                  actionExecutionContext);
+      try {
+        noLinksMarker.delete();
+      } catch (IOException e) {
+        throw new UserExecException(e.getMessage(), e);
+      }
+      return spawnResults;
     } else {
-      // Pretend we created the runfiles tree by copying the manifest
+      // Pretend we created the runfiles tree by copying the manifest. The marker is written first,
+      // so that the MANIFEST is never trusted as the list of existing symlinks.
       try {
         FileSystemUtils.createDirectoryAndParents(symlinkTreeRoot);
+        FileSystemUtils.createEmptyFile(noLinksMarker);
         FileSystemUtils.copyFile(inputManifest, symlinkTreeRoot.getChild("MANIFEST"));
       } catch (IOException e) {
         throw new UserExecException(e.getMessage(), e);
@@ -138,6 +186,100 @@ public final class SymlinkTreeHelper {
     }
   }
 
+  /**
+   * Brings an existing runfiles tree up to date by only touching the entries that differ between
+   * its MANIFEST and the input manifest, rather than having build-runfiles walk the whole tree.
+   * The output MANIFEST is used as a proxy for the existing symlinks, as in {@link TestStrategy}.
+   *
+   * <p>Returns false without changing anything if the tree can't be updated this way, e.g. because
+   * it doesn't have a MANIFEST yet, or its MANIFEST was written without creating the symlinks
+   * because runfiles were disabled. The output MANIFEST is deleted before any symlink is touched,
+   * so that a failed update results in a full rebuild the next time.
+   */
+  @VisibleForTesting
+  boolean updateSymlinksIncrementally() throws IOException {
+    Path outputManifest = symlinkTreeRoot.getChild("MANIFEST");
+    if (!outputManifest.isFile(Symlinks.NOFOLLOW)
+        || symlinkTreeRoot.getChild(NO_LINKS_MARKER).exists(Symlinks.NOFOLLOW)) {
+      return false;
+    }
+    Map<String, String> oldEntries = readManifest(outputManifest);
+    Map<String, String> newEntries = readManifest(inputManifest);
+    if (oldEntries == null || newEntries == null) {
+      return false;
+    }
+    outputManifest.delete();
+
+    for (Map.Entry<String, String> entry : oldEntries.entrySet()) {
+      String target = newEntries.get(entry.getKey());
+      if (target == null || !target.equals(entry.getValue())) {
+        Path link = symlinkTreeRoot.getRelative(entry.getKey());
+        deleteEntry(link);
+        if (target == null) {
+          deleteEmptyParents(link);
+        }
+      }
+    }
+    for (Map.Entry<String, String> entry : newEntries.entrySet()) {
+      if (entry.getValue().equals(oldEntries.get(entry.getKey()))) {
+        continue;
+      }
+      Path link = symlinkTreeRoot.getRelative(entry.getKey());
+      link.getParentDirectory().createDirectoryAndParents();
+      deleteEntry(link);
+      if (entry.getValue().isEmpty()) {
+        FileSystemUtils.createEmptyFile(link);
+      } else {
+        link.createSymbolicLink(PathFragment.create(entry.getValue()));
+      }
+    }
+
+    Path tempManifest = symlinkTreeRoot.getChild("MANIFEST.tmp");
+    FileSystemUtils.copyFile(inputManifest, tempManifest);
+    tempManifest.renameTo(outputManifest);
+    return true;
+  }
+
+  /**
+   * Parses a runfiles manifest into a map from link to target, where an empty target stands for an
+   * empty file. Returns null if the manifest isn't in the format build-runfiles accepts.
+   */
+  @Nullable
+  private static Map<String, String> readManifest(Path manifest) throws IOException {
+    Map<String, String> entries = new LinkedHashMap<>();
+    for (String line : FileSystemUtils.readLines(manifest, ISO_8859_1)) {
+      if (line.isEmpty()) {
+        continue;
+      }
+      int space = line.indexOf(' ');
+      if (space <= 0 || line.charAt(0) == '/' || line.indexOf(' ', space + 1) >= 0) {
+        return null;
+      }
+      entries.put(line.substring(0, space), line.substring(space + 1));
+    }
+    return entries;
+  }
+
+  private static void deleteEntry(Path path) throws IOException {
+    if (path.isDirectory(Symlinks.NOFOLLOW)) {
+      FileSystemUtils.deleteTree(path);
+    } else {
+      path.delete();
+    }
+  }
+
+  /** Deletes the directories above {@code path} that became empty, up to the tree root. */
+  private void deleteEmptyParents(Path path) throws IOException {
+    for (Path dir = path.getParentDirectory();
+        !dir.equals(symlinkTreeRoot) && dir.startsWith(symlinkTreeRoot);
+        dir = dir.getParentDirectory()) {
+      if (!dir.isDirectory(Symlinks.NOFOLLOW) || !dir.getDirectoryEntries().isEmpty()) {
+        return;
+      }
+      dir.delete();
+    }
+  }
+
   @VisibleForTesting
   Spawn createSpawn(
       ActionExecutionMetadata owner,
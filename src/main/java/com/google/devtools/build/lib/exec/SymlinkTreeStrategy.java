@@ -38,10 +38,17 @@ public final class SymlinkTreeStrategy implements SymlinkTreeActionContext {
 
   private final OutputService outputService;
   private final BinTools binTools;
+  private final boolean incrementalRunfilesTrees;
 
   public SymlinkTreeStrategy(OutputService outputService, BinTools binTools) {
+    this(outputService, binTools, /*incrementalRunfilesTrees=*/ false);
+  }
+
+  public SymlinkTreeStrategy(
+      OutputService outputService, BinTools binTools, boolean incrementalRunfilesTrees) {
     this.outputService = outputService;
     this.binTools = binTools;
+    this.incrementalRunfilesTrees = incrementalRunfilesTrees;
   }
 
   @Override
@@ -66,7 +73,8 @@ public final class SymlinkTreeStrategy implements SymlinkTreeActionContext {
           SymlinkTreeHelper helper = new SymlinkTreeHelper(
               action.getInputManifest().getPath(),
               action.getOutputManifest().getPath().getParentDirectory(),
-              action.isFilesetTree());
+              action.isFilesetTree(),
+              incrementalRunfilesTrees);
           return helper.createSymlinks(
               action,
               actionExecutionContext,
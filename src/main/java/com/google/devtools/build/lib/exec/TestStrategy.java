@@ -25,6 +25,7 @@ import com.google.devtools.build.lib.actions.ActionExecutionContext;
 import com.google.devtools.build.lib.actions.Artifact;
 import com.google.devtools.build.lib.actions.CommandLineExpansionException;
 import com.google.devtools.build.lib.actions.ExecException;
+import com.google.devtools.build.lib.actions.Spawn;
 import com.google.devtools.build.lib.actions.SpawnResult;
 import com.google.devtools.build.lib.actions.TestExecException;
 import com.google.devtools.build.lib.actions.UserExecException;
@@ -333,10 +334,12 @@ public abstract class TestStrategy implements TestActionContext {
 
   /**
    * Returns the runfiles directory associated with the test executable, creating/updating it if
-   * necessary and --build_runfile_links is specified.
+   * necessary and --build_runfile_links is specified. With --experimental_skip_test_runfiles_trees,
+   * the directory is not created if the strategy that runs the test spawn does not read it.
    */
-  protected static Path getLocalRunfilesDirectory(
+  protected Path getLocalRunfilesDirectory(
       TestRunnerAction testAction,
+      Spawn spawn,
       ActionExecutionContext actionExecutionContext,
       BinTools binTools,
       ImmutableMap<String, String> shellEnvironment,
@@ -344,6 +347,13 @@ public abstract class TestStrategy implements TestActionContext {
       throws ExecException, InterruptedException {
     TestTargetExecutionSettings execSettings = testAction.getExecutionSettings();
 
+    if (executionOptions.skipTestRunfilesTrees
+        && !actionExecutionContext
+            .getSpawnActionContext(testAction.getMnemonic())
+            .usesLocalRunfilesTree(spawn)) {
+      return execSettings.getRunfilesDir();
+    }
+
     if (execSettings.getInputManifest() == null) {
       throw new TestExecException("cannot run local tests with --nobuild_runfile_manifests");
     }
@@ -382,7 +392,7 @@ public abstract class TestStrategy implements TestActionContext {
    * $0.runfiles/MANIFEST, if it exists, are used a proxy for the set of existing symlinks, to avoid
    * the need for recursion.
    */
-  private static void updateLocalRunfilesDirectory(
+  private void updateLocalRunfilesDirectory(
       TestRunnerAction testAction,
       Path runfilesDir,
       ActionExecutionContext actionExecutionContext,
@@ -396,8 +406,9 @@ public abstract class TestStrategy implements TestActionContext {
       // Avoid rebuilding the runfiles directory if the manifest in it matches the input manifest,
       // implying the symlinks exist and are already up to date. If the output manifest is a
       // symbolic link, it is likely a symbolic link to the input manifest, so we cannot trust it as
-      // an up-to-date check.
+      // an up-to-date check. Nor can we if the symlinks were never created.
       if (!outputManifest.isSymbolicLink()
+          && !runfilesDir.getChild(SymlinkTreeHelper.NO_LINKS_MARKER).exists()
           && Arrays.equals(
               outputManifest.getDigest(), execSettings.getInputManifest().getPath().getDigest())) {
         return;
@@ -414,7 +425,11 @@ public abstract class TestStrategy implements TestActionContext {
                     + execSettings.getExecutable().prettyPrint()
                     + "'."));
 
-    new SymlinkTreeHelper(execSettings.getInputManifest().getPath(), runfilesDir, false)
+    new SymlinkTreeHelper(
+            execSettings.getInputManifest().getPath(),
+            runfilesDir,
+            /*filesetTree=*/ false,
+            executionOptions.incrementalRunfilesTrees)
         .createSymlinks(
             testAction,
             actionExecutionContext,
@@ -20,7 +20,6 @@ import static java.util.logging.Level.WARNING;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
-import com.google.common.io.ByteStreams;
 import com.google.devtools.build.lib.actions.ActionExecutionMetadata;
 import com.google.devtools.build.lib.actions.ResourceManager;
 import com.google.devtools.build.lib.actions.ResourceManager.ResourceHandle;
@@ -260,9 +259,9 @@ public class LocalSpawnRunner implements SpawnRunner {
           // the subprocess and only kills it after a grace period so that the subprocess can output
           // a stack trace, test log or similar, which is incredibly helpful for debugging. The
           // process wrapper also supports output file redirection, so we don't need to stream the
-          // output through this process.
-          stdOut = ByteStreams.nullOutputStream();
-          stdErr = ByteStreams.nullOutputStream();
+          // output through this process, and its own output is discarded.
+          stdOut = null;
+          stdErr = null;
           ProcessWrapperUtil.CommandLineBuilder commandLineBuilder =
               ProcessWrapperUtil.commandLineBuilder(processWrapper, spawn.getArguments())
                   .setStdoutPath(getPathOrDevNull(outErr.getOutputPath()))
@@ -295,7 +294,8 @@ public class LocalSpawnRunner implements SpawnRunner {
         long startTime = System.currentTimeMillis();
         CommandResult commandResult = null;
         try {
-          commandResult = cmd.execute(stdOut, stdErr);
+          commandResult =
+              stdOut == null ? cmd.executeDiscardingOutput() : cmd.execute(stdOut, stdErr);
           if (Thread.currentThread().isInterrupted()) {
             throw new InterruptedException();
           }
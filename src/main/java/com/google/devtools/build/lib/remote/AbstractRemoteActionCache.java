@@ -13,8 +13,19 @@
 // limitations under the License.
 package com.google.devtools.build.lib.remote;
 
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.devtools.build.lib.actions.ActionInput;
+import com.google.devtools.build.lib.actions.Artifact;
 import com.google.devtools.build.lib.actions.EnvironmentalExecException;
 import com.google.devtools.build.lib.actions.ExecException;
+import com.google.devtools.build.lib.actions.cache.MetadataHandler;
 import com.google.devtools.build.lib.concurrent.ThreadSafety;
 import com.google.devtools.build.lib.remote.TreeNodeRepository.TreeNode;
 import com.google.devtools.build.lib.util.io.FileOutErr;
@@ -31,6 +42,7 @@ import com.google.devtools.remoteexecution.v1test.OutputDirectory;
 import com.google.devtools.remoteexecution.v1test.OutputFile;
 import com.google.devtools.remoteexecution.v1test.Tree;
 import com.google.protobuf.ByteString;
+import io.grpc.Context;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
@@ -39,6 +51,11 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /** A cache for storing artifacts (input and output) as well as the output of running an action. */
@@ -46,8 +63,32 @@ import javax.annotation.Nullable;
 public abstract class AbstractRemoteActionCache implements AutoCloseable {
   protected final DigestUtil digestUtil;
 
-  public AbstractRemoteActionCache(DigestUtil digestUtil) {
+  /** Runs the downloads of {@link #download}; shared by all actions. */
+  private final ListeningExecutorService downloadExecutor;
+
+  /**
+   * @param digestUtil the digest function of the cache
+   * @param maxConcurrentDownloads the maximum number of blobs that are downloaded at a time; if 1,
+   *     output files are downloaded one by one on the thread that asks for them
+   */
+  public AbstractRemoteActionCache(DigestUtil digestUtil, int maxConcurrentDownloads) {
+    Preconditions.checkArgument(maxConcurrentDownloads > 0);
     this.digestUtil = digestUtil;
+    if (maxConcurrentDownloads == 1) {
+      this.downloadExecutor = MoreExecutors.newDirectExecutorService();
+    } else {
+      ThreadPoolExecutor executor =
+          new ThreadPoolExecutor(
+              maxConcurrentDownloads,
+              maxConcurrentDownloads,
+              60,
+              TimeUnit.SECONDS,
+              new LinkedBlockingQueue<>(),
+              new ThreadFactoryBuilder().setNameFormat("remote-download-%d").setDaemon(true).build());
+      // Idle threads go away even if the pool isn't shut down, e.g. when a command ends early.
+      executor.allowCoreThreadTimeOut(true);
+      this.downloadExecutor = MoreExecutors.listeningDecorator(executor);
+    }
   }
 
   /**
@@ -125,10 +166,11 @@ public abstract class AbstractRemoteActionCache implements AutoCloseable {
   // TODO(olaola): will need to amend to include the TreeNodeRepository for updating.
   public void download(ActionResult result, Path execRoot, FileOutErr outErr)
       throws ExecException, IOException, InterruptedException {
+    OutputDownloads downloads = new OutputDownloads();
     try {
       for (OutputFile file : result.getOutputFilesList()) {
         Path path = execRoot.getRelative(file.getPath());
-        downloadFile(path, file.getDigest(), file.getIsExecutable(), file.getContent());
+        downloads.add(path, file.getDigest(), file.getIsExecutable(), file.getContent());
       }
       for (OutputDirectory dir : result.getOutputDirectoriesList()) {
         Digest treeDigest = dir.getTreeDigest();
@@ -144,12 +186,15 @@ public abstract class AbstractRemoteActionCache implements AutoCloseable {
           childrenMap.put(digestUtil.compute(child), child);
         }
         Path path = execRoot.getRelative(dir.getPath());
-        downloadDirectory(path, tree.getRoot(), childrenMap);
+        downloadDirectory(path, tree.getRoot(), childrenMap, downloads);
       }
+      downloads.waitForAll();
       // TODO(ulfjack): use same code as above also for stdout / stderr if applicable.
       downloadOutErr(result, outErr);
     } catch (IOException downloadException) {
       try {
+        // Nothing may still be writing to the output files once we delete them.
+        downloads.abort();
         // Delete any (partially) downloaded output files, since any subsequent local execution
         // of this action may expect none of the output files to exist.
         for (OutputFile file : result.getOutputFilesList()) {
@@ -175,22 +220,153 @@ public abstract class AbstractRemoteActionCache implements AutoCloseable {
             true);
       }
       throw downloadException;
+    } catch (InterruptedException e) {
+      downloads.cancel();
+      throw e;
+    }
+  }
+
+  /**
+   * The downloads of the output files of an action. They run concurrently on the download
+   * executor, and a blob that several files have in common is only downloaded once.
+   */
+  private final class OutputDownloads {
+    private final List<ListenableFuture<Path>> futures = new ArrayList<>();
+    /** The first download of each blob, which yields the path it was written to. */
+    private final Map<Digest, ListenableFuture<Path>> blobs = new HashMap<>();
+    /** The context of the action, which carries the metadata of remote calls. */
+    private final Context context = Context.current();
+    private volatile boolean aborted;
+
+    /**
+     * Writes a file. Empty files and files whose content is inlined are written right away, all
+     * others are downloaded in the background.
+     */
+    void add(Path path, Digest digest, boolean isExecutable, @Nullable ByteString content)
+        throws IOException, InterruptedException {
+      if (digest.getSizeBytes() == 0 || (content != null && !content.isEmpty())) {
+        downloadFile(path, digest, isExecutable, content);
+        return;
+      }
+      ListenableFuture<Path> first = blobs.get(digest);
+      ListenableFuture<Path> future;
+      if (first == null) {
+        future =
+            downloadExecutor.submit(
+                context.wrap(
+                    () -> {
+                      if (!aborted) {
+                        downloadFile(path, digest, isExecutable, null);
+                      }
+                      return path;
+                    }));
+        blobs.put(digest, future);
+      } else {
+        future =
+            Futures.transformAsync(
+                first,
+                (downloaded) -> {
+                  if (!aborted) {
+                    FileSystemUtils.createDirectoryAndParents(path.getParentDirectory());
+                    FileSystemUtils.copyFile(downloaded, path);
+                    path.setExecutable(isExecutable);
+                  }
+                  return Futures.immediateFuture(path);
+                },
+                downloadExecutor);
+      }
+      futures.add(future);
+    }
+
+    /** Waits until all files are written, or throws the error of the first one that failed. */
+    void waitForAll() throws IOException, InterruptedException {
+      try {
+        Futures.allAsList(futures).get();
+      } catch (ExecutionException e) {
+        Throwables.propagateIfPossible(e.getCause(), IOException.class, InterruptedException.class);
+        throw new IOException(e.getCause());
+      }
+    }
+
+    /** Skips the downloads that haven't started yet, and waits for the others to finish. */
+    void abort() throws InterruptedException {
+      aborted = true;
+      for (ListenableFuture<Path> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException | CancellationException e) {
+          // Already reported by waitForAll, or superseded by its error.
+        }
+      }
+    }
+
+    void cancel() {
+      aborted = true;
+      for (ListenableFuture<Path> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * Like {@link #download}, but leaves the output files of the action in the remote cache. Their
+   * metadata is injected into {@code metadataHandler}, and {@code inputFetcher} downloads them once
+   * they are read locally.
+   *
+   * <p>Output directories, stdout and stderr, outputs that aren't artifacts, and files whose
+   * contents are empty or inlined in the result are still written right away.
+   */
+  public void downloadLazily(
+      ActionResult result,
+      Path execRoot,
+      FileOutErr outErr,
+      Collection<? extends ActionInput> outputs,
+      MetadataHandler metadataHandler,
+      RemoteActionInputFetcher inputFetcher)
+      throws ExecException, IOException, InterruptedException {
+    Map<String, Artifact> artifacts = new HashMap<>();
+    for (ActionInput output : outputs) {
+      if (output instanceof Artifact) {
+        artifacts.put(output.getExecPathString(), (Artifact) output);
+      }
+    }
+    ActionResult.Builder eager = result.toBuilder().clearOutputFiles();
+    List<OutputFile> lazy = new ArrayList<>();
+    for (OutputFile file : result.getOutputFilesList()) {
+      if (artifacts.containsKey(file.getPath())
+          && file.getDigest().getSizeBytes() > 0
+          && file.getContent().isEmpty()) {
+        lazy.add(file);
+      } else {
+        eager.addOutputFiles(file);
+      }
+    }
+    download(eager.build(), execRoot, outErr);
+    for (OutputFile file : lazy) {
+      Digest digest = file.getDigest();
+      metadataHandler.injectRemoteFile(
+          artifacts.get(file.getPath()),
+          HashCode.fromString(digest.getHash()).asBytes(),
+          digest.getSizeBytes());
+      inputFetcher.remoteFileAvailable(
+          execRoot.getRelative(file.getPath()), digest, file.getIsExecutable());
     }
   }
 
   /**
    * Download a directory recursively. The directory is represented by a {@link Directory} protobuf
    * message, and the descendant directories are in {@code childrenMap}, accessible through their
-   * digest.
+   * digest. The directories are created right away, the files are added to {@code downloads}.
    */
-  private void downloadDirectory(Path path, Directory dir, Map<Digest, Directory> childrenMap)
+  private void downloadDirectory(
+      Path path, Directory dir, Map<Digest, Directory> childrenMap, OutputDownloads downloads)
       throws IOException, InterruptedException {
     // Ensure that the directory is created here even though the directory might be empty
     FileSystemUtils.createDirectoryAndParents(path);
 
     for (FileNode child : dir.getFilesList()) {
       Path childPath = path.getRelative(child.getName());
-      downloadFile(childPath, child.getDigest(), child.getIsExecutable(), null);
+      downloads.add(childPath, child.getDigest(), child.getIsExecutable(), null);
     }
 
     for (DirectoryNode child : dir.getDirectoriesList()) {
@@ -207,7 +383,7 @@ public abstract class AbstractRemoteActionCache implements AutoCloseable {
                 + childDigest
                 + "not found");
       }
-      downloadDirectory(childPath, childDir, childrenMap);
+      downloadDirectory(childPath, childDir, childrenMap, downloads);
     }
   }
 
@@ -369,7 +545,20 @@ public abstract class AbstractRemoteActionCache implements AutoCloseable {
     }
   }
 
-  /** Release resources associated with the cache. The cache may not be used after calling this. */
+  /**
+   * Stops the threads that download output files, once the downloads that are already running are
+   * done. The cache can't download output files any more afterwards. May be called more than once.
+   */
+  void shutdownDownloads() {
+    downloadExecutor.shutdown();
+  }
+
+  /**
+   * Release resources associated with the cache. The cache may not be used after calling this.
+   * Subclasses must call this implementation.
+   */
   @Override
-  public abstract void close();
+  public void close() {
+    shutdownDownloads();
+  }
 }
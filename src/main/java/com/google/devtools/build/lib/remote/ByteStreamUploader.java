@@ -65,10 +65,14 @@ final class ByteStreamUploader {
 
   private static final Logger logger = Logger.getLogger(ByteStreamUploader.class.getName());
 
+  /** The gRPC message compression used for compressed reads and writes. */
+  static final String COMPRESSOR_NAME = "gzip";
+
   private final String instanceName;
   private final Channel channel;
   private final CallCredentials callCredentials;
   private final long callTimeoutSecs;
+  private final boolean compress;
   private final RemoteRetrier retrier;
   private final ListeningScheduledExecutorService retryService;
 
@@ -80,6 +84,24 @@ final class ByteStreamUploader {
   @GuardedBy("lock")
   private boolean isShutdown;
 
+  /** Creates a new instance that doesn't compress the uploaded data. */
+  public ByteStreamUploader(
+      @Nullable String instanceName,
+      Channel channel,
+      @Nullable CallCredentials callCredentials,
+      long callTimeoutSecs,
+      RemoteRetrier retrier,
+      ListeningScheduledExecutorService retryService) {
+    this(
+        instanceName,
+        channel,
+        callCredentials,
+        callTimeoutSecs,
+        /* compress= */ false,
+        retrier,
+        retryService);
+  }
+
   /**
    * Creates a new instance.
    *
@@ -90,6 +112,8 @@ final class ByteStreamUploader {
    *     case no authentication is performed
    * @param callTimeoutSecs the timeout in seconds after which a {@code Write} gRPC call must be
    *     complete. The timeout resets between retries
+   * @param compress whether to gzip compress the {@code WriteRequest} messages on the wire. The
+   *     offsets and sizes of the writes still refer to the uncompressed data
    * @param retrier the {@link RemoteRetrier} whose backoff strategy to use for retry timings.
    * @param retryService the executor service to schedule retries on. It's the responsibility of the
    *     caller to properly shutdown the service after use. Users should avoid shutting down the
@@ -100,6 +124,7 @@ final class ByteStreamUploader {
       Channel channel,
       @Nullable CallCredentials callCredentials,
       long callTimeoutSecs,
+      boolean compress,
       RemoteRetrier retrier,
       ListeningScheduledExecutorService retryService) {
     checkArgument(callTimeoutSecs > 0, "callTimeoutSecs must be gt 0.");
@@ -108,6 +133,7 @@ final class ByteStreamUploader {
     this.channel = channel;
     this.callCredentials = callCredentials;
     this.callTimeoutSecs = callTimeoutSecs;
+    this.compress = compress;
     this.retrier = retrier;
     this.retryService = retryService;
   }
@@ -293,7 +319,8 @@ final class ByteStreamUploader {
     }
 
     AsyncUpload newUpload =
-        new AsyncUpload(channel, callCredentials, callTimeoutSecs, instanceName, chunker, listener);
+        new AsyncUpload(
+            channel, callCredentials, callTimeoutSecs, compress, instanceName, chunker, listener);
     overallUploadResult.addListener(
         () -> {
           if (overallUploadResult.isCancelled()) {
@@ -315,6 +342,7 @@ final class ByteStreamUploader {
     private final Channel channel;
     private final CallCredentials callCredentials;
     private final long callTimeoutSecs;
+    private final boolean compress;
     private final String instanceName;
     private final Chunker chunker;
     private final Listener listener;
@@ -325,12 +353,14 @@ final class ByteStreamUploader {
         Channel channel,
         CallCredentials callCredentials,
         long callTimeoutSecs,
+        boolean compress,
         String instanceName,
         Chunker chunker,
         Listener listener) {
       this.channel = channel;
       this.callCredentials = callCredentials;
       this.callTimeoutSecs = callTimeoutSecs;
+      this.compress = compress;
       this.instanceName = instanceName;
       this.chunker = chunker;
       this.listener = listener;
@@ -341,6 +371,9 @@ final class ByteStreamUploader {
           CallOptions.DEFAULT
               .withCallCredentials(callCredentials)
               .withDeadlineAfter(callTimeoutSecs, SECONDS);
+      if (compress) {
+        callOptions = callOptions.withCompression(COMPRESSOR_NAME);
+      }
       call = channel.newCall(ByteStreamGrpc.METHOD_WRITE, callOptions);
 
       ClientCall.Listener<WriteResponse> callListener =
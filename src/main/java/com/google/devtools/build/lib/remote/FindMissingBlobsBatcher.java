@@ -0,0 +1,144 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.remote;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadSafe;
+import com.google.devtools.remoteexecution.v1test.Digest;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Combines the FindMissingBlobs calls of concurrent actions.
+ *
+ * <p>The first caller waits for a short time, during which the digests of other callers are added
+ * to its request, and then sends the request for all of them. Digests that several actions have in
+ * common, like those of a shared toolchain, are only asked about once.
+ */
+@ThreadSafe
+final class FindMissingBlobsBatcher {
+  /** Sends a FindMissingBlobs call. */
+  interface Lookup {
+    ImmutableSet<Digest> findMissing(Collection<Digest> digests)
+        throws IOException, InterruptedException;
+  }
+
+  /** The digests of the callers that share a request, and the response to it. */
+  private static final class Batch {
+    final Set<Digest> digests = new LinkedHashSet<>();
+    final SettableFuture<ImmutableSet<Digest>> missing = SettableFuture.create();
+  }
+
+  private final Lookup lookup;
+  private final long windowMillis;
+  private final int maxBatchSize;
+
+  private final Object lock = new Object();
+
+  @GuardedBy("lock")
+  private Batch pending;
+
+  /**
+   * @param windowMillis how long to wait for other callers; if 0, calls are never combined
+   * @param maxBatchSize the number of digests above which a request isn't added to anymore
+   */
+  FindMissingBlobsBatcher(Lookup lookup, long windowMillis, int maxBatchSize) {
+    this.lookup = lookup;
+    this.windowMillis = windowMillis;
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /** Returns the given digests that the remote cache doesn't have. */
+  ImmutableSet<Digest> findMissing(Collection<Digest> digests)
+      throws IOException, InterruptedException {
+    if (digests.isEmpty()) {
+      return ImmutableSet.of();
+    }
+    if (windowMillis <= 0 || digests.size() >= maxBatchSize) {
+      return lookup.findMissing(digests);
+    }
+    Batch batch;
+    boolean leader = false;
+    synchronized (lock) {
+      if (pending == null || pending.digests.size() + digests.size() > maxBatchSize) {
+        // The leader of a full batch sends it when its time is up.
+        pending = new Batch();
+        leader = true;
+      }
+      batch = pending;
+      batch.digests.addAll(digests);
+    }
+    ImmutableSet<Digest> missing = leader ? send(batch) : await(batch, digests);
+    ImmutableSet.Builder<Digest> result = ImmutableSet.builder();
+    for (Digest digest : digests) {
+      if (missing.contains(digest)) {
+        result.add(digest);
+      }
+    }
+    return result.build();
+  }
+
+  private ImmutableSet<Digest> send(Batch batch) throws IOException, InterruptedException {
+    try {
+      Thread.sleep(windowMillis);
+    } catch (InterruptedException e) {
+      closeBatch(batch);
+      // The others send their digests themselves.
+      batch.missing.cancel(false);
+      throw e;
+    }
+    closeBatch(batch);
+    try {
+      ImmutableSet<Digest> missing = lookup.findMissing(ImmutableList.copyOf(batch.digests));
+      batch.missing.set(missing);
+      return missing;
+    } catch (InterruptedException e) {
+      batch.missing.cancel(false);
+      throw e;
+    } catch (IOException | RuntimeException e) {
+      batch.missing.setException(e);
+      throw e;
+    }
+  }
+
+  private void closeBatch(Batch batch) {
+    synchronized (lock) {
+      if (pending == batch) {
+        pending = null;
+      }
+    }
+  }
+
+  private ImmutableSet<Digest> await(Batch batch, Collection<Digest> digests)
+      throws IOException, InterruptedException {
+    try {
+      return batch.missing.get();
+    } catch (CancellationException e) {
+      // The caller that was to send the request was interrupted.
+      return lookup.findMissing(digests);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), IOException.class);
+      throw new IOException(e.getCause());
+    }
+  }
+}
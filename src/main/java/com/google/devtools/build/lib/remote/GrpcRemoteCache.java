@@ -63,6 +63,12 @@ import java.util.concurrent.TimeUnit;
 /** A RemoteActionCache implementation that uses gRPC calls to a remote cache server. */
 @ThreadSafe
 public class GrpcRemoteCache extends AbstractRemoteActionCache {
+  /**
+   * The number of digests above which the FindMissingBlobs calls of concurrent actions aren't
+   * combined anymore, which keeps requests well below the default message size limit of gRPC.
+   */
+  private static final int MAX_FIND_MISSING_BLOBS_BATCH_SIZE = 10000;
+
   private final RemoteOptions options;
   private final CallCredentials credentials;
   private final Channel channel;
@@ -71,6 +77,10 @@ public class GrpcRemoteCache extends AbstractRemoteActionCache {
   private final ListeningScheduledExecutorService retryScheduler =
       MoreExecutors.listeningDecorator(Executors.newScheduledThreadPool(1));
 
+  /** The digests that don't need to be asked about; may be shared with other instances. */
+  private final KnownPresentDigests knownDigests;
+  private final FindMissingBlobsBatcher findMissingBlobsBatcher;
+
   @VisibleForTesting
   public GrpcRemoteCache(
       Channel channel,
@@ -78,14 +88,45 @@ public class GrpcRemoteCache extends AbstractRemoteActionCache {
       RemoteOptions options,
       RemoteRetrier retrier,
       DigestUtil digestUtil) {
-    super(digestUtil);
+    this(
+        channel,
+        credentials,
+        options,
+        retrier,
+        digestUtil,
+        new KnownPresentDigests(
+            options.experimentalRemoteKnownDigests,
+            options.experimentalRemoteKnownDigestsTtlSeconds));
+  }
+
+  GrpcRemoteCache(
+      Channel channel,
+      CallCredentials credentials,
+      RemoteOptions options,
+      RemoteRetrier retrier,
+      DigestUtil digestUtil,
+      KnownPresentDigests knownDigests) {
+    super(digestUtil, options.experimentalRemoteDownloadJobs);
     this.options = options;
     this.credentials = credentials;
     this.channel = channel;
     this.retrier = retrier;
+    this.knownDigests = knownDigests;
+    this.findMissingBlobsBatcher =
+        new FindMissingBlobsBatcher(
+            this::findMissingBlobs,
+            options.experimentalRemoteFindMissingBlobsBatchWindowMillis,
+            MAX_FIND_MISSING_BLOBS_BATCH_SIZE);
 
-    uploader = new ByteStreamUploader(options.remoteInstanceName, channel, credentials,
-        options.remoteTimeout, retrier, retryScheduler);
+    uploader =
+        new ByteStreamUploader(
+            options.remoteInstanceName,
+            channel,
+            credentials,
+            options.remoteTimeout,
+            options.experimentalRemoteBytestreamCompression,
+            retrier,
+            retryScheduler);
   }
 
   private ContentAddressableStorageBlockingStub casBlockingStub() {
@@ -96,10 +137,17 @@ public class GrpcRemoteCache extends AbstractRemoteActionCache {
   }
 
   private ByteStreamBlockingStub bsBlockingStub() {
-    return ByteStreamGrpc.newBlockingStub(channel)
-        .withInterceptors(TracingMetadataUtils.attachMetadataFromContextInterceptor())
-        .withCallCredentials(credentials)
-        .withDeadlineAfter(options.remoteTimeout, TimeUnit.SECONDS);
+    ByteStreamBlockingStub stub =
+        ByteStreamGrpc.newBlockingStub(channel)
+            .withInterceptors(TracingMetadataUtils.attachMetadataFromContextInterceptor())
+            .withCallCredentials(credentials)
+            .withDeadlineAfter(options.remoteTimeout, TimeUnit.SECONDS);
+    if (options.experimentalRemoteBytestreamCompression) {
+      // Compressing the request tells the server that we want compressed responses. The data is
+      // decompressed message by message as it arrives.
+      stub = stub.withCompression(ByteStreamUploader.COMPRESSOR_NAME);
+    }
+    return stub;
   }
 
   private ActionCacheBlockingStub acBlockingStub() {
@@ -111,6 +159,7 @@ public class GrpcRemoteCache extends AbstractRemoteActionCache {
 
   @Override
   public void close() {
+    super.close();
     retryScheduler.shutdownNow();
     uploader.shutdown();
   }
@@ -119,7 +168,7 @@ public class GrpcRemoteCache extends AbstractRemoteActionCache {
     return options.remoteCache != null;
   }
 
-  private ImmutableSet<Digest> getMissingDigests(Iterable<Digest> digests)
+  private ImmutableSet<Digest> findMissingBlobs(Collection<Digest> digests)
       throws IOException, InterruptedException {
     FindMissingBlobsRequest.Builder request =
         FindMissingBlobsRequest.newBuilder()
@@ -133,6 +182,18 @@ public class GrpcRemoteCache extends AbstractRemoteActionCache {
     return ImmutableSet.copyOf(response.getMissingBlobDigestsList());
   }
 
+  /**
+   * Returns the blobs that the remote cache doesn't have, only asking about those that aren't
+   * known to be present. Those it has are remembered.
+   */
+  private ImmutableSet<Digest> getMissingDigests(Iterable<Digest> digests)
+      throws IOException, InterruptedException {
+    List<Digest> unknown = knownDigests.filterUnknown(digests);
+    ImmutableSet<Digest> missing = findMissingBlobsBatcher.findMissing(unknown);
+    knownDigests.addAll(Iterables.filter(unknown, digest -> !missing.contains(digest)));
+    return missing;
+  }
+
   /**
    * Upload enough of the tree metadata and data into remote cache so that the entire tree can be
    * reassembled remotely using the root digest.
@@ -143,10 +204,15 @@ public class GrpcRemoteCache extends AbstractRemoteActionCache {
       throws IOException, InterruptedException {
     repository.computeMerkleDigests(root);
     Digest commandDigest = digestUtil.compute(command);
-    // TODO(olaola): avoid querying all the digests, only ask for novel subtrees.
-    ImmutableSet<Digest> missingDigests =
-        getMissingDigests(
-            Iterables.concat(repository.getAllDigests(root), ImmutableList.of(commandDigest)));
+    // Only ask about the subtrees that weren't known to be complete in the remote cache. Unlike
+    // in getMissingDigests, directories that the remote cache has aren't remembered before all of
+    // their contents are uploaded.
+    List<Digest> unknownDigests =
+        knownDigests.filterUnknown(
+            Iterables.concat(
+                repository.getUnknownDigests(root, knownDigests::contains),
+                ImmutableList.of(commandDigest)));
+    ImmutableSet<Digest> missingDigests = findMissingBlobsBatcher.findMissing(unknownDigests);
 
     List<Chunker> toUpload = new ArrayList<>();
     // Only upload data that was missing from the cache.
@@ -171,6 +237,7 @@ public class GrpcRemoteCache extends AbstractRemoteActionCache {
       }
     }
     uploader.uploadBlobs(toUpload);
+    knownDigests.addAll(unknownDigests);
   }
 
   /**
@@ -294,6 +361,7 @@ public class GrpcRemoteCache extends AbstractRemoteActionCache {
 
     if (!filesToUpload.isEmpty()) {
       uploader.uploadBlobs(filesToUpload);
+      knownDigests.addAll(digestsToUpload);
     }
 
     // TODO(olaola): inline small stdout/stderr here.
@@ -318,6 +386,7 @@ public class GrpcRemoteCache extends AbstractRemoteActionCache {
     ImmutableSet<Digest> missing = getMissingDigests(ImmutableList.of(digest));
     if (!missing.isEmpty()) {
       uploader.uploadBlob(new Chunker(file));
+      knownDigests.addAll(missing);
     }
     return digest;
   }
@@ -334,6 +403,7 @@ public class GrpcRemoteCache extends AbstractRemoteActionCache {
     ImmutableSet<Digest> missing = getMissingDigests(ImmutableList.of(digest));
     if (!missing.isEmpty()) {
       uploader.uploadBlob(new Chunker(input, inputCache, execRoot, digestUtil));
+      knownDigests.addAll(missing);
     }
     return digest;
   }
@@ -343,6 +413,7 @@ public class GrpcRemoteCache extends AbstractRemoteActionCache {
     ImmutableSet<Digest> missing = getMissingDigests(ImmutableList.of(digest));
     if (!missing.isEmpty()) {
       uploader.uploadBlob(new Chunker(blob, digestUtil));
+      knownDigests.addAll(missing);
     }
     return digest;
   }
@@ -0,0 +1,85 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.remote;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadSafe;
+import com.google.devtools.remoteexecution.v1test.Digest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The digests that the remote cache recently reported to have, or that were recently uploaded to
+ * it, so that they don't need to be asked about again.
+ *
+ * <p>The digest of an input directory is only added once all of its contents are known to be
+ * present, so that the whole subtree can be skipped. Entries expire after a fixed time, because the
+ * remote cache may evict blobs, and the least recently used entries are dropped when the set is
+ * full.
+ */
+@ThreadSafe
+final class KnownPresentDigests {
+  private static final Boolean PRESENT = Boolean.TRUE;
+
+  /** Null if the set is disabled. */
+  private final Cache<Digest, Boolean> digests;
+
+  /**
+   * @param maxSize the maximum number of digests to remember; if 0, nothing is remembered
+   * @param expireAfterSeconds how long a digest is remembered after it was last reported present
+   */
+  KnownPresentDigests(long maxSize, long expireAfterSeconds) {
+    this(maxSize, expireAfterSeconds, Ticker.systemTicker());
+  }
+
+  KnownPresentDigests(long maxSize, long expireAfterSeconds, Ticker ticker) {
+    digests =
+        maxSize > 0 && expireAfterSeconds > 0
+            ? CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireAfterSeconds, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+                .build()
+            : null;
+  }
+
+  boolean contains(Digest digest) {
+    return digests != null && digests.getIfPresent(digest) != null;
+  }
+
+  /** Returns the digests that aren't known to be present, in order. */
+  List<Digest> filterUnknown(Iterable<Digest> candidates) {
+    List<Digest> unknown = new ArrayList<>();
+    for (Digest digest : candidates) {
+      if (!contains(digest)) {
+        unknown.add(digest);
+      }
+    }
+    return unknown;
+  }
+
+  void addAll(Iterable<Digest> present) {
+    if (digests == null) {
+      return;
+    }
+    for (Digest digest : present) {
+      digests.put(digest, PRESENT);
+    }
+  }
+}
@@ -37,16 +37,23 @@ final class RemoteActionContextProvider extends ActionContextProvider {
   private final AbstractRemoteActionCache cache;
   private final GrpcRemoteExecutor executor;
   private final DigestUtil digestUtil;
+  @Nullable private final RemoteActionInputFetcher lazyOutputFetcher;
 
+  /**
+   * @param lazyOutputFetcher downloads the outputs that are left in the remote cache, or null if
+   *     all outputs are downloaded right away
+   */
   RemoteActionContextProvider(
       CommandEnvironment env,
       @Nullable AbstractRemoteActionCache cache,
       @Nullable GrpcRemoteExecutor executor,
-      DigestUtil digestUtil) {
+      DigestUtil digestUtil,
+      @Nullable RemoteActionInputFetcher lazyOutputFetcher) {
     this.env = env;
     this.executor = executor;
     this.cache = cache;
     this.digestUtil = digestUtil;
+    this.lazyOutputFetcher = lazyOutputFetcher;
   }
 
   @Override
@@ -67,7 +74,8 @@ final class RemoteActionContextProvider extends ActionContextProvider {
               commandId,
               executionOptions.verboseFailures,
               env.getReporter(),
-              digestUtil);
+              digestUtil,
+              lazyOutputFetcher);
       return ImmutableList.of(spawnCache);
     } else {
       RemoteSpawnRunner spawnRunner =
@@ -81,7 +89,8 @@ final class RemoteActionContextProvider extends ActionContextProvider {
               commandId,
               cache,
               executor,
-              digestUtil);
+              digestUtil,
+              lazyOutputFetcher);
       return ImmutableList.of(new RemoteSpawnStrategy(env.getExecRoot(), spawnRunner));
     }
   }
@@ -0,0 +1,308 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.remote;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.devtools.build.lib.actions.ActionInput;
+import com.google.devtools.build.lib.actions.ActionInputPrefetcher;
+import com.google.devtools.build.lib.remote.RemoteOutputService.RemoteFile;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.remoteexecution.v1test.Digest;
+import io.grpc.Context;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Downloads action inputs that are only available in the remote cache before the local actions
+ * that read them need them.
+ *
+ * <p>Such files are registered with {@link #remoteFileAvailable} as soon as the action producing
+ * them has finished, and are tracked by a {@link RemoteOutputService}. If speculative prefetching is
+ * enabled, their download starts right away, at a low priority. {@link #prefetchFiles} asks for the
+ * inputs of an action that is about to be executed, at a high priority: pending downloads of these
+ * inputs overtake all speculative ones.
+ *
+ * <p>At most a fixed number of downloads run at a time. Concurrent requests for the same file, or
+ * for different files with the same content, share a single download.
+ */
+final class RemoteActionInputFetcher implements ActionInputPrefetcher {
+  private static final Logger logger = Logger.getLogger(RemoteActionInputFetcher.class.getName());
+
+  /** The urgency of a download. Downloads of higher priority are started first. */
+  enum Priority {
+    /** The file is an input of an action that is about to be executed. */
+    HIGH,
+    /** The file may be needed by a later action. */
+    LOW
+  }
+
+  /** A download of a blob to a local file, shared by all requests for the same digest. */
+  private final class Download {
+    final Digest digest;
+    final Path path;
+    final boolean isExecutable;
+    final SettableFuture<Path> result = SettableFuture.create();
+    final AtomicBoolean started = new AtomicBoolean();
+    /** The context of the first request, which carries the metadata of remote calls. */
+    final Context context = Context.current();
+    /** The highest priority this download has been scheduled with. */
+    volatile Priority priority;
+
+    Download(Digest digest, Path path, boolean isExecutable) {
+      this.digest = digest;
+      this.path = path;
+      this.isExecutable = isExecutable;
+    }
+
+    /** Schedules this download with the given priority, unless it is already scheduled higher. */
+    synchronized void schedule(Priority newPriority) {
+      if (started.get() || (priority != null && priority.compareTo(newPriority) <= 0)) {
+        return;
+      }
+      priority = newPriority;
+      // A download that is promoted is queued again; whichever task runs first does the work.
+      executor.execute(new DownloadTask(this, newPriority, sequence.getAndIncrement()));
+    }
+
+    void run() {
+      if (!started.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        remoteCache.downloadFile(path, digest, isExecutable, null);
+        result.set(path);
+      } catch (IOException | RuntimeException e) {
+        result.setException(e);
+      } catch (InterruptedException e) {
+        result.setException(e);
+        Thread.currentThread().interrupt();
+      } finally {
+        downloads.remove(digest, this);
+      }
+    }
+  }
+
+  /** Orders downloads by priority, and then in the order in which they were requested. */
+  private static final class DownloadTask implements Runnable, Comparable<DownloadTask> {
+    final Download download;
+    final Priority priority;
+    final long sequenceNumber;
+
+    DownloadTask(Download download, Priority priority, long sequenceNumber) {
+      this.download = download;
+      this.priority = priority;
+      this.sequenceNumber = sequenceNumber;
+    }
+
+    @Override
+    public void run() {
+      download.context.run(download::run);
+    }
+
+    @Override
+    public int compareTo(DownloadTask other) {
+      int result = priority.compareTo(other.priority);
+      return result != 0 ? result : Long.compare(sequenceNumber, other.sequenceNumber);
+    }
+  }
+
+  private final RemoteOutputService remoteOutputs;
+  private final AbstractRemoteActionCache remoteCache;
+  private final Path execRoot;
+  private final boolean speculative;
+  private final ThreadPoolExecutor executor;
+  private final AtomicLong sequence = new AtomicLong();
+
+  private final ConcurrentMap<Digest, Download> downloads = new ConcurrentHashMap<>();
+  /** The pending requests per path, so that a file is only written once. */
+  private final ConcurrentMap<Path, ListenableFuture<Void>> pending = new ConcurrentHashMap<>();
+
+  /**
+   * @param remoteOutputs the files that only exist in the remote cache
+   * @param remoteCache the cache to download files from
+   * @param execRoot the execution root that input paths are relative to
+   * @param maxConcurrentDownloads the maximum number of downloads that run at a time
+   * @param speculative whether to start downloading a file as soon as it is registered
+   */
+  RemoteActionInputFetcher(
+      RemoteOutputService remoteOutputs,
+      AbstractRemoteActionCache remoteCache,
+      Path execRoot,
+      int maxConcurrentDownloads,
+      boolean speculative) {
+    Preconditions.checkArgument(maxConcurrentDownloads > 0);
+    this.remoteOutputs = remoteOutputs;
+    this.remoteCache = remoteCache;
+    this.execRoot = execRoot;
+    this.speculative = speculative;
+    // A PriorityBlockingQueue is unbounded, so the pool never grows beyond its core size.
+    this.executor =
+        new ThreadPoolExecutor(
+            maxConcurrentDownloads,
+            maxConcurrentDownloads,
+            60,
+            TimeUnit.SECONDS,
+            new PriorityBlockingQueue<Runnable>(),
+            new ThreadFactoryBuilder()
+                .setNameFormat("remote-input-fetcher-%d")
+                .setDaemon(true)
+                .build());
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Registers a file that exists in the remote cache, but not on the local disk. Reads of the file
+   * must be preceded by a call to {@link #fetch} or {@link #prefetchFiles}.
+   */
+  void remoteFileAvailable(Path path, Digest digest, boolean isExecutable) {
+    remoteOutputs.addRemoteFile(path, digest, isExecutable);
+    if (speculative) {
+      fetch(path, Priority.LOW);
+    }
+  }
+
+  /** Returns whether the given file still has to be downloaded before it can be read. */
+  boolean isRemote(Path path) {
+    return remoteOutputs.isRemoteFile(path);
+  }
+
+  @Override
+  public void prefetchFiles(Iterable<? extends ActionInput> inputs)
+      throws IOException, InterruptedException {
+    try {
+      fetchAll(inputs).get();
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), IOException.class, InterruptedException.class);
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Starts downloading the given files at a high priority, without blocking. Returns a future that
+   * completes when all of them exist locally.
+   */
+  ListenableFuture<Void> fetchAll(Iterable<? extends ActionInput> inputs) {
+    List<ListenableFuture<Void>> futures = new ArrayList<>();
+    for (ActionInput input : inputs) {
+      Path path = execRoot.getRelative(input.getExecPathString());
+      if (remoteOutputs.isRemoteFile(path)) {
+        futures.add(fetch(path, Priority.HIGH));
+      }
+    }
+    return Futures.transform(
+        Futures.allAsList(futures), (results) -> null, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Makes sure the given file is downloaded, with at least the given priority. Returns a future
+   * that completes once the file exists locally. Files that were not registered with {@link
+   * #remoteFileAvailable} are assumed to exist already.
+   */
+  ListenableFuture<Void> fetch(Path path, Priority priority) {
+    RemoteFile remoteFile = remoteOutputs.getRemoteFile(path);
+    if (remoteFile == null) {
+      return Futures.immediateFuture(null);
+    }
+    Download download =
+        downloads.computeIfAbsent(
+            remoteFile.digest, (digest) -> new Download(digest, path, remoteFile.isExecutable));
+    download.schedule(priority);
+    ListenableFuture<Void> existing = pending.get(path);
+    if (existing != null) {
+      return existing;
+    }
+    SettableFuture<Void> result = SettableFuture.create();
+    existing = pending.putIfAbsent(path, result);
+    if (existing != null) {
+      return existing;
+    }
+    result.setFuture(whenDownloaded(download, path, remoteFile));
+    Futures.addCallback(
+        result,
+        new FutureCallback<Void>() {
+          @Override
+          public void onSuccess(Void unused) {
+            pending.remove(path, result);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            pending.remove(path, result);
+            if (!(t instanceof CancellationException)) {
+              logger.log(Level.WARNING, "Failed to download " + path, t);
+            }
+          }
+        },
+        MoreExecutors.directExecutor());
+    return result;
+  }
+
+  /**
+   * Returns a future that completes when the given download finishes, and the downloaded file has
+   * been copied to {@code path} if it was downloaded to a different path with the same digest.
+   */
+  private ListenableFuture<Void> whenDownloaded(
+      Download download, Path path, RemoteFile remoteFile) {
+    return Futures.transformAsync(
+        download.result,
+        (downloaded) -> {
+          if (!downloaded.equals(path)) {
+            FileSystemUtils.createDirectoryAndParents(path.getParentDirectory());
+            FileSystemUtils.copyFile(downloaded, path);
+            path.setExecutable(remoteFile.isExecutable);
+          }
+          remoteOutputs.remoteFileDownloaded(path, remoteFile);
+          return Futures.immediateFuture(null);
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  /** Cancels all downloads that haven't started yet, and stops accepting new ones. */
+  void shutdown() {
+    for (Runnable task : executor.shutdownNow()) {
+      Download download = ((DownloadTask) task).download;
+      if (download.started.compareAndSet(false, true)) {
+        download.result.cancel(false);
+        downloads.remove(download.digest, download);
+      }
+    }
+  }
+
+  @VisibleForTesting
+  int pendingDownloads() {
+    return downloads.size();
+  }
+}
@@ -15,17 +15,31 @@
 package com.google.devtools.build.lib.remote;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.eventbus.Subscribe;
+import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.analysis.FilesToRunProvider;
+import com.google.devtools.build.lib.analysis.TargetCompleteEvent;
 import com.google.devtools.build.lib.authandtls.AuthAndTLSOptions;
 import com.google.devtools.build.lib.authandtls.GoogleAuthUtils;
 import com.google.devtools.build.lib.buildeventstream.PathConverter;
 import com.google.devtools.build.lib.buildtool.BuildRequest;
+import com.google.devtools.build.lib.buildtool.buildevent.BuildCompleteEvent;
+import com.google.devtools.build.lib.collect.nestedset.NestedSet;
 import com.google.devtools.build.lib.events.Event;
+import com.google.devtools.build.lib.events.Reporter;
 import com.google.devtools.build.lib.exec.ExecutorBuilder;
+import com.google.devtools.build.lib.remote.blobstore.CombinedDiskRemoteBlobStore;
+import com.google.devtools.build.lib.remote.blobstore.SimpleBlobStore;
+import com.google.devtools.build.lib.remote.blobstore.http.HttpBlobStore;
+import com.google.devtools.build.lib.remote.blobstore.http.HttpCacheStatistics;
 import com.google.devtools.build.lib.runtime.BlazeModule;
 import com.google.devtools.build.lib.runtime.Command;
 import com.google.devtools.build.lib.runtime.CommandEnvironment;
 import com.google.devtools.build.lib.runtime.ServerBuilder;
+import com.google.devtools.build.lib.skyframe.OutputService;
 import com.google.devtools.build.lib.util.AbruptExitException;
 import com.google.devtools.build.lib.util.ExitCode;
 import com.google.devtools.build.lib.vfs.FileSystem.HashFunction;
@@ -35,6 +49,8 @@ import com.google.devtools.common.options.OptionsProvider;
 import com.google.devtools.remoteexecution.v1test.Digest;
 import io.grpc.Channel;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 /** RemoteModule provides distributed cache and remote execution for Bazel. */
@@ -83,6 +99,20 @@ public final class RemoteModule extends BlazeModule {
   private final CasPathConverter converter = new CasPathConverter();
 
   private RemoteActionContextProvider actionContextProvider;
+  private AbstractRemoteActionCache cache;
+  private RemoteActionInputFetcher actionInputFetcher;
+  private RemoteOptions remoteOptions;
+  private Reporter reporter;
+  /** The statistics of the HTTP cache of the current command, if it uses one. */
+  private HttpCacheStatistics httpCacheStatistics;
+  /** Tracks the outputs left in the remote cache. Kept across commands, as Skyframe is. */
+  private RemoteOutputService remoteOutputService;
+  /**
+   * The digests known to be in the gRPC remote cache, kept across commands as long as the cache
+   * and the options for it stay the same.
+   */
+  private KnownPresentDigests knownPresentDigests;
+  private String knownPresentDigestsKey;
 
   @Override
   public void serverInit(OptionsProvider startupOptions, ServerBuilder builder)
@@ -93,10 +123,11 @@ public final class RemoteModule extends BlazeModule {
   @Override
   public void beforeCommand(CommandEnvironment env) {
     env.getEventBus().register(this);
+    reporter = env.getReporter();
     String buildRequestId = env.getBuildRequestId().toString();
     String commandId = env.getCommandId().toString();
     logger.info("Command: buildRequestId = " + buildRequestId + ", commandId = " + commandId);
-    RemoteOptions remoteOptions = env.getOptions().getOptions(RemoteOptions.class);
+    remoteOptions = env.getOptions().getOptions(RemoteOptions.class);
     AuthAndTLSOptions authAndTlsOptions = env.getOptions().getOptions(AuthAndTLSOptions.class);
     HashFunction hashFn = env.getRuntime().getFileSystem().getDigestFunction();
     DigestUtil digestUtil = new DigestUtil(hashFn);
@@ -117,15 +148,22 @@ public final class RemoteModule extends BlazeModule {
               remoteOptions, RemoteRetrier.RETRIABLE_GRPC_ERRORS, Retrier.ALLOW_ALL_CALLS);
       // TODO(davido): The naming is wrong here. "Remote"-prefix in RemoteActionCache class has no
       // meaning.
-      final AbstractRemoteActionCache cache;
       if (remoteOrLocalCache) {
+        SimpleBlobStore blobStore =
+            SimpleBlobStoreFactory.create(
+                remoteOptions,
+                GoogleAuthUtils.newCredentials(authAndTlsOptions),
+                env.getWorkingDirectory());
+        SimpleBlobStore remoteBlobStore =
+            blobStore instanceof CombinedDiskRemoteBlobStore
+                ? ((CombinedDiskRemoteBlobStore) blobStore).getRemote()
+                : blobStore;
+        if (remoteBlobStore instanceof HttpBlobStore) {
+          httpCacheStatistics = ((HttpBlobStore) remoteBlobStore).getStatistics();
+        }
         cache =
             new SimpleBlobStoreActionCache(
-                SimpleBlobStoreFactory.create(
-                    remoteOptions,
-                    GoogleAuthUtils.newCredentials(authAndTlsOptions),
-                    env.getWorkingDirectory()),
-                digestUtil);
+                blobStore, digestUtil, remoteOptions.experimentalRemoteDownloadJobs);
       } else if (grpcCache || remoteOptions.remoteExecutor != null) {
         // If a remote executor but no remote cache is specified, assume both at the same target.
         String target = grpcCache ? remoteOptions.remoteCache : remoteOptions.remoteExecutor;
@@ -136,7 +174,8 @@ public final class RemoteModule extends BlazeModule {
                 GoogleAuthUtils.newCallCredentials(authAndTlsOptions),
                 remoteOptions,
                 retrier,
-                digestUtil);
+                digestUtil,
+                getKnownPresentDigests(target, hashFn));
       } else {
         cache = null;
       }
@@ -153,18 +192,136 @@ public final class RemoteModule extends BlazeModule {
         executor = null;
       }
 
-      actionContextProvider = new RemoteActionContextProvider(env, cache, executor, digestUtil);
+      if (remoteOutputService == null) {
+        remoteOutputService =
+            new RemoteOutputService(
+                env.getBlazeWorkspace().getOutputBaseFilesystemTypeName(),
+                env.getWorkspace() != null ? env.getWorkspace().getBaseName() : "");
+      }
+      if (remoteOutputService.setRemoteCache(cache != null ? getRemoteCacheKey() : "")) {
+        // Skyframe still has the metadata of the outputs left in the previous cache, which can't
+        // be downloaded anymore. Dropping it makes the action cache check their outputs again.
+        env.getReporter()
+            .handle(
+                Event.warn(
+                    "The remote cache changed, so the outputs that were left in the previous one "
+                        + "will be built again"));
+        env.getBlazeWorkspace().resetEvaluator();
+      }
+      if (cache != null) {
+        actionInputFetcher =
+            new RemoteActionInputFetcher(
+                remoteOutputService,
+                cache,
+                env.getExecRoot(),
+                remoteOptions.experimentalRemotePrefetchJobs,
+                remoteOptions.experimentalRemoteSpeculativePrefetch);
+      }
+      actionContextProvider =
+          new RemoteActionContextProvider(
+              env,
+              cache,
+              executor,
+              digestUtil,
+              remoteOptions.experimentalRemoteLazyOutputs ? actionInputFetcher : null);
     } catch (IOException e) {
       env.getReporter().handle(Event.error(e.getMessage()));
       env.getBlazeModuleEnvironment().exit(new AbruptExitException(ExitCode.COMMAND_LINE_ERROR));
     }
   }
 
+  /** Identifies the remote cache set up by the current options. */
+  private String getRemoteCacheKey() {
+    return String.join(
+        "/",
+        Strings.nullToEmpty(remoteOptions.remoteHttpCache),
+        remoteOptions.experimentalLocalDiskCache
+            ? String.valueOf(remoteOptions.experimentalLocalDiskCachePath)
+            : "",
+        Strings.nullToEmpty(
+            remoteOptions.remoteCache != null
+                ? remoteOptions.remoteCache
+                : remoteOptions.remoteExecutor),
+        remoteOptions.remoteInstanceName);
+  }
+
+  private KnownPresentDigests getKnownPresentDigests(String target, HashFunction hashFn) {
+    String key =
+        String.join(
+            "/",
+            target,
+            remoteOptions.remoteInstanceName,
+            hashFn.toString(),
+            Long.toString(remoteOptions.experimentalRemoteKnownDigests),
+            Long.toString(remoteOptions.experimentalRemoteKnownDigestsTtlSeconds));
+    if (!key.equals(knownPresentDigestsKey)) {
+      knownPresentDigests =
+          new KnownPresentDigests(
+              remoteOptions.experimentalRemoteKnownDigests,
+              remoteOptions.experimentalRemoteKnownDigestsTtlSeconds);
+      knownPresentDigestsKey = key;
+    }
+    return knownPresentDigests;
+  }
+
+  @Override
+  public OutputService getOutputService() {
+    return remoteOptions != null && remoteOptions.experimentalRemoteLazyOutputs
+        ? remoteOutputService
+        : null;
+  }
+
+  /** Downloads the outputs of the top-level targets, which may have been left remotely. */
+  @Subscribe
+  public void targetComplete(TargetCompleteEvent event) {
+    if (actionInputFetcher == null || event.failed()) {
+      return;
+    }
+    List<Artifact> outputs = new ArrayList<>();
+    for (NestedSet<Artifact> artifacts : event.reportedArtifacts()) {
+      Iterables.addAll(outputs, artifacts);
+    }
+    FilesToRunProvider filesToRun = event.getTarget().getProvider(FilesToRunProvider.class);
+    if (filesToRun != null && filesToRun.getRunfilesSupport() != null) {
+      Iterables.addAll(outputs, filesToRun.getRunfilesSupport().getRunfilesArtifacts());
+    }
+    remoteOutputService.addTopLevelDownload(actionInputFetcher.fetchAll(outputs));
+  }
+
+  @Subscribe
+  public void buildComplete(BuildCompleteEvent event) {
+    if (httpCacheStatistics != null) {
+      String summary = httpCacheStatistics.getSummary();
+      if (summary != null) {
+        reporter.handle(Event.info(summary));
+      }
+    }
+  }
+
   @Override
   public void executorInit(CommandEnvironment env, BuildRequest request, ExecutorBuilder builder) {
     if (actionContextProvider != null) {
       builder.addActionContextProvider(actionContextProvider);
     }
+    if (actionInputFetcher != null) {
+      builder.setActionInputPrefetcher(actionInputFetcher);
+    }
+  }
+
+  @Override
+  public void afterCommand() {
+    // The cache is only closed at the end of the execution phase, which not every command reaches.
+    if (cache != null) {
+      cache.shutdownDownloads();
+      cache = null;
+    }
+    if (actionInputFetcher != null) {
+      actionInputFetcher.shutdown();
+      actionInputFetcher = null;
+    }
+    remoteOptions = null;
+    reporter = null;
+    httpCacheStatistics = null;
   }
 
   @Override
@@ -36,6 +36,45 @@ public final class RemoteOptions extends OptionsBase {
   )
   public String remoteHttpCache;
 
+  @Option(
+    name = "experimental_remote_http_cache_http2",
+    defaultValue = "false",
+    category = "remote",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help =
+        "If true, all requests to --remote_http_cache are sent concurrently over a single HTTP/2 "
+            + "connection. The server must support HTTP/2: over https:// it is negotiated with "
+            + "ALPN, over http:// it is assumed."
+  )
+  public boolean experimentalRemoteHttpCacheHttp2;
+
+  @Option(
+    name = "experimental_remote_http_cache_compression",
+    defaultValue = "false",
+    category = "remote",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help =
+        "If true, downloads from --remote_http_cache accept gzip or deflate encoded responses. "
+            + "Uploads are never compressed. The HTTP cache statistics count the compressed bytes."
+  )
+  public boolean experimentalRemoteHttpCacheCompression;
+
+  @Option(
+    name = "experimental_remote_bytestream_compression",
+    defaultValue = "false",
+    category = "remote",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help =
+        "If true, the contents of the blobs that are uploaded to and downloaded from "
+            + "--remote_cache with the ByteStream API are gzip compressed on the wire. The server "
+            + "decompresses uploads transparently, and should compress the responses to reads "
+            + "that are sent compressed."
+  )
+  public boolean experimentalRemoteBytestreamCompression;
+
   @Option(
     name = "remote_rest_cache_pool_size",
     defaultValue = "20",
@@ -212,6 +251,30 @@ public final class RemoteOptions extends OptionsBase {
   )
   public PathFragment experimentalLocalDiskCachePath;
 
+  @Option(
+    name = "experimental_local_disk_cache_upload_jobs",
+    defaultValue = "4",
+    category = "remote",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "If both the local disk cache and --remote_http_cache are used, the number of blobs "
+        + "that are uploaded to the remote cache at the same time, in the background."
+  )
+  public int experimentalLocalDiskCacheUploadJobs;
+
+  @Option(
+    name = "experimental_local_disk_cache_pending_uploads",
+    defaultValue = "1000",
+    category = "remote",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "If both the local disk cache and --remote_http_cache are used, the number of uploads "
+        + "to the remote cache that can be waiting for a free upload job. When there are more, "
+        + "actions upload their outputs themselves. If 0, actions always upload their outputs "
+        + "before they complete."
+  )
+  public int experimentalLocalDiskCachePendingUploads;
+
   @Option(
     name = "experimental_guard_against_concurrent_changes",
     defaultValue = "false",
@@ -223,4 +286,90 @@ public final class RemoteOptions extends OptionsBase {
         + "writing of files, which could cause false positives."
   )
   public boolean experimentalGuardAgainstConcurrentChanges;
+
+  @Option(
+    name = "experimental_remote_prefetch_jobs",
+    defaultValue = "16",
+    category = "remote",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "The maximum number of concurrent downloads of action inputs that are only available "
+        + "in the remote cache."
+  )
+  public int experimentalRemotePrefetchJobs;
+
+  @Option(
+    name = "experimental_remote_download_jobs",
+    defaultValue = "16",
+    category = "remote",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "The maximum number of concurrent downloads of output files of remotely executed or "
+        + "cached actions, across all actions. If 1, the output files of an action are downloaded "
+        + "one after the other."
+  )
+  public int experimentalRemoteDownloadJobs;
+
+  @Option(
+    name = "experimental_remote_known_digests",
+    defaultValue = "0",
+    category = "remote",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "The number of digests that the gRPC remote cache recently reported to have, or that "
+        + "were uploaded to it, to remember across actions and builds. These are not asked about "
+        + "again, and neither are the contents of input directories with such a digest. 0 "
+        + "disables this."
+  )
+  public long experimentalRemoteKnownDigests;
+
+  @Option(
+    name = "experimental_remote_known_digests_ttl",
+    defaultValue = "600",
+    category = "remote",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "The number of seconds after which a digest in --experimental_remote_known_digests is "
+        + "asked about again. This must be well below the time the remote cache keeps blobs for."
+  )
+  public long experimentalRemoteKnownDigestsTtlSeconds;
+
+  @Option(
+    name = "experimental_remote_find_missing_blobs_batch_window",
+    defaultValue = "0",
+    category = "remote",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "The number of milliseconds to wait before asking the gRPC remote cache which inputs of "
+        + "an action it is missing, so that the questions of concurrent actions are asked in a "
+        + "single call. 0 disables this."
+  )
+  public long experimentalRemoteFindMissingBlobsBatchWindowMillis;
+
+  @Option(
+    name = "experimental_remote_speculative_prefetch",
+    defaultValue = "true",
+    category = "remote",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "Whether to start downloading outputs that are only available in the remote cache as "
+        + "soon as the action producing them finishes, rather than when a local action needs them."
+  )
+  public boolean experimentalRemoteSpeculativePrefetch;
+
+  @Option(
+    name = "experimental_remote_lazy_outputs",
+    defaultValue = "false",
+    category = "remote",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "If set to true, the output files of remotely executed or cached actions are not "
+        + "written to the local output tree. Only their metadata is kept, and they are downloaded "
+        + "when a local action, a test or Bazel itself needs them, and for the top-level targets "
+        + "at the end of the build. Combine with --noexperimental_remote_speculative_prefetch to "
+        + "download nothing else. Requires a remote cache that keeps the outputs of cached "
+        + "actions for at least as long as the action results. If a later build uses a different "
+        + "remote cache, the outputs left in the previous one are built again."
+  )
+  public boolean experimentalRemoteLazyOutputs;
 }
@@ -0,0 +1,331 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.remote;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.devtools.build.lib.actions.Action;
+import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.BuildFailedException;
+import com.google.devtools.build.lib.actions.ExecException;
+import com.google.devtools.build.lib.actions.cache.Metadata;
+import com.google.devtools.build.lib.actions.cache.MetadataHandler;
+import com.google.devtools.build.lib.events.EventHandler;
+import com.google.devtools.build.lib.packages.Target;
+import com.google.devtools.build.lib.skyframe.OutputService;
+import com.google.devtools.build.lib.vfs.BatchStat;
+import com.google.devtools.build.lib.vfs.FileStatus;
+import com.google.devtools.build.lib.vfs.ModifiedFileSet;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import com.google.devtools.build.lib.vfs.Symlinks;
+import com.google.devtools.remoteexecution.v1test.Digest;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Keeps track of the outputs of remotely executed or cached actions that were left in the remote
+ * cache instead of being written to the local output tree.
+ *
+ * <p>Such an output only exists as metadata: the action's {@link MetadataHandler} holds its digest
+ * and size, and this service additionally records whether it is executable. {@link
+ * RemoteActionInputFetcher} downloads the file once a local action, a test or Blaze itself needs it,
+ * and the outputs of the top-level targets at the end of the build. The outputs are tracked for the
+ * lifetime of the server, since that is how long Skyframe keeps the metadata.
+ *
+ * <p>Since these outputs have no FileValues, Skyframe doesn't notice if they are changed locally
+ * once they have been downloaded. This service checks them at the start of each build instead,
+ * and puts back the remote file in place of one that was changed or deleted. Outputs left in a
+ * remote cache are only valid as long as that cache is used, see {@link #setRemoteCache}.
+ *
+ * <p>Apart from that, the output tree is left to the local file system.
+ */
+final class RemoteOutputService implements OutputService {
+  private static final Logger logger = Logger.getLogger(RemoteOutputService.class.getName());
+
+  /** An output that has to be downloaded before it can be read locally. */
+  static final class RemoteFile {
+    final Digest digest;
+    final boolean isExecutable;
+
+    RemoteFile(Digest digest, boolean isExecutable) {
+      this.digest = digest;
+      this.isExecutable = isExecutable;
+    }
+  }
+
+  private final String filesSystemName;
+  private final String workspaceName;
+  private final ConcurrentMap<Path, RemoteFile> remoteFiles = new ConcurrentHashMap<>();
+  /** The outputs that were downloaded, with the status of the local file right after. */
+  private final ConcurrentMap<Path, DownloadedFile> downloadedFiles = new ConcurrentHashMap<>();
+  /** Identifies the remote cache the outputs in {@link #remoteFiles} were left in. */
+  @Nullable private String remoteCacheKey;
+  private final List<ListenableFuture<Void>> topLevelDownloads = new ArrayList<>();
+
+  /**
+   * @param filesSystemName the name of the file system the output tree is on
+   * @param workspaceName the name of the workspace
+   */
+  RemoteOutputService(String filesSystemName, String workspaceName) {
+    this.filesSystemName = filesSystemName;
+    this.workspaceName = workspaceName;
+  }
+
+  /** A downloaded output, and the status of the local file it was written to. */
+  private static final class DownloadedFile {
+    final RemoteFile remoteFile;
+    final long size;
+    final long lastChangeTime;
+    final long nodeId;
+
+    DownloadedFile(RemoteFile remoteFile, FileStatus status) throws IOException {
+      this.remoteFile = remoteFile;
+      this.size = status.getSize();
+      this.lastChangeTime = status.getLastChangeTime();
+      this.nodeId = status.getNodeId();
+    }
+
+    /** Returns whether the local file is still the one that was downloaded. */
+    boolean isUnchanged(@Nullable FileStatus status) throws IOException {
+      return status != null
+          && status.isFile()
+          && status.getSize() == size
+          && status.getLastChangeTime() == lastChangeTime
+          && status.getNodeId() == nodeId;
+    }
+
+    /** Returns whether the local file has the contents and mode of the remote file. */
+    boolean hasSameContents(Path path, @Nullable FileStatus status) throws IOException {
+      return status != null
+          && status.isFile()
+          && path.isExecutable() == remoteFile.isExecutable
+          && DigestUtil.buildDigest(path.getDigest(), status.getSize()).equals(remoteFile.digest);
+    }
+  }
+
+  /**
+   * Sets the remote cache that outputs are left in from now on, identified by the given key.
+   *
+   * <p>Outputs left in a different cache can't be downloaded anymore, so they are forgotten. If
+   * there were any, this returns true; the actions that produced them must then be executed again,
+   * which the caller has to arrange by dropping their metadata from Skyframe.
+   */
+  boolean setRemoteCache(String key) {
+    if (key.equals(remoteCacheKey)) {
+      return false;
+    }
+    remoteCacheKey = key;
+    boolean forgotRemoteFiles = !remoteFiles.isEmpty();
+    remoteFiles.clear();
+    return forgotRemoteFiles;
+  }
+
+  /** Records that the given output only exists in the remote cache. */
+  void addRemoteFile(Path path, Digest digest, boolean isExecutable) {
+    remoteFiles.put(path, new RemoteFile(digest, isExecutable));
+    downloadedFiles.remove(path);
+  }
+
+  /** Returns the given output if it only exists in the remote cache, or null. */
+  @Nullable
+  RemoteFile getRemoteFile(Path path) {
+    return remoteFiles.get(path);
+  }
+
+  /**
+   * Records that the given output has been downloaded, so that a later build can check whether it
+   * is still there.
+   */
+  void remoteFileDownloaded(Path path, RemoteFile remoteFile) throws IOException {
+    DownloadedFile downloaded = new DownloadedFile(remoteFile, path.stat(Symlinks.NOFOLLOW));
+    if (remoteFiles.remove(path, remoteFile)) {
+      downloadedFiles.put(path, downloaded);
+    }
+  }
+
+  /** Makes the end of the build wait for the given download of top-level outputs. */
+  void addTopLevelDownload(ListenableFuture<Void> download) {
+    synchronized (topLevelDownloads) {
+      topLevelDownloads.add(download);
+    }
+  }
+
+  @VisibleForTesting
+  int remoteFileCount() {
+    return remoteFiles.size();
+  }
+
+  @VisibleForTesting
+  int downloadedFileCount() {
+    return downloadedFiles.size();
+  }
+
+  @Override
+  public String getFilesSystemName() {
+    return filesSystemName;
+  }
+
+  @Override
+  public String getName() {
+    return "remote";
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Puts back the remote file in place of downloaded outputs that were changed or deleted
+   * locally, since the metadata Skyframe holds for them still describes the remote file. As for
+   * the other outputs, this service doesn't know which ones were modified, so they all have to be
+   * checked.
+   */
+  @Override
+  public ModifiedFileSet startBuild(
+      EventHandler eventHandler, UUID buildId, boolean finalizeActions) {
+    int restored = 0;
+    for (Map.Entry<Path, DownloadedFile> entry : downloadedFiles.entrySet()) {
+      Path path = entry.getKey();
+      DownloadedFile downloaded = entry.getValue();
+      try {
+        FileStatus status = path.statIfFound(Symlinks.NOFOLLOW);
+        if (downloaded.isUnchanged(status)) {
+          continue;
+        }
+        if (downloaded.hasSameContents(path, status)) {
+          // Written again with the same contents, for example by a local execution of the action.
+          downloadedFiles.replace(
+              path, downloaded, new DownloadedFile(downloaded.remoteFile, status));
+          continue;
+        }
+        path.delete();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Failed to check downloaded output " + path, e);
+      }
+      if (downloadedFiles.remove(path, downloaded)) {
+        remoteFiles.putIfAbsent(path, downloaded.remoteFile);
+        restored++;
+      }
+    }
+    if (restored > 0) {
+      logger.info(restored + " downloaded outputs were modified, and will be downloaded again");
+    }
+    return ModifiedFileSet.EVERYTHING_MODIFIED;
+  }
+
+  @Override
+  public void finalizeBuild(boolean buildSuccessful)
+      throws BuildFailedException, InterruptedException {
+    List<ListenableFuture<Void>> downloads;
+    synchronized (topLevelDownloads) {
+      downloads = new ArrayList<>(topLevelDownloads);
+      topLevelDownloads.clear();
+    }
+    try {
+      Futures.allAsList(downloads).get();
+    } catch (ExecutionException e) {
+      if (buildSuccessful) {
+        throw new BuildFailedException(
+            "Failed to download the outputs of the top-level targets: "
+                + e.getCause().getMessage());
+      }
+    }
+  }
+
+  /**
+   * Forgets the outputs of the given action that no longer match the remote file recorded for them,
+   * because the action has been executed again and wrote them locally.
+   */
+  @Override
+  public void finalizeAction(Action action, MetadataHandler metadataHandler) {
+    for (Artifact output : action.getOutputs()) {
+      DownloadedFile downloaded = downloadedFiles.get(output.getPath());
+      if (downloaded != null && !matches(output, metadataHandler, downloaded.remoteFile)) {
+        downloadedFiles.remove(output.getPath(), downloaded);
+      }
+      RemoteFile remoteFile = remoteFiles.get(output.getPath());
+      if (remoteFile != null && !matches(output, metadataHandler, remoteFile)) {
+        remoteFiles.remove(output.getPath(), remoteFile);
+      }
+    }
+  }
+
+  /** Returns whether the metadata of the given output describes the given remote file. */
+  private static boolean matches(
+      Artifact output, MetadataHandler metadataHandler, RemoteFile remoteFile) {
+    try {
+      Metadata metadata = metadataHandler.getMetadata(output);
+      return metadata != null
+          && metadata.getDigest() != null
+          && DigestUtil.buildDigest(metadata.getDigest(), metadata.getSize())
+              .equals(remoteFile.digest);
+    } catch (IOException e) {
+      // The remote file is of no use either way.
+      return false;
+    }
+  }
+
+  @Override
+  public Path stageTool(Target tool) {
+    return tool.getPackage().getPackageDirectory().getRelative(tool.getName());
+  }
+
+  @Override
+  public String getWorkspace() {
+    return workspaceName;
+  }
+
+  @Override
+  public BatchStat getBatchStatter() {
+    return null;
+  }
+
+  @Override
+  public boolean canCreateSymlinkTree() {
+    return false;
+  }
+
+  @Override
+  public void createSymlinkTree(
+      Path inputPath, Path outputPath, boolean filesetTree, PathFragment symlinkTreeRoot)
+      throws ExecException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void clean() {
+    remoteFiles.clear();
+    downloadedFiles.clear();
+  }
+
+  @Override
+  public boolean isRemoteFile(Path file) {
+    return remoteFiles.containsKey(file);
+  }
+
+  @Override
+  public boolean resolvedPathUnderTree(Path path) {
+    return remoteFiles.containsKey(path);
+  }
+}
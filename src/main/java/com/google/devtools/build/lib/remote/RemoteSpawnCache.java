@@ -65,6 +65,8 @@ final class RemoteSpawnCache implements SpawnCache {
   private final AtomicBoolean warningReported = new AtomicBoolean();
 
   private final DigestUtil digestUtil;
+  /** Downloads the outputs left in the remote cache, or null to download all outputs eagerly. */
+  @Nullable private final RemoteActionInputFetcher lazyOutputFetcher;
 
   RemoteSpawnCache(
       Path execRoot,
@@ -75,6 +77,28 @@ final class RemoteSpawnCache implements SpawnCache {
       boolean verboseFailures,
       @Nullable Reporter cmdlineReporter,
       DigestUtil digestUtil) {
+    this(
+        execRoot,
+        options,
+        remoteCache,
+        buildRequestId,
+        commandId,
+        verboseFailures,
+        cmdlineReporter,
+        digestUtil,
+        /*lazyOutputFetcher=*/ null);
+  }
+
+  RemoteSpawnCache(
+      Path execRoot,
+      RemoteOptions options,
+      AbstractRemoteActionCache remoteCache,
+      String buildRequestId,
+      String commandId,
+      boolean verboseFailures,
+      @Nullable Reporter cmdlineReporter,
+      DigestUtil digestUtil,
+      @Nullable RemoteActionInputFetcher lazyOutputFetcher) {
     this.execRoot = execRoot;
     this.options = options;
     this.remoteCache = remoteCache;
@@ -83,6 +107,7 @@ final class RemoteSpawnCache implements SpawnCache {
     this.buildRequestId = buildRequestId;
     this.commandId = commandId;
     this.digestUtil = digestUtil;
+    this.lazyOutputFetcher = lazyOutputFetcher;
   }
 
   @Override
@@ -119,9 +144,20 @@ final class RemoteSpawnCache implements SpawnCache {
               : null;
       if (result != null) {
         // We don't cache failed actions, so we know the outputs exist.
-        // For now, download all outputs locally; in the future, we can reuse the digests to
-        // just update the TreeNodeRepository and continue the build.
-        remoteCache.download(result, execRoot, policy.getFileOutErr());
+        if (lazyOutputFetcher != null) {
+          // Leave the output files in the remote cache until something reads them.
+          remoteCache.downloadLazily(
+              result,
+              execRoot,
+              policy.getFileOutErr(),
+              spawn.getOutputFiles(),
+              policy.getMetadataHandler(),
+              lazyOutputFetcher);
+        } else {
+          // For now, download all outputs locally; in the future, we can reuse the digests to
+          // just update the TreeNodeRepository and continue the build.
+          remoteCache.download(result, execRoot, policy.getFileOutErr());
+        }
         SpawnResult spawnResult =
             new SpawnResult.Builder()
                 .setStatus(Status.SUCCESS)
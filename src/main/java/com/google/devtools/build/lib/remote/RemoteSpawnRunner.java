@@ -82,6 +82,8 @@ class RemoteSpawnRunner implements SpawnRunner {
   private final String buildRequestId;
   private final String commandId;
   private final DigestUtil digestUtil;
+  /** Downloads the outputs left in the remote cache, or null to download all outputs eagerly. */
+  @Nullable private final RemoteActionInputFetcher lazyOutputFetcher;
 
   // Used to ensure that a warning is reported only once.
   private final AtomicBoolean warningReported = new AtomicBoolean();
@@ -97,6 +99,32 @@ class RemoteSpawnRunner implements SpawnRunner {
       @Nullable AbstractRemoteActionCache remoteCache,
       @Nullable GrpcRemoteExecutor remoteExecutor,
       DigestUtil digestUtil) {
+    this(
+        execRoot,
+        options,
+        fallbackRunner,
+        verboseFailures,
+        cmdlineReporter,
+        buildRequestId,
+        commandId,
+        remoteCache,
+        remoteExecutor,
+        digestUtil,
+        /*lazyOutputFetcher=*/ null);
+  }
+
+  RemoteSpawnRunner(
+      Path execRoot,
+      RemoteOptions options,
+      SpawnRunner fallbackRunner,
+      boolean verboseFailures,
+      @Nullable Reporter cmdlineReporter,
+      String buildRequestId,
+      String commandId,
+      @Nullable AbstractRemoteActionCache remoteCache,
+      @Nullable GrpcRemoteExecutor remoteExecutor,
+      DigestUtil digestUtil,
+      @Nullable RemoteActionInputFetcher lazyOutputFetcher) {
     this.execRoot = execRoot;
     this.options = options;
     this.fallbackRunner = fallbackRunner;
@@ -107,6 +135,19 @@ class RemoteSpawnRunner implements SpawnRunner {
     this.buildRequestId = buildRequestId;
     this.commandId = commandId;
     this.digestUtil = digestUtil;
+    this.lazyOutputFetcher = lazyOutputFetcher;
+  }
+
+  @Override
+  public boolean usesLocalRunfilesTree(Spawn spawn) {
+    if (!Spawns.mayBeExecutedRemotely(spawn)
+        || remoteCache == null
+        || remoteExecutor == null
+        || options.remoteLocalFallback) {
+      // The spawn may end up running on the local machine through the fallback runner.
+      return fallbackRunner.usesLocalRunfilesTree(spawn);
+    }
+    return false;
   }
 
   @Override
@@ -156,7 +197,7 @@ class RemoteSpawnRunner implements SpawnRunner {
                     + actionKey.getDigest());
           }
           try {
-            return downloadRemoteResults(cachedResult, policy.getFileOutErr());
+            return downloadRemoteResults(cachedResult, spawn, policy);
           } catch (CacheNotFoundException e) {
             // No cache hit, so we fall through to local or remote execution.
             // We set acceptCachedResult to false in order to force the action re-execution.
@@ -193,7 +234,7 @@ class RemoteSpawnRunner implements SpawnRunner {
       }
 
       try {
-        return downloadRemoteResults(result, policy.getFileOutErr());
+        return downloadRemoteResults(result, spawn, policy);
       } catch (IOException e) {
         return execLocallyOrFail(spawn, policy, inputMap, actionKey, uploadLocalResults, e);
       }
@@ -202,9 +243,20 @@ class RemoteSpawnRunner implements SpawnRunner {
     }
   }
 
-  private SpawnResult downloadRemoteResults(ActionResult result, FileOutErr outErr)
+  private SpawnResult downloadRemoteResults(
+      ActionResult result, Spawn spawn, SpawnExecutionPolicy policy)
       throws ExecException, IOException, InterruptedException {
-    remoteCache.download(result, execRoot, outErr);
+    if (lazyOutputFetcher != null && result.getExitCode() == 0) {
+      remoteCache.downloadLazily(
+          result,
+          execRoot,
+          policy.getFileOutErr(),
+          spawn.getOutputFiles(),
+          policy.getMetadataHandler(),
+          lazyOutputFetcher);
+    } else {
+      remoteCache.download(result, execRoot, policy.getFileOutErr());
+    }
     int exitCode = result.getExitCode();
     return new SpawnResult.Builder()
         .setStatus(exitCode == 0 ? Status.SUCCESS : Status.NON_ZERO_EXIT)
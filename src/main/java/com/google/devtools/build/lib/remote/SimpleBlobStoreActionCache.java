@@ -54,8 +54,14 @@ public final class SimpleBlobStoreActionCache extends AbstractRemoteActionCache
 
   private final SimpleBlobStore blobStore;
 
+  /** Creates a cache that downloads the output files of an action one after the other. */
   public SimpleBlobStoreActionCache(SimpleBlobStore blobStore, DigestUtil digestUtil) {
-    super(digestUtil);
+    this(blobStore, digestUtil, 1);
+  }
+
+  public SimpleBlobStoreActionCache(
+      SimpleBlobStore blobStore, DigestUtil digestUtil, int maxConcurrentDownloads) {
+    super(digestUtil, maxConcurrentDownloads);
     this.blobStore = blobStore;
   }
 
@@ -87,6 +93,12 @@ public final class SimpleBlobStoreActionCache extends AbstractRemoteActionCache
     }
   }
 
+  /** Downloads the file with the given digest to {@code path}, and checks its digest. */
+  public void downloadFile(Path path, Digest digest, boolean isExecutable)
+      throws IOException, InterruptedException {
+    downloadFile(path, digest, isExecutable, null);
+  }
+
   private Digest uploadFileContents(Path file) throws IOException, InterruptedException {
     Digest digest = digestUtil.compute(file);
     try (InputStream in = file.getInputStream()) {
@@ -208,6 +220,7 @@ public final class SimpleBlobStoreActionCache extends AbstractRemoteActionCache
 
   @Override
   public void close() {
+    super.close();
     blobStore.close();
   }
 
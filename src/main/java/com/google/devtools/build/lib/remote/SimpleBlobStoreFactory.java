@@ -17,6 +17,7 @@ package com.google.devtools.build.lib.remote;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.auth.Credentials;
+import com.google.devtools.build.lib.remote.blobstore.CombinedDiskRemoteBlobStore;
 import com.google.devtools.build.lib.remote.blobstore.OnDiskBlobStore;
 import com.google.devtools.build.lib.remote.blobstore.SimpleBlobStore;
 import com.google.devtools.build.lib.remote.blobstore.http.HttpBlobStore;
@@ -28,7 +29,8 @@ import javax.annotation.Nullable;
 
 /**
  * A factory class for providing a {@link SimpleBlobStore} to be used with {@link
- * SimpleBlobStoreActionCache}. Currently implemented with REST or local.
+ * SimpleBlobStoreActionCache}. Currently implemented with REST, local, or local in front of
+ * REST.
  */
 public final class SimpleBlobStoreFactory {
 
@@ -40,13 +42,15 @@ public final class SimpleBlobStoreFactory {
       return new HttpBlobStore(
           URI.create(options.remoteHttpCache),
           (int) TimeUnit.SECONDS.toMillis(options.remoteTimeout),
-          creds);
+          creds,
+          options.experimentalRemoteHttpCacheHttp2,
+          options.experimentalRemoteHttpCacheCompression);
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
   }
 
-  public static SimpleBlobStore createLocalDisk(RemoteOptions options, Path workingDirectory)
+  public static OnDiskBlobStore createLocalDisk(RemoteOptions options, Path workingDirectory)
       throws IOException {
     return new OnDiskBlobStore(
         workingDirectory.getRelative(checkNotNull(options.experimentalLocalDiskCachePath)));
@@ -55,6 +59,13 @@ public final class SimpleBlobStoreFactory {
   public static SimpleBlobStore create(
       RemoteOptions options, @Nullable Credentials creds, @Nullable Path workingDirectory)
       throws IOException {
+    if (isRestUrlOptions(options) && workingDirectory != null && isLocalDiskCache(options)) {
+      return new CombinedDiskRemoteBlobStore(
+          createLocalDisk(options, workingDirectory),
+          createRest(options, creds),
+          options.experimentalLocalDiskCacheUploadJobs,
+          options.experimentalLocalDiskCachePendingUploads);
+    }
     if (isRestUrlOptions(options)) {
       return createRest(options, creds);
     }
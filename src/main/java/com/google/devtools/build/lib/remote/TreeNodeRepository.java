@@ -422,6 +422,33 @@ public final class TreeNodeRepository extends TreeTraverser<TreeNodeRepository.T
     return digests.build();
   }
 
+  /**
+   * Like {@link #getAllDigests}, but leaves out the digests for which {@code isKnown} holds, and
+   * doesn't descend into the directories that have such a digest.
+   */
+  public ImmutableCollection<Digest> getUnknownDigests(TreeNode root, Predicate<Digest> isKnown)
+      throws IOException {
+    ImmutableSet.Builder<Digest> digests = ImmutableSet.builder();
+    addUnknownDigests(root, isKnown, digests);
+    return digests.build();
+  }
+
+  private void addUnknownDigests(
+      TreeNode node, Predicate<Digest> isKnown, ImmutableSet.Builder<Digest> digests)
+      throws IOException {
+    Digest digest =
+        node.isLeaf()
+            ? actionInputToDigest(node.getActionInput())
+            : Preconditions.checkNotNull(treeNodeDigestCache.get(node));
+    if (isKnown.apply(digest)) {
+      return;
+    }
+    digests.add(digest);
+    for (TreeNode child : children(node)) {
+      addUnknownDigests(child, isKnown, digests);
+    }
+  }
+
   private Digest actionInputToDigest(ActionInput input) throws IOException {
     if (input instanceof VirtualActionInput) {
       return Preconditions.checkNotNull(virtualInputDigestCache.get(input));
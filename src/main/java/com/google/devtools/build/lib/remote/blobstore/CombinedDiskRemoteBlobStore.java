@@ -0,0 +1,296 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.remote.blobstore;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.remoteexecution.v1test.ActionResult;
+import com.google.devtools.remoteexecution.v1test.OutputDirectory;
+import com.google.devtools.remoteexecution.v1test.OutputFile;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link SimpleBlobStore} that keeps a local disk cache in front of a remote one.
+ *
+ * <p>Reads are served from disk if possible. Otherwise they go to the remote cache, and the blobs
+ * that are found are stored on disk for the next time.
+ *
+ * <p>Writes return once the blob is on disk, and are uploaded to the remote cache in the
+ * background. If too many uploads are pending, the writer uploads the blob itself, so that the
+ * uploads can't fall arbitrarily far behind. An action result is only uploaded once the uploads of
+ * the output, stdout and stderr blobs it refers to finished, so that the remote cache never refers to
+ * blobs it doesn't have; uploads of unrelated blobs don't hold it back. If the last upload of one of
+ * these blobs failed, the action result isn't uploaded either. Uploads that fail are logged and otherwise
+ * ignored: the blob is still in the local cache. {@link #close} waits for the pending uploads.
+ */
+public final class CombinedDiskRemoteBlobStore implements SimpleBlobStore {
+  private static final Logger logger =
+      Logger.getLogger(CombinedDiskRemoteBlobStore.class.getName());
+
+  private final OnDiskBlobStore local;
+  private final SimpleBlobStore remote;
+
+  /** Runs the uploads, or null if uploads are synchronous. */
+  @Nullable private final ListeningExecutorService uploads;
+
+  /** The uploads to the CAS that didn't finish yet, by key. */
+  private final ConcurrentMap<String, ListenableFuture<Void>> pendingCasUploads =
+      new ConcurrentHashMap<>();
+
+  /** The keys whose last upload to the CAS failed. */
+  private final Set<String> failedCasUploads = ConcurrentHashMap.newKeySet();
+
+  private final AtomicLong failedUploads = new AtomicLong();
+
+  /**
+   * @param maxConcurrentUploads the number of threads that upload blobs in the background
+   * @param maxPendingUploads the number of uploads that can be queued in addition to the ones
+   *     running, or 0 to upload blobs before returning from {@link #put}
+   */
+  public CombinedDiskRemoteBlobStore(
+      OnDiskBlobStore local,
+      SimpleBlobStore remote,
+      int maxConcurrentUploads,
+      int maxPendingUploads) {
+    this.local = local;
+    this.remote = remote;
+    if (maxPendingUploads == 0) {
+      this.uploads = null;
+    } else {
+      ThreadPoolExecutor executor =
+          new ThreadPoolExecutor(
+              maxConcurrentUploads,
+              maxConcurrentUploads,
+              60,
+              TimeUnit.SECONDS,
+              new ArrayBlockingQueue<>(maxPendingUploads),
+              new ThreadFactoryBuilder().setNameFormat("remote-upload-%d").setDaemon(true).build(),
+              new ThreadPoolExecutor.CallerRunsPolicy());
+      executor.allowCoreThreadTimeOut(true);
+      this.uploads = MoreExecutors.listeningDecorator(executor);
+    }
+  }
+
+  /** Returns the remote cache. */
+  public SimpleBlobStore getRemote() {
+    return remote;
+  }
+
+  /** Returns the number of background uploads that failed. */
+  public long getFailedUploads() {
+    return failedUploads.get();
+  }
+
+  @Override
+  public boolean containsKey(String key) throws IOException, InterruptedException {
+    return local.containsKey(key) || remote.containsKey(key);
+  }
+
+  @Override
+  public boolean get(String key, OutputStream out) throws IOException, InterruptedException {
+    if (local.get(key, out)) {
+      return true;
+    }
+    // Download to a temporary file first, so that a failed download doesn't leave a partial blob
+    // in the local cache, or in out.
+    Path temp = local.toPath(UUID.randomUUID().toString());
+    try {
+      boolean found;
+      try (OutputStream tempOut = temp.getOutputStream()) {
+        found = remote.get(key, tempOut);
+      }
+      if (!found) {
+        return false;
+      }
+      temp.renameTo(local.toPath(key));
+    } finally {
+      temp.delete();
+    }
+    return local.get(key, out);
+  }
+
+  @Override
+  public boolean getActionResult(String key, OutputStream out)
+      throws IOException, InterruptedException {
+    if (local.getActionResult(key, out)) {
+      return true;
+    }
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    if (!remote.getActionResult(key, result)) {
+      return false;
+    }
+    byte[] bytes = result.toByteArray();
+    local.putActionResult(key, bytes);
+    out.write(bytes);
+    return true;
+  }
+
+  @Override
+  public void put(String key, long length, InputStream in)
+      throws IOException, InterruptedException {
+    local.put(key, length, in);
+    if (uploads == null) {
+      upload(key, length);
+      return;
+    }
+    ListenableFuture<Void> upload =
+        uploads.submit(
+            () -> {
+              upload(key, length);
+              return null;
+            });
+    pendingCasUploads.put(key, upload);
+    upload.addListener(
+        () -> {
+          try {
+            Futures.getDone(upload);
+            failedCasUploads.remove(key);
+          } catch (ExecutionException | RuntimeException e) {
+            failedCasUploads.add(key);
+          }
+          pendingCasUploads.remove(key, upload);
+        },
+        MoreExecutors.directExecutor());
+    logFailure(upload, key);
+  }
+
+  private void upload(String key, long length) throws IOException, InterruptedException {
+    try (InputStream in = local.toPath(key).getInputStream()) {
+      remote.put(key, length, in);
+    }
+  }
+
+  @Override
+  public void putActionResult(String key, byte[] in) throws IOException, InterruptedException {
+    local.putActionResult(key, in);
+    if (uploads == null) {
+      remote.putActionResult(key, in);
+      return;
+    }
+    ImmutableSet<String> blobKeys = referencedBlobKeys(in);
+    ImmutableList<ListenableFuture<Void>> blobUploads;
+    if (blobKeys == null) {
+      blobUploads = ImmutableList.copyOf(pendingCasUploads.values());
+    } else {
+      ImmutableList.Builder<ListenableFuture<Void>> builder = ImmutableList.builder();
+      for (String blobKey : blobKeys) {
+        ListenableFuture<Void> blobUpload = pendingCasUploads.get(blobKey);
+        if (blobUpload != null) {
+          builder.add(blobUpload);
+        }
+      }
+      blobUploads = builder.build();
+    }
+    ListenableFuture<Void> upload =
+        uploads.submit(
+            () -> {
+              // The blob uploads were queued before this one, so they don't wait for it.
+              try {
+                Futures.allAsList(blobUploads).get();
+              } catch (ExecutionException e) {
+                throw new IOException("Not uploading the action result, a blob upload failed", e);
+              }
+              if (blobKeys != null && !Collections.disjoint(blobKeys, failedCasUploads)) {
+                throw new IOException("Not uploading the action result, a blob upload failed");
+              }
+              remote.putActionResult(key, in);
+              return null;
+            });
+    logFailure(upload, key);
+  }
+
+  /**
+   * Returns the keys of the output, stdout and stderr blobs that the action result refers to, or
+   * null if it can't be parsed.
+   */
+  @Nullable
+  private static ImmutableSet<String> referencedBlobKeys(byte[] actionResult) {
+    ActionResult result;
+    try {
+      result = ActionResult.parseFrom(actionResult);
+    } catch (InvalidProtocolBufferException e) {
+      return null;
+    }
+    ImmutableSet.Builder<String> keys = ImmutableSet.builder();
+    for (OutputFile file : result.getOutputFilesList()) {
+      keys.add(file.getDigest().getHash());
+    }
+    for (OutputDirectory directory : result.getOutputDirectoriesList()) {
+      keys.add(directory.getTreeDigest().getHash());
+    }
+    if (result.hasStdoutDigest()) {
+      keys.add(result.getStdoutDigest().getHash());
+    }
+    if (result.hasStderrDigest()) {
+      keys.add(result.getStderrDigest().getHash());
+    }
+    return keys.build();
+  }
+
+  private void logFailure(ListenableFuture<Void> upload, String key) {
+    upload.addListener(
+        () -> {
+          try {
+            Futures.getDone(upload);
+          } catch (ExecutionException e) {
+            failedUploads.incrementAndGet();
+            logger.log(Level.WARNING, "Failed to upload " + key, e.getCause());
+          } catch (RuntimeException e) {
+            // Cancelled by close().
+          }
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  @Override
+  public void close() {
+    if (uploads != null) {
+      uploads.shutdown();
+      try {
+        while (!uploads.awaitTermination(1, TimeUnit.MINUTES)) {
+          logger.info("Waiting for the uploads to the remote cache to finish");
+        }
+      } catch (InterruptedException e) {
+        uploads.shutdownNow();
+        Thread.currentThread().interrupt();
+      }
+    }
+    local.close();
+    remote.close();
+  }
+}
@@ -73,7 +73,7 @@ public final class OnDiskBlobStore implements SimpleBlobStore {
   @Override
   public void close() {}
 
-  private Path toPath(String key) {
+  Path toPath(String key) {
     return root.getChild(key);
   }
 }
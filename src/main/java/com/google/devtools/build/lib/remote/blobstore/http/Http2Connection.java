@@ -0,0 +1,159 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.remote.blobstore.http;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http2.Http2MultiplexCodecBuilder;
+import io.netty.handler.codec.http2.Http2SecurityUtil;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import java.io.IOException;
+import java.net.URI;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.net.ssl.SSLException;
+
+/**
+ * An HTTP/2 connection to a server, which the {@link Http2StreamChannelPool}s that use it open
+ * their streams on.
+ *
+ * <p>The connection is made when it is first needed, and made again when the previous one was
+ * closed. The server must support HTTP/2: it is negotiated with ALPN for HTTPS, and assumed for
+ * HTTP.
+ */
+final class Http2Connection {
+  /** The server can't push streams, so there are no inbound streams to handle. */
+  @Sharable
+  private static final class InboundStreamHandler extends ChannelInboundHandlerAdapter {}
+
+  private final Bootstrap bootstrap;
+  @Nullable private final SslContext sslCtx;
+  private final URI uri;
+
+  @GuardedBy("this")
+  private Future<Channel> connection;
+
+  /**
+   * @param bootstrap the bootstrap for the connections to the server
+   * @param sslProvider if not null, TLS is used
+   */
+  Http2Connection(Bootstrap bootstrap, @Nullable SslProvider sslProvider, URI uri)
+      throws SSLException {
+    this.bootstrap = bootstrap.clone();
+    this.uri = uri;
+    this.sslCtx =
+        sslProvider == null
+            ? null
+            : SslContextBuilder.forClient()
+                .sslProvider(sslProvider)
+                .ciphers(Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE)
+                .applicationProtocolConfig(
+                    new ApplicationProtocolConfig(
+                        Protocol.ALPN,
+                        SelectorFailureBehavior.NO_ADVERTISE,
+                        SelectedListenerFailureBehavior.ACCEPT,
+                        ApplicationProtocolNames.HTTP_2))
+                .build();
+    this.bootstrap.handler(
+        new ChannelInitializer<Channel>() {
+          @Override
+          protected void initChannel(Channel ch) {
+            ChannelPipeline p = ch.pipeline();
+            if (sslCtx != null) {
+              p.addLast(sslCtx.newHandler(ch.alloc(), uri.getHost(), uri.getPort()));
+            }
+            p.addLast(
+                Http2MultiplexCodecBuilder.forClient(new InboundStreamHandler())
+                    .initialSettings(Http2Settings.defaultSettings().pushEnabled(false))
+                    .encoderEnforceMaxConcurrentStreams(true)
+                    .build());
+          }
+        });
+  }
+
+  /** Returns a new promise for the event loops of the connection. */
+  <T> Promise<T> newPromise() {
+    return bootstrap.config().group().next().newPromise();
+  }
+
+  /** Returns the connection to the server, once it is ready for streams. */
+  synchronized Future<Channel> get() {
+    if (connection != null
+        && (!connection.isDone() || (connection.isSuccess() && connection.getNow().isActive()))) {
+      return connection;
+    }
+    Promise<Channel> ready = newPromise();
+    ChannelFuture connect = bootstrap.connect();
+    connect.addListener(
+        (ChannelFuture f) -> {
+          if (!f.isSuccess()) {
+            ready.setFailure(f.cause());
+            return;
+          }
+          Channel ch = f.channel();
+          SslHandler ssl = ch.pipeline().get(SslHandler.class);
+          if (ssl == null) {
+            ready.setSuccess(ch);
+            return;
+          }
+          ssl.handshakeFuture()
+              .addListener(
+                  (Future<Channel> handshake) -> {
+                    if (!handshake.isSuccess()) {
+                      ready.setFailure(handshake.cause());
+                    } else if (!ApplicationProtocolNames.HTTP_2.equals(ssl.applicationProtocol())) {
+                      ch.close();
+                      ready.setFailure(
+                          new IOException(uri.getHost() + " does not support HTTP/2"));
+                    } else {
+                      ready.setSuccess(ch);
+                    }
+                  });
+        });
+    connection = ready;
+    return ready;
+  }
+
+  /** Closes the connection, and thereby its streams. */
+  @SuppressWarnings("FutureReturnValueIgnored")
+  synchronized void close() {
+    if (connection != null) {
+      connection.addListener(
+          (Future<Channel> f) -> {
+            if (f.isSuccess()) {
+              f.getNow().close();
+            }
+          });
+      connection = null;
+    }
+  }
+}
@@ -0,0 +1,98 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.remote.blobstore.http;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.channel.pool.ChannelPoolHandler;
+import io.netty.handler.codec.http2.Http2StreamChannelBootstrap;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+
+/**
+ * A {@link ChannelPool} whose channels are HTTP/2 streams of an {@link Http2Connection}.
+ *
+ * <p>Acquiring a channel opens a new stream, and releasing it closes the stream, so that there are
+ * as many requests in flight as there are callers, without a connection for each. Streams above
+ * the limit of the server are queued by the connection. Several pools can share a connection, with
+ * a different pipeline for their streams.
+ */
+final class Http2StreamChannelPool implements ChannelPool {
+  private final Http2Connection connection;
+  private final ChannelPoolHandler handler;
+
+  /**
+   * @param handler sets up the pipeline of each stream, which reads and writes {@link
+   *     io.netty.handler.codec.http.HttpObject}s
+   */
+  Http2StreamChannelPool(Http2Connection connection, ChannelPoolHandler handler) {
+    this.connection = connection;
+    this.handler = handler;
+  }
+
+  @Override
+  public Future<Channel> acquire() {
+    return acquire(connection.<Channel>newPromise());
+  }
+
+  @Override
+  public Future<Channel> acquire(Promise<Channel> promise) {
+    connection
+        .get()
+        .addListener(
+            (Future<Channel> connected) -> {
+              if (!connected.isSuccess()) {
+                promise.setFailure(connected.cause());
+                return;
+              }
+              new Http2StreamChannelBootstrap(connected.getNow())
+                  .handler(
+                      new ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(Channel ch) throws Exception {
+                          handler.channelCreated(ch);
+                        }
+                      })
+                  .open()
+                  .addListener(
+                      (Future<Channel> opened) -> {
+                        if (opened.isSuccess()) {
+                          promise.setSuccess(opened.getNow());
+                        } else {
+                          promise.setFailure(opened.cause());
+                        }
+                      });
+            });
+    return promise;
+  }
+
+  @Override
+  public Future<Void> release(Channel channel) {
+    return release(channel, channel.eventLoop().<Void>newPromise());
+  }
+
+  @Override
+  @SuppressWarnings("FutureReturnValueIgnored")
+  public Future<Void> release(Channel channel, Promise<Void> promise) {
+    // A stream can't be reused.
+    channel.close();
+    return promise.setSuccess(null);
+  }
+
+  /** Does nothing: the streams are closed on release, and the connection may be shared. */
+  @Override
+  public void close() {}
+}
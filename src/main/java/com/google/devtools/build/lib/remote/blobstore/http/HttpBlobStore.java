@@ -15,20 +15,27 @@ package com.google.devtools.build.lib.remote.blobstore.http;
 
 import com.google.auth.Credentials;
 import com.google.devtools.build.lib.remote.blobstore.SimpleBlobStore;
+import com.google.devtools.build.lib.remote.blobstore.http.HttpCacheStatistics.RequestType;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.pool.ChannelPool;
 import io.netty.channel.pool.ChannelPoolHandler;
 import io.netty.channel.pool.SimpleChannelPool;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpContentDecompressor;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpRequestEncoder;
 import io.netty.handler.codec.http.HttpResponseDecoder;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
 import io.netty.handler.ssl.OpenSsl;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
@@ -42,6 +49,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
 import javax.net.ssl.SSLEngine;
 
@@ -63,6 +71,10 @@ import javax.net.ssl.SSLEngine;
  *
  * <p>TLS is supported and enabled automatically when using HTTPS as the URI scheme.
  *
+ * <p>Optionally, all requests, downloads and uploads alike, are sent as concurrent streams of a
+ * single HTTP/2 connection instead of over a connection each, and downloads accept gzip or deflate
+ * encoded responses.
+ *
  * <p>Uploads do not use {@code Expect: 100-CONTINUE} headers, as this would incur an additional
  * roundtrip for every upload and with little practical value as we would expect most uploads to be
  * accepted.
@@ -72,12 +84,29 @@ import javax.net.ssl.SSLEngine;
 public final class HttpBlobStore implements SimpleBlobStore {
 
   private final NioEventLoopGroup eventLoop = new NioEventLoopGroup(2 /* number of threads */);
-  private final SimpleChannelPool downloadChannels;
-  private final SimpleChannelPool uploadChannels;
+  private final ChannelPool downloadChannels;
+  private final ChannelPool uploadChannels;
+  /** The connection that the download and upload streams share, if HTTP/2 is used. */
+  @Nullable private final Http2Connection http2Connection;
   private final URI uri;
+  private final HttpCacheStatistics statistics = new HttpCacheStatistics();
 
   public HttpBlobStore(URI uri, int timeoutMillis, @Nullable final Credentials creds)
       throws Exception {
+    this(uri, timeoutMillis, creds, /* http2= */ false, /* acceptCompressed= */ false);
+  }
+
+  /**
+   * @param http2 whether to multiplex all downloads and uploads over one HTTP/2 connection
+   * @param acceptCompressed whether to ask for compressed downloads
+   */
+  public HttpBlobStore(
+      URI uri,
+      int timeoutMillis,
+      @Nullable final Credentials creds,
+      boolean http2,
+      boolean acceptCompressed)
+      throws Exception {
     boolean useTls = uri.getScheme().equals("https");
     if (uri.getPort() == -1) {
       int port = useTls ? 443 : 80;
@@ -93,13 +122,15 @@ public final class HttpBlobStore implements SimpleBlobStore {
     }
     this.uri = uri;
 
+    final SslProvider sslProvider;
     final SslContext sslCtx;
     if (useTls) {
-        // OpenSsl gives us a > 2x speed improvement on fast networks, but requires netty tcnative
-        // to be there which is not available on all platforms and environments.
-      SslProvider sslProvider = OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK;
+      // OpenSsl gives us a > 2x speed improvement on fast networks, but requires netty tcnative
+      // to be there which is not available on all platforms and environments.
+      sslProvider = OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK;
       sslCtx = SslContextBuilder.forClient().sslProvider(sslProvider).build();
     } else {
+      sslProvider = null;
       sslCtx = null;
     }
     Bootstrap clientBootstrap =
@@ -109,55 +140,137 @@ public final class HttpBlobStore implements SimpleBlobStore {
             .option(ChannelOption.SO_TIMEOUT, timeoutMillis)
             .group(eventLoop)
             .remoteAddress(uri.getHost(), uri.getPort());
-    downloadChannels =
-        new SimpleChannelPool(
-            clientBootstrap,
-            new ChannelPoolHandler() {
-              @Override
-              public void channelReleased(Channel ch) throws Exception {}
-
-              @Override
-              public void channelAcquired(Channel ch) throws Exception {}
-
-              @Override
-              public void channelCreated(Channel ch) throws Exception {
-                ChannelPipeline p = ch.pipeline();
-                if (sslCtx != null) {
-                  SSLEngine engine = sslCtx.newEngine(ch.alloc());
-                  engine.setUseClientMode(true);
-                  p.addFirst(new SslHandler(engine));
+    if (http2) {
+      // TLS is set up by the connection that the streams share.
+      http2Connection = new Http2Connection(clientBootstrap, sslProvider, uri);
+      downloadChannels =
+          new Http2StreamChannelPool(
+              http2Connection,
+              new ChannelPoolHandler() {
+                @Override
+                public void channelReleased(Channel ch) throws Exception {}
+
+                @Override
+                public void channelAcquired(Channel ch) throws Exception {}
+
+                @Override
+                public void channelCreated(Channel ch) throws Exception {
+                  ChannelPipeline p = ch.pipeline();
+                  p.addLast(new Http2StreamFrameToHttpObjectCodec(/* isServer= */ false));
+                  p.addLast(new ReceivedBytesCounter());
+                  if (acceptCompressed) {
+                    p.addLast(new HttpContentDecompressor());
+                  }
+                  p.addLast(new HttpDownloadHandler(creds, acceptCompressed));
                 }
-                p.addLast(new HttpClientCodec());
-                p.addLast(new HttpDownloadHandler(creds));
-              }
-            });
-    uploadChannels =
-        new SimpleChannelPool(
-            clientBootstrap,
-            new ChannelPoolHandler() {
-              @Override
-              public void channelReleased(Channel ch) throws Exception {}
-
-              @Override
-              public void channelAcquired(Channel ch) throws Exception {}
-
-              @Override
-              public void channelCreated(Channel ch) throws Exception {
-                ChannelPipeline p = ch.pipeline();
-                if (sslCtx != null) {
-                  SSLEngine engine = sslCtx.newEngine(ch.alloc());
-                  engine.setUseClientMode(true);
-                  p.addFirst(new SslHandler(engine));
+              });
+      uploadChannels =
+          new Http2StreamChannelPool(
+              http2Connection,
+              new ChannelPoolHandler() {
+                @Override
+                public void channelReleased(Channel ch) throws Exception {}
+
+                @Override
+                public void channelAcquired(Channel ch) throws Exception {}
+
+                @Override
+                public void channelCreated(Channel ch) throws Exception {
+                  ChannelPipeline p = ch.pipeline();
+                  p.addLast(new Http2StreamFrameToHttpObjectCodec(/* isServer= */ false));
+                  // Only error messages are expected in the body, as below.
+                  p.addLast(new HttpObjectAggregator(10 * 1024));
+                  p.addLast(new ChunkedWriteHandler());
+                  p.addLast(new HttpUploadHandler(creds));
                 }
-                p.addLast(new HttpResponseDecoder());
-                // The 10KiB limit was chosen at random. We only expect HTTP servers to respond with
-                // an error message in the body and that should always be less than 10KiB.
-                p.addLast(new HttpObjectAggregator(10 * 1024));
-                p.addLast(new HttpRequestEncoder());
-                p.addLast(new ChunkedWriteHandler());
-                p.addLast(new HttpUploadHandler(creds));
-              }
-            });
+              });
+    } else {
+      http2Connection = null;
+      downloadChannels =
+          new SimpleChannelPool(
+              clientBootstrap,
+              new ChannelPoolHandler() {
+                @Override
+                public void channelReleased(Channel ch) throws Exception {}
+
+                @Override
+                public void channelAcquired(Channel ch) throws Exception {}
+
+                @Override
+                public void channelCreated(Channel ch) throws Exception {
+                  ChannelPipeline p = ch.pipeline();
+                  if (sslCtx != null) {
+                    SSLEngine engine = sslCtx.newEngine(ch.alloc());
+                    engine.setUseClientMode(true);
+                    p.addFirst(new SslHandler(engine));
+                  }
+                  p.addLast(new HttpClientCodec());
+                  p.addLast(new ReceivedBytesCounter());
+                  if (acceptCompressed) {
+                    p.addLast(new HttpContentDecompressor());
+                  }
+                  p.addLast(new HttpDownloadHandler(creds, acceptCompressed));
+                }
+              });
+      uploadChannels =
+          new SimpleChannelPool(
+              clientBootstrap,
+              new ChannelPoolHandler() {
+                @Override
+                public void channelReleased(Channel ch) throws Exception {}
+
+                @Override
+                public void channelAcquired(Channel ch) throws Exception {}
+
+                @Override
+                public void channelCreated(Channel ch) throws Exception {
+                  ChannelPipeline p = ch.pipeline();
+                  if (sslCtx != null) {
+                    SSLEngine engine = sslCtx.newEngine(ch.alloc());
+                    engine.setUseClientMode(true);
+                    p.addFirst(new SslHandler(engine));
+                  }
+                  p.addLast(new HttpResponseDecoder());
+                  // The 10KiB limit was chosen at random. We only expect HTTP servers to respond
+                  // with an error message in the body and that should always be less than 10KiB.
+                  p.addLast(new HttpObjectAggregator(10 * 1024));
+                  p.addLast(new HttpRequestEncoder());
+                  p.addLast(new ChunkedWriteHandler());
+                  p.addLast(new HttpUploadHandler(creds));
+                }
+              });
+    }
+  }
+
+  /** Returns the statistics of the requests sent so far. */
+  public HttpCacheStatistics getStatistics() {
+    return statistics;
+  }
+
+  /**
+   * Counts the bytes of the response bodies that a download channel receives, before they are
+   * decompressed.
+   */
+  private static final class ReceivedBytesCounter extends ChannelInboundHandlerAdapter {
+    // Only touched by the event loop while a download is in flight, and by the thread that
+    // acquired the channel before and after it.
+    private long count;
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+      if (msg instanceof HttpContent) {
+        count += ((HttpContent) msg).content().readableBytes();
+      }
+      ctx.fireChannelRead(msg);
+    }
+
+    void reset() {
+      count = 0;
+    }
+
+    long get() {
+      return count;
+    }
   }
 
   @Override
@@ -170,9 +283,34 @@ public final class HttpBlobStore implements SimpleBlobStore {
     return get(key, out, true);
   }
 
-  @SuppressWarnings("FutureReturnValueIgnored")
   private boolean get(String key, OutputStream out, boolean casDownload)
       throws IOException, InterruptedException {
+    long startNanos = System.nanoTime();
+    AtomicLong receivedBytes = new AtomicLong();
+    boolean found = false;
+    boolean failed = true;
+    try {
+      found = doGet(key, out, casDownload, receivedBytes);
+      failed = false;
+      return found;
+    } finally {
+      statistics.record(
+          RequestType.of(casDownload, /* upload= */ false),
+          receivedBytes.get(),
+          System.nanoTime() - startNanos,
+          found || failed,
+          failed);
+    }
+  }
+
+  /**
+   * @param receivedBytes set to the size of the response body as received, before it is
+   *     decompressed
+   */
+  @SuppressWarnings("FutureReturnValueIgnored")
+  private boolean doGet(
+      String key, OutputStream out, boolean casDownload, AtomicLong receivedBytes)
+      throws IOException, InterruptedException {
     final Channel ch;
     try {
       ch = downloadChannels.acquire().get();
@@ -181,6 +319,8 @@ public final class HttpBlobStore implements SimpleBlobStore {
       return false;
     }
     DownloadCommand download = new DownloadCommand(uri, casDownload, key, out);
+    ReceivedBytesCounter counter = ch.pipeline().get(ReceivedBytesCounter.class);
+    counter.reset();
     try {
       ChannelFuture downloadFuture = ch.writeAndFlush(download);
       downloadFuture.sync();
@@ -197,6 +337,7 @@ public final class HttpBlobStore implements SimpleBlobStore {
       }
       throw e;
     } finally {
+      receivedBytes.set(counter.get());
       downloadChannels.release(ch);
     }
     return true;
@@ -214,9 +355,26 @@ public final class HttpBlobStore implements SimpleBlobStore {
     put(key, length, in, true);
   }
 
-  @SuppressWarnings("FutureReturnValueIgnored")
   private void put(String key, long length, InputStream in, boolean casUpload)
       throws IOException, InterruptedException {
+    long startNanos = System.nanoTime();
+    boolean failed = true;
+    try {
+      doPut(key, length, in, casUpload);
+      failed = false;
+    } finally {
+      statistics.record(
+          RequestType.of(casUpload, /* upload= */ true),
+          failed ? 0 : length,
+          System.nanoTime() - startNanos,
+          /* found= */ true,
+          failed);
+    }
+  }
+
+  @SuppressWarnings("FutureReturnValueIgnored")
+  private void doPut(String key, long length, InputStream in, boolean casUpload)
+      throws IOException, InterruptedException {
     final Channel ch;
     try {
       ch = uploadChannels.acquire().get();
@@ -247,6 +405,9 @@ public final class HttpBlobStore implements SimpleBlobStore {
   public void close() {
     downloadChannels.close();
     uploadChannels.close();
+    if (http2Connection != null) {
+      http2Connection.close();
+    }
     eventLoop.shutdownGracefully();
   }
 }
@@ -0,0 +1,131 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.remote.blobstore.http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * The number, size and latency of the requests that a {@link HttpBlobStore} sent.
+ *
+ * <p>The size is the number of bytes of the bodies on the wire: compressed downloads count the
+ * compressed size, not the size of the blobs.
+ */
+public final class HttpCacheStatistics {
+  /** The kinds of requests. */
+  enum RequestType {
+    CAS_DOWNLOAD("CAS downloads"),
+    AC_DOWNLOAD("AC downloads"),
+    CAS_UPLOAD("CAS uploads"),
+    AC_UPLOAD("AC uploads");
+
+    private final String description;
+
+    RequestType(String description) {
+      this.description = description;
+    }
+
+    static RequestType of(boolean cas, boolean upload) {
+      if (upload) {
+        return cas ? CAS_UPLOAD : AC_UPLOAD;
+      }
+      return cas ? CAS_DOWNLOAD : AC_DOWNLOAD;
+    }
+  }
+
+  private static final class Counters {
+    final AtomicLong requests = new AtomicLong();
+    final AtomicLong misses = new AtomicLong();
+    final AtomicLong failures = new AtomicLong();
+    final AtomicLong bytes = new AtomicLong();
+    final AtomicLong nanos = new AtomicLong();
+    final AtomicLong maxNanos = new AtomicLong();
+  }
+
+  private final Counters[] counters = new Counters[RequestType.values().length];
+
+  HttpCacheStatistics() {
+    for (int i = 0; i < counters.length; i++) {
+      counters[i] = new Counters();
+    }
+  }
+
+  /**
+   * Records a finished request.
+   *
+   * @param bytes the size of the request or response body as sent or received
+   * @param found false if a download didn't find the blob
+   * @param failed whether the request failed with an error
+   */
+  void record(RequestType type, long bytes, long nanos, boolean found, boolean failed) {
+    Counters c = counters[type.ordinal()];
+    c.requests.incrementAndGet();
+    if (!found) {
+      c.misses.incrementAndGet();
+    }
+    if (failed) {
+      c.failures.incrementAndGet();
+    }
+    c.bytes.addAndGet(bytes);
+    c.nanos.addAndGet(nanos);
+    c.maxNanos.accumulateAndGet(nanos, Math::max);
+  }
+
+  long getRequests(RequestType type) {
+    return counters[type.ordinal()].requests.get();
+  }
+
+  long getBytes(RequestType type) {
+    return counters[type.ordinal()].bytes.get();
+  }
+
+  long getMisses(RequestType type) {
+    return counters[type.ordinal()].misses.get();
+  }
+
+  /** Returns a one-line summary of the requests, or null if there were none. */
+  @Nullable
+  public String getSummary() {
+    List<String> items = new ArrayList<>();
+    for (RequestType type : RequestType.values()) {
+      Counters c = counters[type.ordinal()];
+      long requests = c.requests.get();
+      if (requests == 0) {
+        continue;
+      }
+      StringBuilder item = new StringBuilder();
+      item.append(requests).append(' ').append(type.description).append(" (");
+      if (c.misses.get() > 0) {
+        item.append(c.misses.get()).append(" misses, ");
+      }
+      if (c.failures.get() > 0) {
+        item.append(c.failures.get()).append(" failed, ");
+      }
+      item.append(String.format(Locale.US, "%.1f MB, ", c.bytes.get() / 1e6));
+      item.append(
+          String.format(
+              Locale.US,
+              "%.1f ms avg, %d ms max)",
+              c.nanos.get() / 1e6 / requests,
+              TimeUnit.NANOSECONDS.toMillis(c.maxNanos.get())));
+      items.add(item.toString());
+    }
+    return items.isEmpty() ? null : "HTTP cache: " + String.join(", ", items);
+  }
+}
@@ -38,11 +38,17 @@ import java.io.OutputStream;
 /** ChannelHandler for downloads. */
 final class HttpDownloadHandler extends AbstractHttpHandler<HttpObject> {
 
+  private final boolean acceptCompressed;
   private OutputStream out;
   private boolean keepAlive = HttpVersion.HTTP_1_1.isKeepAliveDefault();
 
-  public HttpDownloadHandler(Credentials credentials) {
+  /**
+   * @param acceptCompressed whether to accept compressed responses, which must then be decoded by
+   *     a handler before this one
+   */
+  public HttpDownloadHandler(Credentials credentials, boolean acceptCompressed) {
     super(credentials);
+    this.acceptCompressed = acceptCompressed;
   }
 
   @Override
@@ -56,14 +62,17 @@ final class HttpDownloadHandler extends AbstractHttpHandler<HttpObject> {
             new HttpException(
                 response.status(), "Download failed with Status: " + response.status(), null),
             ctx);
+        return;
       }
-    } else if (msg instanceof HttpContent) {
+    }
+    // Over HTTP/2, a response and its content may come as a single message.
+    if (msg instanceof HttpContent) {
       ByteBuf content = ((HttpContent) msg).content();
       content.readBytes(out, content.readableBytes());
       if (msg instanceof LastHttpContent) {
         succeedAndReset(ctx);
       }
-    } else {
+    } else if (!(msg instanceof HttpResponse)) {
       failAndReset(
           new IllegalArgumentException(
               "Unsupported message type: " + StringUtil.simpleClassName(msg)),
@@ -103,6 +112,13 @@ final class HttpDownloadHandler extends AbstractHttpHandler<HttpObject> {
     httpRequest.headers().set(HttpHeaderNames.HOST, constructHost(request.uri()));
     httpRequest.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
     httpRequest.headers().set(HttpHeaderNames.ACCEPT, "*/*");
+    if (acceptCompressed) {
+      httpRequest
+          .headers()
+          .set(
+              HttpHeaderNames.ACCEPT_ENCODING,
+              HttpHeaderValues.GZIP + "," + HttpHeaderValues.DEFLATE);
+    }
     return httpRequest;
   }
 
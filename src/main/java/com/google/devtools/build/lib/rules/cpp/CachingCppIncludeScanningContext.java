@@ -0,0 +1,74 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.rules.cpp;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.devtools.build.lib.actions.ActionExecutionContext;
+import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.ExecException;
+import com.google.devtools.build.lib.actions.ExecutionStrategy;
+import com.google.devtools.build.lib.rules.cpp.CachingIncludeScanner.InclusionCache;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Scans the sources of C++ compile actions with a {@link CachingIncludeScanner}, so that only the
+ * declared headers they actually reach become inputs.
+ */
+@ExecutionStrategy(contextType = CppIncludeScanningContext.class)
+public class CachingCppIncludeScanningContext implements CppIncludeScanningContext {
+  private final InclusionCache cache;
+
+  /** @param cache the parsed inclusions, which may be shared across builds */
+  public CachingCppIncludeScanningContext(InclusionCache cache) {
+    this.cache = cache;
+  }
+
+  @Override
+  @Nullable
+  public Iterable<Artifact> findAdditionalInputs(
+      CppCompileAction action,
+      ActionExecutionContext actionExecutionContext,
+      IncludeProcessing includeProcessing)
+      throws ExecException, InterruptedException {
+    if (action.useHeaderModules()) {
+      // The modules needed by the compilation are only known if modules are pruned along with the
+      // headers, which requires include scanning to be enabled at analysis time.
+      return null;
+    }
+    Map<PathFragment, Artifact> candidates = new HashMap<>();
+    // The headers in a tree artifact are only known once it is built, so it is kept as an input.
+    List<Artifact> treeArtifacts = new ArrayList<>();
+    for (Artifact artifact :
+        Iterables.concat(action.getMandatoryInputs(), action.getDeclaredIncludeSrcs())) {
+      if (artifact.isTreeArtifact()) {
+        treeArtifacts.add(artifact);
+      } else if (!artifact.isMiddlemanArtifact()) {
+        candidates.put(artifact.getExecPath(), artifact);
+      }
+    }
+    Iterable<Artifact> scanned =
+        includeProcessing.determineAdditionalInputs(
+            new CachingIncludeScanner.Supplier(cache, ImmutableMap.copyOf(candidates)),
+            action,
+            actionExecutionContext);
+    return scanned == null ? null : Iterables.concat(scanned, treeArtifacts);
+  }
+}
@@ -0,0 +1,238 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.rules.cpp;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.devtools.build.lib.actions.ActionExecutionContext;
+import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.ExecException;
+import com.google.devtools.build.lib.actions.cache.DigestUtils;
+import com.google.devtools.build.lib.rules.cpp.IncludeParser.Inclusion;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * An {@link IncludeScanner} that finds the headers a compilation may need by following the
+ * {@code #include} directives of the sources, transitively.
+ *
+ * <p>Inclusions are only resolved to the given candidate headers, usually the headers declared by
+ * the rule and its dependencies; inclusions of other files, such as system headers, are ignored.
+ * The inclusions of each file are cached by content digest, so that a header is parsed once no
+ * matter how many compilations reach it.
+ *
+ * <p>The scanner errs on the side of finding too many headers: conditional compilation is ignored,
+ * and {@code #include_next} resolves to every later match on the search path. If a file can't be
+ * scanned, either because it has computed inclusions or because it can't be read (for example a
+ * generated header that hasn't been built yet), all candidate headers are reported.
+ */
+public class CachingIncludeScanner implements IncludeScanner {
+
+  /** The inclusions of scanned files, keyed by content digest. Shared between scanners. */
+  public static final class InclusionCache {
+    /** Bounds memory use; a cached entry is usually a handful of short strings. */
+    private static final int MAX_CACHED_FILES = 500000;
+
+    private final Cache<HashCode, ImmutableList<Inclusion>> cache =
+        CacheBuilder.newBuilder().concurrencyLevel(16).maximumSize(MAX_CACHED_FILES).build();
+
+    @Nullable
+    ImmutableList<Inclusion> get(HashCode digest) {
+      return cache.getIfPresent(digest);
+    }
+
+    void put(HashCode digest, ImmutableList<Inclusion> inclusions) {
+      cache.put(digest, inclusions);
+    }
+
+    @VisibleForTesting
+    long size() {
+      return cache.size();
+    }
+  }
+
+  /** Supplies scanners that resolve inclusions to a fixed set of candidate headers. */
+  public static final class Supplier implements IncludeScannerSupplier {
+    private final InclusionCache cache;
+    private final ImmutableMap<PathFragment, Artifact> candidates;
+
+    /**
+     * @param cache the cache of parsed inclusions
+     * @param candidates the headers inclusions may resolve to, keyed by execution path
+     */
+    public Supplier(InclusionCache cache, ImmutableMap<PathFragment, Artifact> candidates) {
+      this.cache = cache;
+      this.candidates = candidates;
+    }
+
+    @Override
+    public IncludeScanner scannerFor(
+        List<PathFragment> quoteIncludePaths, List<PathFragment> includePaths) {
+      return new CachingIncludeScanner(cache, candidates, quoteIncludePaths, includePaths);
+    }
+  }
+
+  private final InclusionCache cache;
+  private final ImmutableMap<PathFragment, Artifact> candidates;
+  private final ImmutableList<PathFragment> quoteIncludePaths;
+  private final ImmutableList<PathFragment> includePaths;
+
+  @VisibleForTesting
+  CachingIncludeScanner(
+      InclusionCache cache,
+      ImmutableMap<PathFragment, Artifact> candidates,
+      List<PathFragment> quoteIncludePaths,
+      List<PathFragment> includePaths) {
+    this.cache = cache;
+    this.candidates = candidates;
+    this.quoteIncludePaths = ImmutableList.copyOf(quoteIncludePaths);
+    this.includePaths = ImmutableList.copyOf(includePaths);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The include paths this scanner was created with take precedence over {@code includeDirs}
+   * and {@code quoteIncludeDirs}.
+   */
+  @Override
+  public void process(
+      Artifact mainSource,
+      Collection<Artifact> sources,
+      Map<Artifact, Artifact> legalOutputPaths,
+      List<PathFragment> includeDirs,
+      List<PathFragment> quoteIncludeDirs,
+      List<String> cmdlineIncludes,
+      Set<Artifact> includes,
+      ActionExecutionContext actionExecutionContext)
+      throws IOException, ExecException, InterruptedException {
+    Set<Artifact> visited = new HashSet<>();
+    Deque<Artifact> pending = new ArrayDeque<>();
+    pending.add(mainSource);
+    pending.addAll(sources);
+    // Files named with -include are looked up in the working directory first, and then like
+    // quoted inclusions from the main source.
+    for (String cmdlineInclude : cmdlineIncludes) {
+      resolve(
+          new Inclusion(cmdlineInclude, Inclusion.Kind.QUOTE),
+          PathFragment.EMPTY_FRAGMENT,
+          pending);
+    }
+
+    while (!pending.isEmpty()) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      Artifact file = pending.removeFirst();
+      if (!visited.add(file)) {
+        continue;
+      }
+      includes.add(file);
+      ImmutableList<Inclusion> inclusions = getInclusions(file, legalOutputPaths);
+      if (inclusions == null) {
+        includes.addAll(candidates.values());
+        return;
+      }
+      PathFragment includerDir = file.getExecPath().getParentDirectory();
+      for (Inclusion inclusion : inclusions) {
+        if (inclusion.kind == Inclusion.Kind.COMPUTED) {
+          includes.addAll(candidates.values());
+          return;
+        }
+        resolve(inclusion, includerDir, pending);
+      }
+    }
+  }
+
+  /**
+   * Returns the inclusions of the given file, or null if they can't be determined. Generated files
+   * are scanned through their pre-grepped substitute from {@code legalOutputPaths} if there is one.
+   *
+   * <p>The digest is read from the file system rather than from the action's input metadata: while
+   * inputs are discovered, the prunable headers are not inputs of the action yet.
+   */
+  @Nullable
+  private ImmutableList<Inclusion> getInclusions(
+      Artifact file, Map<Artifact, Artifact> legalOutputPaths) {
+    Artifact toScan = legalOutputPaths.get(file);
+    if (toScan == null) {
+      toScan = file;
+    }
+    Path path = toScan.getPath();
+    try {
+      if (!path.isFile()) {
+        return null;
+      }
+      HashCode digest = HashCode.fromBytes(DigestUtils.getDigestOrFail(path, path.getFileSize()));
+      ImmutableList<Inclusion> inclusions = cache.get(digest);
+      if (inclusions == null) {
+        inclusions = IncludeParser.parse(FileSystemUtils.readContent(path));
+        cache.put(digest, inclusions);
+      }
+      return inclusions;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /** Adds the candidate headers the given inclusion may refer to to {@code found}. */
+  @VisibleForTesting
+  void resolve(Inclusion inclusion, PathFragment includerDir, Collection<Artifact> found) {
+    PathFragment path = PathFragment.create(inclusion.pathString);
+    if (path.isAbsolute()) {
+      addIfCandidate(path, found);
+      return;
+    }
+    boolean next = inclusion.kind.isNext();
+    if (inclusion.kind.isQuote()) {
+      if (addIfCandidate(includerDir.getRelative(path), found) && !next) {
+        return;
+      }
+      for (PathFragment dir : quoteIncludePaths) {
+        if (addIfCandidate(dir.getRelative(path), found) && !next) {
+          return;
+        }
+      }
+    }
+    for (PathFragment dir : includePaths) {
+      if (addIfCandidate(dir.getRelative(path), found) && !next) {
+        return;
+      }
+    }
+  }
+
+  private boolean addIfCandidate(PathFragment execPath, Collection<Artifact> found) {
+    Artifact candidate = candidates.get(execPath.normalize());
+    if (candidate == null) {
+      return false;
+    }
+    found.add(candidate);
+    return true;
+  }
+}
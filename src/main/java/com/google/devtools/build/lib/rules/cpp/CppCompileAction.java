@@ -361,6 +361,11 @@ public class CppCompileAction extends AbstractAction
     return shouldScanIncludes;
   }
 
+  /** Returns whether this action compiles against header modules. */
+  public boolean useHeaderModules() {
+    return useHeaderModules;
+  }
+
   @Override
   public List<PathFragment> getBuiltInIncludeDirectories() {
     return builtInIncludeDirectories;
@@ -578,20 +583,41 @@ public class CppCompileAction extends AbstractAction
 
   @Override
   public List<PathFragment> getQuoteIncludeDirs() {
-    return context.getQuoteIncludeDirs();
+    ImmutableList.Builder<PathFragment> result = ImmutableList.builder();
+    result.addAll(context.getQuoteIncludeDirs());
+    result.addAll(getDirsFromCopts("-iquote"));
+    return result.build();
   }
 
   @Override
   public List<PathFragment> getIncludeDirs() {
     ImmutableList.Builder<PathFragment> result = ImmutableList.builder();
     result.addAll(context.getIncludeDirs());
-    for (String opt : compileCommandLine.getCopts()) {
-      if (opt.startsWith("-I") && opt.length() > 2) {
-        // We insist on the combined form "-Idir".
-        result.add(PathFragment.create(opt.substring(2)));
+    result.addAll(getDirsFromCopts("-I"));
+    return result.build();
+  }
+
+  /**
+   * Returns the directories passed with the given flag in the copts, in either the combined
+   * ("-Idir") or the separated ("-I dir") form.
+   */
+  private List<PathFragment> getDirsFromCopts(String flag) {
+    List<PathFragment> result = new ArrayList<>();
+    List<String> copts = compileCommandLine.getCopts();
+    for (int i = 0; i < copts.size(); i++) {
+      String opt = copts.get(i);
+      if (opt.equals(flag)) {
+        if (i + 1 < copts.size()) {
+          i++;
+          result.add(PathFragment.create(copts.get(i)));
+        } else {
+          System.err.println("WARNING: dangling " + flag + " flag in options for " + prettyPrint());
+        }
+      } else if (opt.startsWith(flag)) {
+        result.add(PathFragment.create(opt.substring(flag.length())));
       }
     }
-    return result.build();
+    return result;
   }
 
   @Override
@@ -617,6 +643,8 @@ public class CppCompileAction extends AbstractAction
         }
       }
     }
+    // Directories searched after the system ones.
+    result.addAll(getDirsFromCopts("-idirafter"));
     return result.build();
   }
 
@@ -1105,6 +1133,7 @@ public class CppCompileAction extends AbstractAction
           actionExecutionContext.getVerboseFailures(),
           this);
     }
+    prefetchOutputsReadLocally(actionExecutionContext);
     ensureCoverageNotesFilesExist();
 
     // This is the .d file scanning part.
@@ -1228,6 +1257,27 @@ public class CppCompileAction extends AbstractAction
     return systemIncludePrefixes;
   }
 
+  /**
+   * Makes sure that the outputs Blaze itself reads after the compilation, the .d file and the
+   * coverage notes, exist locally. They may have been left in a remote cache.
+   */
+  private void prefetchOutputsReadLocally(ActionExecutionContext actionExecutionContext)
+      throws ActionExecutionException, InterruptedException {
+    List<Artifact> outputs = new ArrayList<>();
+    for (Artifact output : getOutputs()) {
+      if (output.isFileType(CppFileTypes.COVERAGE_NOTES)
+          || (getDotdFile() != null && output.equals(getDotdFile().artifact()))) {
+        outputs.add(output);
+      }
+    }
+    try {
+      actionExecutionContext.getActionInputPrefetcher().prefetchFiles(outputs);
+    } catch (IOException e) {
+      throw new ActionExecutionException(
+          "Error fetching the outputs of the compilation: " + e.getMessage(), e, this, false);
+    }
+  }
+
   /**
    * Gcc only creates ".gcno" files if the compilation unit is non-empty.
    * To ensure that the set of outputs for a CppCompileAction remains consistent
@@ -0,0 +1,260 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.rules.cpp;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import java.util.Objects;
+import javax.annotation.Nullable;
+
+/**
+ * Extracts the {@code #include}, {@code #include_next} and {@code #import} directives of a C/C++
+ * file without running the preprocessor.
+ *
+ * <p>Conditional compilation is ignored, so the result is a superset of the inclusions the compiler
+ * actually performs. Directives whose target is produced by macro expansion are reported as
+ * {@link Inclusion.Kind#COMPUTED}, since they can't be resolved without preprocessing.
+ */
+final class IncludeParser {
+
+  private IncludeParser() {}
+
+  /** A single inclusion directive. */
+  static final class Inclusion {
+    /** The syntactic form of an inclusion, which determines how it is resolved. */
+    enum Kind {
+      /** {@code #include "foo.h"} */
+      QUOTE,
+      /** {@code #include <foo.h>} */
+      ANGLE,
+      /** {@code #include_next "foo.h"} */
+      NEXT_QUOTE,
+      /** {@code #include_next <foo.h>} */
+      NEXT_ANGLE,
+      /** {@code #include FOO}, where the included file depends on the expansion of a macro. */
+      COMPUTED;
+
+      boolean isNext() {
+        return this == NEXT_QUOTE || this == NEXT_ANGLE;
+      }
+
+      boolean isQuote() {
+        return this == QUOTE || this == NEXT_QUOTE;
+      }
+    }
+
+    final String pathString;
+    final Kind kind;
+
+    Inclusion(String pathString, Kind kind) {
+      this.pathString = pathString;
+      this.kind = kind;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof Inclusion)) {
+        return false;
+      }
+      Inclusion that = (Inclusion) other;
+      return kind == that.kind && pathString.equals(that.pathString);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(pathString, kind);
+    }
+
+    @Override
+    public String toString() {
+      switch (kind) {
+        case QUOTE:
+        case NEXT_QUOTE:
+          return (kind.isNext() ? "#include_next \"" : "#include \"") + pathString + "\"";
+        case ANGLE:
+        case NEXT_ANGLE:
+          return (kind.isNext() ? "#include_next <" : "#include <") + pathString + ">";
+        default:
+          return "#include " + pathString;
+      }
+    }
+  }
+
+  /** Returns the inclusions of the given file content, in the order in which they appear. */
+  static ImmutableList<Inclusion> parse(byte[] content) {
+    ImmutableList.Builder<Inclusion> result = ImmutableList.builder();
+    Scanner scanner = new Scanner(content);
+    while (scanner.nextDirective()) {
+      Inclusion inclusion = scanner.parseInclusion();
+      if (inclusion != null) {
+        result.add(inclusion);
+      }
+    }
+    return result.build();
+  }
+
+  /** Walks over file content, skipping comments and line continuations. */
+  private static final class Scanner {
+    private final byte[] content;
+    private int pos;
+    private boolean atLineStart = true;
+
+    Scanner(byte[] content) {
+      this.content = content;
+    }
+
+    /**
+     * Advances to just after the next '#' that starts a preprocessor directive. Returns false at
+     * the end of the content.
+     */
+    boolean nextDirective() {
+      while (pos < content.length) {
+        byte c = content[pos];
+        if (c == '\n') {
+          atLineStart = true;
+          pos++;
+        } else if (skipBlank()) {
+          // Whitespace, comments and line continuations don't end the start of a line.
+        } else if (atLineStart && c == '#') {
+          atLineStart = false;
+          pos++;
+          return true;
+        } else if (c == '"' || c == '\'') {
+          skipLiteral(c);
+          atLineStart = false;
+        } else {
+          atLineStart = false;
+          pos++;
+        }
+      }
+      return false;
+    }
+
+    /** Parses the rest of a directive, returning null if it isn't an inclusion. */
+    @Nullable
+    Inclusion parseInclusion() {
+      skipHorizontalSpace();
+      String directive = readIdentifier();
+      boolean next;
+      if (directive.equals("include") || directive.equals("import")) {
+        next = false;
+      } else if (directive.equals("include_next")) {
+        next = true;
+      } else {
+        return null;
+      }
+      skipHorizontalSpace();
+      if (pos >= content.length) {
+        return null;
+      }
+      byte c = content[pos];
+      if (c == '"' || c == '<') {
+        byte terminator = c == '"' ? (byte) '"' : (byte) '>';
+        int start = ++pos;
+        while (pos < content.length && content[pos] != terminator && content[pos] != '\n') {
+          pos++;
+        }
+        if (pos >= content.length || content[pos] != terminator || pos == start) {
+          return null;
+        }
+        String path = new String(content, start, pos - start, UTF_8);
+        pos++;
+        Inclusion.Kind kind;
+        if (c == '"') {
+          kind = next ? Inclusion.Kind.NEXT_QUOTE : Inclusion.Kind.QUOTE;
+        } else {
+          kind = next ? Inclusion.Kind.NEXT_ANGLE : Inclusion.Kind.ANGLE;
+        }
+        return new Inclusion(path, kind);
+      }
+      String macro = readIdentifier();
+      return macro.isEmpty() ? null : new Inclusion(macro, Inclusion.Kind.COMPUTED);
+    }
+
+    /** Skips a single whitespace character, comment or line continuation, if present. */
+    private boolean skipBlank() {
+      byte c = content[pos];
+      if (c == ' ' || c == '\t' || c == '\r' || c == '\f' || c == 0x0B) {
+        pos++;
+        return true;
+      }
+      if (c == '\\' && pos + 1 < content.length) {
+        if (content[pos + 1] == '\n') {
+          pos += 2;
+          return true;
+        }
+        if (content[pos + 1] == '\r' && pos + 2 < content.length && content[pos + 2] == '\n') {
+          pos += 3;
+          return true;
+        }
+      }
+      if (c == '/' && pos + 1 < content.length) {
+        if (content[pos + 1] == '*') {
+          pos += 2;
+          while (pos + 1 < content.length && !(content[pos] == '*' && content[pos + 1] == '/')) {
+            pos++;
+          }
+          pos = Math.min(pos + 2, content.length);
+          return true;
+        }
+        if (content[pos + 1] == '/') {
+          // Leave the newline in place, it ends the line. A line comment may be continued with a
+          // backslash, though.
+          while (pos < content.length && content[pos] != '\n') {
+            pos += content[pos] == '\\' && pos + 1 < content.length ? 2 : 1;
+          }
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private void skipHorizontalSpace() {
+      while (pos < content.length && content[pos] != '\n' && skipBlank()) {}
+    }
+
+    /**
+     * Skips a character or string literal. An unterminated literal, such as the apostrophe in
+     * {@code #error Can't} or in the digit separator of {@code 1'000}, ends at the end of the line,
+     * which is left in place.
+     */
+    private void skipLiteral(byte quote) {
+      pos++;
+      while (pos < content.length && content[pos] != quote && content[pos] != '\n') {
+        pos += content[pos] == '\\' ? 2 : 1;
+      }
+      if (pos < content.length && content[pos] == quote) {
+        pos++;
+      }
+    }
+
+    private String readIdentifier() {
+      int start = pos;
+      while (pos < content.length && isIdentifierChar(content[pos])) {
+        pos++;
+      }
+      return new String(content, start, pos - start, ISO_8859_1);
+    }
+
+    private static boolean isIdentifierChar(byte c) {
+      return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+  }
+}
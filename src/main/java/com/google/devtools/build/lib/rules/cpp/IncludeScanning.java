@@ -0,0 +1,45 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.rules.cpp;
+
+import com.google.devtools.build.lib.actions.ActionExecutionContext;
+import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.ExecException;
+import com.google.devtools.build.lib.rules.cpp.IncludeScanner.IncludeScannerSupplier;
+import com.google.devtools.build.lib.rules.cpp.IncludeScanner.IncludeScanningPreparer;
+import javax.annotation.Nullable;
+
+/**
+ * Runs the include scanner provided by the execution context, if any. Returns null, i.e. keeps all
+ * declared headers as inputs, if there is no include scanner.
+ */
+public class IncludeScanning implements IncludeProcessing {
+  @Override
+  @Nullable
+  public Iterable<Artifact> determineAdditionalInputs(
+      @Nullable IncludeScannerSupplier includeScannerSupplier,
+      CppCompileAction action,
+      ActionExecutionContext actionExecutionContext)
+      throws ExecException, InterruptedException {
+    if (includeScannerSupplier == null) {
+      return null;
+    }
+    return IncludeScanningPreparer.scanForIncludedInputs(
+        action,
+        includeScannerSupplier,
+        actionExecutionContext,
+        action.getSourceFile().getExecPathString());
+  }
+}
@@ -121,6 +121,7 @@ public final class LtoBackendAction extends SpawnAction {
     // Build set of files this LTO backend artifact will import from.
     HashSet<PathFragment> importSet = new HashSet<>();
     try {
+      actionExecutionContext.getActionInputPrefetcher().prefetchFiles(ImmutableList.of(imports));
       for (String line : FileSystemUtils.iterateLinesAsLatin1(imports.getPath())) {
         if (!line.isEmpty()) {
           PathFragment execPath = PathFragment.create(line);
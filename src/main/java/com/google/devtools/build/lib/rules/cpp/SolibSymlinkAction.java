@@ -57,9 +57,11 @@ public final class SolibSymlinkAction extends AbstractAction {
 
   @Override
   public ActionResult execute(ActionExecutionContext actionExecutionContext)
-      throws ActionExecutionException {
+      throws ActionExecutionException, InterruptedException {
     Path mangledPath = symlink.getPath();
     try {
+      // The library may have been left in a remote cache, and the symlink must not dangle.
+      actionExecutionContext.getActionInputPrefetcher().prefetchFiles(getInputs());
       mangledPath.createSymbolicLink(target);
     } catch (IOException e) {
       throw new ActionExecutionException("failed to create _solib symbolic link '"
@@ -62,6 +62,11 @@ public final class RepositoryDelegatorFunction implements SkyFunction {
   // when we decide to update the format.
   private static final int MARKER_FILE_VERSION = 3;
 
+  // The rule keys in marker files outlive the server, so they are always computed with the same
+  // hash function, whatever the fingerprint function of the server is.
+  private static final Fingerprint.Algorithm MARKER_FINGERPRINT_ALGORITHM =
+      Fingerprint.Algorithm.MD5;
+
   // A special repository delegate used to handle Skylark remote repositories if present.
   public static final String SKYLARK_DELEGATE_NAME = "$skylark";
 
@@ -240,7 +245,8 @@ public final class RepositoryDelegatorFunction implements SkyFunction {
   }
 
   private String computeRuleKey(Rule rule, byte[] ruleSpecificData) {
-    return new Fingerprint().addBytes(RuleFormatter.serializeRule(rule).build().toByteArray())
+    return new Fingerprint(MARKER_FINGERPRINT_ALGORITHM)
+        .addBytes(RuleFormatter.serializeRule(rule).build().toByteArray())
         .addBytes(ruleSpecificData)
         .addInt(MARKER_FILE_VERSION).hexDigestAndReset();
   }
@@ -381,7 +387,8 @@ public final class RepositoryDelegatorFunction implements SkyFunction {
     if (directoryValue == null) {
       return null;
     }
-    String ruleKey = new Fingerprint().addBytes(repositoryName.strippedName().getBytes())
+    String ruleKey = new Fingerprint(MARKER_FINGERPRINT_ALGORITHM)
+        .addBytes(repositoryName.strippedName().getBytes())
         .addBytes(repoRoot.getFileSystem().getPath(sourcePath).getPathString().getBytes())
         .addInt(MARKER_FILE_VERSION).hexDigestAndReset();
     byte[] digest = writeMarkerFile(markerPath, new TreeMap<String, String>(), ruleKey);
@@ -59,6 +59,7 @@ import com.google.devtools.build.lib.server.CommandProtos.ExecRequest;
 import com.google.devtools.build.lib.server.RPCServer;
 import com.google.devtools.build.lib.server.signal.InterruptSignalHandler;
 import com.google.devtools.build.lib.shell.JavaSubprocessFactory;
+import com.google.devtools.build.lib.shell.LauncherSubprocessFactory;
 import com.google.devtools.build.lib.shell.SubprocessBuilder;
 import com.google.devtools.build.lib.shell.SubprocessFactory;
 import com.google.devtools.build.lib.unix.UnixFileSystem;
@@ -907,9 +908,15 @@ public final class BlazeRuntime {
     return OS.getCurrent() == OS.WINDOWS ? new WindowsFileSystem() : new UnixFileSystem();
   }
 
-  private static SubprocessFactory subprocessFactoryImplementation() {
+  private static SubprocessFactory subprocessFactoryImplementation(
+      ServerDirectories serverDirectories) {
     if (!"0".equals(System.getProperty("io.bazel.EnableJni")) && OS.getCurrent() == OS.WINDOWS) {
       return WindowsSubprocessFactory.INSTANCE;
+    } else if ("1".equals(System.getProperty("io.bazel.ProcessLauncher"))
+        && OS.getCurrent() == OS.LINUX) {
+      // Starts processes without forking the server, if they don't stream their output to it.
+      return new LauncherSubprocessFactory(
+          serverDirectories.getEmbeddedBinariesRoot().getChild("process-launcher").getPathFile());
     } else {
       return JavaSubprocessFactory.INSTANCE;
     }
@@ -1003,7 +1010,6 @@ public final class BlazeRuntime {
     }
 
     Path.setFileSystemForSerialization(fs);
-    SubprocessBuilder.setSubprocessFactory(subprocessFactoryImplementation());
 
     Path installBasePath = fs.getPath(installBase);
     Path outputBasePath = fs.getPath(outputBase);
@@ -1014,6 +1020,7 @@ public final class BlazeRuntime {
 
     ServerDirectories serverDirectories =
         new ServerDirectories(installBasePath, outputBasePath, startupOptions.installMD5);
+    SubprocessBuilder.setSubprocessFactory(subprocessFactoryImplementation(serverDirectories));
     Clock clock = BlazeClock.instance();
     BlazeRuntime.Builder runtimeBuilder =
         new BlazeRuntime.Builder()
@@ -14,15 +14,26 @@
 
 package com.google.devtools.build.lib.runtime;
 
+import static com.google.devtools.build.lib.profiler.AutoProfiler.profiledAndLogged;
+
 import com.google.common.base.Preconditions;
 import com.google.common.cache.CacheStats;
 import com.google.devtools.build.lib.actions.cache.DigestUtils;
 import com.google.devtools.build.lib.buildtool.BuildRequest;
 import com.google.devtools.build.lib.exec.ExecutionOptions;
 import com.google.devtools.build.lib.exec.ExecutorBuilder;
+import com.google.devtools.build.lib.profiler.AutoProfiler;
+import com.google.devtools.build.lib.profiler.ProfilerTask;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import java.io.IOException;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-/** Enables the caching of file digests in {@link DigestUtils}. */
+/**
+ * Enables the caching of file digests in {@link DigestUtils}, and optionally persists the cache
+ * next to the action cache across server restarts.
+ */
 public class CacheFileDigestsModule extends BlazeModule {
 
   private static final Logger logger = Logger.getLogger(CacheFileDigestsModule.class.getName());
@@ -36,6 +47,15 @@ public class CacheFileDigestsModule extends BlazeModule {
    */
   private Long lastKnownCacheSize;
 
+  /**
+   * Whether the persisted digests have been loaded into the cache since it was last configured.
+   * They only need to be loaded once per server, afterwards the cache holds a superset of them.
+   */
+  private boolean persistentCacheLoaded;
+
+  /** The file to save the cache to after the current command, or null if it isn't persisted. */
+  private Path persistentCacheFile;
+
   public CacheFileDigestsModule() {}
 
   /**
@@ -67,17 +87,53 @@ public class CacheFileDigestsModule extends BlazeModule {
       logger.info("Reconfiguring cache with size=" + options.cacheSizeForComputedFileDigests);
       DigestUtils.configureCache(options.cacheSizeForComputedFileDigests);
       lastKnownCacheSize = options.cacheSizeForComputedFileDigests;
+      persistentCacheLoaded = false;
     }
 
     if (options.cacheSizeForComputedFileDigests == 0) {
       stats = null;
+      persistentCacheFile = null;
       logger.info("Disabled cache");
     } else {
+      persistentCacheFile =
+          options.persistComputedFileDigests
+              ? env.getBlazeWorkspace().getCacheDirectory().getChild("file_digests.blaze")
+              : null;
+      if (persistentCacheFile != null && !persistentCacheLoaded) {
+        loadPersistentCache(persistentCacheFile);
+        persistentCacheLoaded = true;
+      }
       stats = DigestUtils.getCacheStats();
       logStats("Accumulated cache stats before command", stats);
     }
   }
 
+  private static void loadPersistentCache(Path file) {
+    try (AutoProfiler p =
+        profiledAndLogged("Loading file digest cache", ProfilerTask.INFO, logger)) {
+      long entries = DigestUtils.loadCache(file);
+      logger.info("Loaded " + entries + " file digests from " + file);
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to load file digest cache: " + e.getMessage(), e);
+      try {
+        file.delete();
+      } catch (IOException e2) {
+        logger.log(Level.WARNING, "Failed to delete file digest cache: " + e2.getMessage(), e2);
+      }
+    }
+  }
+
+  private static void savePersistentCache(Path file) {
+    try (AutoProfiler p =
+        profiledAndLogged("Saving file digest cache", ProfilerTask.INFO, logger)) {
+      FileSystemUtils.createDirectoryAndParents(file.getParentDirectory());
+      long entries = DigestUtils.saveCache(file);
+      logger.info("Saved " + entries + " file digests to " + file);
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to save file digest cache: " + e.getMessage(), e);
+    }
+  }
+
   @Override
   public void afterCommand() {
     super.afterCommand();
@@ -86,8 +142,14 @@ public class CacheFileDigestsModule extends BlazeModule {
       CacheStats newStats = DigestUtils.getCacheStats();
       Preconditions.checkNotNull(newStats, "The cache is enabled so we must get some stats back");
       logStats("Accumulated cache stats after command", newStats);
-      logStats("Cache stats for finished command", newStats.minus(stats));
+      CacheStats commandStats = newStats.minus(stats);
+      logStats("Cache stats for finished command", commandStats);
+      // Every miss adds a digest to the cache; without misses there is nothing new to save.
+      if (persistentCacheFile != null && commandStats.missCount() > 0) {
+        savePersistentCache(persistentCacheFile);
+      }
       stats = null; // Silence stats until next command that uses the executor.
+      persistentCacheFile = null;
     }
   }
 }
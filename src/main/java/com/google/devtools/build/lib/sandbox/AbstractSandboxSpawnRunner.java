@@ -78,6 +78,12 @@ abstract class AbstractSandboxSpawnRunner implements SpawnRunner {
     }
   }
 
+  @Override
+  public boolean usesLocalRunfilesTree(Spawn spawn) {
+    // The sandbox lays out the runfiles from the spawn's input mapping.
+    return false;
+  }
+
   // TODO(laszlocsomor): refactor this class to make `actuallyExec`'s contract clearer: the caller
   // of `actuallyExec` should not depend on `actuallyExec` calling `runSpawn` because it's easy to
   // forget to do so in `actuallyExec`'s implementations.
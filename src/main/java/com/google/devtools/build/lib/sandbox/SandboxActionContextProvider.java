@@ -134,5 +134,14 @@ final class SandboxActionContextProvider extends ActionContextProvider {
         return sandboxSpawnRunner.exec(spawn, policy);
       }
     }
+
+    @Override
+    public boolean usesLocalRunfilesTree(Spawn spawn) {
+      if (!Spawns.mayBeSandboxed(spawn)) {
+        return fallbackSpawnRunner.usesLocalRunfilesTree(spawn);
+      } else {
+        return sandboxSpawnRunner.usesLocalRunfilesTree(spawn);
+      }
+    }
   }
 }
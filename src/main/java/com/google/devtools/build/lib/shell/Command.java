@@ -18,6 +18,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.ByteStreams;
 import com.google.devtools.build.lib.shell.Consumers.OutErrConsumers;
+import com.google.devtools.build.lib.shell.SubprocessBuilder.StreamAction;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -248,6 +249,29 @@ public final class Command {
             .get();
   }
 
+  /**
+   * Execute this command with no input to stdin, and with its output discarded. If the current
+   * process is interrupted, then the subprocess is also interrupted. This call blocks until the
+   * subprocess completes or an error occurs.
+   *
+   * <p>Unlike {@link #execute(OutputStream, OutputStream)} with null output streams, this does not
+   * create pipes to the subprocess, so it can be started by any {@link SubprocessFactory}. Use it
+   * for commands that write their output to files themselves, such as the process wrapper.
+   *
+   * @return {@link CommandResult} representing result of the execution
+   * @throws ExecFailedException if {@link Runtime#exec(String[])} fails for any reason
+   * @throws AbnormalTerminationException if the process was terminated due to a signal
+   * @throws BadExitStatusException if the process exits with a non-zero status
+   */
+  public CommandResult executeDiscardingOutput() throws CommandException {
+    return doExecute(
+            NO_INPUT,
+            Consumers.createDiscardingConsumers(),
+            StreamAction.DISCARD,
+            KILL_SUBPROCESS_ON_INTERRUPT)
+        .get();
+  }
+
   /**
    * Execute this command with no input to stdin, and with the output captured in memory. If the
    * current process is interrupted, then the subprocess is also interrupted. This call blocks until
@@ -353,12 +377,22 @@ public final class Command {
   }
 
   private FutureCommandResult doExecute(
-      InputStream stdinInput, OutErrConsumers outErrConsumers, boolean killSubprocessOnInterrupt) 
+      InputStream stdinInput, OutErrConsumers outErrConsumers, boolean killSubprocessOnInterrupt)
+          throws ExecFailedException {
+    return doExecute(
+        stdinInput, outErrConsumers, StreamAction.STREAM, killSubprocessOnInterrupt);
+  }
+
+  private FutureCommandResult doExecute(
+      InputStream stdinInput,
+      OutErrConsumers outErrConsumers,
+      StreamAction outputAction,
+      boolean killSubprocessOnInterrupt)
           throws ExecFailedException {
     Preconditions.checkNotNull(stdinInput, "stdinInput");
     logCommand();
 
-    Subprocess process = startProcess();
+    Subprocess process = startProcess(outputAction);
 
     outErrConsumers.logConsumptionStrategy();
     outErrConsumers.registerInputs(
@@ -372,9 +406,14 @@ public final class Command {
     return new FutureCommandResultImpl(this, process, outErrConsumers, killSubprocessOnInterrupt);
   }
 
-  private Subprocess startProcess() throws ExecFailedException {
+  private Subprocess startProcess(StreamAction outputAction) throws ExecFailedException {
     try {
-      return subprocessBuilder.start();
+      // The builder is shared by all executions of this command.
+      synchronized (subprocessBuilder) {
+        subprocessBuilder.setStdout(outputAction);
+        subprocessBuilder.setStderr(outputAction);
+        return subprocessBuilder.start();
+      }
     } catch (IOException ioe) {
       throw new ExecFailedException(this, ioe);
     }
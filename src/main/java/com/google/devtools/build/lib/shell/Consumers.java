@@ -55,6 +55,10 @@ final class Consumers {
     return new OutErrConsumers(new StreamingConsumer(out), new StreamingConsumer(err));
   }
 
+  static OutErrConsumers createDiscardingConsumers() {
+    return new OutErrConsumers(new DiscardingConsumer(), new DiscardingConsumer());
+  }
+
   static class OutErrConsumers {
     private final OutputConsumer out;
     private final OutputConsumer err;
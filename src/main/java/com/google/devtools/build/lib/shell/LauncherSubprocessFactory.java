@@ -0,0 +1,381 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.shell;
+
+import com.google.common.io.ByteStreams;
+import com.google.devtools.build.lib.shell.SubprocessBuilder.StreamAction;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A subprocess factory that starts processes through process-launcher, a small helper binary that
+ * uses posix_spawn(3).
+ *
+ * <p>Starting a process from the server means forking the JVM, whose cost grows with the size of
+ * its heap and its number of threads, and which stalls the other threads of the server while it
+ * happens. The launcher is started once, and then starts all subprocesses from its own tiny address
+ * space. It is sent requests over its stdin, and reports back when processes have started and when
+ * they have exited.
+ *
+ * <p>The launcher has no way to hand pipes back to this process, so processes whose output is
+ * streamed to the caller are still started by {@link JavaSubprocessFactory}. Output that is
+ * redirected to files or discarded, as for everything run through the process wrapper, never goes
+ * through the server.
+ */
+public class LauncherSubprocessFactory implements SubprocessFactory {
+  private static final Logger logger = Logger.getLogger(LauncherSubprocessFactory.class.getName());
+
+  private static final int SIGKILL = 9;
+  private static final int SIGTERM = 15;
+
+  /** The process launcher, and the processes it started that haven't been reported to exit. */
+  private static final class Launcher {
+    private final Process process;
+    private final DataOutputStream out;
+    private final Map<Long, LauncherSubprocess> running = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private volatile boolean dead;
+
+    Launcher(File binary) throws IOException {
+      process = new ProcessBuilder(binary.getPath()).redirectError(Redirect.INHERIT).start();
+      out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+      DataInputStream in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+      Thread reader = new Thread(() -> readReplies(in), "process-launcher-reader");
+      reader.setDaemon(true);
+      reader.start();
+    }
+
+    boolean isDead() {
+      return dead;
+    }
+
+    LauncherSubprocess start(SubprocessBuilder params) throws IOException {
+      long deadlineMillis =
+          params.getTimeoutMillis() > 0
+              ? Math.addExact(System.currentTimeMillis(), params.getTimeoutMillis())
+              : 0;
+      LauncherSubprocess subprocess =
+          new LauncherSubprocess(this, nextId.getAndIncrement(), deadlineMillis);
+      running.put(subprocess.id, subprocess);
+      if (dead) {
+        // The reader thread may have already failed the running processes.
+        running.remove(subprocess.id);
+        throw new IOException("The process launcher is not running");
+      }
+      try {
+        synchronized (out) {
+          out.writeByte('S');
+          out.writeLong(subprocess.id);
+          File workingDirectory = params.getWorkingDirectory();
+          writeString(workingDirectory == null ? "" : workingDirectory.getPath());
+          writeString(getOutputPath(params.getStdout(), params.getStdoutFile()));
+          writeString(getOutputPath(params.getStderr(), params.getStderrFile()));
+          out.writeBoolean(params.redirectErrorStream());
+          out.writeInt(params.getArgv().size());
+          for (String arg : params.getArgv()) {
+            writeString(arg);
+          }
+          Map<String, String> env = params.getEnv();
+          if (env == null) {
+            out.writeInt(-1);
+          } else {
+            out.writeInt(env.size());
+            for (Map.Entry<String, String> entry : env.entrySet()) {
+              writeString(entry.getKey() + "=" + entry.getValue());
+            }
+          }
+          out.flush();
+        }
+      } catch (IOException e) {
+        running.remove(subprocess.id);
+        throw new IOException("Cannot send request to the process launcher", e);
+      }
+      subprocess.awaitStart();
+      return subprocess;
+    }
+
+    void kill(long id, int signal) {
+      if (dead) {
+        return;
+      }
+      try {
+        synchronized (out) {
+          out.writeByte('K');
+          out.writeLong(id);
+          out.writeInt(signal);
+          out.flush();
+        }
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Cannot send signal through the process launcher", e);
+      }
+    }
+
+    /** Writes a string in the encoding that {@link ProcessBuilder} uses for arguments. */
+    private void writeString(String s) throws IOException {
+      byte[] bytes = s.getBytes(Charset.defaultCharset());
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+
+    private void readReplies(DataInputStream in) {
+      try {
+        while (true) {
+          int type = in.read();
+          if (type == -1) {
+            throw new EOFException("The process launcher exited");
+          }
+          long id = in.readLong();
+          LauncherSubprocess subprocess = running.get(id);
+          if (type == 'S') {
+            int pid = in.readInt();
+            byte[] error = new byte[in.readInt()];
+            in.readFully(error);
+            if (subprocess != null) {
+              if (pid <= 0) {
+                running.remove(id);
+              }
+              subprocess.started(pid, new String(error, Charset.defaultCharset()));
+            }
+          } else if (type == 'E') {
+            int exitValue = in.readInt();
+            if (subprocess != null) {
+              running.remove(id);
+              subprocess.exited(exitValue);
+            }
+          } else {
+            throw new IOException("Unexpected reply from the process launcher: " + type);
+          }
+        }
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Lost the connection to the process launcher", e);
+      } finally {
+        dead = true;
+        process.destroy();
+        // Nobody is going to tell us about these processes anymore. They may still be running, but
+        // to the caller they are as good as killed.
+        for (LauncherSubprocess subprocess : running.values()) {
+          subprocess.launcherDied();
+        }
+        running.clear();
+      }
+    }
+  }
+
+  /** A process started by the launcher. */
+  private static final class LauncherSubprocess implements Subprocess {
+    private final Launcher launcher;
+    private final long id;
+    private final long deadlineMillis;
+    private final AtomicBoolean deadlineExceeded = new AtomicBoolean();
+
+    // The following fields are guarded by this.
+    private boolean started;
+    private String startError;
+    private boolean exited;
+    private int exitValue;
+
+    private LauncherSubprocess(Launcher launcher, long id, long deadlineMillis) {
+      this.launcher = launcher;
+      this.id = id;
+      this.deadlineMillis = deadlineMillis;
+    }
+
+    synchronized void started(int pid, String error) {
+      started = true;
+      if (pid <= 0) {
+        startError = error;
+      }
+      notifyAll();
+    }
+
+    synchronized void exited(int exitValue) {
+      this.exitValue = exitValue;
+      exited = true;
+      notifyAll();
+    }
+
+    synchronized void launcherDied() {
+      if (!started) {
+        started(0, "The process launcher exited");
+      } else {
+        exited(0x80 + SIGKILL);
+      }
+    }
+
+    /** Waits until the launcher has started the process, which doesn't take long. */
+    synchronized void awaitStart() throws IOException {
+      boolean interrupted = false;
+      while (!started) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      if (startError != null) {
+        throw new IOException(startError);
+      }
+    }
+
+    @Override
+    public boolean destroy() {
+      launcher.kill(id, SIGTERM);
+      return true;
+    }
+
+    @Override
+    public synchronized int exitValue() {
+      if (!exited) {
+        throw new IllegalThreadStateException("process hasn't exited");
+      }
+      return exitValue;
+    }
+
+    @Override
+    public boolean finished() {
+      if (deadlineMillis > 0
+          && System.currentTimeMillis() > deadlineMillis
+          && deadlineExceeded.compareAndSet(false, true)) {
+        destroy();
+      }
+      synchronized (this) {
+        return exited;
+      }
+    }
+
+    @Override
+    public boolean timedout() {
+      return deadlineExceeded.get();
+    }
+
+    @Override
+    public synchronized void waitFor() throws InterruptedException {
+      if (deadlineMillis > 0) {
+        long waitTimeMillis;
+        while (!exited && (waitTimeMillis = deadlineMillis - System.currentTimeMillis()) > 0) {
+          wait(waitTimeMillis);
+        }
+        if (!exited && deadlineExceeded.compareAndSet(false, true)) {
+          destroy();
+        }
+      }
+      // As in JavaSubprocessFactory, we only return once the process is gone.
+      while (!exited) {
+        wait();
+      }
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      // The process reads from /dev/null.
+      return ByteStreams.nullOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public void close() {
+      // The launcher already reaped the process.
+    }
+  }
+
+  private final File launcherBinary;
+
+  // The following fields are guarded by this.
+  private Launcher launcher;
+  private boolean launcherBroken;
+
+  /** @param launcherBinary the process-launcher binary */
+  public LauncherSubprocessFactory(File launcherBinary) {
+    this.launcherBinary = launcherBinary;
+  }
+
+  @Override
+  public Subprocess create(SubprocessBuilder params) throws IOException {
+    if (params.getStdout() == StreamAction.STREAM || params.getStderr() == StreamAction.STREAM) {
+      return JavaSubprocessFactory.INSTANCE.create(params);
+    }
+    Launcher launcher = getLauncher();
+    if (launcher == null) {
+      return JavaSubprocessFactory.INSTANCE.create(params);
+    }
+    return launcher.start(params);
+  }
+
+  /** Returns the running launcher, starting it if needed, or null if it can't be started. */
+  private synchronized Launcher getLauncher() {
+    if (launcherBroken) {
+      return null;
+    }
+    if (launcher == null || launcher.isDead()) {
+      try {
+        launcher = new Launcher(launcherBinary);
+      } catch (IOException e) {
+        logger.log(
+            Level.WARNING,
+            "Cannot start " + launcherBinary + ", falling back to starting processes directly",
+            e);
+        launcherBroken = true;
+        launcher = null;
+      }
+    }
+    return launcher;
+  }
+
+  /**
+   * Returns the path the launcher should send an output stream to. As in {@link
+   * JavaSubprocessFactory}, an existing file is replaced; the launcher deletes it.
+   */
+  private static String getOutputPath(StreamAction action, File file) {
+    switch (action) {
+      case DISCARD:
+        return "/dev/null";
+
+      case REDIRECT:
+        // The launcher opens the file after changing to the working directory of the process.
+        return file.getAbsolutePath();
+
+      default:
+        throw new IllegalStateException();
+    }
+  }
+}
@@ -14,13 +14,19 @@
 
 package com.google.devtools.build.lib.skyframe;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
 import com.google.devtools.build.lib.cmdline.Label;
+import com.google.devtools.build.lib.events.ExtendedEventHandler;
+import com.google.devtools.build.lib.events.StoredEventHandler;
 import com.google.devtools.build.lib.packages.BuildFileNotFoundException;
 import com.google.devtools.build.lib.packages.RuleClassProvider;
 import com.google.devtools.build.lib.syntax.BuildFileAST;
 import com.google.devtools.build.lib.syntax.Mutability;
 import com.google.devtools.build.lib.syntax.Runtime;
 import com.google.devtools.build.lib.syntax.SkylarkSemantics;
+import com.google.devtools.build.lib.util.Pair;
 import com.google.devtools.build.lib.vfs.FileSystemUtils;
 import com.google.devtools.build.lib.vfs.Path;
 import com.google.devtools.build.lib.vfs.PathFragment;
@@ -46,6 +52,13 @@ public class ASTFileLookupFunction implements SkyFunction {
 
   private final RuleClassProvider ruleClassProvider;
 
+  /**
+   * The ASTs of files without parse errors, by path and digest. The values are weak, so that ASTs
+   * are only kept while Skyframe still has them.
+   */
+  private final Cache<Pair<PathFragment, HashCode>, BuildFileAST> parsedFiles =
+      CacheBuilder.newBuilder().weakValues().build();
+
   public ASTFileLookupFunction(RuleClassProvider ruleClassProvider) {
     this.ruleClassProvider = ruleClassProvider;
   }
@@ -110,6 +123,13 @@ public class ASTFileLookupFunction implements SkyFunction {
     Path path = rootedPath.asPath();
     try {
       long astFileSize = fileValue.getSize();
+      byte[] bytes = FileSystemUtils.readWithKnownFileSize(path, astFileSize);
+      // Hash the bytes we just read rather than reading the file a second time.
+      byte[] digest = fileValue.getDigest();
+      if (digest == null) {
+        digest = path.getFileSystem().getDigestFunction().getHash().hashBytes(bytes).asBytes();
+      }
+      ast = parse(bytes, digest, path.asFragment(), env.getListener());
       try (Mutability mutability = Mutability.create("validate")) {
         com.google.devtools.build.lib.syntax.Environment validationEnv =
             ruleClassProvider
@@ -123,12 +143,8 @@ public class ASTFileLookupFunction implements SkyFunction {
                     /*importMap=*/ null)
                 .setupDynamic(Runtime.PKG_NAME, Runtime.NONE)
                 .setupDynamic(Runtime.REPOSITORY_NAME, Runtime.NONE);
-        byte[] bytes = FileSystemUtils.readWithKnownFileSize(path, astFileSize);
-        ast =
-            BuildFileAST.parseSkylarkFile(
-                bytes, path.getDigest(), path.asFragment(), env.getListener());
-          ast = ast.validate(validationEnv, env.getListener());
-        }
+        ast = ast.validate(validationEnv, env.getListener());
+      }
     } catch (IOException e) {
       throw new ASTLookupFunctionException(new ErrorReadingSkylarkExtensionException(e),
           Transience.TRANSIENT);
@@ -137,6 +153,31 @@ public class ASTFileLookupFunction implements SkyFunction {
     return ASTFileLookupValue.withFile(ast);
   }
 
+  /**
+   * Parses a file, or returns the AST it was parsed into before if its contents are unchanged.
+   *
+   * <p>Returning the same AST makes the new {@link ASTFileLookupValue} equal to the old one, so
+   * that the .bzl files loading this one aren't evaluated again, for example after a file was
+   * touched or a branch was checked out that doesn't change it.
+   */
+  private BuildFileAST parse(
+      byte[] bytes, byte[] digest, PathFragment path, ExtendedEventHandler eventHandler)
+      throws IOException {
+    Pair<PathFragment, HashCode> key = Pair.of(path, HashCode.fromBytes(digest));
+    BuildFileAST ast = parsedFiles.getIfPresent(key);
+    if (ast != null) {
+      return ast;
+    }
+    StoredEventHandler parseEvents = new StoredEventHandler();
+    ast = BuildFileAST.parseSkylarkFile(bytes, digest, path, parseEvents);
+    parseEvents.replayOn(eventHandler);
+    // Files with parse errors or warnings are parsed again, so that their events are reported.
+    if (parseEvents.isEmpty()) {
+      parsedFiles.put(key, ast);
+    }
+    return ast;
+  }
+
   @Nullable
   @Override
   public String extractTag(SkyKey skyKey) {
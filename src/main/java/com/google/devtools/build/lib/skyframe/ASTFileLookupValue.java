@@ -55,6 +55,17 @@ public abstract class ASTFileLookupValue implements SkyValue {
       throw new IllegalStateException(
           "attempted to retrieve unsuccessful lookup reason for successful lookup");
     }
+
+    @Override
+    public boolean equals(Object obj) {
+      // ASTs don't implement equals, but ASTFileLookupFunction reuses the AST of unchanged files.
+      return obj instanceof ASTLookupWithFile && ((ASTLookupWithFile) obj).ast == ast;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(ast);
+    }
   }
  
   /** If the file isn't found, this class encapsulates a message with the reason. */
@@ -79,6 +90,16 @@ public abstract class ASTFileLookupValue implements SkyValue {
     public String getErrorMsg() {
       return this.errorMsg;
     }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof ASTLookupNoFile && ((ASTLookupNoFile) obj).errorMsg.equals(errorMsg);
+    }
+
+    @Override
+    public int hashCode() {
+      return errorMsg.hashCode();
+    }
   }
 
   static ASTFileLookupValue forBadPackage(Label fileLabel, String reason) {
@@ -477,8 +477,10 @@ public class ActionExecutionFunction implements SkyFunction, CompletionReceiver
         // the documentation on MetadataHandler.artifactOmitted. This works by accident because
         // markOmitted is only called for remote execution, and this code only gets executed for
         // local execution.
+        ActionMetadataHandler executionMetadataHandler = metadataHandler;
         metadataHandler =
             new ActionMetadataHandler(state.inputArtifactData, action.getOutputs(), tsgm.get());
+        metadataHandler.copyRemoteOutputs(executionMetadataHandler);
       }
     }
     Preconditions.checkState(!env.valuesMissing(), action);
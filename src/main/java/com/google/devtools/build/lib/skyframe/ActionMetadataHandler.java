@@ -113,6 +113,12 @@ public class ActionMetadataHandler implements MetadataHandler {
   /** Tracks which Artifacts have had metadata injected. */
   private final Set<Artifact> injectedFiles = Sets.newConcurrentHashSet();
 
+  /**
+   * Outputs whose metadata was injected with {@link #injectRemoteFile}. They have no FileValue,
+   * only an entry in additionalOutputData.
+   */
+  private final Set<Artifact> remoteOutputs = Sets.newConcurrentHashSet();
+
   private final ImmutableSet<Artifact> outputs;
 
   /**
@@ -202,6 +208,9 @@ public class ActionMetadataHandler implements MetadataHandler {
       throw new FileNotFoundException(artifact + " not found");
     }
     // It's an ordinary artifact.
+    if (remoteOutputs.contains(artifact)) {
+      return metadataFromValue(additionalOutputData.get(artifact));
+    }
     FileValue fileValue = outputArtifactData.get(artifact);
     if (fileValue != null) {
       // Non-middleman artifacts should only have additionalOutputData if they have
@@ -466,6 +475,26 @@ public class ActionMetadataHandler implements MetadataHandler {
     }
   }
 
+  @Override
+  public void injectRemoteFile(Artifact output, byte[] digest, long size) {
+    Preconditions.checkState(executionMode.get());
+    Preconditions.checkState(injectedFiles.add(output), output);
+    additionalOutputData.put(
+        output, FileArtifactValue.createNormalFile(digest, /*proxy=*/ null, size));
+    remoteOutputs.add(output);
+  }
+
+  /**
+   * Copies the metadata of the outputs the given handler received through {@link
+   * #injectRemoteFile}. There is nothing on disk this handler could read them from.
+   */
+  void copyRemoteOutputs(ActionMetadataHandler other) {
+    for (Artifact output : other.remoteOutputs) {
+      additionalOutputData.put(output, other.additionalOutputData.get(output));
+      remoteOutputs.add(output);
+    }
+  }
+
   @Override
   public void markOmitted(ActionInput output) {
     Preconditions.checkState(executionMode.get());
@@ -494,6 +523,7 @@ public class ActionMetadataHandler implements MetadataHandler {
     outputDirectoryListings.clear();
     outputTreeArtifactData.clear();
     additionalOutputData.clear();
+    remoteOutputs.clear();
   }
 
   /** @return data for output files that was computed during execution. */
@@ -0,0 +1,145 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.skyframe;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.devtools.build.lib.UnixJniLoader;
+import com.google.devtools.build.lib.util.OS;
+import com.google.devtools.common.options.OptionsClassProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A {@link DiffAwareness} that uses inotify directly to watch the filesystem, in lieu of {@link
+ * WatchServiceDiffAwareness}.
+ *
+ * <p>All directories of the tree are registered in a single native call, without creating Java
+ * objects for them. A native thread drains the inotify queue as events arrive and coalesces them
+ * into a set of changed paths, so that the kernel queue rarely overflows between builds. If it
+ * does, or if a directory is moved out of the tree, the next diff is {@link
+ * com.google.devtools.build.lib.vfs.ModifiedFileSet#EVERYTHING_MODIFIED}, but the watches are kept
+ * for the builds after that.
+ */
+public final class LinuxInotifyDiffAwareness extends LocalDiffAwareness {
+  private boolean closed;
+
+  // Keep a pointer to a native structure in the JNI code (the reader thread needs that structure).
+  private long nativePointer;
+
+  private boolean opened;
+
+  LinuxInotifyDiffAwareness(String watchRoot) {
+    super(watchRoot);
+  }
+
+  /** Watches all directories under {@code root}. */
+  private native void create(String root) throws IOException;
+
+  /** Runs the loop that reads events, until {@link #doClose} is called. */
+  private native void run();
+
+  /** Stops the reader thread, which frees the native structure. */
+  private native void doClose();
+
+  /**
+   * Returns the absolute paths modified since the last call, or null if changes were lost.
+   *
+   * @throws IOException if the watcher broke, for example because the root was deleted
+   */
+  private native String[] poll() throws IOException;
+
+  private static final boolean JNI_AVAILABLE;
+
+  static {
+    boolean loadJniWorked = false;
+    if (OS.getCurrent() == OS.LINUX) {
+      try {
+        UnixJniLoader.loadJni();
+        loadJniWorked = true;
+      } catch (UnsatisfiedLinkError ignored) {
+        // See MacOSXFsEventsDiffAwareness: the bootstrap binary doesn't have the JNI code.
+      }
+    }
+    JNI_AVAILABLE = loadJniWorked;
+  }
+
+  /** Returns whether this diff awareness can be used on the current platform. */
+  static boolean isAvailable() {
+    return JNI_AVAILABLE;
+  }
+
+  private void init() throws BrokenDiffAwarenessException {
+    Preconditions.checkState(!opened);
+    try {
+      create(watchRootPath.toAbsolutePath().toString());
+    } catch (IOException e) {
+      throw new BrokenDiffAwarenessException(
+          "Error encountered with local file system watcher " + e);
+    }
+    opened = true;
+    Thread reader = new Thread(this::run, "inotify-diff-awareness");
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  @Override
+  public void close() {
+    if (opened && !closed) {
+      closed = true;
+      doClose();
+    }
+  }
+
+  @Override
+  public View getCurrentView(OptionsClassProvider options) throws BrokenDiffAwarenessException {
+    if (!JNI_AVAILABLE) {
+      return EVERYTHING_MODIFIED;
+    }
+    // See WatchServiceDiffAwareness#getCurrentView for an explanation of this logic.
+    boolean watchFs = options.getOptions(Options.class).watchFS;
+    if (watchFs && !opened) {
+      init();
+    } else if (!watchFs && opened) {
+      close();
+      throw new BrokenDiffAwarenessException("Switched off --watchfs again");
+    } else if (!opened) {
+      return EVERYTHING_MODIFIED;
+    }
+    Preconditions.checkState(!closed);
+    String[] modifiedPaths;
+    try {
+      modifiedPaths = poll();
+    } catch (IOException e) {
+      close();
+      throw new BrokenDiffAwarenessException(
+          "Error encountered with local file system watcher " + e.getMessage());
+    }
+    if (isFirstCall()) {
+      // Changes since the watches were registered are covered by the current build, which can't
+      // have a diff yet.
+      return newView(ImmutableSet.<Path>of());
+    }
+    if (modifiedPaths == null) {
+      return newEverythingModifiedView();
+    }
+    ImmutableSet.Builder<Path> paths = ImmutableSet.builder();
+    for (String path : modifiedPaths) {
+      paths.add(new File(path).toPath());
+    }
+    return newView(paths.build());
+  }
+}
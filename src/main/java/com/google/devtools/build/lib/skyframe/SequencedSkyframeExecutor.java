@@ -27,11 +27,16 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Range;
 import com.google.common.collect.Sets;
 import com.google.devtools.build.lib.actions.ActionKeyContext;
+import com.google.devtools.build.lib.actions.ActionLookupData;
 import com.google.devtools.build.lib.analysis.BlazeDirectories;
 import com.google.devtools.build.lib.analysis.BuildView;
 import com.google.devtools.build.lib.analysis.ConfiguredTarget;
 import com.google.devtools.build.lib.analysis.WorkspaceStatusAction.Factory;
 import com.google.devtools.build.lib.analysis.buildinfo.BuildInfoFactory;
+import com.google.devtools.build.lib.analysis.config.BuildConfiguration;
+import com.google.devtools.build.lib.analysis.config.BuildConfigurationCollection;
+import com.google.devtools.build.lib.analysis.config.BuildOptions;
+import com.google.devtools.build.lib.analysis.config.FragmentOptions;
 import com.google.devtools.build.lib.analysis.configuredtargets.RuleConfiguredTarget;
 import com.google.devtools.build.lib.buildtool.BuildRequestOptions;
 import com.google.devtools.build.lib.cmdline.PackageIdentifier;
@@ -51,6 +56,8 @@ import com.google.devtools.build.lib.packages.SkylarkSemanticsOptions;
 import com.google.devtools.build.lib.pkgcache.PackageCacheOptions;
 import com.google.devtools.build.lib.pkgcache.PathPackageLocator;
 import com.google.devtools.build.lib.profiler.AutoProfiler;
+import com.google.devtools.build.lib.skyframe.AspectValue.AspectKey;
+import com.google.devtools.build.lib.skyframe.BuildInfoCollectionValue.BuildInfoKeyAndConfig;
 import com.google.devtools.build.lib.skyframe.DirtinessCheckerUtils.BasicFilesystemDirtinessChecker;
 import com.google.devtools.build.lib.skyframe.DirtinessCheckerUtils.ExternalDirtinessChecker;
 import com.google.devtools.build.lib.skyframe.DirtinessCheckerUtils.MissingDiffDirtinessChecker;
@@ -98,6 +105,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import javax.annotation.Nullable;
 
@@ -768,6 +776,63 @@ public final class SequencedSkyframeExecutor extends SkyframeExecutor {
     );
   }
 
+  /**
+   * Deletes the values that {@link #handleConfiguredTargetChange} deletes, but only those whose
+   * trimmed configuration can't be requested by the next build without a configuration
+   * transition: configured targets, build info collections and the actions they own are kept if
+   * their options equal the new top-level or host options, restricted to the options classes of
+   * their fragments. Changing an option only re-analyzes the targets that depend on it.
+   *
+   * <p>Values under other configurations, such as those created by split transitions, are
+   * deleted, as is everything that depends on a deleted value.
+   */
+  @Override
+  public void handleTrimmedConfigurationChange(BuildConfigurationCollection configurations) {
+    List<BuildOptions> reachableOptions = new ArrayList<>();
+    for (BuildConfiguration configuration : configurations.getTargetConfigurations()) {
+      reachableOptions.add(configuration.getOptions());
+    }
+    reachableOptions.add(configurations.getHostConfiguration().getOptions());
+    // Many values share a configuration, and trimming options is not cheap.
+    Map<BuildConfigurationValue.Key, Boolean> reachable = new ConcurrentHashMap<>();
+    memoizingEvaluator.delete(
+        key -> {
+          boolean isAction = key.functionName().equals(SkyFunctions.ACTION_EXECUTION);
+          if (isAction) {
+            key = ((ActionLookupData) key.argument()).getActionLookupNode();
+          }
+          SkyFunctionName functionName = key.functionName();
+          BuildConfigurationValue.Key configurationKey;
+          if (functionName.equals(SkyFunctions.CONFIGURED_TARGET)) {
+            configurationKey = ((ConfiguredTargetKey) key.argument()).getConfigurationKey();
+          } else if (functionName.equals(SkyFunctions.BUILD_INFO_COLLECTION)) {
+            configurationKey = ((BuildInfoKeyAndConfig) key.argument()).getConfigKey();
+          } else if (functionName.equals(SkyFunctions.ASPECT)) {
+            configurationKey = ((AspectKey) key.argument()).getAspectConfigurationKey();
+          } else {
+            // Target completion values depend on the configured targets they complete, so they
+            // are deleted along with them. Other actions are deleted as on any other change.
+            return isAction || functionName.equals(SkyFunctions.BUILD_INFO);
+          }
+          return configurationKey != null
+              && !reachable.computeIfAbsent(
+                  configurationKey, (k) -> isReachable(k.getBuildOptions(), reachableOptions));
+        });
+  }
+
+  private static boolean isReachable(BuildOptions trimmed, List<BuildOptions> reachableOptions) {
+    Set<Class<? extends FragmentOptions>> optionsClasses = new HashSet<>();
+    for (FragmentOptions options : trimmed.getOptions()) {
+      optionsClasses.add(options.getClass());
+    }
+    for (BuildOptions options : reachableOptions) {
+      if (options.trim(optionsClasses).equals(trimmed)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Deletes all ConfiguredTarget values from the Skyframe cache.
    *
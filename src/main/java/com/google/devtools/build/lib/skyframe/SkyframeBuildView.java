@@ -154,8 +154,17 @@ public final class SkyframeBuildView {
     // Clear all cached ConfiguredTargets on configuration change of if --discard_analysis_cache
     // was set on the previous build. In the former case, it's not required for correctness, but
     // prevents unbounded memory usage.
-    if ((this.configurations != null && !configurations.equals(this.configurations))
-        || skyframeAnalysisWasDiscarded) {
+    boolean configurationsChanged =
+        this.configurations != null && !configurations.equals(this.configurations);
+    if (configurationsChanged
+        && !skyframeAnalysisWasDiscarded
+        && isTrimmed(this.configurations)
+        && isTrimmed(configurations)) {
+      // Configured targets are keyed by configurations trimmed to the fragments they need, so
+      // those whose options didn't change can be reused. The others are deleted, as above.
+      logger.info("Discarding the analysis of targets whose trimmed configurations have changed.");
+      skyframeExecutor.handleTrimmedConfigurationChange(configurations);
+    } else if (configurationsChanged || skyframeAnalysisWasDiscarded) {
       logger.info("Discarding analysis cache: configurations have changed.");
       skyframeExecutor.handleConfiguredTargetChange();
     }
@@ -164,6 +173,15 @@ public final class SkyframeBuildView {
     setTopLevelHostConfiguration(configurations.getHostConfiguration());
   }
 
+  private static boolean isTrimmed(BuildConfigurationCollection configurations) {
+    for (BuildConfiguration configuration : configurations.getTargetConfigurations()) {
+      if (!configuration.trimConfigurations()) {
+        return false;
+      }
+    }
+    return configurations.getHostConfiguration().trimConfigurations();
+  }
+
   /**
    * Sets the host configuration consisting of all fragments that will be used by the top level
    * targets' transitive closures.
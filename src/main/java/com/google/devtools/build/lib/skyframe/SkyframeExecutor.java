@@ -640,6 +640,16 @@ public abstract class SkyframeExecutor implements WalkableGraphFactory {
     skyframeBuildView.clearLegacyData();
   }
 
+  /**
+   * Called instead of {@link #handleConfiguredTargetChange} when the configurations change, but
+   * both the old and the new ones are trimmed. Values whose trimmed configuration is still
+   * reachable from the new {@code configurations} may be kept; this implementation conservatively
+   * treats it as any other configuration change.
+   */
+  public void handleTrimmedConfigurationChange(BuildConfigurationCollection configurations) {
+    handleConfiguredTargetChange();
+  }
+
   /** Used with dump --rules. */
   public static class RuleStat {
     private final String key;
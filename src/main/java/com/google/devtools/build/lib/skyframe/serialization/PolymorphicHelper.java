@@ -20,11 +20,20 @@ import com.google.protobuf.CodedOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.Nullable;
 
 /** Helper methods for polymorphic codecs using reflection. */
 public class PolymorphicHelper {
 
+  /** The classes that were deserialized, by name, to avoid {@link Class#forName} per object. */
+  private static final ConcurrentHashMap<String, Class<?>> classesByName =
+      new ConcurrentHashMap<>();
+
+  /** The static CODEC instances, to avoid looking them up reflectively per object. */
+  private static final ConcurrentHashMap<Class<?>, Object> codecsByClass =
+      new ConcurrentHashMap<>();
+
   private PolymorphicHelper() {}
 
   /**
@@ -80,7 +89,7 @@ public class PolymorphicHelper {
     if (codedIn.readBool()) {
       String className = StringCodecs.asciiOptimized().deserialize(codedIn);
       try {
-        Object codec = getCodec(Class.forName(className));
+        Object codec = getCodec(getClass(className));
         if (codec instanceof ObjectCodec) {
           return ((ObjectCodec) codec).deserialize(codedIn);
         } else if (codec instanceof InjectingObjectCodec) {
@@ -100,11 +109,28 @@ public class PolymorphicHelper {
     return deserialized;
   }
 
+  private static Class<?> getClass(String className) throws ClassNotFoundException {
+    Class<?> clazz = classesByName.get(className);
+    if (clazz == null) {
+      clazz = Class.forName(className);
+      classesByName.put(className, clazz);
+    }
+    return clazz;
+  }
+
   /** Returns the static CODEC instance for {@code clazz}. */
   private static Object getCodec(Class<?> clazz)
       throws NoSuchFieldException, IllegalAccessException {
-    Field codecField = clazz.getDeclaredField("CODEC");
-    codecField.setAccessible(true);
-    return codecField.get(null);
+    Object codec = codecsByClass.get(clazz);
+    if (codec == null) {
+      Field codecField = clazz.getDeclaredField("CODEC");
+      codecField.setAccessible(true);
+      codec = codecField.get(null);
+      // The field is still null if the class is being initialized, so don't remember that.
+      if (codec != null) {
+        codecsByClass.put(clazz, codec);
+      }
+    }
+    return codec;
   }
 }
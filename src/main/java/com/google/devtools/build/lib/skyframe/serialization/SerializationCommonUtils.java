@@ -24,6 +24,14 @@ public class SerializationCommonUtils {
   public static final ImmutableListCodec<String> STRING_LIST_CODEC =
       new ImmutableListCodec<>(StringCodecs.asciiOptimized());
 
+  private static final ClassValue<Object[]> ENUM_CONSTANTS =
+      new ClassValue<Object[]>() {
+        @Override
+        protected Object[] computeValue(Class<?> type) {
+          return type.getEnumConstants();
+        }
+      };
+
   public static <T> void serializeNullable(T obj, CodedOutputStream out, ObjectCodec<T> codec)
       throws IOException, SerializationException {
     if (obj == null) {
@@ -38,4 +46,18 @@ public class SerializationCommonUtils {
       throws IOException, SerializationException {
     return in.readBool() ? codec.deserialize(in) : null;
   }
+
+  /**
+   * Returns the constant of {@code enumClass} with the given ordinal. Unlike {@code values()}, this
+   * doesn't copy the array of constants on every call.
+   */
+  public static <T extends Enum<T>> T enumConstant(Class<T> enumClass, int ordinal)
+      throws SerializationException {
+    Object[] constants = ENUM_CONSTANTS.get(enumClass);
+    if (ordinal < 0 || ordinal >= constants.length) {
+      throw new SerializationException(
+          "Invalid ordinal for " + enumClass.getName() + " enum: " + ordinal);
+    }
+    return enumClass.cast(constants[ordinal]);
+  }
 }
@@ -30,6 +30,7 @@ import com.google.devtools.build.lib.collect.nestedset.NestedSet;
 import com.google.devtools.build.lib.collect.nestedset.NestedSetCodec;
 import com.google.devtools.build.lib.skyframe.serialization.InjectingObjectCodec;
 import com.google.devtools.build.lib.skyframe.serialization.ObjectCodec;
+import com.google.devtools.build.lib.skyframe.serialization.SerializationCommonUtils;
 import com.google.devtools.build.lib.skyframe.serialization.autocodec.SerializationCodeGenerator.Context;
 import com.google.devtools.build.lib.skyframe.serialization.autocodec.SerializationCodeGenerator.Marshaller;
 import com.google.devtools.build.lib.skyframe.serialization.autocodec.SerializationCodeGenerator.PrimitiveValueSerializationCodeGenerator;
@@ -229,9 +230,11 @@ class Marshallers {
             context.builder.addStatement(
                 "$L = $T.forNumber(codedIn.readInt32())", context.name, context.getTypeName());
           } else {
-            // TODO(shahan): memoize this expensive call to values().
             context.builder.addStatement(
-                "$L = $T.values()[codedIn.readInt32()]", context.name, context.getTypeName());
+                "$L = $T.enumConstant($T.class, codedIn.readInt32())",
+                context.name,
+                SerializationCommonUtils.class,
+                context.getTypeName());
           }
         }
 
@@ -36,6 +36,8 @@ import com.google.devtools.build.lib.exec.local.LocalExecutionOptions;
 import com.google.devtools.build.lib.exec.local.LocalSpawnRunner;
 import com.google.devtools.build.lib.exec.local.PosixLocalEnvProvider;
 import com.google.devtools.build.lib.exec.local.WindowsLocalEnvProvider;
+import com.google.devtools.build.lib.rules.cpp.CachingCppIncludeScanningContext;
+import com.google.devtools.build.lib.rules.cpp.CachingIncludeScanner.InclusionCache;
 import com.google.devtools.build.lib.rules.cpp.CppCompileAction;
 import com.google.devtools.build.lib.rules.cpp.CppIncludeExtractionContext;
 import com.google.devtools.build.lib.rules.cpp.CppIncludeScanningContext;
@@ -94,9 +96,11 @@ public class StandaloneActionContextProvider extends ActionContextProvider {
   }
 
   private final CommandEnvironment env;
+  private final InclusionCache inclusionCache;
 
-  public StandaloneActionContextProvider(CommandEnvironment env) {
+  public StandaloneActionContextProvider(CommandEnvironment env, InclusionCache inclusionCache) {
     this.env = env;
+    this.inclusionCache = inclusionCache;
   }
 
   @Override
@@ -116,7 +120,9 @@ public class StandaloneActionContextProvider extends ActionContextProvider {
     return ImmutableList.of(
         new StandaloneSpawnStrategy(env.getExecRoot(), createLocalRunner(env)),
         new DummyCppIncludeExtractionContext(),
-        new DummyCppIncludeScanningContext(),
+        executionOptions.ccIncludeScanning
+            ? new CachingCppIncludeScanningContext(inclusionCache)
+            : new DummyCppIncludeScanningContext(),
         new SpawnGccStrategy(),
         testStrategy,
         new ExclusiveTestStrategy(testStrategy),
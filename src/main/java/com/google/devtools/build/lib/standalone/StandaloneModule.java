@@ -15,6 +15,7 @@ package com.google.devtools.build.lib.standalone;
 
 import com.google.devtools.build.lib.buildtool.BuildRequest;
 import com.google.devtools.build.lib.exec.ExecutorBuilder;
+import com.google.devtools.build.lib.rules.cpp.CachingIncludeScanner.InclusionCache;
 import com.google.devtools.build.lib.runtime.BlazeModule;
 import com.google.devtools.build.lib.runtime.CommandEnvironment;
 
@@ -22,9 +23,12 @@ import com.google.devtools.build.lib.runtime.CommandEnvironment;
  * StandaloneModule provides pluggable functionality for blaze.
  */
 public class StandaloneModule extends BlazeModule {
+  /** Kept across commands; entries are keyed by file content, so they never go stale. */
+  private final InclusionCache inclusionCache = new InclusionCache();
+
   @Override
   public void executorInit(CommandEnvironment env, BuildRequest request, ExecutorBuilder builder) {
-    builder.addActionContextProvider(new StandaloneActionContextProvider(env));
+    builder.addActionContextProvider(new StandaloneActionContextProvider(env, inclusionCache));
     builder.addActionContextConsumer(new StandaloneActionContextConsumer());
   }
 }
@@ -351,7 +351,9 @@ public final class NativePosixFiles {
   }
 
   /**
-   * Native wrapper around POSIX opendir(2)/readdir(3)/closedir(3) syscall.
+   * Native wrapper around POSIX opendir(2)/readdir(3)/closedir(3) syscall. On Linux, the entries
+   * are read with getdents64(2) into a large buffer instead, and only entries whose type the file
+   * system doesn't report (or symlinks, with {@code FOLLOW}) cost an additional stat.
    *
    * @param path the directory to read.
    * @param readTypes How the types of individual entries should be returned. If {@code NONE},
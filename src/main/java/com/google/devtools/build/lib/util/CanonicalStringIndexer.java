@@ -13,72 +13,80 @@
 // limitations under the License.
 package com.google.devtools.build.lib.util;
 
-import com.google.common.base.Preconditions;
 import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadSafe;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
  * A string indexer backed by a map and reverse index lookup.
  * Every unique string is stored in memory exactly once.
+ *
+ * <p>No lock is taken to look up or to create an index: a new string is added to the backing map
+ * with {@link ConcurrentMap#computeIfAbsent}, which calls the mapping function at most once for
+ * each string, so the indices stay dense even when many threads add strings at the same time.
  */
 @ThreadSafe
 public class CanonicalStringIndexer extends AbstractIndexer {
 
   private static final int NOT_FOUND = -1;
 
-  // This is similar to (Synchronized) BiMap.
-  // These maps *must* be weakly threadsafe to ensure thread safety for string
-  // indexer as a whole. Specifically, mutating operations are serialized, but
-  // read-only operations may be executed concurrently with mutators.
-  private final Map<String, Integer> stringToInt;
-  private final Map<Integer, String> intToString;
-
-  /*
-   * Creates an indexer instance from two backing maps. These maps may be
-   * pre-initialized with data, but *must*:
-   * a. Support read-only operations done concurrently with mutations.
-   *    Note that mutations will be serialized.
-   * b. Be reverse mappings of each other, if pre-initialized.
+  private final ConcurrentMap<String, Integer> stringToInt;
+  private final StringArray intToString = new StringArray();
+  private final AtomicInteger nextIndex = new AtomicInteger();
+
+  /**
+   * Creates an indexer instance from a backing map. The map may be pre-initialized with data, in
+   * which case its values must be the distinct integers from 0 to its size minus one.
+   *
+   * @throws IllegalArgumentException if the values of the map are not distinct, or out of range
    */
-  public CanonicalStringIndexer(Map<String, Integer> stringToInt,
-                                Map<Integer, String> intToString) {
-    Preconditions.checkArgument(stringToInt.size() == intToString.size());
+  public CanonicalStringIndexer(ConcurrentMap<String, Integer> stringToInt) {
     this.stringToInt = stringToInt;
-    this.intToString = intToString;
+    int size = stringToInt.size();
+    for (Map.Entry<String, Integer> entry : stringToInt.entrySet()) {
+      int index = entry.getValue();
+      if (index < 0 || index >= size) {
+        throw new IllegalArgumentException(
+            "entry out of range: " + entry.getKey() + " <==> " + index);
+      }
+      if (intToString.get(index) != null) {
+        throw new IllegalArgumentException("duplicate entry: " + entry.getKey());
+      }
+      intToString.set(index, entry.getKey());
+    }
+    nextIndex.set(size);
   }
 
+  /**
+   * Called after a new mapping was created, at most once for each string and outside of any lock
+   * of this indexer. Subclasses may override this to record the mapping elsewhere.
+   */
+  protected void indexCreated(String s, int index) {}
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>This must not be called while other threads add strings to this indexer.
+   */
   @Override
   public synchronized void clear() {
     stringToInt.clear();
     intToString.clear();
+    nextIndex.set(0);
   }
 
   @Override
   public int size() {
-    return intToString.size();
+    return nextIndex.get();
   }
 
   @Override
   public int getOrCreateIndex(String s) {
     Integer i = stringToInt.get(s);
-    if (i == null) {
-      synchronized (this) {
-        // First, make sure another thread hasn't just added the entry:
-        i = stringToInt.get(s);
-        if (i != null) {
-          return i;
-        }
-
-        int ind = intToString.size();
-        s = StringCanonicalizer.intern(s);
-        stringToInt.put(s, ind);
-        intToString.put(ind, s);
-        return ind;
-      }
-    } else {
-      return i;
-    }
+    return (i == null) ? createIndex(s).index : i;
   }
 
   @Override
@@ -88,12 +96,44 @@ public class CanonicalStringIndexer extends AbstractIndexer {
   }
 
   @Override
-  public synchronized boolean addString(String s) {
-    int originalSize = size();
-    getOrCreateIndex(s);
-    return (size() > originalSize);
+  public boolean addString(String s) {
+    return !stringToInt.containsKey(s) && createIndex(s).created;
+  }
+
+  private IndexCreation createIndex(String s) {
+    s = StringCanonicalizer.intern(s);
+    IndexCreation creation = new IndexCreation();
+    creation.index = stringToInt.computeIfAbsent(s, creation);
+    if (creation.created) {
+      indexCreated(s, creation.index);
+    }
+    return creation;
+  }
+
+  /**
+   * The mapping function of a string that may not have an index yet. Another thread may add the
+   * string first, in which case the function isn't called.
+   */
+  private final class IndexCreation implements Function<String, Integer> {
+    private boolean created;
+    private int index;
+
+    @Override
+    public Integer apply(String s) {
+      int newIndex = nextIndex.getAndIncrement();
+      // The reverse mapping is set before the map publishes the new index to other threads.
+      intToString.set(newIndex, s);
+      created = true;
+      return newIndex;
+    }
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The string of an index that another thread is still creating may not be available yet, even
+   * if the index is less than {@link #size}.
+   */
   @Override
   public String getStringForIndex(int i) {
     return intToString.get(i);
@@ -108,4 +148,51 @@ public class CanonicalStringIndexer extends AbstractIndexer {
     }
     return builder.toString();
   }
+
+  /**
+   * An append-only array of strings, which grows by adding chunks so that the strings are never
+   * copied. A string set by one thread is visible to the threads that learn of its index through
+   * the backing map.
+   */
+  private static final class StringArray {
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private volatile String[][] chunks = new String[0][];
+
+    String get(int i) {
+      if (i < 0) {
+        return null;
+      }
+      String[][] chunks = this.chunks;
+      int chunk = i >>> CHUNK_BITS;
+      return chunk < chunks.length ? chunks[chunk][i & (CHUNK_SIZE - 1)] : null;
+    }
+
+    void set(int i, String s) {
+      String[][] chunks = this.chunks;
+      int chunk = i >>> CHUNK_BITS;
+      if (chunk >= chunks.length) {
+        chunks = grow(chunk);
+      }
+      chunks[chunk][i & (CHUNK_SIZE - 1)] = s;
+    }
+
+    private synchronized String[][] grow(int chunk) {
+      String[][] chunks = this.chunks;
+      if (chunk >= chunks.length) {
+        int oldLength = chunks.length;
+        chunks = Arrays.copyOf(chunks, chunk + 1);
+        for (int j = oldLength; j < chunks.length; j++) {
+          chunks[j] = new String[CHUNK_SIZE];
+        }
+        this.chunks = chunks;
+      }
+      return chunks;
+    }
+
+    synchronized void clear() {
+      chunks = new String[0][];
+    }
+  }
 }
@@ -14,11 +14,15 @@
 
 package com.google.devtools.build.lib.util;
 
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
 import com.google.devtools.build.lib.vfs.Path;
 import com.google.devtools.build.lib.vfs.PathFragment;
 import com.google.protobuf.CodedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.DigestException;
 import java.security.DigestOutputStream;
@@ -30,12 +34,51 @@ import java.util.function.Consumer;
 import javax.annotation.Nullable;
 
 /**
- * Simplified wrapper for MD5 message digests.
+ * Simplified wrapper for 128-bit digests, MD5 by default.
+ *
+ * <p>The hash function may be switched to a faster, non-cryptographic one with the {@code
+ * bazel.FingerprintFunction} system property; see {@link Algorithm}. Some fingerprints outlive the
+ * server that computed them, such as the action keys and metadata digests in the action cache and
+ * the rule keys in the marker files of external repositories. Code that persists fingerprints must
+ * either use a fixed {@link Algorithm}, or record the one it used and discard the fingerprints of
+ * another one.
  *
  * @see java.security.MessageDigest
  */
 public final class Fingerprint implements Consumer<String> {
 
+  /** The hash functions a {@link Fingerprint} can be computed with. All produce 16-byte digests. */
+  public enum Algorithm {
+    /** MD5, via {@link MessageDigest}. */
+    MD5,
+    /** The 128-bit variant of MurmurHash3, which is several times faster than MD5. */
+    MURMUR3_128;
+
+    /**
+     * Returns the algorithm named by the {@code bazel.FingerprintFunction} system property, or
+     * {@link #MD5} if the property is not set.
+     */
+    private static Algorithm fromSystemProperty() {
+      String value = System.getProperty("bazel.FingerprintFunction");
+      if (value == null) {
+        return MD5;
+      }
+      try {
+        return valueOf(value.toUpperCase());
+      } catch (IllegalArgumentException e) {
+        throw new IllegalStateException(
+            "The specified fingerprint function '" + value + "' is not supported", e);
+      }
+    }
+  }
+
+  private static final Algorithm DEFAULT_ALGORITHM = Algorithm.fromSystemProperty();
+
+  /** Returns the hash function used by {@link #Fingerprint()}. */
+  public static Algorithm getDefaultAlgorithm() {
+    return DEFAULT_ALGORITHM;
+  }
+
   private static final MessageDigest MD5_PROTOTYPE;
   private static final boolean MD5_PROTOTYPE_SUPPORTS_CLONE;
 
@@ -47,23 +90,61 @@ public final class Fingerprint implements Consumer<String> {
   // Make novel use of a CodedOutputStream, which is good at efficiently serializing data. By
   // flushing at the end of each digest we can continue to use the stream.
   private final CodedOutputStream codedOut;
-  private final MessageDigest md5;
 
-  /** Creates and initializes a new instance. */
+  // Exactly one of md5 and hashFunction is non-null. If hashFunction is set, hasher holds the state
+  // of the digest being computed.
+  @Nullable private final MessageDigest md5;
+  @Nullable private final HashFunction hashFunction;
+  @Nullable private Hasher hasher;
+
+  /**
+   * Creates and initializes a new instance that uses the hash function chosen for this server.
+   */
   public Fingerprint() {
-    md5 = cloneOrCreateMd5();
+    this(DEFAULT_ALGORITHM);
+  }
+
+  /** Creates and initializes a new instance that uses the given hash function. */
+  public Fingerprint(Algorithm algorithm) {
+    OutputStream digestOut;
+    switch (algorithm) {
+      case MD5:
+        md5 = cloneOrCreateMd5();
+        hashFunction = null;
+        digestOut = new DigestOutputStream(ByteStreams.nullOutputStream(), md5);
+        break;
+      case MURMUR3_128:
+        md5 = null;
+        hashFunction = Hashing.murmur3_128();
+        hasher = hashFunction.newHasher();
+        digestOut = new HasherOutputStream();
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown fingerprint algorithm: " + algorithm);
+    }
     // This is a lot of indirection, but CodedOutputStream does a reasonable job of converting
     // strings to bytes without creating a whole bunch of garbage, which pays off.
-    codedOut = CodedOutputStream.newInstance(
-        new DigestOutputStream(ByteStreams.nullOutputStream(), md5),
-        /*bufferSize=*/ 1024);
+    codedOut = CodedOutputStream.newInstance(digestOut, /*bufferSize=*/ 1024);
+  }
+
+  /** Feeds everything written to it into the current {@link #hasher}. */
+  private final class HasherOutputStream extends OutputStream {
+    @Override
+    public void write(int b) {
+      hasher.putByte((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      hasher.putBytes(b, off, len);
+    }
   }
 
   /**
    * Completes the hash computation by doing final operations and resets the underlying state,
    * allowing this instance to be used again.
    *
-   * @return the MD5 digest as a 16-byte array
+   * @return the digest as a 16-byte array
    * @see java.security.MessageDigest#digest()
    */
   public byte[] digestAndReset() {
@@ -72,7 +153,12 @@ public final class Fingerprint implements Consumer<String> {
     } catch (IOException e) {
       throw new IllegalStateException("failed to flush", e);
     }
-    return md5.digest();
+    if (md5 != null) {
+      return md5.digest();
+    }
+    byte[] digest = hasher.hash().asBytes();
+    hasher = hashFunction.newHasher();
+    return digest;
   }
 
   /**
@@ -87,7 +173,12 @@ public final class Fingerprint implements Consumer<String> {
   public void digestAndReset(byte[] buf, int offset, int len) {
     try {
       codedOut.flush();
-      md5.digest(buf, offset, len);
+      if (md5 != null) {
+        md5.digest(buf, offset, len);
+      } else {
+        hasher.hash().writeBytesTo(buf, offset, len);
+        hasher = hashFunction.newHasher();
+      }
     } catch (IOException e) {
       throw new IllegalStateException("failed to flush", e);
     } catch (DigestException e) {
@@ -0,0 +1,419 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+#include <dirent.h>
+#include <errno.h>
+#include <fcntl.h>
+#include <jni.h>
+#include <poll.h>
+#include <pthread.h>
+#include <string.h>
+#include <sys/eventfd.h>
+#include <sys/inotify.h>
+#include <sys/stat.h>
+#include <unistd.h>
+
+#include <string>
+#include <unordered_map>
+#include <unordered_set>
+#include <vector>
+
+#include "src/main/native/unix_jni.h"
+
+namespace {
+
+// The events we watch directories for. IN_ATTRIB catches changes of the
+// executable bit; IN_DELETE_SELF and IN_MOVE_SELF tell us when the root goes
+// away.
+const uint32_t kWatchMask = IN_ATTRIB | IN_CLOSE_WRITE | IN_CREATE | IN_DELETE |
+                            IN_DELETE_SELF | IN_MODIFY | IN_MOVE_SELF |
+                            IN_MOVED_FROM | IN_MOVED_TO | IN_DONT_FOLLOW |
+                            IN_EXCL_UNLINK | IN_ONLYDIR;
+
+// The state of a LinuxInotifyDiffAwareness. The reader thread (run()) drains
+// the inotify queue as soon as events arrive, so that the kernel queue, which
+// is limited to fs.inotify.max_queued_events, rarely overflows between two
+// builds. Events are coalesced into a set of changed paths, which poll() hands
+// out and resets.
+struct InotifyDiffAwareness {
+  // The inotify instance.
+  int inotify_fd = -1;
+  // Written to by doClose() to stop the reader thread.
+  int wakeup_fd = -1;
+  // The watched root directory.
+  std::string root;
+  // Protects all fields below, which are shared by the reader thread and the
+  // Java thread calling poll().
+  pthread_mutex_t mutex;
+  // The directory each watch descriptor refers to, as an absolute path.
+  std::unordered_map<int, std::string> dirs;
+  // The absolute paths that changed since the last poll().
+  std::unordered_set<std::string> changed;
+  // Directories that were moved away, keyed by the cookie of the move, so that
+  // the matching IN_MOVED_TO can rename them.
+  std::unordered_map<uint32_t, std::string> moved_dirs;
+  // Whether changes were lost since the last poll(), so that everything has to
+  // be assumed modified.
+  bool overflow = false;
+  // If not empty, the watcher is broken and can't be used any more.
+  std::string error;
+  // Whether the reader thread stopped on an error before doClose() was called,
+  // in which case doClose() frees the structure.
+  bool reader_exited = false;
+  // Whether doClose() was called.
+  bool closed = false;
+
+  InotifyDiffAwareness() { pthread_mutex_init(&mutex, nullptr); }
+
+  ~InotifyDiffAwareness() {
+    if (inotify_fd >= 0) close(inotify_fd);
+    if (wakeup_fd >= 0) close(wakeup_fd);
+    pthread_mutex_destroy(&mutex);
+  }
+};
+
+std::string ErrorMessage(const std::string &what, int error) {
+  std::string message = what + ": " + strerror(error);
+  if (error == ENOSPC) {
+    message += " (consider raising fs.inotify.max_user_watches)";
+  }
+  return message;
+}
+
+// Watches the given directory and all directories below it, without following
+// symlinks. If changed is not null, all files and directories found are added
+// to it. Returns 0 on success or an errno value, in which case error_path is
+// set to the path that failed. Directories that vanish while we walk them are
+// skipped, their deletion is reported by the watch of their parent.
+int AddWatchesRecursively(InotifyDiffAwareness *info, const std::string &top,
+                          std::unordered_set<std::string> *changed,
+                          std::string *error_path) {
+  std::vector<std::string> pending;
+  pending.push_back(top);
+  while (!pending.empty()) {
+    std::string dir = pending.back();
+    pending.pop_back();
+    // Watch the directory before listing it, so that entries created in the
+    // meantime are either listed or reported by the watch.
+    int wd = inotify_add_watch(info->inotify_fd, dir.c_str(), kWatchMask);
+    if (wd < 0) {
+      if (errno == ENOENT || errno == ENOTDIR) continue;
+      *error_path = dir;
+      return errno;
+    }
+    info->dirs[wd] = dir;
+    if (changed != nullptr) {
+      changed->insert(dir);
+    }
+    DIR *dirh = opendir(dir.c_str());
+    if (dirh == nullptr) {
+      if (errno == ENOENT || errno == ENOTDIR) continue;
+      *error_path = dir;
+      return errno;
+    }
+    int fd = dirfd(dirh);
+    struct dirent *entry;
+    while ((entry = readdir(dirh)) != nullptr) {
+      const char *name = entry->d_name;
+      if (name[0] == '.' &&
+          (name[1] == '\0' || (name[1] == '.' && name[2] == '\0'))) {
+        continue;
+      }
+      std::string path = dir + "/" + name;
+      bool is_dir = entry->d_type == DT_DIR;
+      if (entry->d_type == DT_UNKNOWN) {
+        portable_stat_struct statbuf;
+        is_dir = portable_fstatat(fd, const_cast<char *>(name), &statbuf,
+                                  AT_SYMLINK_NOFOLLOW) == 0 &&
+                 S_ISDIR(statbuf.st_mode);
+      }
+      if (is_dir) {
+        pending.push_back(path);
+      } else if (changed != nullptr) {
+        changed->insert(path);
+      }
+    }
+    closedir(dirh);
+  }
+  return 0;
+}
+
+// Returns whether path is dir or below dir.
+bool IsUnder(const std::string &path, const std::string &dir) {
+  return path.compare(0, dir.size(), dir) == 0 &&
+         (path.size() == dir.size() || path[dir.size()] == '/');
+}
+
+// Updates the paths of the watched directories at or below from, which have
+// been moved to to.
+void RenameWatchedDirs(InotifyDiffAwareness *info, const std::string &from,
+                       const std::string &to) {
+  for (auto &entry : info->dirs) {
+    if (IsUnder(entry.second, from)) {
+      entry.second = to + entry.second.substr(from.size());
+    }
+  }
+}
+
+// Processes a single event. Must be called with the mutex held.
+void HandleEvent(InotifyDiffAwareness *info, const struct inotify_event *event) {
+  if (event->mask & IN_Q_OVERFLOW) {
+    info->overflow = true;
+    return;
+  }
+  auto dir = info->dirs.find(event->wd);
+  if (dir == info->dirs.end()) {
+    // An event for a watch we removed already.
+    return;
+  }
+  if (event->mask & IN_IGNORED) {
+    // The directory is gone; its deletion was reported by its parent.
+    info->dirs.erase(dir);
+    if (info->dirs.empty() && info->error.empty()) {
+      info->error = "Root directory " + info->root + " became inaccessible";
+    }
+    return;
+  }
+  if (event->mask & (IN_DELETE_SELF | IN_MOVE_SELF)) {
+    if (dir->second == info->root && info->error.empty()) {
+      info->error = "Root directory " + info->root + " was moved or deleted";
+    }
+    return;
+  }
+  std::string path = dir->second;
+  if (event->len > 0) {
+    path += "/";
+    path += event->name;
+  }
+  info->changed.insert(path);
+  if (!(event->mask & IN_ISDIR)) {
+    return;
+  }
+  if (event->mask & IN_MOVED_FROM) {
+    // The files below the directory moved with it, without events of their
+    // own. If it is moved within the tree we see the matching IN_MOVED_TO;
+    // otherwise poll() reports the loss.
+    info->moved_dirs[event->cookie] = path;
+  } else if (event->mask & (IN_CREATE | IN_MOVED_TO)) {
+    std::string from;
+    if (event->mask & IN_MOVED_TO) {
+      auto moved = info->moved_dirs.find(event->cookie);
+      if (moved != info->moved_dirs.end()) {
+        from = moved->second;
+        info->moved_dirs.erase(moved);
+        RenameWatchedDirs(info, from, path);
+      }
+    }
+    // Anything may have been created in the new directory before we watch it,
+    // so report its whole contents.
+    std::unordered_set<std::string> contents;
+    std::string error_path;
+    int error = AddWatchesRecursively(info, path, &contents, &error_path);
+    if (error != 0 && info->error.empty()) {
+      info->error = ErrorMessage("Cannot watch " + error_path, error);
+    }
+    for (const std::string &added : contents) {
+      info->changed.insert(added);
+      if (!from.empty()) {
+        info->changed.insert(from + added.substr(path.size()));
+      }
+    }
+  }
+}
+
+void SetError(InotifyDiffAwareness *info, const std::string &error) {
+  pthread_mutex_lock(&info->mutex);
+  if (info->error.empty()) {
+    info->error = error;
+  }
+  pthread_mutex_unlock(&info->mutex);
+}
+
+InotifyDiffAwareness *GetInfo(JNIEnv *env, jobject diffAwareness) {
+  jclass clazz = env->GetObjectClass(diffAwareness);
+  jfieldID fid = env->GetFieldID(clazz, "nativePointer", "J");
+  jlong field = env->GetLongField(diffAwareness, fid);
+  return reinterpret_cast<InotifyDiffAwareness *>(field);
+}
+
+void ThrowIOException(JNIEnv *env, const std::string &message) {
+  jclass exception = env->FindClass("java/io/IOException");
+  if (exception != nullptr) {
+    env->ThrowNew(exception, message.c_str());
+  }
+}
+
+}  // namespace
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_google_devtools_build_lib_skyframe_LinuxInotifyDiffAwareness_create(
+    JNIEnv *env, jobject diffAwareness, jstring root) {
+  InotifyDiffAwareness *info = new InotifyDiffAwareness();
+  const char *root_chars = env->GetStringUTFChars(root, nullptr);
+  info->root = root_chars;
+  env->ReleaseStringUTFChars(root, root_chars);
+
+  info->inotify_fd = inotify_init1(IN_NONBLOCK | IN_CLOEXEC);
+  if (info->inotify_fd < 0) {
+    ThrowIOException(env, ErrorMessage("inotify_init1", errno));
+    delete info;
+    return;
+  }
+  info->wakeup_fd = eventfd(0, EFD_CLOEXEC);
+  if (info->wakeup_fd < 0) {
+    ThrowIOException(env, ErrorMessage("eventfd", errno));
+    delete info;
+    return;
+  }
+  // Registers all watches in one go; the reader thread isn't running yet, so
+  // there is no need to lock.
+  std::string error_path;
+  int error = AddWatchesRecursively(info, info->root, nullptr, &error_path);
+  if (error == 0 && info->dirs.empty()) {
+    error = ENOENT;
+    error_path = info->root;
+  }
+  if (error != 0) {
+    ThrowIOException(env, ErrorMessage("Cannot watch " + error_path, error));
+    delete info;
+    return;
+  }
+
+  jclass clazz = env->GetObjectClass(diffAwareness);
+  jfieldID fid = env->GetFieldID(clazz, "nativePointer", "J");
+  env->SetLongField(diffAwareness, fid, reinterpret_cast<jlong>(info));
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_google_devtools_build_lib_skyframe_LinuxInotifyDiffAwareness_run(
+    JNIEnv *env, jobject diffAwareness) {
+  InotifyDiffAwareness *info = GetInfo(env, diffAwareness);
+  // Large enough for hundreds of events, aligned as inotify(7) requires.
+  alignas(struct inotify_event) char buf[64 * 1024];
+  struct pollfd fds[2];
+  fds[0].fd = info->inotify_fd;
+  fds[0].events = POLLIN;
+  fds[1].fd = info->wakeup_fd;
+  fds[1].events = POLLIN;
+  for (;;) {
+    if (poll(fds, 2, -1) < 0) {
+      if (errno == EINTR) continue;
+      // Only fails for reasons that retrying doesn't fix; doClose() can't reach
+      // us either, so poll() reports the error and the Java side stops using us.
+      // Whichever of us and doClose() comes last frees the structure.
+      std::string error = ErrorMessage("poll", errno);
+      pthread_mutex_lock(&info->mutex);
+      if (info->error.empty()) {
+        info->error = error;
+      }
+      info->reader_exited = true;
+      bool closed = info->closed;
+      pthread_mutex_unlock(&info->mutex);
+      if (closed) {
+        delete info;
+      }
+      return;
+    }
+    if (fds[1].revents != 0) {
+      break;  // doClose() was called.
+    }
+    ssize_t len;
+    while ((len = read(info->inotify_fd, buf, sizeof(buf))) > 0) {
+      pthread_mutex_lock(&info->mutex);
+      for (char *p = buf; p < buf + len;) {
+        const struct inotify_event *event =
+            reinterpret_cast<const struct inotify_event *>(p);
+        HandleEvent(info, event);
+        p += sizeof(struct inotify_event) + event->len;
+      }
+      pthread_mutex_unlock(&info->mutex);
+    }
+    if (len < 0 && errno != EAGAIN && errno != EINTR) {
+      SetError(info, ErrorMessage("read", errno));
+      // Stop reading, but wait for doClose(): poll() may still be called.
+      fds[0].fd = -1;
+    }
+  }
+  // The Java side no longer uses the native structure once it called doClose().
+  delete info;
+}
+
+extern "C" JNIEXPORT jobjectArray JNICALL
+Java_com_google_devtools_build_lib_skyframe_LinuxInotifyDiffAwareness_poll(
+    JNIEnv *env, jobject diffAwareness) {
+  InotifyDiffAwareness *info = GetInfo(env, diffAwareness);
+  pthread_mutex_lock(&info->mutex);
+  if (!info->error.empty()) {
+    std::string error = info->error;
+    pthread_mutex_unlock(&info->mutex);
+    ThrowIOException(env, error);
+    return nullptr;
+  }
+  // A directory moved out of the tree took files with it that we never saw.
+  bool everything_modified = info->overflow || !info->moved_dirs.empty();
+  for (const auto &moved : info->moved_dirs) {
+    // Stop watching the directories outside of the tree. Their IN_IGNORED
+    // events find no entry any more.
+    for (auto it = info->dirs.begin(); it != info->dirs.end();) {
+      if (IsUnder(it->second, moved.second)) {
+        inotify_rm_watch(info->inotify_fd, it->first);
+        it = info->dirs.erase(it);
+      } else {
+        ++it;
+      }
+    }
+  }
+  info->overflow = false;
+  info->moved_dirs.clear();
+  if (everything_modified) {
+    info->changed.clear();
+    pthread_mutex_unlock(&info->mutex);
+    return nullptr;
+  }
+  jclass classString = env->FindClass("java/lang/String");
+  jobjectArray result =
+      env->NewObjectArray(info->changed.size(), classString, nullptr);
+  if (result == nullptr) {
+    pthread_mutex_unlock(&info->mutex);
+    return nullptr;  // OutOfMemoryError is pending.
+  }
+  int i = 0;
+  for (const std::string &path : info->changed) {
+    jstring s = env->NewStringUTF(path.c_str());
+    env->SetObjectArrayElement(result, i++, s);
+    env->DeleteLocalRef(s);
+  }
+  info->changed.clear();
+  pthread_mutex_unlock(&info->mutex);
+  return result;
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_google_devtools_build_lib_skyframe_LinuxInotifyDiffAwareness_doClose(
+    JNIEnv *env, jobject diffAwareness) {
+  InotifyDiffAwareness *info = GetInfo(env, diffAwareness);
+  pthread_mutex_lock(&info->mutex);
+  info->closed = true;
+  bool reader_exited = info->reader_exited;
+  pthread_mutex_unlock(&info->mutex);
+  if (reader_exited) {
+    // The reader thread stopped on an error and left the structure to us.
+    delete info;
+    return;
+  }
+  uint64_t one = 1;
+  // The reader thread exits and frees the native structure.
+  while (write(info->wakeup_fd, &one, sizeof(one)) < 0 && errno == EINTR) {
+  }
+}
@@ -639,10 +639,11 @@ static jobject NewDirents(JNIEnv *env,
   return env->NewObject(dirents_class, ctor, names, types);
 }
 
-static char GetDirentType(struct dirent *entry,
+static char GetDirentType(unsigned char d_type,
+                          const char *name,
                           int dirfd,
                           bool follow_symlinks) {
-  switch (entry->d_type) {
+  switch (d_type) {
     case DT_REG:
       return 'f';
     case DT_DIR:
@@ -654,7 +655,7 @@ static char GetDirentType(struct dirent *entry,
       FALLTHROUGH_INTENDED;
     case DT_UNKNOWN:
       portable_stat_struct statbuf;
-      if (portable_fstatat(dirfd, entry->d_name, &statbuf, 0) == 0) {
+      if (portable_fstatat(dirfd, const_cast<char *>(name), &statbuf, 0) == 0) {
         if (S_ISREG(statbuf.st_mode)) return 'f';
         if (S_ISDIR(statbuf.st_mode)) return 'd';
       }
@@ -665,33 +666,89 @@ static char GetDirentType(struct dirent *entry,
   }
 }
 
-/*
- * Class:     com.google.devtools.build.lib.unix.NativePosixFiles
- * Method:    readdir
- * Signature: (Ljava/lang/String;Z)Lcom/google/devtools/build/lib/unix/Dirents;
- * Throws:    java.io.IOException
- */
-extern "C" JNIEXPORT jobject JNICALL
-Java_com_google_devtools_build_lib_unix_NativePosixFiles_readdir(JNIEnv *env,
-                                                    jclass clazz,
-                                                    jstring path,
-                                                    jchar read_types) {
-  const char *path_chars = GetStringLatin1Chars(env, path);
-  DIR *dirh;
-  while ((dirh = ::opendir(path_chars)) == NULL && errno == EINTR) { }
-  if (dirh == NULL) {
-    // EACCES EMFILE ENFILE ENOENT ENOTDIR -> IOException
-    // ENOMEM                              -> OutOfMemoryError
-    ::PostFileException(env, errno, path_chars);
+// The entries of a directory. The names are packed into a single buffer, each
+// one terminated by a nul byte, to avoid an allocation per entry.
+struct DirEntries {
+  std::string names;
+  std::vector<jbyte> types;
+  size_t count = 0;
+
+  // Adds an entry, unless it is "." or "..".
+  void Add(const char *name, unsigned char d_type, int dirfd, jchar read_types) {
+    if (name[0] == '.') {
+      if (name[1] == '\0') return;
+      if (name[1] == '.' && name[2] == '\0') return;
+    }
+    names.append(name, strlen(name) + 1);
+    count++;
+    if (read_types != 'n') {
+      types.push_back(GetDirentType(d_type, name, dirfd, read_types == 'f'));
+    }
   }
-  ReleaseStringLatin1Chars(path_chars);
+};
+
+#if defined(__linux__)
+
+// The layout of the records returned by getdents64(2). glibc only provides a
+// wrapper for the system call since 2.30, so we call it directly.
+struct linux_dirent64 {
+  ino64_t d_ino;
+  off64_t d_off;
+  unsigned short d_reclen;
+  unsigned char d_type;
+  char d_name[];
+};
+
+// Large enough for a few thousand entries, so that most directories are read
+// with a single system call; glibc's readdir(3) uses a buffer half this size.
+static const size_t kGetdentsBufferSize = 64 * 1024;
+
+// Reads the entries of the given directory with getdents64(2). Returns 0 on
+// success, or an errno value.
+static int ReadDirEntries(const char *path, jchar read_types,
+                          DirEntries *entries) {
+  int fd;
+  while ((fd = ::open(path, O_RDONLY | O_DIRECTORY | O_CLOEXEC)) == -1 &&
+         errno == EINTR) { }
+  if (fd == -1) {
+    return errno;
+  }
+  std::vector<char> buf(kGetdentsBufferSize);
+  int error = 0;
+  for (;;) {
+    long nread = ::syscall(SYS_getdents64, fd, &buf[0], buf.size());
+    if (nread == 0) break;  // EOF
+    if (nread < 0) {
+      if (errno == EINTR) continue;  // interrupted by a signal
+      error = errno;
+      break;
+    }
+    for (long pos = 0; pos < nread;) {
+      struct linux_dirent64 *entry =
+          reinterpret_cast<struct linux_dirent64 *>(&buf[pos]);
+      entries->Add(entry->d_name, entry->d_type, fd, read_types);
+      pos += entry->d_reclen;
+    }
+  }
+  if (::close(fd) < 0 && errno != EINTR && error == 0) {
+    error = errno;
+  }
+  return error;
+}
+
+#else  // !defined(__linux__)
+
+// Reads the entries of the given directory with readdir(3). Returns 0 on
+// success, or an errno value.
+static int ReadDirEntries(const char *path, jchar read_types,
+                          DirEntries *entries) {
+  DIR *dirh;
+  while ((dirh = ::opendir(path)) == NULL && errno == EINTR) { }
   if (dirh == NULL) {
-    return NULL;
+    return errno;
   }
   int fd = dirfd(dirh);
-
-  std::vector<std::string> entries;
-  std::vector<jbyte> types;
+  int error = 0;
   for (;;) {
     // Clear errno beforehand.  Because readdir() is not required to clear it at
     // EOF, this is the only way to reliably distinguish EOF from error.
@@ -704,48 +761,80 @@ Java_com_google_devtools_build_lib_unix_NativePosixFiles_readdir(JNIEnv *env,
       if (errno == EINTR) continue;  // interrupted by a signal
       if (errno == EIO) continue;  // glibc returns this on transient errors
       // Otherwise, this is a real error we should report.
-      ::PostFileException(env, errno, path_chars);
-      ::closedir(dirh);
-      return NULL;
-    }
-    // Omit . and .. from results.
-    if (entry->d_name[0] == '.') {
-      if (entry->d_name[1] == '\0') continue;
-      if (entry->d_name[1] == '.' && entry->d_name[2] == '\0') continue;
+      error = errno;
+      break;
     }
-    entries.push_back(entry->d_name);
-    if (read_types != 'n') {
-      types.push_back(GetDirentType(entry, fd, read_types == 'f'));
+    entries->Add(entry->d_name, entry->d_type, fd, read_types);
+  }
+  if (::closedir(dirh) < 0 && errno != EINTR && error == 0) {
+    error = errno;
+  }
+  return error;
+}
+
+#endif  // defined(__linux__)
+
+// Returns a Java string for a directory entry name. Names that are plain ASCII,
+// by far the most common kind, are valid modified UTF-8 and need no conversion.
+static jstring NewDirentName(JNIEnv *env, const char *name) {
+  for (const char *p = name; *p != '\0'; ++p) {
+    if (static_cast<unsigned char>(*p) >= 0x80) {
+      return NewStringLatin1(env, name);
     }
   }
+  return env->NewStringUTF(name);
+}
 
-  if (::closedir(dirh) < 0 && errno != EINTR) {
-    ::PostFileException(env, errno, path_chars);
+/*
+ * Class:     com.google.devtools.build.lib.unix.NativePosixFiles
+ * Method:    readdir
+ * Signature: (Ljava/lang/String;Z)Lcom/google/devtools/build/lib/unix/Dirents;
+ * Throws:    java.io.IOException
+ */
+extern "C" JNIEXPORT jobject JNICALL
+Java_com_google_devtools_build_lib_unix_NativePosixFiles_readdir(JNIEnv *env,
+                                                    jclass clazz,
+                                                    jstring path,
+                                                    jchar read_types) {
+  const char *path_chars = GetStringLatin1Chars(env, path);
+  DirEntries entries;
+  int error = ReadDirEntries(path_chars, read_types, &entries);
+  if (error != 0) {
+    // EACCES EMFILE ENFILE ENOENT ENOTDIR -> IOException
+    // ENOMEM                              -> OutOfMemoryError
+    ::PostFileException(env, error, path_chars);
+  }
+  ReleaseStringLatin1Chars(path_chars);
+  if (error != 0) {
     return NULL;
   }
 
-  size_t len = entries.size();
+  size_t len = entries.count;
   jclass jlStringClass = env->GetObjectClass(path);
   jobjectArray names_obj = env->NewObjectArray(len, jlStringClass, NULL);
   if (names_obj == NULL && env->ExceptionOccurred()) {
     return NULL;  // async exception!
   }
 
+  const char *name = entries.names.c_str();
   for (size_t ii = 0; ii < len; ++ii) {
-    jstring s = NewStringLatin1(env, entries[ii].c_str());
+    jstring s = NewDirentName(env, name);
     if (s == NULL && env->ExceptionOccurred()) {
       return NULL;  // async exception!
     }
     env->SetObjectArrayElement(names_obj, ii, s);
+    // Don't let the local references pile up for large directories.
+    env->DeleteLocalRef(s);
+    name += strlen(name) + 1;
   }
 
   jbyteArray types_obj = NULL;
   if (read_types != 'n') {
-    CHECK(len == types.size());
+    CHECK(len == entries.types.size());
     types_obj = env->NewByteArray(len);
     CHECK(types_obj);
     if (len > 0) {
-      env->SetByteArrayRegion(types_obj, 0, len, &types[0]);
+      env->SetByteArrayRegion(types_obj, 0, len, &entries.types[0]);
     }
   }
 
@@ -0,0 +1,344 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+// process-launcher starts processes on behalf of the Bazel server, so that the
+// server, whose address space may be tens of gigabytes, doesn't have to fork
+// itself for every subprocess. It is started once and then reads requests from
+// stdin and writes replies to stdout until stdin is closed.
+//
+// All integers are big-endian; a string is an int32 length followed by that
+// many bytes.
+//
+// Requests:
+//   'S' int64 id, string cwd, string stdout, string stderr,
+//       uint8 redirect_error_stream, int32 argc, argc * string argv,
+//       int32 envc (-1 to inherit the environment), envc * string "KEY=VALUE"
+//     Starts a process. stdout and stderr are files that are replaced and then
+//     appended to. stdin is /dev/null.
+//   'K' int64 id, int32 signal
+//     Sends a signal to the process with the given id, if it is still running.
+//
+// Replies:
+//   'S' int64 id, int32 pid, string error
+//     The process was started (pid > 0), or failed to start (pid <= 0).
+//   'E' int64 id, int32 exit_value
+//     The process exited. As with java.lang.Process, the exit value is
+//     128 + the signal number if the process was killed by a signal.
+
+#include <errno.h>
+#include <fcntl.h>
+#include <poll.h>
+#include <signal.h>
+#include <spawn.h>
+#include <stdint.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <sys/stat.h>
+#include <sys/types.h>
+#include <sys/wait.h>
+#include <unistd.h>
+
+#include <map>
+#include <string>
+#include <vector>
+
+extern char **environ;
+
+namespace {
+
+// Written to by the SIGCHLD handler to wake up the main loop.
+int sigchld_pipe[2];
+
+// The ids of the running processes, by pid.
+std::map<pid_t, int64_t> processes;
+
+void OnSigchld(int sig) {
+  int saved_errno = errno;
+  char c = 0;
+  // If the pipe is full, the main loop is going to wake up anyway.
+  (void)write(sigchld_pipe[1], &c, 1);
+  errno = saved_errno;
+}
+
+// Reads exactly size bytes. Returns false on EOF or error.
+bool ReadFully(void *buf, size_t size) {
+  char *p = static_cast<char *>(buf);
+  while (size > 0) {
+    ssize_t n = read(STDIN_FILENO, p, size);
+    if (n < 0 && errno == EINTR) continue;
+    if (n <= 0) return false;
+    p += n;
+    size -= n;
+  }
+  return true;
+}
+
+bool ReadInt32(int32_t *value) {
+  unsigned char buf[4];
+  if (!ReadFully(buf, sizeof(buf))) return false;
+  *value = static_cast<int32_t>((uint32_t(buf[0]) << 24) |
+                                (uint32_t(buf[1]) << 16) |
+                                (uint32_t(buf[2]) << 8) | uint32_t(buf[3]));
+  return true;
+}
+
+bool ReadInt64(int64_t *value) {
+  int32_t high, low;
+  if (!ReadInt32(&high) || !ReadInt32(&low)) return false;
+  *value = static_cast<int64_t>((uint64_t(uint32_t(high)) << 32) |
+                                uint64_t(uint32_t(low)));
+  return true;
+}
+
+bool ReadString(std::string *value) {
+  int32_t length;
+  if (!ReadInt32(&length) || length < 0) return false;
+  value->resize(length);
+  return length == 0 || ReadFully(&(*value)[0], length);
+}
+
+bool ReadStrings(int32_t count, std::vector<std::string> *values) {
+  values->resize(count);
+  for (int32_t i = 0; i < count; i++) {
+    if (!ReadString(&(*values)[i])) return false;
+  }
+  return true;
+}
+
+// Replies are collected and written with a single write, so that they are
+// never interleaved.
+class Reply {
+ public:
+  explicit Reply(char type) { buf_.push_back(type); }
+
+  Reply &Int32(int32_t value) {
+    for (int shift = 24; shift >= 0; shift -= 8) {
+      buf_.push_back(static_cast<char>((uint32_t(value) >> shift) & 0xff));
+    }
+    return *this;
+  }
+
+  Reply &Int64(int64_t value) {
+    Int32(static_cast<int32_t>(uint64_t(value) >> 32));
+    return Int32(static_cast<int32_t>(value));
+  }
+
+  Reply &String(const std::string &value) {
+    Int32(value.size());
+    buf_.append(value);
+    return *this;
+  }
+
+  void Send() {
+    const char *p = buf_.data();
+    size_t size = buf_.size();
+    while (size > 0) {
+      ssize_t n = write(STDOUT_FILENO, p, size);
+      if (n < 0 && errno == EINTR) continue;
+      if (n <= 0) exit(EXIT_FAILURE);  // The server is gone.
+      p += n;
+      size -= n;
+    }
+  }
+
+ private:
+  std::string buf_;
+};
+
+std::vector<char *> ToArgv(std::vector<std::string> *strings) {
+  std::vector<char *> result;
+  for (std::string &s : *strings) {
+    result.push_back(&s[0]);
+  }
+  result.push_back(nullptr);
+  return result;
+}
+
+// Starts a process with posix_spawn. Returns its pid, or -errno.
+pid_t Spawn(const std::string &cwd, const std::string &stdout_path,
+            const std::string &stderr_path, bool redirect_error_stream,
+            std::vector<std::string> *args, std::vector<std::string> *env,
+            bool inherit_env, std::string *error) {
+  // Like java.lang.ProcessBuilder with Redirect.appendTo(), after the caller
+  // deleted the file.
+  if (stdout_path != "/dev/null") unlink(stdout_path.c_str());
+  if (!redirect_error_stream && stderr_path != "/dev/null" &&
+      stderr_path != stdout_path) {
+    unlink(stderr_path.c_str());
+  }
+
+  posix_spawn_file_actions_t actions;
+  posix_spawn_file_actions_init(&actions);
+  posix_spawn_file_actions_addopen(&actions, STDIN_FILENO, "/dev/null",
+                                   O_RDONLY, 0);
+  posix_spawn_file_actions_addopen(&actions, STDOUT_FILENO,
+                                   stdout_path.c_str(),
+                                   O_WRONLY | O_CREAT | O_APPEND, 0666);
+  if (redirect_error_stream || stderr_path == stdout_path) {
+    posix_spawn_file_actions_adddup2(&actions, STDOUT_FILENO, STDERR_FILENO);
+  } else {
+    posix_spawn_file_actions_addopen(&actions, STDERR_FILENO,
+                                     stderr_path.c_str(),
+                                     O_WRONLY | O_CREAT | O_APPEND, 0666);
+  }
+
+  // The child starts with default signal handlers and nothing blocked, like a
+  // child of the JVM would.
+  posix_spawnattr_t attr;
+  posix_spawnattr_init(&attr);
+  sigset_t mask;
+  sigemptyset(&mask);
+  posix_spawnattr_setsigmask(&attr, &mask);
+  sigset_t defaults;
+  sigfillset(&defaults);
+  posix_spawnattr_setsigdefault(&attr, &defaults);
+  posix_spawnattr_setflags(&attr, POSIX_SPAWN_SETSIGMASK | POSIX_SPAWN_SETSIGDEF);
+
+  std::vector<char *> argv = ToArgv(args);
+  std::vector<char *> envp;
+  if (!inherit_env) {
+    envp = ToArgv(env);
+  }
+
+  // posix_spawn has no portable way to set the working directory of the
+  // child, but this process is single-threaded, so we can change ours.
+  pid_t pid = -1;
+  int saved_cwd = open(".", O_RDONLY | O_DIRECTORY | O_CLOEXEC);
+  int result;
+  if (!cwd.empty() && chdir(cwd.c_str()) < 0) {
+    result = errno;
+    *error = "Cannot change to directory " + cwd + ": " + strerror(result);
+  } else {
+    // Like ProcessBuilder, a bare program name is looked up in our PATH.
+    result = posix_spawnp(&pid, argv[0], &actions, &attr, argv.data(),
+                          inherit_env ? environ : envp.data());
+    if (result != 0) {
+      *error = std::string("Cannot run program \"") + argv[0] +
+               "\": " + strerror(result);
+    }
+  }
+  if (saved_cwd >= 0) {
+    if (fchdir(saved_cwd) < 0) {
+      perror("process-launcher: fchdir");
+    }
+    close(saved_cwd);
+  }
+  posix_spawnattr_destroy(&attr);
+  posix_spawn_file_actions_destroy(&actions);
+  return result == 0 ? pid : -result;
+}
+
+// Handles a request. Returns false if stdin was closed or is corrupt.
+bool HandleRequest() {
+  char type;
+  if (!ReadFully(&type, 1)) return false;
+  int64_t id;
+  if (!ReadInt64(&id)) return false;
+  if (type == 'K') {
+    int32_t sig;
+    if (!ReadInt32(&sig)) return false;
+    for (const auto &process : processes) {
+      if (process.second == id) {
+        kill(process.first, sig);
+        break;
+      }
+    }
+    return true;
+  }
+  if (type != 'S') return false;
+
+  std::string cwd, stdout_path, stderr_path;
+  char redirect_error_stream;
+  int32_t argc, envc;
+  std::vector<std::string> args, env;
+  if (!ReadString(&cwd) || !ReadString(&stdout_path) ||
+      !ReadString(&stderr_path) || !ReadFully(&redirect_error_stream, 1) ||
+      !ReadInt32(&argc) || argc <= 0 || !ReadStrings(argc, &args) ||
+      !ReadInt32(&envc) || (envc > 0 && !ReadStrings(envc, &env))) {
+    return false;
+  }
+
+  std::string error;
+  // Don't reap the child before we know its id.
+  sigset_t sigchld, old_mask;
+  sigemptyset(&sigchld);
+  sigaddset(&sigchld, SIGCHLD);
+  sigprocmask(SIG_BLOCK, &sigchld, &old_mask);
+  pid_t pid = Spawn(cwd, stdout_path, stderr_path, redirect_error_stream != 0,
+                    &args, &env, envc < 0, &error);
+  if (pid > 0) {
+    processes[pid] = id;
+  }
+  sigprocmask(SIG_SETMASK, &old_mask, nullptr);
+  Reply('S').Int64(id).Int32(pid).String(error).Send();
+  return true;
+}
+
+void ReapChildren() {
+  int status;
+  pid_t pid;
+  while ((pid = waitpid(-1, &status, WNOHANG)) > 0) {
+    auto process = processes.find(pid);
+    if (process == processes.end()) continue;
+    int exit_value = WIFEXITED(status) ? WEXITSTATUS(status)
+                                       : 0x80 + WTERMSIG(status);
+    Reply('E').Int64(process->second).Int32(exit_value).Send();
+    processes.erase(process);
+  }
+}
+
+}  // namespace
+
+int main(int argc, char *argv[]) {
+  if (pipe(sigchld_pipe) < 0) {
+    perror("process-launcher: pipe");
+    return EXIT_FAILURE;
+  }
+  for (int fd : sigchld_pipe) {
+    fcntl(fd, F_SETFD, FD_CLOEXEC);
+    fcntl(fd, F_SETFL, O_NONBLOCK);
+  }
+  // A dead server is noticed through EOF or EPIPE instead.
+  signal(SIGPIPE, SIG_IGN);
+  struct sigaction sa;
+  memset(&sa, 0, sizeof(sa));
+  sa.sa_handler = OnSigchld;
+  sa.sa_flags = SA_RESTART | SA_NOCLDSTOP;
+  sigaction(SIGCHLD, &sa, nullptr);
+
+  struct pollfd fds[2];
+  fds[0].fd = STDIN_FILENO;
+  fds[0].events = POLLIN;
+  fds[1].fd = sigchld_pipe[0];
+  fds[1].events = POLLIN;
+  for (;;) {
+    if (poll(fds, 2, -1) < 0) {
+      if (errno == EINTR) continue;
+      perror("process-launcher: poll");
+      return EXIT_FAILURE;
+    }
+    if (fds[1].revents != 0) {
+      char buf[64];
+      while (read(sigchld_pipe[0], buf, sizeof(buf)) > 0) {
+      }
+      ReapChildren();
+    }
+    if (fds[0].revents != 0 && !HandleRequest()) {
+      // The server closed our stdin: it is shutting down. Its processes are
+      // left running, as they would be if it had started them itself.
+      return EXIT_SUCCESS;
+    }
+  }
+}
@@ -37,8 +37,8 @@ public class DexingKeyTest {
   }
 
   /**
-   * Makes sure that arrays are compared by content.  Auto-value promises that but I want to be
-   * really sure as we'd never get any cache hits if arrays were compared by reference.
+   * Makes sure that keys are compared by class file content, as we'd never get any cache hits if
+   * they were compared by reference.
    */
   @Test
   public void testContentMatters() {
@@ -60,7 +60,7 @@ public class DexingKeyTest {
     Set<String> keyMethods = names(DexingKey.class.getDeclaredMethods());
     Set<String> optionsFields = names(DexingOptions.class.getDeclaredFields());
     keyMethods.remove("create"); // Ignore factory method (we just want accessors)
-    keyMethods.remove("classfileContent"); // Ignore classfile content (we just want options)
+    keyMethods.remove("classfileDigest"); // Ignore classfile digest (we just want options)
     keyMethods.remove("$jacocoInit"); // Ignore extra method generated in coverage builds
     optionsFields.remove("printWarnings"); // Doesn't affect resulting dex files
     optionsFields.remove("$jacocoData"); // Ignore extra field generated in coverage builds
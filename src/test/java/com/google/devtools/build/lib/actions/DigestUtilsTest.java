@@ -265,4 +265,82 @@ public class DigestUtilsTest {
 
     assertThat(digest3).isEqualTo(digest1);
   }
+
+  @Test
+  public void testSavedCacheIsRestored() throws Exception {
+    final AtomicInteger getDigestCounter = new AtomicInteger(0);
+    FileSystem tracingFileSystem =
+        new InMemoryFileSystem(BlazeClock.instance()) {
+          @Override
+          protected byte[] getFastDigest(Path path, HashFunction hashFunction) throws IOException {
+            return null;
+          }
+
+          @Override
+          protected byte[] getDigest(Path path, HashFunction hashFunction) throws IOException {
+            getDigestCounter.incrementAndGet();
+            return super.getDigest(path, hashFunction);
+          }
+        };
+    Path cacheFile = tracingFileSystem.getPath("/cache/file_digests.blaze");
+    FileSystemUtils.createDirectoryAndParents(cacheFile.getParentDirectory());
+    Path file1 = tracingFileSystem.getPath("/out/dir/1.txt");
+    Path file2 = tracingFileSystem.getPath("/out/dir/2.txt");
+    Path file3 = tracingFileSystem.getPath("/out/3.txt");
+    FileSystemUtils.createDirectoryAndParents(file1.getParentDirectory());
+    FileSystemUtils.writeContentAsLatin1(file1, "some contents");
+    FileSystemUtils.writeContentAsLatin1(file2, "some other contents");
+    FileSystemUtils.writeContentAsLatin1(file3, "and something else");
+
+    DigestUtils.configureCache(10);
+    byte[] digest1 = DigestUtils.getDigestOrFail(file1, file1.getFileSize());
+    byte[] digest2 = DigestUtils.getDigestOrFail(file2, file2.getFileSize());
+    byte[] digest3 = DigestUtils.getDigestOrFail(file3, file3.getFileSize());
+    assertThat(DigestUtils.saveCache(cacheFile)).isEqualTo(3);
+    assertThat(getDigestCounter.get()).isEqualTo(3);
+
+    // A new server starts with an empty cache.
+    DigestUtils.configureCache(10);
+    FileSystemUtils.writeContentAsLatin1(file3, "changed");
+    assertThat(DigestUtils.loadCache(cacheFile)).isEqualTo(3);
+    assertThat(DigestUtils.getDigestOrFail(file1, file1.getFileSize())).isEqualTo(digest1);
+    assertThat(DigestUtils.getDigestOrFail(file2, file2.getFileSize())).isEqualTo(digest2);
+    assertThat(getDigestCounter.get()).isEqualTo(3);
+    assertThat(DigestUtils.getDigestOrFail(file3, file3.getFileSize())).isNotEqualTo(digest3);
+    assertThat(getDigestCounter.get()).isEqualTo(4);
+  }
+
+  @Test
+  public void testSavedCacheIsIgnoredForAnotherDigestFunction() throws Exception {
+    FileSystem md5FileSystem = new InMemoryFileSystem(BlazeClock.instance(), HashFunction.MD5);
+    Path md5CacheFile = md5FileSystem.getPath("/file_digests.blaze");
+    Path md5File = md5FileSystem.getPath("/out/1.txt");
+    FileSystemUtils.createDirectoryAndParents(md5File.getParentDirectory());
+    FileSystemUtils.writeContentAsLatin1(md5File, "some contents");
+    DigestUtils.configureCache(10);
+    DigestUtils.getDigestOrFail(md5File, md5File.getFileSize());
+    assertThat(DigestUtils.saveCache(md5CacheFile)).isEqualTo(1);
+
+    // A new server uses SHA-256 for the same output tree.
+    FileSystem sha256FileSystem =
+        new InMemoryFileSystem(BlazeClock.instance(), HashFunction.SHA256);
+    Path sha256CacheFile = sha256FileSystem.getPath("/file_digests.blaze");
+    FileSystemUtils.writeContent(sha256CacheFile, FileSystemUtils.readContent(md5CacheFile));
+    DigestUtils.configureCache(10);
+    assertThat(DigestUtils.loadCache(sha256CacheFile)).isEqualTo(0);
+  }
+
+  @Test
+  public void testLoadCacheRejectsUnknownFormat() throws Exception {
+    FileSystem fs = new InMemoryFileSystem(BlazeClock.instance());
+    Path cacheFile = fs.getPath("/file_digests.blaze");
+    FileSystemUtils.writeContentAsLatin1(cacheFile, "garbage");
+    DigestUtils.configureCache(10);
+    try {
+      DigestUtils.loadCache(cacheFile);
+      fail("Expected an IOException");
+    } catch (IOException expected) {
+      assertThat(expected).hasMessageThat().contains("Unknown format");
+    }
+  }
 }
@@ -20,6 +20,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.devtools.build.lib.clock.Clock;
 import com.google.devtools.build.lib.skyframe.FileArtifactValue;
 import com.google.devtools.build.lib.testutil.Scratch;
+import com.google.devtools.build.lib.util.Fingerprint;
 import com.google.devtools.build.lib.vfs.Path;
 import com.google.devtools.build.lib.vfs.PathFragment;
 import java.io.IOException;
@@ -183,6 +184,14 @@ public class CompactPersistentActionCacheTest {
     assertToStringIsntTooBig(3000);
   }
 
+  @Test
+  public void testFileSuffixDependsOnFingerprintFunction() {
+    assertThat(CompactPersistentActionCache.fileSuffix(Fingerprint.Algorithm.MD5))
+        .isEqualTo("v12");
+    assertThat(CompactPersistentActionCache.fileSuffix(Fingerprint.Algorithm.MURMUR3_128))
+        .isEqualTo("v12_murmur3_128");
+  }
+
   private static void assertKeyEquals(ActionCache cache1, ActionCache cache2, String key) {
     Object entry = cache1.get(key);
     assertThat(entry).isNotNull();
@@ -0,0 +1,125 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.actions.cache;
+
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.devtools.build.lib.clock.BlazeClock;
+import com.google.devtools.build.lib.testutil.Scratch;
+import com.google.devtools.build.lib.util.CanonicalStringIndexer;
+import com.google.devtools.build.lib.util.CompactStringIndexer;
+import com.google.devtools.build.lib.util.StringIndexer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Microbenchmarks for the {@link StringIndexer}s under contention, as when many action threads
+ * update the action cache at the same time. All threads index the same paths, starting at
+ * different offsets, so that they race to create the indices and then mostly hit existing ones.
+ *
+ * <p>The {@link PersistentStringIndexer} of the action cache also records the new strings in its
+ * journal; here, the journal is kept in memory.
+ */
+public class StringIndexerBenchmark {
+
+  /** The indexers to compare. */
+  public enum Indexer {
+    PERSISTENT {
+      @Override
+      StringIndexer create() throws IOException {
+        return PersistentStringIndexer.newPersistentStringIndexer(
+            new Scratch().resolve("/cache/filename_index.blaze"), BlazeClock.instance());
+      }
+    },
+    CANONICAL {
+      @Override
+      StringIndexer create() {
+        return new CanonicalStringIndexer(new ConcurrentHashMap<String, Integer>());
+      }
+    },
+    COMPACT {
+      @Override
+      StringIndexer create() {
+        return new CompactStringIndexer(1);
+      }
+    };
+
+    abstract StringIndexer create() throws IOException;
+  }
+
+  @Param Indexer indexer;
+
+  @Param({"1", "8", "64"})
+  int threads;
+
+  @Param({"10000"})
+  int strings;
+
+  /** How many times each thread indexes every string. */
+  @Param({"4"})
+  int lookups;
+
+  private final List<String> paths = new ArrayList<>();
+  private ExecutorService executor;
+
+  @BeforeExperiment
+  void setUp() {
+    Random random = new Random(42);
+    for (int i = 0; i < strings; i++) {
+      paths.add(
+          "bazel-out/k8-fastbuild/bin/pkg" + random.nextInt(100) + "/target" + random.nextInt(100)
+              + "/file" + i + ".o");
+    }
+    executor = Executors.newFixedThreadPool(threads);
+  }
+
+  @AfterExperiment
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Benchmark
+  int getOrCreateIndex(int reps) throws Exception {
+    int dummy = 0;
+    for (int i = 0; i < reps; i++) {
+      StringIndexer stringIndexer = indexer.create();
+      List<Future<Integer>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        int offset = t * strings / threads;
+        Callable<Integer> task =
+            () -> {
+              int sum = 0;
+              for (int j = 0; j < lookups * strings; j++) {
+                sum += stringIndexer.getOrCreateIndex(paths.get((offset + j) % strings));
+              }
+              return sum;
+            };
+        futures.add(executor.submit(task));
+      }
+      for (Future<Integer> future : futures) {
+        dummy += future.get();
+      }
+    }
+    return dummy;
+  }
+}
@@ -725,6 +725,11 @@ public final class ActionsTestUtil {
       throw new UnsupportedOperationException();
     }
 
+    @Override
+    public void injectRemoteFile(Artifact output, byte[] digest, long size) {
+      throw new UnsupportedOperationException();
+    }
+
     @Override
     public void markOmitted(ActionInput output) {
       throw new UnsupportedOperationException();
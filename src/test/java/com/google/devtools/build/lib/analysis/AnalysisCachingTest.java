@@ -394,6 +394,36 @@ public class AnalysisCachingTest extends AnalysisCachingTestBase {
     assertThat(countObjectsPartiallyMatchingRegex(newAnalyzedTargets, "//java/a:y")).isEqualTo(0);
   }
 
+  @Test
+  public void testTrimmedConfigurationKeepsTargetsUnaffectedByOptionChange() throws Exception {
+    scratch.file("java/a/BUILD",
+        "java_library(name = 'x', srcs = ['A.java'], deps = ['y'])",
+        "java_library(name = 'y', srcs = ['B.java'])");
+    useConfiguration("--experimental_dynamic_configs=on", "--test_arg=foo");
+    update("//java/a:x");
+    // Java libraries don't need the test options.
+    useConfiguration("--experimental_dynamic_configs=on", "--test_arg=bar");
+    update("//java/a:x");
+    assertNoTargetsVisited();
+    useConfiguration("--experimental_dynamic_configs=on", "--test_arg=bar", "--javacopt=-g");
+    update("//java/a:x");
+    Set<?> analyzedTargets = getSkyframeEvaluatedTargetKeys();
+    assertThat(countObjectsPartiallyMatchingRegex(analyzedTargets, "//java/a:x")).isEqualTo(1);
+    assertThat(countObjectsPartiallyMatchingRegex(analyzedTargets, "//java/a:y")).isEqualTo(1);
+  }
+
+  @Test
+  public void testUntrimmedConfigurationChangeReanalyzesEverything() throws Exception {
+    scratch.file("java/a/BUILD", "java_library(name = 'x', srcs = ['A.java'])");
+    useConfiguration("--test_arg=foo");
+    update("//java/a:x");
+    useConfiguration("--test_arg=bar");
+    update("//java/a:x");
+    assertThat(
+            countObjectsPartiallyMatchingRegex(getSkyframeEvaluatedTargetKeys(), "//java/a:x"))
+        .isEqualTo(1);
+  }
+
   @Test
   public void testExtraActions() throws Exception {
     scratch.file("java/com/google/a/BUILD", "java_library(name='a', srcs=['A.java'])");
@@ -0,0 +1,47 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.collect.compacthashset;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** A test for {@link CompactHashSet}. */
+@RunWith(JUnit4.class)
+public class CompactHashSetTest {
+
+  @Test
+  public void addAll() {
+    CompactHashSet<String> set = CompactHashSet.create("a");
+    List<String> elements = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      elements.add("s" + i);
+    }
+    assertThat(set.addAll(elements)).isTrue();
+    assertThat(set.addAll(elements)).isFalse();
+    assertThat(set.addAll(ImmutableList.of("a", "b"))).isTrue();
+    assertThat(set).hasSize(102);
+    for (String element : elements) {
+      assertThat(set.contains(element)).isTrue();
+    }
+    assertThat(set.remove("s50")).isTrue();
+    assertThat(set.contains("s50")).isFalse();
+    assertThat(set.contains("s51")).isTrue();
+  }
+}
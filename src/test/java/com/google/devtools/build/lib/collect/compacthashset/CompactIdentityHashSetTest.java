@@ -0,0 +1,71 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.collect.compacthashset;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** A test for {@link CompactIdentityHashSet}. */
+@RunWith(JUnit4.class)
+public class CompactIdentityHashSetTest {
+
+  @Test
+  public void comparesByIdentity() {
+    String a = new String("a");
+    String otherA = new String("a");
+    CompactIdentityHashSet<String> set = CompactIdentityHashSet.create();
+    assertThat(set.add(a)).isTrue();
+    assertThat(set.add(a)).isFalse();
+    assertThat(set.contains(otherA)).isFalse();
+    assertThat(set.add(otherA)).isTrue();
+    assertThat(set).hasSize(2);
+    assertThat(set.remove(a)).isTrue();
+    assertThat(set.contains(a)).isFalse();
+    assertThat(set.contains(otherA)).isTrue();
+  }
+
+  @Test
+  public void growsAndKeepsInsertionOrder() {
+    List<Object[]> arrays = new ArrayList<>();
+    CompactIdentityHashSet<Object[]> set = CompactIdentityHashSet.create();
+    for (int i = 0; i < 1000; i++) {
+      Object[] array = new Object[] {i};
+      arrays.add(array);
+      assertThat(set.add(array)).isTrue();
+    }
+    for (Object[] array : arrays) {
+      assertThat(set.add(array)).isFalse();
+      assertThat(set.contains(array.clone())).isFalse();
+    }
+    assertThat(set).containsExactlyElementsIn(arrays).inOrder();
+  }
+
+  @Test
+  public void iteratorRemove() {
+    Integer one = new Integer(1000);
+    Integer two = new Integer(2000);
+    CompactIdentityHashSet<Integer> set = CompactIdentityHashSet.create(one, two);
+    Iterator<Integer> it = set.iterator();
+    assertThat(it.next()).isSameAs(one);
+    it.remove();
+    assertThat(set.contains(one)).isFalse();
+    assertThat(set.contains(two)).isTrue();
+  }
+}
@@ -0,0 +1,98 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.collect.nestedset;
+
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.devtools.build.lib.skyframe.serialization.strings.StringCodecs;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Microbenchmarks for {@link NestedSetCodec}, on graphs shaped like the transitive files of a
+ * build: each nested set adds a few files of its own to some of the nested sets of the level
+ * below, so that the deeper nested sets are shared many times.
+ */
+public class NestedSetCodecBenchmark {
+
+  @Param({"10", "100"})
+  int width;
+
+  @Param({"4"})
+  int depth;
+
+  @Param({"5"})
+  int fanout;
+
+  private final NestedSetCodec<String> codec = new NestedSetCodec<>(StringCodecs.asciiOptimized());
+  private NestedSet<String> nestedSet;
+  private ByteString serialized;
+
+  @BeforeExperiment
+  void setUp() throws Exception {
+    Random random = new Random(42);
+    List<NestedSet<String>> level = new ArrayList<>();
+    for (int i = 0; i < depth; i++) {
+      List<NestedSet<String>> nextLevel = new ArrayList<>();
+      for (int j = 0; j < width; j++) {
+        NestedSetBuilder<String> builder = NestedSetBuilder.stableOrder();
+        for (int k = 0; k < 3; k++) {
+          builder.add("bazel-out/k8-fastbuild/bin/pkg" + i + "/target" + j + "/file" + k);
+        }
+        for (int k = 0; k < fanout && !level.isEmpty(); k++) {
+          builder.addTransitive(level.get(random.nextInt(level.size())));
+        }
+        nextLevel.add(builder.build());
+      }
+      level = nextLevel;
+    }
+    NestedSetBuilder<String> top = NestedSetBuilder.stableOrder();
+    for (NestedSet<String> child : level) {
+      top.addTransitive(child);
+    }
+    nestedSet = top.build();
+    serialized = serialize();
+    System.out.println("Serialized size: " + serialized.size() + " bytes");
+  }
+
+  private ByteString serialize() throws Exception {
+    ByteString.Output out = ByteString.newOutput();
+    CodedOutputStream codedOut = CodedOutputStream.newInstance(out);
+    codec.serialize(nestedSet, codedOut);
+    codedOut.flush();
+    return out.toByteString();
+  }
+
+  @Benchmark
+  int serialize(int reps) throws Exception {
+    int dummy = 0;
+    for (int i = 0; i < reps; i++) {
+      dummy += serialize().size();
+    }
+    return dummy;
+  }
+
+  @Benchmark
+  int deserialize(int reps) throws Exception {
+    int dummy = 0;
+    for (int i = 0; i < reps; i++) {
+      dummy += codec.deserialize(serialized.newCodedInput()).getOrder().ordinal();
+    }
+    return dummy;
+  }
+}
@@ -15,19 +15,33 @@
 package com.google.devtools.build.lib.exec;
 
 import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.devtools.build.lib.actions.ActionExecutionContext;
 import com.google.devtools.build.lib.actions.ActionExecutionMetadata;
 import com.google.devtools.build.lib.actions.ActionInput;
 import com.google.devtools.build.lib.actions.ActionInputHelper;
+import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.ArtifactRoot;
 import com.google.devtools.build.lib.actions.ExecutionRequirements;
 import com.google.devtools.build.lib.actions.Spawn;
+import com.google.devtools.build.lib.actions.SpawnActionContext;
 import com.google.devtools.build.lib.analysis.config.BinTools;
 import com.google.devtools.build.lib.exec.util.FakeOwner;
 import com.google.devtools.build.lib.vfs.FileSystem;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
 import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import com.google.devtools.build.lib.vfs.Symlinks;
 import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
+import java.io.IOException;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -64,4 +78,118 @@ public final class SymlinkTreeHelperTest {
     // At this time, the spawn does not declare any output files.
     assertThat(spawn.getOutputFiles()).isEmpty();
   }
+
+  private Path createManifest(String name, String... lines) throws IOException {
+    Path manifest = fs.getPath("/my/workspace").getRelative(name);
+    manifest.getParentDirectory().createDirectoryAndParents();
+    FileSystemUtils.writeLinesAs(manifest, ISO_8859_1, lines);
+    return manifest;
+  }
+
+  @Test
+  public void incrementalUpdateRequiresOutputManifest() throws Exception {
+    Path inputManifest = createManifest("input_manifest", "a /target/a");
+    Path treeRoot = fs.getPath("/my/workspace/tree");
+    assertThat(
+            new SymlinkTreeHelper(inputManifest, treeRoot, false, true)
+                .updateSymlinksIncrementally())
+        .isFalse();
+    assertThat(treeRoot.exists()).isFalse();
+  }
+
+  @Test
+  public void incrementalUpdateAppliesManifestDifferences() throws Exception {
+    Path treeRoot = fs.getPath("/my/workspace/tree");
+    treeRoot.getRelative("pkg/gone").createDirectoryAndParents();
+    treeRoot.getRelative("pkg/same").createSymbolicLink(PathFragment.create("/target/same"));
+    treeRoot.getRelative("pkg/changed").createSymbolicLink(PathFragment.create("/target/old"));
+    treeRoot.getRelative("pkg/gone/file").createSymbolicLink(PathFragment.create("/target/gone"));
+    Path oldManifest =
+        createManifest(
+            "tree/MANIFEST",
+            "pkg/same /target/same",
+            "pkg/changed /target/old",
+            "pkg/gone/file /target/gone");
+    Path inputManifest =
+        createManifest(
+            "input_manifest",
+            "pkg/same /target/same",
+            "pkg/changed /target/new",
+            "pkg/added/file /target/added",
+            "pkg/empty ");
+
+    assertThat(
+            new SymlinkTreeHelper(inputManifest, treeRoot, false, true)
+                .updateSymlinksIncrementally())
+        .isTrue();
+
+    assertThat(treeRoot.getRelative("pkg/same").readSymbolicLink())
+        .isEqualTo(PathFragment.create("/target/same"));
+    assertThat(treeRoot.getRelative("pkg/changed").readSymbolicLink())
+        .isEqualTo(PathFragment.create("/target/new"));
+    assertThat(treeRoot.getRelative("pkg/added/file").readSymbolicLink())
+        .isEqualTo(PathFragment.create("/target/added"));
+    assertThat(treeRoot.getRelative("pkg/empty").isFile(Symlinks.NOFOLLOW)).isTrue();
+    assertThat(treeRoot.getRelative("pkg/empty").getFileSize()).isEqualTo(0);
+    assertThat(treeRoot.getRelative("pkg/gone").exists(Symlinks.NOFOLLOW)).isFalse();
+    assertThat(FileSystemUtils.readContent(oldManifest))
+        .isEqualTo(FileSystemUtils.readContent(inputManifest));
+  }
+
+  @Test
+  public void incrementalUpdateRejectsMalformedManifest() throws Exception {
+    Path treeRoot = fs.getPath("/my/workspace/tree");
+    Path outputManifest = createManifest("tree/MANIFEST", "a /target/a");
+    Path inputManifest = createManifest("input_manifest", "no_target_separator");
+    assertThat(
+            new SymlinkTreeHelper(inputManifest, treeRoot, false, true)
+                .updateSymlinksIncrementally())
+        .isFalse();
+    assertThat(outputManifest.exists()).isTrue();
+  }
+
+  @Test
+  public void incrementalUpdateDoesNotTrustManifestWithoutLinks() throws Exception {
+    Path execRoot = fs.getPath("/my/workspace");
+    ArtifactRoot root = ArtifactRoot.asDerivedRoot(execRoot, execRoot.getRelative("out"));
+    Artifact inputManifest = new Artifact(PathFragment.create("input_manifest"), root);
+    createManifest("out/input_manifest", "a /target/a");
+    Path treeRoot = fs.getPath("/my/workspace/tree");
+    SymlinkTreeHelper helper =
+        new SymlinkTreeHelper(inputManifest.getPath(), treeRoot, false, true);
+    BinTools binTools =
+        BinTools.forUnitTesting(execRoot, ImmutableList.of(SymlinkTreeHelper.BUILD_RUNFILES));
+    ActionExecutionMetadata owner = new FakeOwner("SymlinkTree", "Creating it");
+
+    // With runfiles disabled, only the MANIFEST is written.
+    helper.createSymlinks(
+        owner,
+        /*actionExecutionContext=*/ null,
+        binTools,
+        ImmutableMap.of(),
+        inputManifest,
+        /*enableRunfiles=*/ false);
+    assertThat(treeRoot.getChild("MANIFEST").exists()).isTrue();
+    assertThat(treeRoot.getChild("a").exists(Symlinks.NOFOLLOW)).isFalse();
+
+    // The MANIFEST matches the input manifest, but the link it lists doesn't exist.
+    assertThat(helper.updateSymlinksIncrementally()).isFalse();
+
+    ActionExecutionContext actionExecutionContext = mock(ActionExecutionContext.class);
+    SpawnActionContext spawnActionContext = mock(SpawnActionContext.class);
+    when(actionExecutionContext.getExecRoot()).thenReturn(execRoot);
+    when(actionExecutionContext.getSpawnActionContext("SymlinkTree"))
+        .thenReturn(spawnActionContext);
+    helper.createSymlinks(
+        owner,
+        actionExecutionContext,
+        binTools,
+        ImmutableMap.of(),
+        inputManifest,
+        /*enableRunfiles=*/ true);
+
+    // The tree was built by build-runfiles, after which its MANIFEST can be trusted again.
+    verify(spawnActionContext).exec(any(Spawn.class), eq(actionExecutionContext));
+    assertThat(helper.updateSymlinksIncrementally()).isTrue();
+  }
 }
@@ -39,6 +39,7 @@ import io.grpc.Server;
 import io.grpc.ServerCall;
 import io.grpc.ServerCall.Listener;
 import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
 import io.grpc.ServerInterceptors;
 import io.grpc.ServerServiceDefinition;
 import io.grpc.Status;
@@ -47,6 +48,7 @@ import io.grpc.inprocess.InProcessChannelBuilder;
 import io.grpc.inprocess.InProcessServerBuilder;
 import io.grpc.stub.StreamObserver;
 import io.grpc.util.MutableHandlerRegistry;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -62,6 +64,7 @@ import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -577,6 +580,68 @@ public class ByteStreamUploaderTest {
     uploader.uploadBlob(chunker);
   }
 
+  @Test(timeout = 10000)
+  public void compressedUploadShouldWork() throws Exception {
+    withEmptyMetadata.attach();
+    RemoteRetrier retrier =
+        new RemoteRetrier(() -> mockBackoff, (e) -> true, Retrier.ALLOW_ALL_CALLS);
+    ByteStreamUploader uploader =
+        new ByteStreamUploader(
+            INSTANCE_NAME, channel, null, 3, /* compress= */ true, retrier, retryService);
+
+    byte[] blob = new byte[CHUNK_SIZE * 2 + 1];
+    new Random().nextBytes(blob);
+    Chunker chunker = new Chunker(blob, CHUNK_SIZE, DIGEST_UTIL);
+
+    AtomicReference<String> encoding = new AtomicReference<>();
+    ByteArrayOutputStream received = new ByteArrayOutputStream();
+    BindableService bsService =
+        new ByteStreamImplBase() {
+          @Override
+          public StreamObserver<WriteRequest> write(StreamObserver<WriteResponse> response) {
+            return new StreamObserver<WriteRequest>() {
+              @Override
+              public void onNext(WriteRequest writeRequest) {
+                // The offsets refer to the uncompressed data.
+                assertThat(writeRequest.getWriteOffset()).isEqualTo(received.size());
+                byte[] data = writeRequest.getData().toByteArray();
+                received.write(data, 0, data.length);
+              }
+
+              @Override
+              public void onError(Throwable throwable) {
+                fail("onError should never be called.");
+              }
+
+              @Override
+              public void onCompleted() {
+                response.onNext(WriteResponse.newBuilder().setCommittedSize(blob.length).build());
+                response.onCompleted();
+              }
+            };
+          }
+        };
+    ServerInterceptor interceptor =
+        new ServerInterceptor() {
+          @Override
+          public <ReqT, RespT> Listener<ReqT> interceptCall(
+              ServerCall<ReqT, RespT> call,
+              Metadata headers,
+              ServerCallHandler<ReqT, RespT> next) {
+            encoding.set(
+                headers.get(Metadata.Key.of("grpc-encoding", Metadata.ASCII_STRING_MARSHALLER)));
+            return next.startCall(call, headers);
+          }
+        };
+    serviceRegistry.addService(ServerInterceptors.intercept(bsService, interceptor));
+
+    uploader.uploadBlob(chunker);
+
+    assertThat(encoding.get()).isEqualTo("gzip");
+    assertThat(received.toByteArray()).isEqualTo(blob);
+    Mockito.verifyZeroInteractions(mockBackoff);
+  }
+
   @Test(timeout = 10000)
   public void nonRetryableStatusShouldNotBeRetried() throws Exception {
     withEmptyMetadata.attach();
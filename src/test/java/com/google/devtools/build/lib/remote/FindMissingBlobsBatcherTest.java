@@ -0,0 +1,101 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.remote;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.devtools.build.lib.vfs.FileSystem.HashFunction;
+import com.google.devtools.remoteexecution.v1test.Digest;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link FindMissingBlobsBatcher}. */
+@RunWith(JUnit4.class)
+public class FindMissingBlobsBatcherTest {
+  private static final DigestUtil DIGEST_UTIL = new DigestUtil(HashFunction.SHA256);
+
+  private final Digest a = DIGEST_UTIL.computeAsUtf8("a");
+  private final Digest b = DIGEST_UTIL.computeAsUtf8("b");
+  private final Digest c = DIGEST_UTIL.computeAsUtf8("c");
+  private final List<List<Digest>> requests = Collections.synchronizedList(new ArrayList<>());
+
+  /** Records the requests, and reports {@link #b} as missing. */
+  private ImmutableSet<Digest> findMissing(Iterable<Digest> digests) {
+    requests.add(ImmutableList.copyOf(digests));
+    return ImmutableList.copyOf(digests).contains(b) ? ImmutableSet.of(b) : ImmutableSet.of();
+  }
+
+  @Test
+  public void testConcurrentCallsAreCombined() throws Exception {
+    FindMissingBlobsBatcher batcher = new FindMissingBlobsBatcher(this::findMissing, 1000, 100);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<ImmutableSet<Digest>> first =
+          executor.submit(() -> batcher.findMissing(ImmutableList.of(a, b)));
+      Future<ImmutableSet<Digest>> second =
+          executor.submit(() -> batcher.findMissing(ImmutableList.of(a, c)));
+      assertThat(first.get()).containsExactly(b);
+      assertThat(second.get()).isEmpty();
+    } finally {
+      executor.shutdownNow();
+    }
+    assertThat(requests).hasSize(1);
+    assertThat(requests.get(0)).containsExactly(a, b, c);
+  }
+
+  @Test
+  public void testLargeCallsAreSentRightAway() throws Exception {
+    FindMissingBlobsBatcher batcher = new FindMissingBlobsBatcher(this::findMissing, 60000, 2);
+    assertThat(batcher.findMissing(ImmutableList.of(a, b))).containsExactly(b);
+    assertThat(requests).containsExactly(ImmutableList.of(a, b));
+  }
+
+  @Test
+  public void testNoWindow() throws Exception {
+    FindMissingBlobsBatcher batcher = new FindMissingBlobsBatcher(this::findMissing, 0, 100);
+    assertThat(batcher.findMissing(ImmutableList.of(a))).isEmpty();
+    assertThat(batcher.findMissing(ImmutableList.of(c))).isEmpty();
+    assertThat(batcher.findMissing(ImmutableList.of())).isEmpty();
+    assertThat(requests).containsExactly(ImmutableList.of(a), ImmutableList.of(c)).inOrder();
+  }
+
+  @Test
+  public void testErrorsArePropagated() throws Exception {
+    FindMissingBlobsBatcher batcher =
+        new FindMissingBlobsBatcher(
+            (digests) -> {
+              throw new IOException("unavailable");
+            },
+            10,
+            100);
+    try {
+      batcher.findMissing(ImmutableList.of(a));
+      fail();
+    } catch (IOException e) {
+      assertThat(e).hasMessageThat().isEqualTo("unavailable");
+    }
+  }
+}
@@ -27,11 +27,13 @@ import com.google.bytestream.ByteStreamProto.WriteRequest;
 import com.google.bytestream.ByteStreamProto.WriteResponse;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.devtools.build.lib.actions.ActionInput;
 import com.google.devtools.build.lib.actions.ActionInputHelper;
 import com.google.devtools.build.lib.authandtls.AuthAndTLSOptions;
 import com.google.devtools.build.lib.authandtls.GoogleAuthUtils;
 import com.google.devtools.build.lib.clock.JavaClock;
 import com.google.devtools.build.lib.remote.DigestUtil.ActionKey;
+import com.google.devtools.build.lib.remote.TreeNodeRepository.TreeNode;
 import com.google.devtools.build.lib.testutil.Scratch;
 import com.google.devtools.build.lib.util.io.FileOutErr;
 import com.google.devtools.build.lib.vfs.FileSystem;
@@ -43,6 +45,7 @@ import com.google.devtools.common.options.Options;
 import com.google.devtools.remoteexecution.v1test.Action;
 import com.google.devtools.remoteexecution.v1test.ActionCacheGrpc.ActionCacheImplBase;
 import com.google.devtools.remoteexecution.v1test.ActionResult;
+import com.google.devtools.remoteexecution.v1test.Command;
 import com.google.devtools.remoteexecution.v1test.ContentAddressableStorageGrpc.ContentAddressableStorageImplBase;
 import com.google.devtools.remoteexecution.v1test.Digest;
 import com.google.devtools.remoteexecution.v1test.Directory;
@@ -54,6 +57,7 @@ import com.google.devtools.remoteexecution.v1test.GetActionResultRequest;
 import com.google.devtools.remoteexecution.v1test.Tree;
 import com.google.devtools.remoteexecution.v1test.UpdateActionResultRequest;
 import com.google.protobuf.ByteString;
+import io.grpc.BindableService;
 import io.grpc.CallCredentials;
 import io.grpc.CallOptions;
 import io.grpc.Channel;
@@ -61,14 +65,23 @@ import io.grpc.ClientCall;
 import io.grpc.ClientInterceptor;
 import io.grpc.ClientInterceptors;
 import io.grpc.Context;
+import io.grpc.Metadata;
 import io.grpc.MethodDescriptor;
 import io.grpc.Server;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
 import io.grpc.Status;
 import io.grpc.inprocess.InProcessChannelBuilder;
 import io.grpc.inprocess.InProcessServerBuilder;
 import io.grpc.stub.StreamObserver;
 import io.grpc.util.MutableHandlerRegistry;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -141,6 +154,10 @@ public class GrpcRemoteCacheTest {
   }
 
   private GrpcRemoteCache newClient() throws IOException {
+    return newClient(Options.getDefaults(RemoteOptions.class));
+  }
+
+  private GrpcRemoteCache newClient(RemoteOptions remoteOptions) throws IOException {
     AuthAndTLSOptions authTlsOptions = Options.getDefaults(AuthAndTLSOptions.class);
     authTlsOptions.useGoogleDefaultCredentials = true;
     authTlsOptions.googleCredentials = "/exec/root/creds.json";
@@ -158,7 +175,6 @@ public class GrpcRemoteCacheTest {
         GoogleAuthUtils.newCallCredentials(
             scratch.resolve(authTlsOptions.googleCredentials).getInputStream(),
             authTlsOptions.googleAuthScopes);
-    RemoteOptions remoteOptions = Options.getDefaults(RemoteOptions.class);
     RemoteRetrier retrier =
         new RemoteRetrier(
             remoteOptions, RemoteRetrier.RETRIABLE_GRPC_ERRORS, Retrier.ALLOW_ALL_CALLS);
@@ -218,6 +234,41 @@ public class GrpcRemoteCacheTest {
     assertThat(new String(client.downloadBlob(digest), UTF_8)).isEqualTo("abcdefg");
   }
 
+  @Test
+  public void testDownloadBlobCompressed() throws Exception {
+    RemoteOptions options = Options.getDefaults(RemoteOptions.class);
+    options.experimentalRemoteBytestreamCompression = true;
+    final GrpcRemoteCache client = newClient(options);
+    final Digest digest = DIGEST_UTIL.computeAsUtf8("abcdefg");
+    AtomicReference<String> encoding = new AtomicReference<>();
+    BindableService bsService =
+        new ByteStreamImplBase() {
+          @Override
+          public void read(ReadRequest request, StreamObserver<ReadResponse> responseObserver) {
+            responseObserver.onNext(
+                ReadResponse.newBuilder().setData(ByteString.copyFromUtf8("abcdefg")).build());
+            responseObserver.onCompleted();
+          }
+        };
+    serviceRegistry.addService(
+        ServerInterceptors.intercept(
+            bsService,
+            new ServerInterceptor() {
+              @Override
+              public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+                  ServerCall<ReqT, RespT> call,
+                  Metadata headers,
+                  ServerCallHandler<ReqT, RespT> next) {
+                encoding.set(
+                    headers.get(
+                        Metadata.Key.of("grpc-encoding", Metadata.ASCII_STRING_MARSHALLER)));
+                return next.startCall(call, headers);
+              }
+            }));
+    assertThat(new String(client.downloadBlob(digest), UTF_8)).isEqualTo("abcdefg");
+    assertThat(encoding.get()).isEqualTo("gzip");
+  }
+
   @Test
   public void testDownloadAllResults() throws Exception {
     GrpcRemoteCache client = newClient();
@@ -612,6 +663,61 @@ public class GrpcRemoteCacheTest {
     assertThat(result.build()).isEqualTo(expectedResult.build());
   }
 
+  @Test
+  public void testEnsureInputsPresentSkipsKnownSubtrees() throws Exception {
+    RemoteOptions options = Options.getDefaults(RemoteOptions.class);
+    options.experimentalRemoteKnownDigests = 100;
+    GrpcRemoteCache client = newClient(options);
+    ActionInput foo = ActionInputHelper.fromPath("a/foo");
+    ActionInput bar = ActionInputHelper.fromPath("b/bar");
+    ActionInput baz = ActionInputHelper.fromPath("c/baz");
+    Digest fooDigest = fakeFileCache.createScratchInput(foo, "foo");
+    Digest barDigest = fakeFileCache.createScratchInput(bar, "bar");
+    Digest bazDigest = fakeFileCache.createScratchInput(baz, "baz");
+    TreeNodeRepository repository =
+        new TreeNodeRepository(execRoot, fakeFileCache, DIGEST_UTIL);
+    TreeNode root1 =
+        repository.buildFromActionInputs(
+            new TreeMap<>(ImmutableMap.of(foo.getExecPath(), foo, bar.getExecPath(), bar)));
+    TreeNode root2 =
+        repository.buildFromActionInputs(
+            new TreeMap<>(ImmutableMap.of(foo.getExecPath(), foo, baz.getExecPath(), baz)));
+    Command command = Command.newBuilder().addArguments("echo").build();
+    List<List<Digest>> requests = new ArrayList<>();
+    serviceRegistry.addService(
+        new ContentAddressableStorageImplBase() {
+          @Override
+          public void findMissingBlobs(
+              FindMissingBlobsRequest request,
+              StreamObserver<FindMissingBlobsResponse> responseObserver) {
+            requests.add(request.getBlobDigestsList());
+            // Nothing is missing.
+            responseObserver.onNext(FindMissingBlobsResponse.getDefaultInstance());
+            responseObserver.onCompleted();
+          }
+        });
+
+    client.ensureInputsPresent(repository, execRoot, root1, command);
+    client.ensureInputsPresent(repository, execRoot, root2, command);
+    client.ensureInputsPresent(repository, execRoot, root2, command);
+
+    TreeNode aNode = root1.getChildEntries().get(0).getChild();
+    TreeNode cNode = root2.getChildEntries().get(1).getChild();
+    assertThat(requests).hasSize(2);
+    assertThat(requests.get(0))
+        .containsExactly(
+            repository.getMerkleDigest(root1),
+            repository.getMerkleDigest(aNode),
+            fooDigest,
+            repository.getMerkleDigest(root1.getChildEntries().get(1).getChild()),
+            barDigest,
+            DIGEST_UTIL.compute(command));
+    // The "a" subtree and the command are known to be present.
+    assertThat(requests.get(1))
+        .containsExactly(
+            repository.getMerkleDigest(root2), repository.getMerkleDigest(cNode), bazDigest);
+  }
+
   @Test
   public void testUploadCacheHits() throws Exception {
     final GrpcRemoteCache client = newClient();
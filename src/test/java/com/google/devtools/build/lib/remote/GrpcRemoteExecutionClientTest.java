@@ -35,6 +35,7 @@ import com.google.devtools.build.lib.actions.ExecException;
 import com.google.devtools.build.lib.actions.ResourceSet;
 import com.google.devtools.build.lib.actions.SimpleSpawn;
 import com.google.devtools.build.lib.actions.SpawnResult;
+import com.google.devtools.build.lib.actions.cache.MetadataHandler;
 import com.google.devtools.build.lib.analysis.BlazeVersionInfo;
 import com.google.devtools.build.lib.authandtls.AuthAndTLSOptions;
 import com.google.devtools.build.lib.authandtls.GoogleAuthUtils;
@@ -151,6 +152,11 @@ public class GrpcRemoteExecutionClientTest {
           return fakeFileCache;
         }
 
+        @Override
+        public MetadataHandler getMetadataHandler() {
+          throw new UnsupportedOperationException();
+        }
+
         @Override
         public ArtifactExpander getArtifactExpander() {
           throw new UnsupportedOperationException();
@@ -0,0 +1,166 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.remote;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devtools.build.lib.actions.ActionInputHelper;
+import com.google.devtools.build.lib.clock.JavaClock;
+import com.google.devtools.build.lib.remote.RemoteActionInputFetcher.Priority;
+import com.google.devtools.build.lib.remote.blobstore.ConcurrentMapBlobStore;
+import com.google.devtools.build.lib.vfs.FileSystem;
+import com.google.devtools.build.lib.vfs.FileSystem.HashFunction;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
+import com.google.devtools.remoteexecution.v1test.Digest;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link RemoteActionInputFetcher}. */
+@RunWith(JUnit4.class)
+public class RemoteActionInputFetcherTest {
+  private static final DigestUtil DIGEST_UTIL = new DigestUtil(HashFunction.SHA256);
+
+  /** Records the blobs that are read, and optionally blocks the first read. */
+  private static final class RecordingMap extends ConcurrentHashMap<String, byte[]> {
+    final List<String> reads = new CopyOnWriteArrayList<>();
+    final CountDownLatch firstReadStarted = new CountDownLatch(1);
+    final CountDownLatch unblockFirstRead = new CountDownLatch(1);
+
+    @Override
+    public byte[] get(Object key) {
+      reads.add((String) key);
+      if (reads.size() == 1) {
+        firstReadStarted.countDown();
+        try {
+          unblockFirstRead.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      return super.get(key);
+    }
+  }
+
+  private FileSystem fs;
+  private Path execRoot;
+  private RecordingMap blobs;
+  private RemoteOutputService remoteOutputs;
+
+  @Before
+  public final void setUp() throws Exception {
+    fs = new InMemoryFileSystem(new JavaClock(), HashFunction.SHA256);
+    execRoot = fs.getPath("/exec/root");
+    FileSystemUtils.createDirectoryAndParents(execRoot);
+    blobs = new RecordingMap();
+    remoteOutputs = new RemoteOutputService("fs", "workspace");
+  }
+
+  private RemoteActionInputFetcher newFetcher(int jobs, boolean speculative) {
+    return new RemoteActionInputFetcher(
+        remoteOutputs,
+        new SimpleBlobStoreActionCache(new ConcurrentMapBlobStore(blobs), DIGEST_UTIL),
+        execRoot,
+        jobs,
+        speculative);
+  }
+
+  private Digest addBlob(String contents) {
+    Digest digest = DIGEST_UTIL.computeAsUtf8(contents);
+    blobs.put(digest.getHash(), contents.getBytes(UTF_8));
+    return digest;
+  }
+
+  @Test
+  public void testPrefetchDownloadsRegisteredFiles() throws Exception {
+    blobs.unblockFirstRead.countDown();
+    RemoteActionInputFetcher fetcher = newFetcher(2, false);
+    Digest digest = addBlob("foo-contents");
+    Path foo = execRoot.getRelative("out/foo");
+    fetcher.remoteFileAvailable(foo, digest, true);
+    assertThat(fetcher.isRemote(foo)).isTrue();
+    assertThat(blobs.reads).isEmpty();
+
+    fetcher.prefetchFiles(
+        ImmutableList.of(
+            ActionInputHelper.fromPath("out/foo"), ActionInputHelper.fromPath("out/local")));
+
+    assertThat(FileSystemUtils.readContent(foo, UTF_8)).isEqualTo("foo-contents");
+    assertThat(foo.isExecutable()).isTrue();
+    assertThat(fetcher.isRemote(foo)).isFalse();
+    assertThat(remoteOutputs.remoteFileCount()).isEqualTo(0);
+    assertThat(fetcher.pendingDownloads()).isEqualTo(0);
+    fetcher.shutdown();
+  }
+
+  @Test
+  public void testFilesWithSameDigestAreDownloadedOnce() throws Exception {
+    RemoteActionInputFetcher fetcher = newFetcher(2, false);
+    Digest digest = addBlob("shared-contents");
+    Path first = execRoot.getRelative("out/first");
+    Path second = execRoot.getRelative("out/second");
+    fetcher.remoteFileAvailable(first, digest, false);
+    fetcher.remoteFileAvailable(second, digest, false);
+
+    fetcher.fetch(first, Priority.HIGH);
+    blobs.firstReadStarted.await();
+    fetcher.fetch(second, Priority.HIGH);
+    blobs.unblockFirstRead.countDown();
+    fetcher
+        .fetchAll(
+            ImmutableList.of(
+                ActionInputHelper.fromPath("out/first"), ActionInputHelper.fromPath("out/second")))
+        .get();
+
+    assertThat(blobs.reads).containsExactly(digest.getHash());
+    assertThat(FileSystemUtils.readContent(first, UTF_8)).isEqualTo("shared-contents");
+    assertThat(FileSystemUtils.readContent(second, UTF_8)).isEqualTo("shared-contents");
+    fetcher.shutdown();
+  }
+
+  @Test
+  public void testRequestedFilesOvertakeSpeculativeDownloads() throws Exception {
+    RemoteActionInputFetcher fetcher = newFetcher(1, true);
+    Digest blocking = addBlob("blocking");
+    Digest a = addBlob("a");
+    Digest b = addBlob("b");
+    Digest c = addBlob("c");
+    // Occupies the only download thread until we're done scheduling.
+    fetcher.remoteFileAvailable(execRoot.getRelative("blocking"), blocking, false);
+    blobs.firstReadStarted.await();
+    fetcher.remoteFileAvailable(execRoot.getRelative("a"), a, false);
+    fetcher.remoteFileAvailable(execRoot.getRelative("b"), b, false);
+    fetcher.remoteFileAvailable(execRoot.getRelative("c"), c, false);
+    fetcher.fetchAll(ImmutableList.of(ActionInputHelper.fromPath("c")));
+    blobs.unblockFirstRead.countDown();
+
+    fetcher.fetch(execRoot.getRelative("a"), Priority.LOW).get();
+    fetcher.fetch(execRoot.getRelative("b"), Priority.LOW).get();
+
+    assertThat(blobs.reads)
+        .containsExactly(blocking.getHash(), c.getHash(), a.getHash(), b.getHash())
+        .inOrder();
+    fetcher.shutdown();
+  }
+}
@@ -0,0 +1,641 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.remote;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.devtools.build.lib.actions.ActionInput;
+import com.google.devtools.build.lib.actions.ActionInputHelper;
+import com.google.devtools.build.lib.actions.ExecException;
+import com.google.devtools.build.lib.authandtls.AuthAndTLSOptions;
+import com.google.devtools.build.lib.authandtls.GoogleAuthUtils;
+import com.google.devtools.build.lib.exec.SingleBuildFileCache;
+import com.google.devtools.build.lib.remote.DigestUtil.ActionKey;
+import com.google.devtools.build.lib.remote.TreeNodeRepository.TreeNode;
+import com.google.devtools.build.lib.util.io.FileOutErr;
+import com.google.devtools.build.lib.vfs.FileSystem;
+import com.google.devtools.build.lib.vfs.FileSystem.HashFunction;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.JavaIoFileSystem;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import com.google.devtools.common.options.OptionsParser;
+import com.google.devtools.common.options.OptionsParsingException;
+import com.google.devtools.remoteexecution.v1test.Action;
+import com.google.devtools.remoteexecution.v1test.ActionResult;
+import com.google.devtools.remoteexecution.v1test.Command;
+import com.google.devtools.remoteexecution.v1test.ExecuteRequest;
+import com.google.devtools.remoteexecution.v1test.ExecuteResponse;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientInterceptors;
+import io.grpc.Context;
+import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A load generator for the remote caching and execution protocol.
+ *
+ * <p>Runs a synthetic workload of actions against a remote cache, and optionally a remote executor,
+ * through {@link GrpcRemoteCache} and {@link GrpcRemoteExecutor}, and reports the throughput, the
+ * p50 and p99 latencies of every step of the actions and of every RPC, and the bytes that each step
+ * allocates. It is meant to be run against a local remote worker, e.g.:
+ *
+ * <pre>
+ *   bazel-bin/src/tools/remote/worker --listen_port=8080 --work_path=/tmp/worker
+ *   bazel run //src/test/java/com/google/devtools/build/lib:RemoteBenchmark -- \
+ *       --remote_cache=localhost:8080 --remote_executor=localhost:8080 --work_path=/tmp/benchmark
+ * </pre>
+ *
+ * <p>The actions have input trees of random shapes, with input files shared between actions and
+ * files unique to each action, and input and output files of random sizes. Some of the actions are
+ * run before the measurement starts, so that they are cache hits. A cache hit looks up and
+ * downloads the outputs of the action. Without a remote executor, a cache miss writes the outputs
+ * locally and uploads them, like a locally executed action. With one, a cache miss uploads the
+ * inputs, executes the action remotely, and downloads the outputs.
+ *
+ * <p>The allocations of a step are those of the thread that runs the action; the allocations of
+ * the threads that gRPC uses for the calls are not included.
+ */
+public final class RemoteBenchmark {
+  private static final String BUILD_REQUEST_ID = UUID.randomUUID().toString();
+  private static final String COMMAND_ID = UUID.randomUUID().toString();
+
+  private static final com.sun.management.ThreadMXBean threadBean =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  /** The latencies and allocations of all the calls of one kind of operation. */
+  private static final class OperationStats {
+    private final String name;
+
+    @GuardedBy("this")
+    private long[] latencies = new long[256];
+
+    @GuardedBy("this")
+    private int calls;
+
+    @GuardedBy("this")
+    private int errors;
+
+    @GuardedBy("this")
+    private long allocatedBytes;
+
+    OperationStats(String name) {
+      this.name = name;
+    }
+
+    synchronized void record(long nanos, long allocatedBytes, boolean failed) {
+      if (calls == latencies.length) {
+        latencies = Arrays.copyOf(latencies, calls * 2);
+      }
+      latencies[calls++] = nanos;
+      if (failed) {
+        errors++;
+      }
+      this.allocatedBytes += allocatedBytes;
+    }
+
+    synchronized void reset() {
+      calls = 0;
+      errors = 0;
+      allocatedBytes = 0;
+    }
+
+    synchronized String format(long wallTimeNanos, boolean withAllocations) {
+      long[] sorted = Arrays.copyOf(latencies, calls);
+      Arrays.sort(sorted);
+      String line =
+          String.format(
+              Locale.US,
+              "%-60s %7d calls %5d errors %9.1f/s  p50 %8.2f ms  p99 %8.2f ms  max %8.2f ms",
+              name,
+              calls,
+              errors,
+              calls / (wallTimeNanos / 1e9),
+              percentile(sorted, 50) / 1e6,
+              percentile(sorted, 99) / 1e6,
+              (calls == 0 ? 0 : sorted[calls - 1]) / 1e6);
+      if (withAllocations) {
+        line +=
+            String.format(
+                Locale.US, "  %9.1f KB/call", calls == 0 ? 0 : allocatedBytes / 1024.0 / calls);
+      }
+      return line;
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+      if (sorted.length == 0) {
+        return 0;
+      }
+      int index = (int) Math.ceil(sorted.length * percentile / 100.0) - 1;
+      return sorted[Math.max(index, 0)];
+    }
+  }
+
+  /**
+   * Records the latency of every gRPC call, per method, from its start until it is closed. For
+   * streaming calls, this includes the time to send or receive all the messages.
+   */
+  private static final class RpcStatsInterceptor implements ClientInterceptor {
+    private final ConcurrentMap<String, OperationStats> stats = new ConcurrentHashMap<>();
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+        MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+      OperationStats methodStats =
+          stats.computeIfAbsent(method.getFullMethodName(), OperationStats::new);
+      return new SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+          long startNanos = System.nanoTime();
+          super.start(
+              new SimpleForwardingClientCallListener<RespT>(responseListener) {
+                @Override
+                public void onClose(Status status, Metadata trailers) {
+                  // A cache miss is not an error.
+                  boolean failed = !status.isOk() && status.getCode() != Status.Code.NOT_FOUND;
+                  methodStats.record(System.nanoTime() - startNanos, 0, failed);
+                  super.onClose(status, trailers);
+                }
+              },
+              headers);
+        }
+      };
+    }
+  }
+
+  /** An action of the workload. */
+  private static final class SyntheticAction {
+    final int id;
+    /** The inputs, by their path in the input tree. */
+    final SortedMap<PathFragment, ActionInput> inputs = new TreeMap<>();
+
+    final List<String> outputs = new ArrayList<>();
+    final List<Integer> outputSizes = new ArrayList<>();
+    final boolean cached;
+
+    SyntheticAction(int id, boolean cached) {
+      this.id = id;
+      this.cached = cached;
+    }
+  }
+
+  private interface Step<T> {
+    T run() throws IOException, InterruptedException;
+  }
+
+  private final RemoteBenchmarkOptions options;
+  private final RemoteOptions remoteOptions;
+  private final Path execRoot;
+  private final DigestUtil digestUtil;
+  private final SingleBuildFileCache inputFileCache;
+  private final GrpcRemoteCache cache;
+  @Nullable private final GrpcRemoteExecutor executor;
+  private final RpcStatsInterceptor rpcStats;
+  private final List<SyntheticAction> actions = new ArrayList<>();
+
+  private final OperationStats actionStats = new OperationStats("action");
+  private final OperationStats lookupStats = new OperationStats("look up the action result");
+  private final OperationStats uploadInputsStats = new OperationStats("upload the inputs");
+  private final OperationStats executeStats = new OperationStats("execute remotely");
+  private final OperationStats uploadOutputsStats =
+      new OperationStats("upload the outputs and the action result");
+  private final OperationStats downloadOutputsStats = new OperationStats("download the outputs");
+
+  private RemoteBenchmark(
+      RemoteBenchmarkOptions options,
+      RemoteOptions remoteOptions,
+      Path execRoot,
+      DigestUtil digestUtil,
+      GrpcRemoteCache cache,
+      @Nullable GrpcRemoteExecutor executor,
+      RpcStatsInterceptor rpcStats) {
+    this.options = options;
+    this.remoteOptions = remoteOptions;
+    this.execRoot = execRoot;
+    this.digestUtil = digestUtil;
+    this.inputFileCache =
+        new SingleBuildFileCache(execRoot.getPathString(), execRoot.getFileSystem());
+    this.cache = cache;
+    this.executor = executor;
+    this.rpcStats = rpcStats;
+  }
+
+  /** Creates the actions and their input files. */
+  private void createActions() throws IOException {
+    Random random = new Random(options.seed);
+    List<ActionInput> sharedInputs = new ArrayList<>();
+    List<PathFragment> sharedInputPaths = new ArrayList<>();
+    for (int i = 0; i < options.sharedInputs; i++) {
+      // Shared inputs are always at the same place in the input trees, like source files.
+      String execPath = "shared/" + i;
+      writeRandomFile(execRoot.getRelative(execPath), randomSize(random), random.nextLong());
+      sharedInputs.add(ActionInputHelper.fromPath(execPath));
+      sharedInputPaths.add(PathFragment.create("src/" + directory(i) + "s" + i));
+    }
+    int sharedPerAction =
+        Math.min(
+            (int) Math.round(options.inputsPerAction * options.sharedInputRatio),
+            options.sharedInputs);
+    for (int id = 0; id < options.actions; id++) {
+      SyntheticAction action = new SyntheticAction(id, random.nextDouble() < options.hitRatio);
+      Set<Integer> shared = new HashSet<>();
+      while (shared.size() < sharedPerAction) {
+        shared.add(random.nextInt(options.sharedInputs));
+      }
+      for (int i : shared) {
+        action.inputs.put(sharedInputPaths.get(i), sharedInputs.get(i));
+      }
+      for (int i = sharedPerAction; i < options.inputsPerAction; i++) {
+        String execPath = "unique/" + id + "/" + i;
+        writeRandomFile(execRoot.getRelative(execPath), randomSize(random), random.nextLong());
+        action.inputs.put(
+            PathFragment.create("bin/" + directory(random.nextInt()) + "u" + i),
+            ActionInputHelper.fromPath(execPath));
+      }
+      for (int i = 0; i < options.outputsPerAction; i++) {
+        action.outputs.add("out/" + id + "/" + i);
+        action.outputSizes.add(randomSize(random));
+      }
+      actions.add(action);
+    }
+  }
+
+  /** Returns the directory of an input tree for the given number, ending in a slash. */
+  private String directory(int n) {
+    StringBuilder dir = new StringBuilder();
+    n = Math.abs(n);
+    for (int i = 1; i < options.inputTreeDepth; i++) {
+      dir.append('d').append(n % options.inputTreeFanout).append('/');
+      n /= options.inputTreeFanout;
+    }
+    return dir.toString();
+  }
+
+  /** Returns a size between the minimum and the maximum, distributed log-uniformly. */
+  private int randomSize(Random random) {
+    double logMin = Math.log(options.minBlobSize);
+    double logMax = Math.log(options.maxBlobSize);
+    return (int) Math.round(Math.exp(logMin + random.nextDouble() * (logMax - logMin)));
+  }
+
+  private static void writeRandomFile(Path path, int size, long seed) throws IOException {
+    FileSystemUtils.createDirectoryAndParents(path.getParentDirectory());
+    Random random = new Random(seed);
+    byte[] buffer = new byte[Math.min(size, 64 * 1024)];
+    try (OutputStream out = path.getOutputStream()) {
+      for (int written = 0; written < size; written += buffer.length) {
+        random.nextBytes(buffer);
+        out.write(buffer, 0, Math.min(buffer.length, size - written));
+      }
+    }
+  }
+
+  private Command command(SyntheticAction action) {
+    StringBuilder script = new StringBuilder();
+    for (int i = 0; i < action.outputs.size(); i++) {
+      script
+          .append("head -c ")
+          .append(action.outputSizes.get(i))
+          .append(" /dev/urandom > ")
+          .append(action.outputs.get(i))
+          .append(" && ");
+    }
+    script.append("true");
+    return Command.newBuilder()
+        .addArguments("/bin/sh")
+        .addArguments("-c")
+        .addArguments(script.toString())
+        .build();
+  }
+
+  private <T> T measure(OperationStats stats, Step<T> step)
+      throws IOException, InterruptedException {
+    long threadId = Thread.currentThread().getId();
+    long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId);
+    long startNanos = System.nanoTime();
+    boolean failed = true;
+    try {
+      T result = step.run();
+      failed = false;
+      return result;
+    } finally {
+      stats.record(
+          System.nanoTime() - startNanos,
+          threadBean.getThreadAllocatedBytes(threadId) - allocatedBytes,
+          failed);
+    }
+  }
+
+  private void run(SyntheticAction action) throws IOException, InterruptedException {
+    measure(
+        actionStats,
+        () -> {
+          runSteps(action);
+          return null;
+        });
+  }
+
+  private void runSteps(SyntheticAction action) throws IOException, InterruptedException {
+    TreeNodeRepository repository = new TreeNodeRepository(execRoot, inputFileCache, digestUtil);
+    TreeNode inputRoot = repository.buildFromActionInputs(action.inputs);
+    repository.computeMerkleDigests(inputRoot);
+    Command command = command(action);
+    Action remoteAction =
+        Action.newBuilder()
+            .setCommandDigest(digestUtil.compute(command))
+            .setInputRootDigest(repository.getMerkleDigest(inputRoot))
+            .addAllOutputFiles(action.outputs)
+            .build();
+    ActionKey actionKey = digestUtil.computeActionKey(remoteAction);
+    Path outErrDir = execRoot.getRelative("outerr");
+    FileOutErr outErr =
+        new FileOutErr(
+            outErrDir.getRelative(action.id + ".out"), outErrDir.getRelative(action.id + ".err"));
+
+    Context withMetadata =
+        TracingMetadataUtils.contextWithMetadata(BUILD_REQUEST_ID, COMMAND_ID, actionKey);
+    Context previous = withMetadata.attach();
+    try {
+      ActionResult result = measure(lookupStats, () -> cache.getCachedActionResult(actionKey));
+      if (result == null && executor == null) {
+        List<Path> outputs = new ArrayList<>();
+        for (int i = 0; i < action.outputs.size(); i++) {
+          Path output = execRoot.getRelative(action.outputs.get(i));
+          writeRandomFile(output, action.outputSizes.get(i), new Random().nextLong());
+          outputs.add(output);
+        }
+        measure(
+            uploadOutputsStats,
+            () -> {
+              cache.upload(actionKey, execRoot, outputs, outErr, /* uploadAction= */ true);
+              return null;
+            });
+        return;
+      }
+      if (result == null) {
+        measure(
+            uploadInputsStats,
+            () -> {
+              cache.ensureInputsPresent(repository, execRoot, inputRoot, command);
+              return null;
+            });
+        ExecuteRequest request =
+            ExecuteRequest.newBuilder()
+                .setInstanceName(remoteOptions.remoteInstanceName)
+                .setAction(remoteAction)
+                .setSkipCacheLookup(true)
+                .build();
+        ExecuteResponse response = measure(executeStats, () -> executor.executeRemotely(request));
+        result = response.getResult();
+        if (result.getExitCode() != 0) {
+          throw new IOException("Action " + action.id + " failed remotely: " + result);
+        }
+      }
+      ActionResult finalResult = result;
+      measure(
+          downloadOutputsStats,
+          () -> {
+            try {
+              cache.download(finalResult, execRoot, outErr);
+            } catch (ExecException e) {
+              throw new IOException(e);
+            }
+            return null;
+          });
+    } finally {
+      withMetadata.detach(previous);
+    }
+  }
+
+  /** Runs the actions with the given number of threads, and returns the number that failed. */
+  private int runAll(List<SyntheticAction> actions) throws InterruptedException {
+    ListeningExecutorService pool =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(options.jobs));
+    List<ListenableFuture<Void>> futures = new ArrayList<>();
+    for (SyntheticAction action : actions) {
+      futures.add(
+          pool.submit(
+              () -> {
+                run(action);
+                return null;
+              }));
+    }
+    int failures = 0;
+    try {
+      for (ListenableFuture<Void> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          if (failures++ == 0) {
+            System.err.println("First failure: " + e.getCause());
+          }
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    return failures;
+  }
+
+  private void resetStats() {
+    for (OperationStats stats : stepStats()) {
+      stats.reset();
+    }
+    for (OperationStats stats : rpcStats.stats.values()) {
+      stats.reset();
+    }
+  }
+
+  private ImmutableList<OperationStats> stepStats() {
+    return ImmutableList.of(
+        actionStats,
+        lookupStats,
+        uploadInputsStats,
+        executeStats,
+        uploadOutputsStats,
+        downloadOutputsStats);
+  }
+
+  private void runBenchmark() throws IOException, InterruptedException {
+    System.err.println("Creating " + options.actions + " actions and their input files");
+    createActions();
+
+    List<SyntheticAction> cachedActions = new ArrayList<>();
+    for (SyntheticAction action : actions) {
+      if (action.cached) {
+        cachedActions.add(action);
+      }
+    }
+    System.err.println("Putting the results of " + cachedActions.size() + " actions in the cache");
+    int warmupFailures = runAll(cachedActions);
+    if (warmupFailures > 0) {
+      System.err.println(warmupFailures + " actions failed before the measurement");
+    }
+    resetStats();
+
+    System.err.println("Running " + actions.size() + " actions");
+    long startNanos = System.nanoTime();
+    int failures = runAll(actions);
+    long wallTimeNanos = System.nanoTime() - startNanos;
+
+    System.out.printf(
+        Locale.US,
+        "%d actions (%d failed) in %.2f s: %.1f actions/s, %d jobs, %d channels, "
+            + "%d byte chunks%n%n",
+        actions.size(),
+        failures,
+        wallTimeNanos / 1e9,
+        actions.size() / (wallTimeNanos / 1e9),
+        options.jobs,
+        options.channels,
+        options.chunkSize);
+    System.out.println("Steps of the actions:");
+    for (OperationStats stats : stepStats()) {
+      System.out.println("  " + stats.format(wallTimeNanos, /* withAllocations= */ true));
+    }
+    System.out.println();
+    System.out.println("RPCs:");
+    for (OperationStats stats : rpcStats.stats.values()) {
+      System.out.println("  " + stats.format(wallTimeNanos, /* withAllocations= */ false));
+    }
+  }
+
+  /** Returns a channel that sends the calls to the given channels in turn. */
+  private static Channel roundRobin(List<? extends Channel> channels) {
+    AtomicInteger next = new AtomicInteger();
+    return new Channel() {
+      @Override
+      public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(
+          MethodDescriptor<ReqT, RespT> method, CallOptions callOptions) {
+        int index = Math.floorMod(next.getAndIncrement(), channels.size());
+        return channels.get(index).newCall(method, callOptions);
+      }
+
+      @Override
+      public String authority() {
+        return channels.get(0).authority();
+      }
+    };
+  }
+
+  private static Channel newChannel(
+      String target, AuthAndTLSOptions authOptions, int count, List<ManagedChannel> allChannels)
+      throws IOException {
+    List<ManagedChannel> channels = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      channels.add(GoogleAuthUtils.newChannel(target, authOptions));
+    }
+    allChannels.addAll(channels);
+    return roundRobin(channels);
+  }
+
+  public static void main(String[] args) throws Exception {
+    OptionsParser parser =
+        OptionsParser.newOptionsParser(
+            ImmutableList.of(
+                RemoteOptions.class, AuthAndTLSOptions.class, RemoteBenchmarkOptions.class));
+    parser.parseAndExitUponError(args);
+    RemoteOptions remoteOptions = parser.getOptions(RemoteOptions.class);
+    AuthAndTLSOptions authOptions = parser.getOptions(AuthAndTLSOptions.class);
+    RemoteBenchmarkOptions options = parser.getOptions(RemoteBenchmarkOptions.class);
+    if (remoteOptions.remoteCache == null || options.workPath == null) {
+      System.err.println("--remote_cache and --work_path must be set.");
+      System.exit(2);
+    }
+
+    HashFunction hashFunction;
+    try {
+      hashFunction =
+          new HashFunction.Converter().convert(System.getProperty("bazel.DigestFunction", "SHA256"));
+    } catch (OptionsParsingException e) {
+      throw new Error(e);
+    }
+    FileSystem fs = new JavaIoFileSystem(hashFunction);
+    Path execRoot = fs.getPath(options.workPath);
+    if (execRoot.exists()) {
+      FileSystemUtils.deleteTree(execRoot);
+    }
+    FileSystemUtils.createDirectoryAndParents(execRoot);
+    DigestUtil digestUtil = new DigestUtil(hashFunction);
+    Chunker.setDefaultChunkSizeForTesting(options.chunkSize);
+
+    RpcStatsInterceptor rpcStats = new RpcStatsInterceptor();
+    List<ManagedChannel> allChannels = new ArrayList<>();
+    RemoteRetrier retrier =
+        new RemoteRetrier(
+            remoteOptions, RemoteRetrier.RETRIABLE_GRPC_ERRORS, Retrier.ALLOW_ALL_CALLS);
+    GrpcRemoteCache cache =
+        new GrpcRemoteCache(
+            ClientInterceptors.intercept(
+                newChannel(remoteOptions.remoteCache, authOptions, options.channels, allChannels),
+                rpcStats),
+            GoogleAuthUtils.newCallCredentials(authOptions),
+            remoteOptions,
+            retrier,
+            digestUtil);
+    GrpcRemoteExecutor executor = null;
+    if (remoteOptions.remoteExecutor != null) {
+      executor =
+          new GrpcRemoteExecutor(
+              ClientInterceptors.intercept(
+                  newChannel(
+                      remoteOptions.remoteExecutor, authOptions, options.channels, allChannels),
+                  rpcStats),
+              GoogleAuthUtils.newCallCredentials(authOptions),
+              remoteOptions.remoteTimeout,
+              retrier);
+    }
+
+    try {
+      new RemoteBenchmark(
+              options, remoteOptions, execRoot, digestUtil, cache, executor, rpcStats)
+          .runBenchmark();
+    } finally {
+      cache.close();
+      for (ManagedChannel channel : allChannels) {
+        channel.shutdown();
+      }
+    }
+  }
+}
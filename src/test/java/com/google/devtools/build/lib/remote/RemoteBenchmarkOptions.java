@@ -0,0 +1,179 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.remote;
+
+import com.google.devtools.common.options.Option;
+import com.google.devtools.common.options.OptionDocumentationCategory;
+import com.google.devtools.common.options.OptionEffectTag;
+import com.google.devtools.common.options.OptionsBase;
+
+/** Options for the remote benchmark. */
+public class RemoteBenchmarkOptions extends OptionsBase {
+  @Option(
+    name = "work_path",
+    defaultValue = "null",
+    category = "benchmark",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "A directory for the input and output files of the actions. Its contents are deleted. "
+        + "Required."
+  )
+  public String workPath;
+
+  @Option(
+    name = "actions",
+    defaultValue = "1000",
+    category = "benchmark",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "The number of actions to run."
+  )
+  public int actions;
+
+  @Option(
+    name = "jobs",
+    defaultValue = "32",
+    category = "benchmark",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "The number of actions to run at the same time."
+  )
+  public int jobs;
+
+  @Option(
+    name = "channels",
+    defaultValue = "1",
+    category = "benchmark",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "The number of gRPC channels to the remote cache (and executor), used in turn."
+  )
+  public int channels;
+
+  @Option(
+    name = "chunk_size",
+    defaultValue = "16384",
+    category = "benchmark",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "The size in bytes of the chunks that blobs are uploaded in."
+  )
+  public int chunkSize;
+
+  @Option(
+    name = "inputs_per_action",
+    defaultValue = "100",
+    category = "benchmark",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "The number of input files of each action."
+  )
+  public int inputsPerAction;
+
+  @Option(
+    name = "input_tree_depth",
+    defaultValue = "3",
+    category = "benchmark",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "The depth of the directories that the input files of an action are spread over."
+  )
+  public int inputTreeDepth;
+
+  @Option(
+    name = "input_tree_fanout",
+    defaultValue = "4",
+    category = "benchmark",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "The number of subdirectories of each directory of an input tree."
+  )
+  public int inputTreeFanout;
+
+  @Option(
+    name = "shared_inputs",
+    defaultValue = "2000",
+    category = "benchmark",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "The number of files that the shared inputs of the actions are drawn from, like the "
+        + "sources and tools that many actions of a build depend on."
+  )
+  public int sharedInputs;
+
+  @Option(
+    name = "shared_input_ratio",
+    defaultValue = "0.8",
+    category = "benchmark",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "The fraction of the inputs of an action that are shared with other actions. The "
+        + "other inputs are unique to the action, like the outputs of its dependencies."
+  )
+  public double sharedInputRatio;
+
+  @Option(
+    name = "outputs_per_action",
+    defaultValue = "2",
+    category = "benchmark",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "The number of output files of each action."
+  )
+  public int outputsPerAction;
+
+  @Option(
+    name = "min_blob_size",
+    defaultValue = "100",
+    category = "benchmark",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "The minimum size in bytes of the input and output files. The sizes are distributed "
+        + "log-uniformly between the minimum and the maximum, so that small files are the most "
+        + "common, but large files make up most of the bytes."
+  )
+  public int minBlobSize;
+
+  @Option(
+    name = "max_blob_size",
+    defaultValue = "1048576",
+    category = "benchmark",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "The maximum size in bytes of the input and output files."
+  )
+  public int maxBlobSize;
+
+  @Option(
+    name = "hit_ratio",
+    defaultValue = "0.5",
+    category = "benchmark",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "The fraction of the actions whose results are put in the remote cache before the "
+        + "measurement starts."
+  )
+  public double hitRatio;
+
+  @Option(
+    name = "seed",
+    defaultValue = "42",
+    category = "benchmark",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "The seed of the random workload. The same seed gives the same actions and files."
+  )
+  public long seed;
+}
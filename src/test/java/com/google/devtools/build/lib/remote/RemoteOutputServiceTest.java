@@ -0,0 +1,119 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.remote;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.devtools.build.lib.clock.JavaClock;
+import com.google.devtools.build.lib.events.StoredEventHandler;
+import com.google.devtools.build.lib.vfs.FileSystem;
+import com.google.devtools.build.lib.vfs.FileSystem.HashFunction;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link RemoteOutputService}. */
+@RunWith(JUnit4.class)
+public class RemoteOutputServiceTest {
+  private static final DigestUtil DIGEST_UTIL = new DigestUtil(HashFunction.SHA256);
+
+  private Path output;
+  private RemoteOutputService remoteOutputs;
+
+  @Before
+  public final void setUp() throws Exception {
+    FileSystem fs = new InMemoryFileSystem(new JavaClock(), HashFunction.SHA256);
+    output = fs.getPath("/exec/root/out/foo");
+    FileSystemUtils.createDirectoryAndParents(output.getParentDirectory());
+    remoteOutputs = new RemoteOutputService("fs", "workspace");
+  }
+
+  /** Leaves the output with the given contents in the remote cache, and then downloads it. */
+  private void download(String contents) throws Exception {
+    remoteOutputs.addRemoteFile(output, DIGEST_UTIL.computeAsUtf8(contents), false);
+    FileSystemUtils.writeContent(output, contents.getBytes(UTF_8));
+    remoteOutputs.remoteFileDownloaded(output, remoteOutputs.getRemoteFile(output));
+  }
+
+  private void startBuild() {
+    remoteOutputs.startBuild(new StoredEventHandler(), UUID.randomUUID(), false);
+  }
+
+  @Test
+  public void testUnchangedDownloadedFileIsKept() throws Exception {
+    download("contents");
+    assertThat(remoteOutputs.isRemoteFile(output)).isFalse();
+    assertThat(remoteOutputs.downloadedFileCount()).isEqualTo(1);
+
+    startBuild();
+
+    assertThat(FileSystemUtils.readContent(output, UTF_8)).isEqualTo("contents");
+    assertThat(remoteOutputs.isRemoteFile(output)).isFalse();
+  }
+
+  @Test
+  public void testModifiedDownloadedFileIsRemoteAgain() throws Exception {
+    download("contents");
+    FileSystemUtils.writeContent(output, "modified contents".getBytes(UTF_8));
+
+    startBuild();
+
+    assertThat(output.exists()).isFalse();
+    assertThat(remoteOutputs.isRemoteFile(output)).isTrue();
+    assertThat(remoteOutputs.getRemoteFile(output).digest)
+        .isEqualTo(DIGEST_UTIL.computeAsUtf8("contents"));
+    assertThat(remoteOutputs.downloadedFileCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testDeletedDownloadedFileIsRemoteAgain() throws Exception {
+    download("contents");
+    output.delete();
+
+    startBuild();
+
+    assertThat(remoteOutputs.isRemoteFile(output)).isTrue();
+  }
+
+  @Test
+  public void testRewrittenWithSameContentsIsKept() throws Exception {
+    download("contents");
+    output.delete();
+    FileSystemUtils.writeContent(output, "contents".getBytes(UTF_8));
+
+    startBuild();
+
+    assertThat(FileSystemUtils.readContent(output, UTF_8)).isEqualTo("contents");
+    assertThat(remoteOutputs.isRemoteFile(output)).isFalse();
+    assertThat(remoteOutputs.downloadedFileCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testChangingTheRemoteCacheForgetsRemoteFiles() throws Exception {
+    assertThat(remoteOutputs.setRemoteCache("cache-a")).isFalse();
+    remoteOutputs.addRemoteFile(output, DIGEST_UTIL.computeAsUtf8("contents"), false);
+    assertThat(remoteOutputs.setRemoteCache("cache-a")).isFalse();
+    assertThat(remoteOutputs.isRemoteFile(output)).isTrue();
+
+    assertThat(remoteOutputs.setRemoteCache("cache-b")).isTrue();
+    assertThat(remoteOutputs.isRemoteFile(output)).isFalse();
+    assertThat(remoteOutputs.setRemoteCache("cache-c")).isFalse();
+  }
+}
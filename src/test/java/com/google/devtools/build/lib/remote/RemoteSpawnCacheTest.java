@@ -34,6 +34,7 @@ import com.google.devtools.build.lib.actions.ResourceSet;
 import com.google.devtools.build.lib.actions.SimpleSpawn;
 import com.google.devtools.build.lib.actions.SpawnResult;
 import com.google.devtools.build.lib.actions.SpawnResult.Status;
+import com.google.devtools.build.lib.actions.cache.MetadataHandler;
 import com.google.devtools.build.lib.clock.JavaClock;
 import com.google.devtools.build.lib.events.Event;
 import com.google.devtools.build.lib.events.EventKind;
@@ -121,6 +122,11 @@ public class RemoteSpawnCacheTest {
           return fakeFileCache;
         }
 
+        @Override
+        public MetadataHandler getMetadataHandler() {
+          throw new UnsupportedOperationException();
+        }
+
         @Override
         public ArtifactExpander getArtifactExpander() {
           throw new UnsupportedOperationException();
@@ -38,6 +38,7 @@ import com.google.devtools.build.lib.actions.SimpleSpawn;
 import com.google.devtools.build.lib.actions.Spawn;
 import com.google.devtools.build.lib.actions.SpawnResult;
 import com.google.devtools.build.lib.actions.SpawnResult.Status;
+import com.google.devtools.build.lib.actions.cache.MetadataHandler;
 import com.google.devtools.build.lib.clock.JavaClock;
 import com.google.devtools.build.lib.events.Event;
 import com.google.devtools.build.lib.events.EventKind;
@@ -693,6 +694,57 @@ public class RemoteSpawnRunnerTest {
     }
   }
 
+  @Test
+  public void usesLocalRunfilesTreeOnlyIfSpawnMayRunLocally() throws Exception {
+    RemoteOptions options = Options.getDefaults(RemoteOptions.class);
+    options.remoteLocalFallback = false;
+    Spawn spawn = newSimpleSpawn();
+    when(localRunner.usesLocalRunfilesTree(spawn)).thenReturn(true);
+
+    RemoteSpawnRunner remoteExecution =
+        new RemoteSpawnRunner(
+            execRoot,
+            options,
+            localRunner,
+            true,
+            /*cmdlineReporter=*/ null,
+            "build-req-id",
+            "command-id",
+            cache,
+            executor,
+            digestUtil);
+    assertThat(remoteExecution.usesLocalRunfilesTree(spawn)).isFalse();
+
+    RemoteSpawnRunner remoteCacheOnly =
+        new RemoteSpawnRunner(
+            execRoot,
+            options,
+            localRunner,
+            true,
+            /*cmdlineReporter=*/ null,
+            "build-req-id",
+            "command-id",
+            cache,
+            null,
+            digestUtil);
+    assertThat(remoteCacheOnly.usesLocalRunfilesTree(spawn)).isTrue();
+
+    Spawn noRemoteSpawn =
+        new SimpleSpawn(
+            new FakeOwner("foo", "bar"),
+            /*arguments=*/ ImmutableList.of(),
+            /*environment=*/ ImmutableMap.of(),
+            /*executionInfo=*/ ImmutableMap.of(ExecutionRequirements.NO_REMOTE, ""),
+            /*inputs=*/ ImmutableList.of(),
+            /*outputs=*/ ImmutableList.<ActionInput>of(),
+            ResourceSet.ZERO);
+    when(localRunner.usesLocalRunfilesTree(noRemoteSpawn)).thenReturn(true);
+    assertThat(remoteExecution.usesLocalRunfilesTree(noRemoteSpawn)).isTrue();
+
+    options.remoteLocalFallback = true;
+    assertThat(remoteExecution.usesLocalRunfilesTree(spawn)).isTrue();
+  }
+
   private static Spawn newSimpleSpawn() {
     return new SimpleSpawn(
         new FakeOwner("foo", "bar"),
@@ -741,6 +793,11 @@ public class RemoteSpawnRunnerTest {
       return fakeFileCache;
     }
 
+    @Override
+    public MetadataHandler getMetadataHandler() {
+      throw new UnsupportedOperationException();
+    }
+
     @Override
     public ArtifactExpander getArtifactExpander() {
       throw new UnsupportedOperationException();
@@ -15,12 +15,15 @@ package com.google.devtools.build.lib.remote;
 
 import static com.google.common.truth.Truth.assertThat;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.fail;
 
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.devtools.build.lib.actions.ActionInputHelper;
 import com.google.devtools.build.lib.clock.JavaClock;
 import com.google.devtools.build.lib.remote.blobstore.ConcurrentMapBlobStore;
+import com.google.devtools.build.lib.testutil.TestUtils;
 import com.google.devtools.build.lib.vfs.FileSystem;
 import com.google.devtools.build.lib.vfs.FileSystem.HashFunction;
 import com.google.devtools.build.lib.vfs.FileSystemUtils;
@@ -33,6 +36,7 @@ import com.google.devtools.remoteexecution.v1test.DirectoryNode;
 import com.google.devtools.remoteexecution.v1test.FileNode;
 import com.google.devtools.remoteexecution.v1test.Tree;
 import io.grpc.Context;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import org.junit.Before;
@@ -114,6 +118,105 @@ public class SimpleBlobStoreActionCacheTest {
     assertThat(execRoot.getRelative("a/bar").isExecutable()).isTrue();
   }
 
+  @Test
+  public void testDownloadConcurrently() throws Exception {
+    ConcurrentMap<String, Integer> reads = new ConcurrentHashMap<>();
+    ConcurrentMap<String, byte[]> map =
+        new ConcurrentHashMap<String, byte[]>() {
+          @Override
+          public byte[] get(Object key) {
+            reads.merge((String) key, 1, Integer::sum);
+            return super.get(key);
+          }
+        };
+    ActionResult.Builder result = ActionResult.newBuilder();
+    Directory.Builder treeRoot = Directory.newBuilder();
+    for (int i = 0; i < 50; i++) {
+      // Every blob is shared by two output files and a file in the output directory.
+      String contents = "contents-" + (i / 2);
+      Digest digest = DIGEST_UTIL.computeAsUtf8(contents);
+      map.put(digest.getHash(), contents.getBytes(UTF_8));
+      result.addOutputFilesBuilder().setPath("out/" + i).setDigest(digest).setIsExecutable(i < 25);
+      treeRoot.addFilesBuilder().setName("file" + i).setDigest(digest);
+    }
+    Tree tree = Tree.newBuilder().setRoot(treeRoot).build();
+    Digest treeDigest = DIGEST_UTIL.compute(tree);
+    map.put(treeDigest.getHash(), tree.toByteArray());
+    result.addOutputDirectoriesBuilder().setPath("tree").setTreeDigest(treeDigest);
+    SimpleBlobStoreActionCache client =
+        new SimpleBlobStoreActionCache(new ConcurrentMapBlobStore(map), DIGEST_UTIL, 4);
+
+    client.download(result.build(), execRoot, null);
+
+    for (int i = 0; i < 50; i++) {
+      String contents = "contents-" + (i / 2);
+      Path file = execRoot.getRelative("out/" + i);
+      assertThat(FileSystemUtils.readContent(file, UTF_8)).isEqualTo(contents);
+      assertThat(file.isExecutable()).isEqualTo(i < 25);
+      assertThat(FileSystemUtils.readContent(execRoot.getRelative("tree/file" + i), UTF_8))
+          .isEqualTo(contents);
+    }
+    assertThat(reads).hasSize(26);
+    assertThat(ImmutableSet.copyOf(reads.values())).containsExactly(1);
+  }
+
+  @Test
+  public void testCloseStopsDownloadThreads() throws Exception {
+    Set<Thread> downloadThreads = ConcurrentHashMap.newKeySet();
+    ConcurrentMap<String, byte[]> map =
+        new ConcurrentHashMap<String, byte[]>() {
+          @Override
+          public byte[] get(Object key) {
+            downloadThreads.add(Thread.currentThread());
+            return super.get(key);
+          }
+        };
+    ActionResult.Builder result = ActionResult.newBuilder();
+    for (int i = 0; i < 20; i++) {
+      String contents = "contents-" + i;
+      Digest digest = DIGEST_UTIL.computeAsUtf8(contents);
+      map.put(digest.getHash(), contents.getBytes(UTF_8));
+      result.addOutputFilesBuilder().setPath("out/" + i).setDigest(digest);
+    }
+    SimpleBlobStoreActionCache client =
+        new SimpleBlobStoreActionCache(new ConcurrentMapBlobStore(map), DIGEST_UTIL, 4);
+    client.download(result.build(), execRoot, null);
+    assertThat(downloadThreads).isNotEmpty();
+
+    client.close();
+
+    for (Thread thread : downloadThreads) {
+      thread.join(TestUtils.WAIT_TIMEOUT_MILLISECONDS);
+      assertThat(thread.isAlive()).isFalse();
+    }
+  }
+
+  @Test
+  public void testFailedDownloadDeletesOutputs() throws Exception {
+    ConcurrentMap<String, byte[]> map = new ConcurrentHashMap<>();
+    ActionResult.Builder result = ActionResult.newBuilder();
+    for (int i = 0; i < 20; i++) {
+      String contents = "contents-" + i;
+      Digest digest = DIGEST_UTIL.computeAsUtf8(contents);
+      if (i != 10) {
+        map.put(digest.getHash(), contents.getBytes(UTF_8));
+      }
+      result.addOutputFilesBuilder().setPath("out/" + i).setDigest(digest);
+    }
+    SimpleBlobStoreActionCache client =
+        new SimpleBlobStoreActionCache(new ConcurrentMapBlobStore(map), DIGEST_UTIL, 4);
+
+    try {
+      client.download(result.build(), execRoot, null);
+      fail("Expected CacheNotFoundException");
+    } catch (CacheNotFoundException e) {
+      // Intended.
+    }
+    for (int i = 0; i < 20; i++) {
+      assertThat(execRoot.getRelative("out/" + i).exists()).isFalse();
+    }
+  }
+
   @Test
   public void testDownloadDirectory() throws Exception {
     Digest fooDigest = DIGEST_UTIL.computeAsUtf8("foo-contents");
@@ -0,0 +1,237 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.remote.blobstore;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
+import com.google.devtools.remoteexecution.v1test.ActionResult;
+import com.google.devtools.remoteexecution.v1test.Digest;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link CombinedDiskRemoteBlobStore}. */
+@RunWith(JUnit4.class)
+public class CombinedDiskRemoteBlobStoreTest {
+  private final ConcurrentMap<String, byte[]> remoteMap = new ConcurrentHashMap<>();
+  private final CountDownLatch uploadsAllowed = new CountDownLatch(1);
+  private final CountDownLatch slowUploadsAllowed = new CountDownLatch(1);
+  private OnDiskBlobStore local;
+
+  /**
+   * A remote cache whose uploads wait for {@link #uploadsAllowed}, and also for {@link
+   * #slowUploadsAllowed} for "slow" keys. The uploads fail for "bad" keys.
+   */
+  private final SimpleBlobStore remote =
+      new SimpleBlobStore() {
+        private final ConcurrentMapBlobStore delegate = new ConcurrentMapBlobStore(remoteMap);
+
+        @Override
+        public boolean containsKey(String key) {
+          return delegate.containsKey(key);
+        }
+
+        @Override
+        public boolean get(String key, OutputStream out) throws IOException {
+          return delegate.get(key, out);
+        }
+
+        @Override
+        public boolean getActionResult(String key, OutputStream out)
+            throws IOException, InterruptedException {
+          return delegate.getActionResult(key, out);
+        }
+
+        @Override
+        public void put(String key, long length, InputStream in)
+            throws IOException, InterruptedException {
+          uploadsAllowed.await();
+          if (key.startsWith("slow")) {
+            slowUploadsAllowed.await();
+          }
+          if (key.startsWith("bad")) {
+            throw new IOException("upload failed");
+          }
+          delegate.put(key, length, in);
+        }
+
+        @Override
+        public void putActionResult(String key, byte[] in)
+            throws IOException, InterruptedException {
+          uploadsAllowed.await();
+          delegate.putActionResult(key, in);
+        }
+
+        @Override
+        public void close() {}
+      };
+
+  @Before
+  public final void setUp() throws Exception {
+    Path root = new InMemoryFileSystem().getPath("/cache");
+    root.createDirectoryAndParents();
+    local = new OnDiskBlobStore(root);
+  }
+
+  private static void put(SimpleBlobStore store, String key, String value) throws Exception {
+    byte[] bytes = value.getBytes(UTF_8);
+    store.put(key, bytes.length, new ByteArrayInputStream(bytes));
+  }
+
+  private static String get(SimpleBlobStore store, String key) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    return store.get(key, out) ? new String(out.toByteArray(), UTF_8) : null;
+  }
+
+  private static byte[] actionResult(String... outputKeys) {
+    ActionResult.Builder result = ActionResult.newBuilder();
+    for (String key : outputKeys) {
+      result.addOutputFilesBuilder().setPath(key).setDigest(Digest.newBuilder().setHash(key));
+    }
+    return result.build().toByteArray();
+  }
+
+  private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+    for (int i = 0; i < 1000 && !condition.getAsBoolean(); i++) {
+      Thread.sleep(10);
+    }
+    assertThat(condition.getAsBoolean()).isTrue();
+  }
+
+  @Test
+  public void testWritesAreUploadedInTheBackground() throws Exception {
+    CombinedDiskRemoteBlobStore store = new CombinedDiskRemoteBlobStore(local, remote, 2, 10);
+    put(store, "a", "foo");
+    store.putActionResult("b", "bar".getBytes(UTF_8));
+
+    // The uploads are blocked, but the blobs are available locally.
+    assertThat(get(store, "a")).isEqualTo("foo");
+    assertThat(get(local, "b")).isEqualTo("bar");
+    assertThat(remoteMap).isEmpty();
+
+    uploadsAllowed.countDown();
+    store.close();
+    assertThat(new String(remoteMap.get("a"), UTF_8)).isEqualTo("foo");
+    assertThat(new String(remoteMap.get("b"), UTF_8)).isEqualTo("bar");
+    assertThat(store.getFailedUploads()).isEqualTo(0);
+  }
+
+  @Test
+  public void testReadsFallBackToRemote() throws Exception {
+    remoteMap.put("a", "foo".getBytes(UTF_8));
+    remoteMap.put("b", "bar".getBytes(UTF_8));
+    CombinedDiskRemoteBlobStore store = new CombinedDiskRemoteBlobStore(local, remote, 1, 10);
+
+    assertThat(get(store, "a")).isEqualTo("foo");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertThat(store.getActionResult("b", out)).isTrue();
+    assertThat(new String(out.toByteArray(), UTF_8)).isEqualTo("bar");
+    assertThat(get(store, "c")).isNull();
+    assertThat(store.containsKey("c")).isFalse();
+
+    // The blobs were stored locally.
+    remoteMap.clear();
+    assertThat(get(store, "a")).isEqualTo("foo");
+    assertThat(get(local, "b")).isEqualTo("bar");
+    assertThat(local.containsKey("c")).isFalse();
+    uploadsAllowed.countDown();
+    store.close();
+  }
+
+  @Test
+  public void testActionResultIsNotUploadedIfABlobUploadFails() throws Exception {
+    CombinedDiskRemoteBlobStore store = new CombinedDiskRemoteBlobStore(local, remote, 4, 10);
+    put(store, "bad", "foo");
+    put(store, "a", "bar");
+    store.putActionResult("b", "baz".getBytes(UTF_8));
+    uploadsAllowed.countDown();
+    store.close();
+
+    assertThat(remoteMap.keySet()).containsExactly("a");
+    assertThat(store.getFailedUploads()).isEqualTo(2);
+    assertThat(get(local, "b")).isEqualTo("baz");
+  }
+
+  @Test
+  public void testActionResultDoesNotWaitForUnrelatedBlobs() throws Exception {
+    uploadsAllowed.countDown();
+    CombinedDiskRemoteBlobStore store = new CombinedDiskRemoteBlobStore(local, remote, 2, 10);
+    put(store, "slow", "foo");
+    put(store, "a", "bar");
+    byte[] result = actionResult("a");
+    store.putActionResult("b", result);
+
+    // The action result is uploaded while the unrelated upload is still blocked.
+    waitFor(() -> remoteMap.containsKey("b"));
+    assertThat(remoteMap.get("b")).isEqualTo(result);
+    assertThat(remoteMap).doesNotContainKey("slow");
+
+    slowUploadsAllowed.countDown();
+    store.close();
+    assertThat(remoteMap.keySet()).containsExactly("a", "b", "slow");
+  }
+
+  @Test
+  public void testActionResultIsOnlyDroppedIfItsOwnBlobUploadFails() throws Exception {
+    uploadsAllowed.countDown();
+    slowUploadsAllowed.countDown();
+    CombinedDiskRemoteBlobStore store = new CombinedDiskRemoteBlobStore(local, remote, 2, 10);
+    put(store, "bad1", "foo");
+    // An upload that already failed also counts.
+    waitFor(() -> store.getFailedUploads() == 1);
+    put(store, "bad2", "bar");
+    put(store, "a", "baz");
+    store.putActionResult("r1", actionResult("a"));
+    store.putActionResult("r2", actionResult("a", "bad1"));
+    store.putActionResult("r3", actionResult("bad2"));
+    store.close();
+
+    assertThat(remoteMap.keySet()).containsExactly("a", "r1");
+    assertThat(store.getFailedUploads()).isEqualTo(4);
+  }
+
+  @Test
+  public void testFullQueueUploadsInTheCallingThread() throws Exception {
+    uploadsAllowed.countDown();
+    CombinedDiskRemoteBlobStore store = new CombinedDiskRemoteBlobStore(local, remote, 1, 1);
+    for (int i = 0; i < 20; i++) {
+      put(store, "key" + i, "value" + i);
+    }
+    store.close();
+    assertThat(remoteMap).hasSize(20);
+  }
+
+  @Test
+  public void testSynchronousUploads() throws Exception {
+    uploadsAllowed.countDown();
+    CombinedDiskRemoteBlobStore store = new CombinedDiskRemoteBlobStore(local, remote, 1, 0);
+    put(store, "a", "foo");
+    assertThat(new String(remoteMap.get("a"), UTF_8)).isEqualTo("foo");
+    store.close();
+  }
+}
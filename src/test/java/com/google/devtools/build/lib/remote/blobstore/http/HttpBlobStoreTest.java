@@ -0,0 +1,248 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.remote.blobstore.http;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.devtools.build.lib.remote.blobstore.http.HttpCacheStatistics.RequestType;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContentCompressor;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.Http2MultiplexCodecBuilder;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/** Tests for {@link HttpBlobStore} against a local HTTP/1.1 or HTTP/2 server. */
+@RunWith(Parameterized.class)
+public class HttpBlobStoreTest {
+
+  @Parameters(name = "http2={0}, compression={1}")
+  public static Iterable<Object[]> data() {
+    return Arrays.asList(
+        new Object[][] {{false, false}, {false, true}, {true, false}, {true, true}});
+  }
+
+  private final boolean http2;
+  private final boolean compression;
+
+  private final Map<String, byte[]> contents = new ConcurrentHashMap<>();
+  private final AtomicInteger connections = new AtomicInteger();
+  private final NioEventLoopGroup serverGroup = new NioEventLoopGroup(2);
+  private Channel server;
+  private HttpBlobStore blobStore;
+
+  public HttpBlobStoreTest(boolean http2, boolean compression) {
+    this.http2 = http2;
+    this.compression = compression;
+  }
+
+  /** Stores PUT requests in {@link #contents}, and serves GET requests from it. */
+  @Sharable
+  private final class CacheHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+      FullHttpResponse response;
+      if (request.method().equals(HttpMethod.PUT)) {
+        contents.put(request.uri(), ByteBufUtil.getBytes(request.content()));
+        response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+      } else {
+        byte[] blob = contents.get(request.uri());
+        response =
+            blob == null
+                ? new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_FOUND)
+                : new DefaultFullHttpResponse(
+                    HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.wrappedBuffer(blob));
+        // Make sure there is something to compress.
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain");
+      }
+      response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, response.content().readableBytes());
+      ctx.writeAndFlush(response);
+    }
+  }
+
+  private void addHttpHandlers(ChannelPipeline p, CacheHandler handler) {
+    p.addLast(new HttpContentCompressor());
+    p.addLast(new HttpObjectAggregator(1024 * 1024));
+    p.addLast(handler);
+  }
+
+  @Before
+  public final void startServer() throws Exception {
+    CacheHandler handler = new CacheHandler();
+    server =
+        new ServerBootstrap()
+            .group(serverGroup)
+            .channel(NioServerSocketChannel.class)
+            .childHandler(
+                new ChannelInitializer<Channel>() {
+                  @Override
+                  protected void initChannel(Channel ch) {
+                    connections.incrementAndGet();
+                    if (http2) {
+                      ch.pipeline()
+                          .addLast(
+                              Http2MultiplexCodecBuilder.forServer(
+                                      new ChannelInitializer<Channel>() {
+                                        @Override
+                                        protected void initChannel(Channel stream) {
+                                          stream
+                                              .pipeline()
+                                              .addLast(new Http2StreamFrameToHttpObjectCodec(true));
+                                          addHttpHandlers(stream.pipeline(), handler);
+                                        }
+                                      })
+                                  .build());
+                    } else {
+                      ch.pipeline().addLast(new HttpServerCodec());
+                      addHttpHandlers(ch.pipeline(), handler);
+                    }
+                  }
+                })
+            .bind("localhost", 0)
+            .sync()
+            .channel();
+    int port = ((InetSocketAddress) server.localAddress()).getPort();
+    blobStore =
+        new HttpBlobStore(
+            URI.create("http://localhost:" + port + "/cache"), 10000, null, http2, compression);
+  }
+
+  @After
+  public final void stopServer() throws Exception {
+    blobStore.close();
+    server.close().sync();
+    serverGroup.shutdownGracefully().sync();
+  }
+
+  private byte[] get(String key, boolean cas) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    boolean found = cas ? blobStore.get(key, out) : blobStore.getActionResult(key, out);
+    return found ? out.toByteArray() : null;
+  }
+
+  @Test
+  public void testUploadAndDownload() throws Exception {
+    String blob = "some content that compresses well, well, well, well, well, well";
+    blobStore.put("abc", blob.length(), new ByteArrayInputStream(blob.getBytes(UTF_8)));
+    blobStore.putActionResult("def", "result".getBytes(UTF_8));
+
+    assertThat(contents.keySet()).containsExactly("/cache/cas/abc", "/cache/ac/def");
+    assertThat(new String(get("abc", true), UTF_8)).isEqualTo(blob);
+    assertThat(new String(get("def", false), UTF_8)).isEqualTo("result");
+    assertThat(get("def", true)).isNull();
+    assertThat(get("abc", false)).isNull();
+
+    HttpCacheStatistics statistics = blobStore.getStatistics();
+    assertThat(statistics.getRequests(RequestType.CAS_UPLOAD)).isEqualTo(1);
+    assertThat(statistics.getBytes(RequestType.CAS_UPLOAD)).isEqualTo(blob.length());
+    assertThat(statistics.getRequests(RequestType.CAS_DOWNLOAD)).isEqualTo(2);
+    assertThat(statistics.getMisses(RequestType.CAS_DOWNLOAD)).isEqualTo(1);
+    // The bytes on the wire are counted.
+    if (compression) {
+      assertThat(statistics.getBytes(RequestType.CAS_DOWNLOAD)).isLessThan((long) blob.length());
+    } else {
+      assertThat(statistics.getBytes(RequestType.CAS_DOWNLOAD)).isEqualTo(blob.length());
+    }
+    assertThat(statistics.getRequests(RequestType.AC_DOWNLOAD)).isEqualTo(2);
+    assertThat(statistics.getSummary()).startsWith("HTTP cache: 2 CAS downloads (1 misses, ");
+  }
+
+  @Test
+  public void testHttp2SharesOneConnection() throws Exception {
+    assumeTrue(http2);
+    blobStore.put("abc", 3, new ByteArrayInputStream("foo".getBytes(UTF_8)));
+    assertThat(new String(get("abc", true), UTF_8)).isEqualTo("foo");
+    blobStore.putActionResult("def", "result".getBytes(UTF_8));
+    assertThat(new String(get("def", false), UTF_8)).isEqualTo("result");
+
+    assertThat(connections.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testEmptyBlob() throws Exception {
+    blobStore.put("empty", 0, new ByteArrayInputStream(new byte[0]));
+    assertThat(get("empty", true)).isEmpty();
+  }
+
+  @Test
+  public void testConcurrentRequests() throws Exception {
+    int numBlobs = 100;
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    try {
+      List<Future<?>> uploads = new ArrayList<>();
+      for (int i = 0; i < numBlobs; i++) {
+        byte[] blob = ("blob " + i).getBytes(UTF_8);
+        String key = "key" + i;
+        uploads.add(
+            executor.submit(
+                () -> {
+                  blobStore.put(key, blob.length, new ByteArrayInputStream(blob));
+                  return null;
+                }));
+      }
+      for (Future<?> upload : uploads) {
+        upload.get();
+      }
+      List<Future<byte[]>> downloads = new ArrayList<>();
+      for (int i = 0; i < numBlobs; i++) {
+        String key = "key" + i;
+        downloads.add(executor.submit(() -> get(key, true)));
+      }
+      for (int i = 0; i < numBlobs; i++) {
+        assertThat(new String(downloads.get(i).get(), UTF_8)).isEqualTo("blob " + i);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
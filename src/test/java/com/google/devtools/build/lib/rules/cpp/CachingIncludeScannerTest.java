@@ -0,0 +1,236 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.rules.cpp;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.ArtifactRoot;
+import com.google.devtools.build.lib.rules.cpp.CachingIncludeScanner.InclusionCache;
+import com.google.devtools.build.lib.rules.cpp.IncludeParser.Inclusion;
+import com.google.devtools.build.lib.rules.cpp.IncludeParser.Inclusion.Kind;
+import com.google.devtools.build.lib.vfs.FileSystem;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for how {@link CachingIncludeScanner} resolves inclusions and follows them. */
+@RunWith(JUnit4.class)
+public class CachingIncludeScannerTest {
+
+  private ArtifactRoot root;
+  private ImmutableMap.Builder<PathFragment, Artifact> candidates;
+
+  @Before
+  public void setUp() throws Exception {
+    FileSystem fs = new InMemoryFileSystem();
+    Path execRoot = fs.getPath("/exec");
+    Path out = execRoot.getRelative("out");
+    out.createDirectoryAndParents();
+    root = ArtifactRoot.asDerivedRoot(execRoot, out);
+    candidates = ImmutableMap.builder();
+  }
+
+  private Artifact file(String rootRelativePath, String... lines) throws Exception {
+    Artifact artifact = new Artifact(PathFragment.create(rootRelativePath), root);
+    FileSystemUtils.createDirectoryAndParents(artifact.getPath().getParentDirectory());
+    FileSystemUtils.writeIsoLatin1(artifact.getPath(), lines);
+    return artifact;
+  }
+
+  private Artifact header(String rootRelativePath, String... lines) throws Exception {
+    Artifact artifact = file(rootRelativePath, lines);
+    candidates.put(artifact.getExecPath(), artifact);
+    return artifact;
+  }
+
+  private Set<Artifact> process(InclusionCache cache, Artifact mainSource) throws Exception {
+    CachingIncludeScanner scanner =
+        new CachingIncludeScanner(
+            cache,
+            candidates.build(),
+            ImmutableList.<PathFragment>of(),
+            ImmutableList.of(PathFragment.create("out/include")));
+    Set<Artifact> includes = new HashSet<>();
+    scanner.process(
+        mainSource,
+        ImmutableList.<Artifact>of(),
+        ImmutableMap.<Artifact, Artifact>of(),
+        ImmutableList.<PathFragment>of(),
+        ImmutableList.<PathFragment>of(),
+        ImmutableList.<String>of(),
+        includes,
+        /*actionExecutionContext=*/ null);
+    return includes;
+  }
+
+  private Artifact candidate(String rootRelativePath) {
+    Artifact artifact = new Artifact(PathFragment.create(rootRelativePath), root);
+    candidates.put(artifact.getExecPath(), artifact);
+    return artifact;
+  }
+
+  private List<Artifact> resolve(
+      Inclusion inclusion, String includerDir, List<String> quotePaths, List<String> paths) {
+    List<PathFragment> quoteIncludePaths = new ArrayList<>();
+    for (String path : quotePaths) {
+      quoteIncludePaths.add(PathFragment.create(path));
+    }
+    List<PathFragment> includePaths = new ArrayList<>();
+    for (String path : paths) {
+      includePaths.add(PathFragment.create(path));
+    }
+    CachingIncludeScanner scanner =
+        new CachingIncludeScanner(
+            new InclusionCache(), candidates.build(), quoteIncludePaths, includePaths);
+    List<Artifact> found = new ArrayList<>();
+    scanner.resolve(inclusion, PathFragment.create(includerDir), found);
+    return found;
+  }
+
+  @Test
+  public void testQuoteInclusionPrefersIncludingDirectory() {
+    Artifact local = candidate("pkg/a.h");
+    candidate("quote/pkg/a.h");
+    assertThat(
+            resolve(
+                new Inclusion("a.h", Kind.QUOTE),
+                "out/pkg",
+                ImmutableList.of("out/quote/pkg"),
+                ImmutableList.<String>of()))
+        .containsExactly(local);
+  }
+
+  @Test
+  public void testQuoteInclusionFallsBackToSearchPath() {
+    Artifact quoted = candidate("quote/a.h");
+    candidate("system/a.h");
+    assertThat(
+            resolve(
+                new Inclusion("a.h", Kind.QUOTE),
+                "out/pkg",
+                ImmutableList.of("out/quote"),
+                ImmutableList.of("out/system")))
+        .containsExactly(quoted);
+  }
+
+  @Test
+  public void testAngleInclusionIgnoresIncludingDirectoryAndQuotePaths() {
+    candidate("pkg/a.h");
+    candidate("quote/a.h");
+    Artifact system = candidate("system/a.h");
+    assertThat(
+            resolve(
+                new Inclusion("a.h", Kind.ANGLE),
+                "out/pkg",
+                ImmutableList.of("out/quote"),
+                ImmutableList.of("out/system")))
+        .containsExactly(system);
+  }
+
+  @Test
+  public void testIncludeNextFindsAllMatches() {
+    Artifact first = candidate("first/a.h");
+    Artifact second = candidate("second/a.h");
+    assertThat(
+            resolve(
+                new Inclusion("a.h", Kind.NEXT_ANGLE),
+                "out/first",
+                ImmutableList.<String>of(),
+                ImmutableList.of("out/first", "out/second")))
+        .containsExactly(first, second);
+  }
+
+  @Test
+  public void testRelativeSegmentsAreNormalized() {
+    Artifact header = candidate("lib/a.h");
+    assertThat(
+            resolve(
+                new Inclusion("../lib/a.h", Kind.QUOTE),
+                "out/pkg",
+                ImmutableList.<String>of(),
+                ImmutableList.<String>of()))
+        .containsExactly(header);
+  }
+
+  @Test
+  public void testProcessDropsUnreachableHeaders() throws Exception {
+    Artifact main = file("pkg/main.cc", "#include \"a.h\"", "#include <stdio.h>");
+    Artifact a = header("pkg/a.h", "#include <lib/b.h>");
+    Artifact b = header("include/lib/b.h", "#include \"c.h\"");
+    Artifact c = header("include/lib/c.h");
+    header("pkg/unused.h");
+    header("include/lib/unused.h", "#include \"c.h\"");
+
+    InclusionCache cache = new InclusionCache();
+    assertThat(process(cache, main)).containsExactly(main, a, b, c);
+  }
+
+  @Test
+  public void testProcessReusesParsedInclusions() throws Exception {
+    Artifact main = file("pkg/main.cc", "#include \"a.h\"");
+    Artifact copy = file("pkg/copy.cc", "#include \"a.h\"");
+    Artifact a = header("pkg/a.h");
+
+    InclusionCache cache = new InclusionCache();
+    assertThat(process(cache, main)).containsExactly(main, a);
+    long size = cache.size();
+    // The second source has the same contents as the first, so it is not parsed again.
+    assertThat(process(cache, copy)).containsExactly(copy, a);
+    assertThat(cache.size()).isEqualTo(size);
+  }
+
+  @Test
+  public void testProcessReportsAllHeadersForComputedInclusion() throws Exception {
+    Artifact main = file("pkg/main.cc", "#include HEADER");
+    Artifact a = header("pkg/a.h");
+    Artifact b = header("pkg/b.h");
+
+    assertThat(process(new InclusionCache(), main)).containsExactly(main, a, b);
+  }
+
+  @Test
+  public void testProcessReportsAllHeadersForMissingFile() throws Exception {
+    Artifact main = file("pkg/main.cc", "#include \"gen.h\"");
+    Artifact generated = new Artifact(PathFragment.create("pkg/gen.h"), root);
+    candidates.put(generated.getExecPath(), generated);
+    Artifact a = header("pkg/a.h");
+
+    assertThat(process(new InclusionCache(), main)).containsExactly(main, generated, a);
+  }
+
+  @Test
+  public void testUnknownHeadersAreIgnored() {
+    candidate("pkg/a.h");
+    assertThat(
+            resolve(
+                new Inclusion("stdio.h", Kind.ANGLE),
+                "out/pkg",
+                ImmutableList.<String>of(),
+                ImmutableList.of("out/pkg")))
+        .isEmpty();
+  }
+}
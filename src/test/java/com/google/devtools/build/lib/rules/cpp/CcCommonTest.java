@@ -175,6 +175,24 @@ public class CcCommonTest extends BuildViewTestCase {
     assertThat(copts).contains("-Wmy-warning -frun-faster");
   }
 
+  @Test
+  public void testIncludeDirsFromCopts() throws Exception {
+    scratch.file(
+        "copts/BUILD",
+        "cc_library(name = 'c_lib',",
+        "    srcs = ['foo.cc'],",
+        "    copts = ['-Icombined', '-I', 'separated', '-iquote', 'quote', '-iquotequote2',",
+        "             '-idirafter', 'after'])");
+    CppCompileAction action = getCppCompileAction("//copts:c_lib");
+    assertThat(action.getIncludeDirs())
+        .containsAllOf(PathFragment.create("combined"), PathFragment.create("separated"))
+        .inOrder();
+    assertThat(action.getQuoteIncludeDirs())
+        .containsAllOf(PathFragment.create("quote"), PathFragment.create("quote2"))
+        .inOrder();
+    assertThat(action.getSystemIncludeDirs()).contains(PathFragment.create("after"));
+  }
+
   /**
    * Test that we handle ".a" files in cc_library srcs correctly when linking dynamically. In
    * particular, if srcs contains only the ".a" file for a library, with no corresponding ".so",
@@ -0,0 +1,116 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.rules.cpp;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.devtools.build.lib.rules.cpp.IncludeParser.Inclusion;
+import com.google.devtools.build.lib.rules.cpp.IncludeParser.Inclusion.Kind;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link IncludeParser}. */
+@RunWith(JUnit4.class)
+public class IncludeParserTest {
+
+  private static List<Inclusion> parse(String... lines) {
+    return IncludeParser.parse(String.join("\n", lines).getBytes(UTF_8));
+  }
+
+  @Test
+  public void testInclusionKinds() {
+    assertThat(
+            parse(
+                "#include \"a.h\"",
+                "#include <b.h>",
+                "#include_next \"c.h\"",
+                "#include_next <d.h>",
+                "#import \"e.h\"",
+                "#include FOO_HEADER"))
+        .containsExactly(
+            new Inclusion("a.h", Kind.QUOTE),
+            new Inclusion("b.h", Kind.ANGLE),
+            new Inclusion("c.h", Kind.NEXT_QUOTE),
+            new Inclusion("d.h", Kind.NEXT_ANGLE),
+            new Inclusion("e.h", Kind.QUOTE),
+            new Inclusion("FOO_HEADER", Kind.COMPUTED))
+        .inOrder();
+  }
+
+  @Test
+  public void testWhitespaceAndComments() {
+    assertThat(
+            parse(
+                "  #  include\t\"a.h\"  // trailing",
+                "/* leading */ # /* inner */ include <b.h>",
+                "#\\",
+                "include \"c.h\""))
+        .containsExactly(
+            new Inclusion("a.h", Kind.QUOTE),
+            new Inclusion("b.h", Kind.ANGLE),
+            new Inclusion("c.h", Kind.QUOTE))
+        .inOrder();
+  }
+
+  @Test
+  public void testIgnoresCommentedOutDirectives() {
+    assertThat(
+            parse(
+                "// #include \"a.h\"",
+                "/*",
+                "#include \"b.h\"",
+                "*/",
+                "// continued \\",
+                "#include \"c.h\"",
+                "#include \"d.h\""))
+        .containsExactly(new Inclusion("d.h", Kind.QUOTE));
+  }
+
+  @Test
+  public void testIgnoresDirectivesNotAtLineStart() {
+    assertThat(
+            parse(
+                "const char* s = \"\\n#include \\\"a.h\\\"\";",
+                "int x; #include \"b.h\"",
+                "#define STR(x) #x",
+                "#define INC #include \"c.h\""))
+        .isEmpty();
+  }
+
+  @Test
+  public void testUnterminatedLiteralEndsAtLineEnd() {
+    assertThat(parse("#error Can't use this", "#include \"foo.h\""))
+        .containsExactly(new Inclusion("foo.h", Kind.QUOTE));
+    assertThat(parse("int x = 1'000;", "#include \"foo.h\""))
+        .containsExactly(new Inclusion("foo.h", Kind.QUOTE));
+    assertThat(parse("const char* s = \"unterminated;", "#include <bar.h>"))
+        .containsExactly(new Inclusion("bar.h", Kind.ANGLE));
+  }
+
+  @Test
+  public void testIgnoresConditionals() {
+    assertThat(parse("#if 0", "#include \"a.h\"", "#else", "#include \"b.h\"", "#endif"))
+        .containsExactly(new Inclusion("a.h", Kind.QUOTE), new Inclusion("b.h", Kind.QUOTE))
+        .inOrder();
+  }
+
+  @Test
+  public void testMalformedDirectives() {
+    assertThat(parse("#include \"a.h", "#include <>", "#include", "#includes \"b.h\"")).isEmpty();
+  }
+}
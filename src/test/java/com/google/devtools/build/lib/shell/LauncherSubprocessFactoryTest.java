@@ -0,0 +1,141 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.shell;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.devtools.build.lib.shell.SubprocessBuilder.StreamAction;
+import com.google.devtools.build.lib.testutil.BlazeTestUtils;
+import com.google.devtools.build.lib.testutil.TestConstants;
+import com.google.devtools.build.lib.testutil.TestUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link LauncherSubprocessFactory}. */
+@RunWith(JUnit4.class)
+public final class LauncherSubprocessFactoryTest {
+  private File workDir;
+
+  @Before
+  public final void setSubprocessFactory() throws Exception {
+    workDir = TestUtils.makeTempDir();
+    SubprocessBuilder.setSubprocessFactory(
+        new LauncherSubprocessFactory(
+            new File(BlazeTestUtils.runfilesDir(), TestConstants.PROCESS_LAUNCHER_PATH)));
+  }
+
+  @After
+  public final void resetSubprocessFactory() {
+    SubprocessBuilder.setSubprocessFactory(JavaSubprocessFactory.INSTANCE);
+  }
+
+  private static String readFile(File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), UTF_8);
+  }
+
+  @Test
+  public void testRedirectsOutputToFiles() throws Exception {
+    File stdout = new File(workDir, "stdout");
+    File stderr = new File(workDir, "stderr");
+    Files.write(stdout.toPath(), "previous contents".getBytes(UTF_8));
+    Subprocess process =
+        new SubprocessBuilder()
+            .setArgv("/bin/sh", "-c", "pwd; echo $GREETING >&2; exit 3")
+            .setEnv(ImmutableMap.of("GREETING", "hello"))
+            .setWorkingDirectory(workDir)
+            .setStdout(stdout)
+            .setStderr(stderr)
+            .start();
+    process.waitFor();
+
+    assertThat(process.finished()).isTrue();
+    assertThat(process.exitValue()).isEqualTo(3);
+    assertThat(process.timedout()).isFalse();
+    assertThat(readFile(stdout)).isEqualTo(workDir.getCanonicalPath() + "\n");
+    assertThat(readFile(stderr)).isEqualTo("hello\n");
+  }
+
+  @Test
+  public void testRedirectErrorStream() throws Exception {
+    File stdout = new File(workDir, "out");
+    Subprocess process =
+        new SubprocessBuilder()
+            .setArgv("/bin/sh", "-c", "echo out; echo err >&2")
+            .setStdout(stdout)
+            .setStderr(StreamAction.DISCARD)
+            .redirectErrorStream(true)
+            .start();
+    process.waitFor();
+
+    assertThat(process.exitValue()).isEqualTo(0);
+    assertThat(readFile(stdout)).isEqualTo("out\nerr\n");
+  }
+
+  @Test
+  public void testTimeout() throws Exception {
+    Subprocess process =
+        new SubprocessBuilder()
+            .setArgv("sleep", "60")
+            .setStdout(StreamAction.DISCARD)
+            .setStderr(StreamAction.DISCARD)
+            .setTimeoutMillis(100)
+            .start();
+    process.waitFor();
+
+    assertThat(process.timedout()).isTrue();
+    // Killed by SIGTERM.
+    assertThat(process.exitValue()).isEqualTo(128 + 15);
+  }
+
+  @Test
+  public void testMissingBinary() throws Exception {
+    try {
+      new SubprocessBuilder()
+          .setArgv(new File(workDir, "nonexistent").getPath())
+          .setStdout(StreamAction.DISCARD)
+          .setStderr(StreamAction.DISCARD)
+          .start();
+      fail();
+    } catch (IOException e) {
+      assertThat(e).hasMessageThat().contains("nonexistent");
+    }
+  }
+
+  @Test
+  public void testCommands() throws Exception {
+    // Output that is streamed back doesn't go through the launcher.
+    CommandResult result = new Command(new String[] {"echo", "streamed"}).execute();
+    assertThat(new String(result.getStdout(), UTF_8)).isEqualTo("streamed\n");
+
+    result = new Command(new String[] {"/bin/sh", "-c", "echo discarded"}).executeDiscardingOutput();
+    assertThat(result.getTerminationStatus().success()).isTrue();
+
+    try {
+      new Command(new String[] {"/bin/sh", "-c", "exit 42"}).executeDiscardingOutput();
+      fail();
+    } catch (BadExitStatusException e) {
+      assertThat(e.getResult().getTerminationStatus().getExitCode()).isEqualTo(42);
+    }
+  }
+}
@@ -22,10 +22,14 @@ import com.google.devtools.build.lib.cmdline.Label;
 import com.google.devtools.build.lib.cmdline.PackageIdentifier;
 import com.google.devtools.build.lib.packages.NoSuchPackageException;
 import com.google.devtools.build.lib.skyframe.util.SkyframeExecutorTestUtils;
+import com.google.devtools.build.lib.syntax.BuildFileAST;
 import com.google.devtools.build.lib.syntax.SkylarkImport;
 import com.google.devtools.build.lib.vfs.FileStatus;
 import com.google.devtools.build.lib.vfs.FileSystem;
+import com.google.devtools.build.lib.vfs.ModifiedFileSet;
 import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import com.google.devtools.build.lib.vfs.Root;
 import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
 import com.google.devtools.build.skyframe.ErrorInfo;
 import com.google.devtools.build.skyframe.EvaluationResult;
@@ -166,4 +170,38 @@ public class ASTFileLookupFunctionTest extends BuildViewTestCase {
     assertThat(result.get(skyKey).getErrorMsg())
         .contains("The repository could not be resolved");
   }
+
+  private BuildFileAST evaluateAST(SkyKey skyKey) throws Exception {
+    EvaluationResult<ASTFileLookupValue> result =
+        SkyframeExecutorTestUtils.evaluate(
+            getSkyframeExecutor(), skyKey, /*keepGoing=*/ false, reporter);
+    return result.get(skyKey).getAST();
+  }
+
+  private void invalidateFile(String path) throws Exception {
+    getSkyframeExecutor()
+        .invalidateFilesUnderPathForTesting(
+            reporter,
+            new ModifiedFileSet.Builder().modify(PathFragment.create(path)).build(),
+            Root.fromPath(rootDirectory));
+  }
+
+  @Test
+  public void testUnchangedFileKeepsItsAST() throws Exception {
+    scratch.file("foo/BUILD");
+    Path ext = scratch.file("foo/ext.bzl", "CONST = 17");
+    invalidatePackages();
+    SkyKey skyKey = ASTFileLookupValue.key(Label.parseAbsoluteUnchecked("//foo:ext.bzl"));
+    BuildFileAST ast = evaluateAST(skyKey);
+
+    // Same contents, but a different modification time, so the file is read again.
+    scratch.overwriteFile("foo/ext.bzl", "CONST = 17");
+    ext.setLastModifiedTime(ext.getLastModifiedTime() + 1000);
+    invalidateFile("foo/ext.bzl");
+    assertThat(evaluateAST(skyKey)).isSameAs(ast);
+
+    scratch.overwriteFile("foo/ext.bzl", "CONST = 18");
+    invalidateFile("foo/ext.bzl");
+    assertThat(evaluateAST(skyKey)).isNotSameAs(ast);
+  }
 }
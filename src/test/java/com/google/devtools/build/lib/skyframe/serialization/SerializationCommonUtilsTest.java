@@ -0,0 +1,52 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.skyframe.serialization;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.devtools.build.lib.testutil.MoreAsserts.expectThrows;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link SerializationCommonUtils}. */
+@RunWith(JUnit4.class)
+public class SerializationCommonUtilsTest {
+
+  private enum Color {
+    RED,
+    GREEN,
+    BLUE
+  }
+
+  @Test
+  public void testEnumConstant() throws Exception {
+    for (Color color : Color.values()) {
+      assertThat(SerializationCommonUtils.enumConstant(Color.class, color.ordinal()))
+          .isSameAs(color);
+    }
+  }
+
+  @Test
+  public void testEnumConstantWithInvalidOrdinal() {
+    SerializationException e =
+        expectThrows(
+            SerializationException.class,
+            () -> SerializationCommonUtils.enumConstant(Color.class, 3));
+    assertThat(e).hasMessageThat().contains("Invalid ordinal");
+    expectThrows(
+        SerializationException.class, () -> SerializationCommonUtils.enumConstant(Color.class, -1));
+  }
+}
@@ -63,6 +63,10 @@ public class TestConstants {
   public static final String PROCESS_WRAPPER_PATH =
       "io_bazel/src/main/tools/process-wrapper";
 
+  /** Relative path to the {@code process-launcher} tool. */
+  public static final String PROCESS_LAUNCHER_PATH =
+      "io_bazel/src/main/tools/process-launcher";
+
   /** Relative path to the {@code linux-sandbox} tool. */
   public static final String LINUX_SANDBOX_PATH =
       "io_bazel/src/main/tools/linux-sandbox";
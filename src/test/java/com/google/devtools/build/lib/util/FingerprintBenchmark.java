@@ -0,0 +1,79 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.util;
+
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Microbenchmarks for the {@link Fingerprint} hash functions, on inputs shaped like action keys
+ * (many short strings) and like file contents (large byte arrays).
+ */
+public class FingerprintBenchmark {
+
+  @Param Fingerprint.Algorithm algorithm;
+
+  @Param({"64", "1048576"})
+  int contentSize;
+
+  private final List<String> actionKeyStrings = new ArrayList<>();
+  private byte[] content;
+
+  @BeforeExperiment
+  void setUp() {
+    Random random = new Random(42);
+    for (int i = 0; i < 500; i++) {
+      actionKeyStrings.add("bazel-out/k8-fastbuild/bin/some/package/path/file_" + random.nextInt());
+    }
+    content = new byte[contentSize];
+    random.nextBytes(content);
+  }
+
+  @Benchmark
+  int actionKey(int reps) {
+    Fingerprint fp = new Fingerprint(algorithm);
+    int dummy = 0;
+    for (int i = 0; i < reps; i++) {
+      dummy += fp.addStrings(actionKeyStrings).digestAndReset()[0];
+    }
+    return dummy;
+  }
+
+  @Benchmark
+  int fileContent(int reps) {
+    Fingerprint fp = new Fingerprint(algorithm);
+    int dummy = 0;
+    for (int i = 0; i < reps; i++) {
+      dummy += fp.addBytes(content).digestAndReset()[0];
+    }
+    return dummy;
+  }
+
+  /** Hashes the content with SHA-256, the default file digest function, for comparison. */
+  @Benchmark
+  int fileContentSha256(int reps) {
+    HashFunction sha256 = Hashing.sha256();
+    int dummy = 0;
+    for (int i = 0; i < reps; i++) {
+      dummy += sha256.hashBytes(content).asBytes()[0];
+    }
+    return dummy;
+  }
+}
@@ -21,6 +21,7 @@ import com.google.devtools.build.lib.clock.BlazeClock;
 import com.google.devtools.build.lib.vfs.Path;
 import com.google.devtools.build.lib.vfs.PathFragment;
 import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -152,6 +153,26 @@ public class FingerprintTest {
     assertThat(f1).isEqualTo(f2);
   }
 
+  @Test
+  public void testMurmurReusableAfterReset() throws Exception {
+    Fingerprint fp = new Fingerprint(Fingerprint.Algorithm.MURMUR3_128);
+    String f1 = convolutedFingerprintAndReset(fp);
+    String f2 = convolutedFingerprintAndReset(fp);
+    assertThat(f1).isEqualTo(f2);
+    assertThat(f1).hasLength(32);
+    assertThat(f1)
+        .isNotEqualTo(convolutedFingerprintAndReset(new Fingerprint(Fingerprint.Algorithm.MD5)));
+  }
+
+  @Test
+  public void testMurmurDigestIntoBuffer() throws Exception {
+    Fingerprint fp = new Fingerprint(Fingerprint.Algorithm.MURMUR3_128);
+    byte[] expected = fp.addString("Hello World!").digestAndReset();
+    byte[] buf = new byte[20];
+    fp.addString("Hello World!").digestAndReset(buf, 2, 16);
+    assertThat(Arrays.copyOfRange(buf, 2, 18)).isEqualTo(expected);
+  }
+
   private static String convolutedFingerprintAndReset(Fingerprint fingerprint) {
     return fingerprint
         .addBoolean(false)
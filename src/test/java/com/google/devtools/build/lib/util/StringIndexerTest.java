@@ -14,6 +14,7 @@
 package com.google.devtools.build.lib.util;
 
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.devtools.build.lib.testutil.MoreAsserts.expectThrows;
 
 import com.google.common.base.Function;
 import com.google.common.base.Strings;
@@ -236,8 +237,7 @@ public abstract class StringIndexerTest {
   public static class CanonicalStringIndexerTest extends StringIndexerTest{
     @Override
     protected StringIndexer newIndexer() {
-      return new CanonicalStringIndexer(new ConcurrentHashMap<String, Integer>(),
-          new ConcurrentHashMap<Integer, String>());
+      return new CanonicalStringIndexer(new ConcurrentHashMap<String, Integer>());
     }
 
     @Test
@@ -277,6 +277,23 @@ public abstract class StringIndexerTest {
       assertThat(indexer.addString("ab")).isFalse();
     }
 
+    @Test
+    public void preInitializedMap() {
+      ConcurrentHashMap<String, Integer> map = new ConcurrentHashMap<>();
+      map.put("abc", 1);
+      map.put("def", 0);
+      indexer = new CanonicalStringIndexer(map);
+      assertSize(2);
+      assertThat(indexer.getStringForIndex(0)).isEqualTo("def");
+      assertThat(indexer.getStringForIndex(1)).isEqualTo("abc");
+      assertIndex(2, "ghi");
+
+      map.put("ghi", 0);
+      expectThrows(IllegalArgumentException.class, () -> new CanonicalStringIndexer(map));
+      map.put("ghi", 3);
+      expectThrows(IllegalArgumentException.class, () -> new CanonicalStringIndexer(map));
+    }
+
     protected void setupTestContent() {
       assertSize(0);
       assertIndex(0, "abcdefghi");
@@ -17,6 +17,9 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.Iterables;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.devtools.build.android.AndroidResourceMerger.MergingException;
@@ -57,6 +60,8 @@ class AndroidDataMerger {
   /** Compares two paths by the contents of the files. */
   static class ContentComparingChecker implements SourceChecker {
 
+    private static final int COMPARISON_BUFFER_SIZE = 8192;
+
     static SourceChecker create() {
       return new ContentComparingChecker();
     }
@@ -69,26 +74,30 @@ class AndroidDataMerger {
       }
       try (final InputStream oneStream = one.newBufferedInputStream();
           final InputStream twoStream = two.newBufferedInputStream()) {
-        int bytesRead = 0;
+        byte[] oneBuffer = new byte[COMPARISON_BUFFER_SIZE];
+        byte[] twoBuffer = new byte[COMPARISON_BUFFER_SIZE];
+        long bytesRead = 0;
         while (true) {
-          int oneByte = oneStream.read();
-          int twoByte = twoStream.read();
-          bytesRead++;
-          if (oneByte == -1 || twoByte == -1) {
-            if (oneByte == twoByte) {
-              return true;
-            } else {
-              // getFileSize did not return correct size.
-              logger.severe(
-                  String.format(
-                      "Filesystem size of %s (%s) or %s (%s) is inconsistent with bytes read %s.",
-                      one, one.getFileSize(), two, two.getFileSize(), bytesRead));
+          int oneCount = ByteStreams.read(oneStream, oneBuffer, 0, oneBuffer.length);
+          int twoCount = ByteStreams.read(twoStream, twoBuffer, 0, twoBuffer.length);
+          if (oneCount != twoCount) {
+            // getFileSize did not return correct size.
+            logger.severe(
+                String.format(
+                    "Filesystem size of %s (%s) or %s (%s) is inconsistent with bytes read %s.",
+                    one, one.getFileSize(), two, two.getFileSize(),
+                    bytesRead + Math.min(oneCount, twoCount)));
+            return false;
+          }
+          if (oneCount == 0) {
+            return true;
+          }
+          for (int i = 0; i < oneCount; i++) {
+            if (oneBuffer[i] != twoBuffer[i]) {
               return false;
             }
           }
-          if (oneByte != twoByte) {
-            return false;
-          }
+          bytesRead += oneCount;
         }
       }
     }
@@ -378,12 +387,7 @@ class AndroidDataMerger {
       }
 
       if (!conflicts.isEmpty()) {
-        List<String> messages = new ArrayList<>();
-        for (MergeConflict conflict : conflicts) {
-          if (conflict.isValidWith(deDuplicator)) {
-            messages.add(conflict.toConflictMessage());
-          }
-        }
+        List<String> messages = validConflictMessages(conflicts);
         if (!messages.isEmpty()) {
           String conflictMessage = Joiner.on("").join(messages);
           if (throwOnResourceConflict) {
@@ -398,4 +402,30 @@ class AndroidDataMerger {
       throw MergingException.wrapException(e);
     }
   }
+
+  /**
+   * Returns the messages for the conflicts that are not resolved by the deduplicator.
+   *
+   * <p>Checking a conflict may compare the contents of both sources, so the conflicts are checked
+   * concurrently on the executor service.
+   */
+  private List<String> validConflictMessages(Set<MergeConflict> conflicts) {
+    List<ListenableFuture<String>> checks = new ArrayList<>(conflicts.size());
+    for (MergeConflict conflict : conflicts) {
+      checks.add(
+          executorService.submit(
+              () -> conflict.isValidWith(deDuplicator) ? conflict.toConflictMessage() : null));
+    }
+    FailedFutureAggregator.createForMergingExceptionWithMessage(
+            "Failure(s) while checking merge conflicts")
+        .aggregateAndMaybeThrow(checks);
+    List<String> messages = new ArrayList<>();
+    for (ListenableFuture<String> check : checks) {
+      String message = Futures.getUnchecked(check);
+      if (message != null) {
+        messages.add(message);
+      }
+    }
+    return messages;
+  }
 }
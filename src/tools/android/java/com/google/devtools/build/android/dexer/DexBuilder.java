@@ -149,12 +149,13 @@ class DexBuilder {
     ExecutorService executor = newFixedThreadPool(Runtime.getRuntime().availableProcessors());
     Cache<DexingKey, byte[]> dexCache = CacheBuilder.newBuilder()
         // Use at most 200 MB for cache and leave at least 25 MB of heap space alone. For reference:
-        // .class & class.dex files are around 1-5 KB, so this fits ~30K-35K class-dex pairs.
+        // class.dex files are around 1-5 KB and keys only hold a digest of the .class file, so this
+        // fits ~60K-70K cached classes.
         .maximumWeight(Math.min(Runtime.getRuntime().maxMemory() - 25 * ONE_MEG, 200 * ONE_MEG))
         .weigher(new Weigher<DexingKey, byte[]>() {
           @Override
           public int weigh(DexingKey key, byte[] value) {
-            return key.classfileContent().length + value.length;
+            return key.classfileDigest().bits() / Byte.SIZE + value.length;
           }
         })
         .build();
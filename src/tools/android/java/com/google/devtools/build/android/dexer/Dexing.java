@@ -25,6 +25,8 @@ import com.android.dx.dex.file.DexFile;
 import com.android.dx.util.ByteArray;
 import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
 import com.google.devtools.common.options.Converter;
 import com.google.devtools.common.options.Option;
@@ -140,14 +142,16 @@ class Dexing {
   }
 
   /**
-   * Class file and possible dexing options, to look up dexing results in caches.
+   * Class file digest and possible dexing options, to look up dexing results in caches.
    */
   @AutoValue
   abstract static class DexingKey {
     static DexingKey create(
         boolean localInfo, boolean optimize, int positionInfo, byte[] classfileContent) {
-      // TODO(bazel-team): Maybe we can use a minimal collision hash instead of full content
-      return new AutoValue_Dexing_DexingKey(localInfo, optimize, positionInfo, classfileContent);
+      // Key by a digest of the class file instead of its content, so that the key doesn't keep the
+      // (much larger) class file alive in caches.
+      return new AutoValue_Dexing_DexingKey(
+          localInfo, optimize, positionInfo, Hashing.sha256().hashBytes(classfileContent));
     }
 
     /** Returns whether {@link CfOptions#localInfo local variable information} is included. */
@@ -159,8 +163,8 @@ class Dexing {
     /** Returns how much line number information is emitted as a {@link PositionList} constant. */
     abstract int positionInfo();
 
-    /** Returns the class file to dex, <b>not</b> the dexed class. Don't modify the return value! */
-    @SuppressWarnings("mutable") abstract byte[] classfileContent();
+    /** Returns the SHA-256 digest of the class file to dex, <b>not</b> of the dexed class. */
+    abstract HashCode classfileDigest();
   }
 
   private final DxContext context;
@@ -0,0 +1,39 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.remote.worker;
+
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+
+/**
+ * A {@link ServerInterceptor} that compresses the responses to the calls whose requests are gzip
+ * compressed, so that clients can opt in to compressed reads by compressing their requests.
+ */
+final class CompressionInterceptor implements ServerInterceptor {
+  private static final String GZIP = "gzip";
+  private static final Metadata.Key<String> MESSAGE_ENCODING_KEY =
+      Metadata.Key.of("grpc-encoding", Metadata.ASCII_STRING_MARSHALLER);
+
+  @Override
+  public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+      ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+    if (GZIP.equals(headers.get(MESSAGE_ENCODING_KEY))) {
+      call.setCompression(GZIP);
+    }
+    return next.startCall(call, headers);
+  }
+}
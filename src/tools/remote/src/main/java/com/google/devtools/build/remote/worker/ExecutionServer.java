@@ -68,6 +68,7 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.annotation.Nullable;
 
 /** A basic implementation of an {@link ExecutionImplBase} service. */
 final class ExecutionServer extends ExecutionImplBase {
@@ -91,6 +92,7 @@ final class ExecutionServer extends ExecutionImplBase {
   private final Path sandboxPath;
   private final RemoteWorkerOptions workerOptions;
   private final SimpleBlobStoreActionCache cache;
+  @Nullable private final InputCache inputCache;
   private final ConcurrentHashMap<String, ListenableFuture<ActionResult>> operationsCache;
   private final ListeningExecutorService executorService;
   private final DigestUtil digestUtil;
@@ -100,12 +102,14 @@ final class ExecutionServer extends ExecutionImplBase {
       Path sandboxPath,
       RemoteWorkerOptions workerOptions,
       SimpleBlobStoreActionCache cache,
+      @Nullable InputCache inputCache,
       ConcurrentHashMap<String, ListenableFuture<ActionResult>> operationsCache,
       DigestUtil digestUtil) {
     this.workPath = workPath;
     this.sandboxPath = sandboxPath;
     this.workerOptions = workerOptions;
     this.cache = cache;
+    this.inputCache = inputCache;
     this.operationsCache = operationsCache;
     this.digestUtil = digestUtil;
     ThreadPoolExecutor realExecutor = new ThreadPoolExecutor(
@@ -177,7 +181,11 @@ final class ExecutionServer extends ExecutionImplBase {
       command =
           com.google.devtools.remoteexecution.v1test.Command.parseFrom(
               cache.downloadBlob(action.getCommandDigest()));
-      cache.downloadTree(action.getInputRootDigest(), execRoot);
+      if (inputCache != null) {
+        inputCache.materializeTree(action.getInputRootDigest(), execRoot);
+      } else {
+        cache.downloadTree(action.getInputRootDigest(), execRoot);
+      }
     } catch (CacheNotFoundException e) {
       throw StatusUtils.notFoundError(e.getMissingDigest());
     }
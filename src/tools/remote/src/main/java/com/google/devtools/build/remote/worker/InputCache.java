@@ -0,0 +1,197 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.remote.worker;
+
+import static java.util.logging.Level.WARNING;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.devtools.build.lib.remote.DigestUtil;
+import com.google.devtools.build.lib.remote.SimpleBlobStoreActionCache;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.remoteexecution.v1test.Digest;
+import com.google.devtools.remoteexecution.v1test.Directory;
+import com.google.devtools.remoteexecution.v1test.DirectoryNode;
+import com.google.devtools.remoteexecution.v1test.FileNode;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A local cache of the input files of actions, from which the input trees of actions are populated
+ * with hard links instead of downloads.
+ *
+ * <p>The files are kept read-only in a directory of their own, named after their digest, and the
+ * least recently used ones are deleted when the files take up too much space. Deleting a file
+ * doesn't affect the actions that link to it. The {@link Directory} protos of the input trees are
+ * also kept in memory, so that the subtrees that many actions share don't need to be fetched and
+ * parsed again.
+ *
+ * <p>An action can make a linked input writable and change it in place, which changes the cached
+ * file as well. So before a cached file is linked again, its mode and digest are checked, and it is
+ * downloaded again if either changed.
+ *
+ * <p>The cache directory must be on the same file system as the exec roots. If a file can't be
+ * linked, it is downloaded to the exec root instead.
+ */
+final class InputCache {
+  private static final Logger logger = Logger.getLogger(InputCache.class.getName());
+
+  private static final int MAX_CACHED_DIRECTORIES = 100000;
+
+  private final Path root;
+  private final SimpleBlobStoreActionCache cache;
+  private final DigestUtil digestUtil;
+  private final long maxSizeBytes;
+  private final Cache<Digest, Directory> directories =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_DIRECTORIES).build();
+
+  private final Object lock = new Object();
+
+  /** The sizes of the cached files, from the least to the most recently used. */
+  @GuardedBy("lock")
+  private final LinkedHashMap<String, Long> files =
+      new LinkedHashMap<>(
+          /* initialCapacity= */ 16, /* loadFactor= */ 0.75f, /* accessOrder= */ true);
+
+  @GuardedBy("lock")
+  private long sizeBytes;
+
+  /** Creates a cache in {@code root}, and deletes what was there before. */
+  InputCache(
+      Path root, SimpleBlobStoreActionCache cache, DigestUtil digestUtil, long maxSizeBytes)
+      throws IOException {
+    this.root = root;
+    this.cache = cache;
+    this.digestUtil = digestUtil;
+    this.maxSizeBytes = maxSizeBytes;
+    if (root.exists()) {
+      FileSystemUtils.deleteTree(root);
+    }
+    FileSystemUtils.createDirectoryAndParents(root);
+  }
+
+  /** Populates {@code execRoot} with the tree of the given digest. */
+  void materializeTree(Digest rootDigest, Path execRoot) throws IOException, InterruptedException {
+    FileSystemUtils.createDirectoryAndParents(execRoot);
+    Directory directory = getDirectory(rootDigest);
+    for (FileNode file : directory.getFilesList()) {
+      materializeFile(
+          execRoot.getRelative(file.getName()), file.getDigest(), file.getIsExecutable());
+    }
+    for (DirectoryNode child : directory.getDirectoriesList()) {
+      materializeTree(child.getDigest(), execRoot.getRelative(child.getName()));
+    }
+  }
+
+  private Directory getDirectory(Digest digest) throws IOException, InterruptedException {
+    Directory directory = directories.getIfPresent(digest);
+    if (directory == null) {
+      directory = Directory.parseFrom(cache.downloadBlob(digest));
+      directories.put(digest, directory);
+    }
+    return directory;
+  }
+
+  private void materializeFile(Path path, Digest digest, boolean isExecutable)
+      throws IOException, InterruptedException {
+    // Executable and non-executable files can't share an inode.
+    String key = digest.getHash() + (isExecutable ? "-x" : "");
+    Path cached;
+    synchronized (lock) {
+      cached = files.get(key) != null ? root.getRelative(key) : null;
+    }
+    if (cached != null && !isUnchanged(cached, digest, isExecutable)) {
+      logger.warning("Cached input " + cached + " was modified, downloading it again");
+      evict(key);
+      cached = null;
+    }
+    if (cached == null) {
+      cached = addFile(key, digest, isExecutable);
+    }
+    try {
+      cached.createHardLink(path);
+    } catch (IOException e) {
+      // The file was evicted in the meantime, or can't be linked at all.
+      logger.log(WARNING, "Failed to link " + path + " to " + cached, e);
+      cache.downloadFile(path, digest, isExecutable);
+    }
+  }
+
+  /** Returns whether the cached file still has the mode and digest that it was added with. */
+  private boolean isUnchanged(Path cached, Digest digest, boolean isExecutable) {
+    try {
+      return !cached.isWritable()
+          && cached.isExecutable() == isExecutable
+          && digestUtil.compute(cached).equals(digest);
+    } catch (IOException e) {
+      // The file was evicted in the meantime.
+      return false;
+    }
+  }
+
+  private void evict(String key) {
+    synchronized (lock) {
+      Long size = files.remove(key);
+      if (size == null) {
+        return;
+      }
+      sizeBytes -= size;
+      deleteFile(key);
+    }
+  }
+
+  @GuardedBy("lock")
+  private void deleteFile(String key) {
+    try {
+      root.getRelative(key).delete();
+    } catch (IOException e) {
+      logger.log(WARNING, "Failed to evict " + key + " from the input cache", e);
+    }
+  }
+
+  private Path addFile(String key, Digest digest, boolean isExecutable)
+      throws IOException, InterruptedException {
+    // Another thread may be downloading the same file, so download to a file of our own.
+    Path temp = root.getRelative(UUID.randomUUID().toString());
+    Path cached = root.getRelative(key);
+    try {
+      cache.downloadFile(temp, digest, isExecutable);
+      temp.setWritable(false);
+      temp.renameTo(cached);
+    } finally {
+      temp.delete();
+    }
+    synchronized (lock) {
+      if (files.put(key, digest.getSizeBytes()) == null) {
+        sizeBytes += digest.getSizeBytes();
+      }
+      // The file that was just added is the most recently used one, so it is not evicted.
+      Iterator<Map.Entry<String, Long>> it = files.entrySet().iterator();
+      while (sizeBytes > maxSizeBytes && files.size() > 1) {
+        Map.Entry<String, Long> eldest = it.next();
+        sizeBytes -= eldest.getValue();
+        it.remove();
+        deleteFile(eldest.getKey());
+      }
+    }
+    return cached;
+  }
+}
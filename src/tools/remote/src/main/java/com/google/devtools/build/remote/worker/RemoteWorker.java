@@ -132,9 +132,23 @@ public final class RemoteWorker {
           new ConcurrentHashMap<>();
       FileSystemUtils.createDirectoryAndParents(workPath);
       watchServer = new WatcherServer(operationsCache);
+      InputCache inputCache =
+          workerOptions.inputCacheSize > 0
+              ? new InputCache(
+                  workPath.getRelative("input-cache"),
+                  cache,
+                  digestUtil,
+                  workerOptions.inputCacheSize * 1024 * 1024)
+              : null;
       execServer =
           new ExecutionServer(
-              workPath, sandboxPath, workerOptions, cache, operationsCache, digestUtil);
+              workPath,
+              sandboxPath,
+              workerOptions,
+              cache,
+              inputCache,
+              operationsCache,
+              digestUtil);
     } else {
       watchServer = null;
       execServer = null;
@@ -146,7 +160,9 @@ public final class RemoteWorker {
     NettyServerBuilder b =
         NettyServerBuilder.forPort(workerOptions.listenPort)
             .addService(ServerInterceptors.intercept(actionCacheServer, headersInterceptor))
-            .addService(ServerInterceptors.intercept(bsServer, headersInterceptor))
+            .addService(
+                ServerInterceptors.intercept(
+                    bsServer, headersInterceptor, new CompressionInterceptor()))
             .addService(ServerInterceptors.intercept(casServer, headersInterceptor));
 
     if (execServer != null) {
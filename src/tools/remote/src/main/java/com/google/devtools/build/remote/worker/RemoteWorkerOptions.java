@@ -56,6 +56,18 @@ public class RemoteWorkerOptions extends OptionsBase {
   )
   public String casPath;
 
+  @Option(
+    name = "input_cache_size",
+    defaultValue = "0",
+    category = "build_worker",
+    documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+    effectTags = {OptionEffectTag.UNKNOWN},
+    help = "If positive, the maximum size in megabytes of a cache of action inputs under "
+        + "--work_path. The inputs of actions are then hard linked from the cache rather than "
+        + "fetched from the CAS for every action."
+  )
+  public long inputCacheSize;
+
   @Option(
     name = "debug",
     defaultValue = "false",
@@ -0,0 +1,171 @@
+// Copyright 2018 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.remote.worker;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.devtools.build.lib.clock.JavaClock;
+import com.google.devtools.build.lib.remote.DigestUtil;
+import com.google.devtools.build.lib.remote.SimpleBlobStoreActionCache;
+import com.google.devtools.build.lib.remote.blobstore.ConcurrentMapBlobStore;
+import com.google.devtools.build.lib.vfs.FileSystem;
+import com.google.devtools.build.lib.vfs.FileSystem.HashFunction;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
+import com.google.devtools.remoteexecution.v1test.Digest;
+import com.google.devtools.remoteexecution.v1test.Directory;
+import com.google.devtools.remoteexecution.v1test.FileNode;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link InputCache}. */
+@RunWith(JUnit4.class)
+public class InputCacheTest {
+  private final DigestUtil digestUtil = new DigestUtil(HashFunction.SHA256);
+  private final ConcurrentMap<String, byte[]> blobs = new ConcurrentHashMap<>();
+  private FileSystem fs;
+  private Path root;
+  private SimpleBlobStoreActionCache cache;
+
+  @Before
+  public final void setUp() throws Exception {
+    fs = new InMemoryFileSystem(new JavaClock(), HashFunction.SHA256);
+    root = fs.getPath("/input-cache");
+    cache = new SimpleBlobStoreActionCache(new ConcurrentMapBlobStore(blobs), digestUtil);
+  }
+
+  private Digest putBlob(String contents) {
+    byte[] blob = contents.getBytes(UTF_8);
+    Digest digest = digestUtil.compute(blob);
+    blobs.put(digest.getHash(), blob);
+    return digest;
+  }
+
+  private Digest putDirectory(String name, Digest file, boolean isExecutable) {
+    Directory directory =
+        Directory.newBuilder()
+            .addFiles(
+                FileNode.newBuilder()
+                    .setName(name)
+                    .setDigest(file)
+                    .setIsExecutable(isExecutable))
+            .build();
+    Digest digest = digestUtil.compute(directory);
+    blobs.put(digest.getHash(), directory.toByteArray());
+    return digest;
+  }
+
+  private static String readContent(Path path) throws Exception {
+    return new String(FileSystemUtils.readContentAsLatin1(path));
+  }
+
+  @Test
+  public void materializeTree_linksCachedFiles() throws Exception {
+    InputCache inputCache = new InputCache(root, cache, digestUtil, 1024);
+    Digest file = putBlob("contents");
+    Digest tree = putDirectory("foo", file, /* isExecutable= */ true);
+
+    Path first = fs.getPath("/exec/1/foo");
+    Path second = fs.getPath("/exec/2/foo");
+    inputCache.materializeTree(tree, first.getParentDirectory());
+    // The second tree must be materialized from the cache alone.
+    blobs.remove(file.getHash());
+    inputCache.materializeTree(tree, second.getParentDirectory());
+
+    assertThat(readContent(second)).isEqualTo("contents");
+    assertThat(second.isExecutable()).isTrue();
+    assertThat(second.isWritable()).isFalse();
+    assertThat(second.stat().getNodeId()).isEqualTo(first.stat().getNodeId());
+  }
+
+  @Test
+  public void materializeTree_downloadsModifiedFileAgain() throws Exception {
+    InputCache inputCache = new InputCache(root, cache, digestUtil, 1024);
+    Digest file = putBlob("contents");
+    Digest tree = putDirectory("foo", file, /* isExecutable= */ false);
+
+    Path first = fs.getPath("/exec/1/foo");
+    inputCache.materializeTree(tree, first.getParentDirectory());
+    // An action writes to its input in place, which also changes the cached file.
+    first.setWritable(true);
+    FileSystemUtils.writeContentAsLatin1(first, "modified");
+
+    Path second = fs.getPath("/exec/2/foo");
+    inputCache.materializeTree(tree, second.getParentDirectory());
+
+    assertThat(readContent(second)).isEqualTo("contents");
+    assertThat(second.isWritable()).isFalse();
+    assertThat(readContent(first)).isEqualTo("modified");
+  }
+
+  @Test
+  public void materializeTree_downloadsFileAgainIfModeChanged() throws Exception {
+    InputCache inputCache = new InputCache(root, cache, digestUtil, 1024);
+    Digest file = putBlob("contents");
+    Digest tree = putDirectory("foo", file, /* isExecutable= */ false);
+
+    Path first = fs.getPath("/exec/1/foo");
+    inputCache.materializeTree(tree, first.getParentDirectory());
+    first.setExecutable(true);
+
+    Path second = fs.getPath("/exec/2/foo");
+    inputCache.materializeTree(tree, second.getParentDirectory());
+
+    assertThat(second.isExecutable()).isFalse();
+    assertThat(second.stat().getNodeId()).isNotEqualTo(first.stat().getNodeId());
+  }
+
+  @Test
+  public void materializeTree_evictsLeastRecentlyUsedFiles() throws Exception {
+    Digest a = putBlob("aaaa");
+    Digest b = putBlob("bbbb");
+    Digest c = putBlob("cccc");
+    // Room for two of the files.
+    InputCache inputCache = new InputCache(root, cache, digestUtil, 8);
+
+    inputCache.materializeTree(putDirectory("a", a, false), fs.getPath("/exec/1"));
+    inputCache.materializeTree(putDirectory("b", b, false), fs.getPath("/exec/2"));
+    // Makes b the least recently used file.
+    inputCache.materializeTree(putDirectory("a", a, false), fs.getPath("/exec/3"));
+    inputCache.materializeTree(putDirectory("c", c, false), fs.getPath("/exec/4"));
+
+    assertThat(root.getRelative(a.getHash()).exists()).isTrue();
+    assertThat(root.getRelative(b.getHash()).exists()).isFalse();
+    assertThat(root.getRelative(c.getHash()).exists()).isTrue();
+    // Evicting a file doesn't affect the trees that link to it.
+    assertThat(readContent(fs.getPath("/exec/2/b"))).isEqualTo("bbbb");
+  }
+
+  @Test
+  public void materializeTree_downloadsFileThatCannotBeLinked() throws Exception {
+    InputCache inputCache = new InputCache(root, cache, digestUtil, 1024);
+    Digest file = putBlob("contents");
+    Digest tree = putDirectory("foo", file, /* isExecutable= */ true);
+
+    // Files can't be linked across file systems.
+    FileSystem otherFs = new InMemoryFileSystem(new JavaClock(), HashFunction.SHA256);
+    Path execRoot = otherFs.getPath("/exec");
+    inputCache.materializeTree(tree, execRoot);
+
+    assertThat(readContent(execRoot.getRelative("foo"))).isEqualTo("contents");
+    assertThat(execRoot.getRelative("foo").isExecutable()).isTrue();
+    assertThat(root.getRelative(file.getHash() + "-x").exists()).isTrue();
+  }
+}